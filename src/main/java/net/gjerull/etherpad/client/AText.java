@@ -0,0 +1,119 @@
+package net.gjerull.etherpad.client;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The text of a pad with its attribution, an operation string giving
+ * the attributes (author, formatting) of every character, e.g.
+ * <code>*0+5*0*1|1+6</code>.<br />
+ * <br />
+ * Example:<br />
+ * <br />
+ * <code>
+ * AText base = AText.of("\n");<br />
+ * AText rev0 = Changeset.parse(api.getRevisionChangeset("my_pad", 0)).applyTo(base, pool);
+ * </code>
+ */
+public final class AText {
+	private final String text;
+	private final String attribs;
+
+	/**
+	 * Instantiates a new AText.
+	 *
+	 * @param text the text, ending with a newline
+	 * @param attribs the attribution of the text
+	 */
+	public AText(final String text, final String attribs) {
+		this.text = text;
+		this.attribs = attribs;
+	}
+
+	/**
+	 * Returns a text without attributes.
+	 *
+	 * @param text the text
+	 * @return AText
+	 */
+	public static AText of(final String text) {
+		int lastNewline = text.lastIndexOf('\n');
+		StringBuilder attribs = new StringBuilder();
+		if (lastNewline >= 0) {
+			int lines = 0;
+			for (int i = 0; i <= lastNewline; i++) {
+				if (text.charAt(i) == '\n') {
+					lines++;
+				}
+			}
+			attribs.append('|').append(Integer.toString(lines, 36))
+			.append('+').append(Integer.toString(lastNewline + 1, 36));
+		}
+		if (lastNewline + 1 < text.length()) {
+			attribs.append('+').append(Integer.toString(
+					text.length() - lastNewline - 1, 36));
+		}
+		return new AText(text, attribs.toString());
+	}
+
+	/** Getter.
+	 * @return the text
+	 * */
+	public String getText() {
+		return text;
+	}
+
+	/** Getter.
+	 * @return the attribution of the text
+	 * */
+	public String getAttribs() {
+		return attribs;
+	}
+
+	/**
+	 * Returns the attributes of the character at an index.
+	 *
+	 * @param index the index of the character
+	 * @param pool the attribute pool of the pad
+	 * @return the attributes by key, empty if the character has none
+	 */
+	public Map<String, String> getAttributes(final int index,
+			final AttributePool pool) {
+		if (index < 0 || index >= this.text.length()) {
+			throw new IndexOutOfBoundsException("index " + index);
+		}
+		int start = 0;
+		for (Changeset.Operation op : Changeset.parseOperations(this.attribs)) {
+			if (index < start + op.getChars()) {
+				Map<String, String> attributes = new LinkedHashMap<>();
+				for (int num : op.getAttributeNumbers()) {
+					attributes.put(pool.getKey(num), pool.getValue(num));
+				}
+				return attributes;
+			}
+			start += op.getChars();
+		}
+		return new LinkedHashMap<>();
+	}
+
+	@Override
+	public boolean equals(final Object o) {
+		if (!(o instanceof AText)) {
+			return false;
+		}
+		AText other = (AText) o;
+		return this.text.equals(other.text)
+				&& this.attribs.equals(other.attribs);
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * this.text.hashCode() + this.attribs.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return "AText{text=" + this.text.length() + " chars, attribs="
+				+ this.attribs + "}";
+	}
+}
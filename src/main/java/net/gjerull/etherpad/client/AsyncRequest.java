@@ -0,0 +1,17 @@
+package net.gjerull.etherpad.client;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A request that can also be sent without blocking the calling thread.
+ */
+public interface AsyncRequest extends Request {
+
+	/**
+	 * Sends the request and returns a future completed with the
+	 * response once it has been received.
+	 *
+	 * @return CompletableFuture with the response body
+	 */
+	CompletableFuture<String> sendAsync();
+}
@@ -0,0 +1,23 @@
+package net.gjerull.etherpad.client;
+
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A transport whose requests can be sent without blocking, as needed
+ * by the EPLiteAsyncClient.
+ */
+public interface AsyncTransport extends Transport {
+
+	@Override
+	AsyncRequest newGetRequest(URL url);
+
+	@Override
+	AsyncRequest newPostRequest(URL url, String body);
+
+	@Override
+	default AsyncRequest newPostRequest(URL url, byte[] body) {
+		return newPostRequest(url,
+				new String(body, StandardCharsets.US_ASCII));
+	}
+}
@@ -0,0 +1,128 @@
+package net.gjerull.etherpad.client;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The attribute pool of a pad: the [key, value] pairs (author, bold,
+ * list, ...) that the operations of changesets and attributions refer to
+ * by number, e.g. <code>*0*3</code>.<br />
+ * <br />
+ * Example:<br />
+ * <br />
+ * <code>
+ * AttributePool pool = AttributePool.fromResponse(api.getAttributePool("my_pad"));<br />
+ * String author = pool.getValue(0);
+ * </code>
+ */
+public final class AttributePool {
+	/** The pairs by number; null for numbers not in use. */
+	private final List<String[]> numToAttrib = new ArrayList<>();
+	/** The numbers by key and value, joined with a comma. */
+	private final Map<String, Integer> attribToNum = new HashMap<>();
+
+	/**
+	 * Creates an empty pool.
+	 */
+	public AttributePool() {
+	}
+
+	/**
+	 * Reads the pool returned by getAttributePool.
+	 *
+	 * @param response the data of getAttributePool, or its "pool" object
+	 * @return AttributePool
+	 */
+	public static AttributePool fromResponse(final Map response) {
+		Object pool = response.get("pool");
+		Map json = (pool instanceof Map) ? (Map) pool : response;
+		Object numToAttrib = json.get("numToAttrib");
+		if (!(numToAttrib instanceof Map)) {
+			throw new EPLiteException("An unexpected attribute pool: "
+					+ response);
+		}
+		AttributePool result = new AttributePool();
+		for (Object entry : ((Map) numToAttrib).entrySet()) {
+			Map.Entry e = (Map.Entry) entry;
+			List pair = (List) e.getValue();
+			result.set(Integer.parseInt(e.getKey().toString()),
+					String.valueOf(pair.get(0)),
+					(pair.size() > 1) ? String.valueOf(pair.get(1)) : "");
+		}
+		return result;
+	}
+
+	/**
+	 * Returns true if the pool has an attribute with this number.
+	 *
+	 * @param num the number
+	 * @return boolean
+	 */
+	public synchronized boolean contains(final int num) {
+		return num >= 0 && num < this.numToAttrib.size()
+				&& this.numToAttrib.get(num) != null;
+	}
+
+	/**
+	 * Returns the key of an attribute.
+	 *
+	 * @param num the number of the attribute
+	 * @return String
+	 */
+	public synchronized String getKey(final int num) {
+		return this.attrib(num)[0];
+	}
+
+	/**
+	 * Returns the value of an attribute.
+	 *
+	 * @param num the number of the attribute
+	 * @return String
+	 */
+	public synchronized String getValue(final int num) {
+		return this.attrib(num)[1];
+	}
+
+	/**
+	 * Returns the number of an attribute, adding it to the pool if it is
+	 * not there yet.
+	 *
+	 * @param key the key
+	 * @param value the value
+	 * @return the number of the attribute
+	 */
+	public synchronized int put(final String key, final String value) {
+		Integer num = this.attribToNum.get(key + "," + value);
+		if (num != null) {
+			return num;
+		}
+		int next = this.numToAttrib.size();
+		this.set(next, key, value);
+		return next;
+	}
+
+	/** Getter.
+	 * @return the next free number
+	 * */
+	public synchronized int size() {
+		return this.numToAttrib.size();
+	}
+
+	private String[] attrib(final int num) {
+		if (!this.contains(num)) {
+			throw new EPLiteException("Attribute " + num
+					+ " is not in the pool");
+		}
+		return this.numToAttrib.get(num);
+	}
+
+	private void set(final int num, final String key, final String value) {
+		while (this.numToAttrib.size() <= num) {
+			this.numToAttrib.add(null);
+		}
+		this.numToAttrib.set(num, new String[] {key, value});
+		this.attribToNum.put(key + "," + value, num);
+	}
+}
@@ -0,0 +1,155 @@
+package net.gjerull.etherpad.client;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The outcome of a bulk operation: one item per input, in the order of
+ * the inputs, each holding either the result of its call or the
+ * EPLiteException it failed with.<br />
+ * <br />
+ * Example:<br />
+ * <br />
+ * <code>
+ * BulkResult&lt;String, Void&gt; result = api.bulk().deletePads(padIds);<br />
+ * for (BulkResult.Item&lt;String, Void&gt; failed : result.getFailures()) {<br />
+ * &nbsp;&nbsp;log(failed.getInput(), failed.getError());<br />
+ * }
+ * </code>
+ *
+ * @param <I> the type of the inputs
+ * @param <R> the type of the results
+ */
+public final class BulkResult<I, R> {
+	private final List<Item<I, R>> items;
+	private final int failed;
+
+	BulkResult(final List<Item<I, R>> items) {
+		this.items = Collections.unmodifiableList(items);
+		int count = 0;
+		for (Item<I, R> item : items) {
+			if (!item.isSuccess()) {
+				count++;
+			}
+		}
+		this.failed = count;
+	}
+
+	/** Getter.
+	 * @return one item per input, in the order of the inputs
+	 * */
+	public List<Item<I, R>> getItems() {
+		return items;
+	}
+
+	/** Getter.
+	 * @return the items whose call failed, in the order of the inputs
+	 * */
+	public List<Item<I, R>> getFailures() {
+		List<Item<I, R>> failures = new ArrayList<>(failed);
+		for (Item<I, R> item : items) {
+			if (!item.isSuccess()) {
+				failures.add(item);
+			}
+		}
+		return failures;
+	}
+
+	/**
+	 * Returns the results in the order of the inputs, null for the
+	 * failed items.
+	 *
+	 * @return List
+	 */
+	public List<R> getValues() {
+		List<R> values = new ArrayList<>(items.size());
+		for (Item<I, R> item : items) {
+			values.add(item.getValue());
+		}
+		return values;
+	}
+
+	/** Getter.
+	 * @return the number of calls that succeeded
+	 * */
+	public int getSucceededCount() {
+		return items.size() - failed;
+	}
+
+	/** Getter.
+	 * @return the number of calls that failed
+	 * */
+	public int getFailedCount() {
+		return failed;
+	}
+
+	/**
+	 * Returns true if every call succeeded.
+	 *
+	 * @return boolean
+	 */
+	public boolean isSuccess() {
+		return failed == 0;
+	}
+
+	@Override
+	public String toString() {
+		return "BulkResult{succeeded=" + getSucceededCount()
+				+ ", failed=" + failed + "}";
+	}
+
+	/**
+	 * The outcome of the call for one input.
+	 *
+	 * @param <I> the type of the input
+	 * @param <R> the type of the result
+	 */
+	public static final class Item<I, R> {
+		private final I input;
+		private final R value;
+		private final EPLiteException error;
+
+		Item(final I input, final R value, final EPLiteException error) {
+			this.input = input;
+			this.value = value;
+			this.error = error;
+		}
+
+		/** Getter.
+		 * @return the input of the call
+		 * */
+		public I getInput() {
+			return input;
+		}
+
+		/** Getter.
+		 * @return the result of the call, null if it failed
+		 * */
+		public R getValue() {
+			return value;
+		}
+
+		/** Getter.
+		 * @return the error of the call, null if it succeeded
+		 * */
+		public EPLiteException getError() {
+			return error;
+		}
+
+		/**
+		 * Returns true if the call succeeded.
+		 *
+		 * @return boolean
+		 */
+		public boolean isSuccess() {
+			return error == null;
+		}
+
+		@Override
+		public String toString() {
+			return isSuccess() ? input + "=" + value
+					: input + " failed: " + error.getMessage();
+		}
+	}
+}
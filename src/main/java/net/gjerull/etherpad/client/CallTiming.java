@@ -0,0 +1,374 @@
+package net.gjerull.etherpad.client;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * The time a request of an API call spent in each phase, handed to the
+ * TimingListener of its EPLiteConnection.<br />
+ * <br />
+ * The phases are measured while the request is sent on the calling
+ * thread:
+ * <ul>
+ * <li>DNS: resolving the host name;</li>
+ * <li>CONNECT: opening the TCP connection, 0 for a keep-alive one;</li>
+ * <li>TLS: the TLS handshake, 0 for a keep-alive connection;</li>
+ * <li>FIRST_BYTE: sending the request and waiting for the headers of
+ * the response, i.e. the network round trip and the work of
+ * Etherpad;</li>
+ * <li>TRANSFER: reading the response body from the network;</li>
+ * <li>PARSE: parsing the JSON of the response, in between the reads.
+ * </li>
+ * </ul>
+ * DNS, CONNECT and TLS are measured by GETRequest and POSTRequest; with
+ * other transports they are 0 and counted in FIRST_BYTE. With a transport
+ * returning the response as a String, its transfer is counted in
+ * FIRST_BYTE too.<br />
+ * <br />
+ * The same measures make the ApiCall, ConnectionOpen, ConnectionReuse
+ * and TlsHandshake events of the JDK Flight Recorder, see JfrEvents.
+ */
+public class CallTiming {
+	/** The phases of a request. */
+	public enum Phase {
+		/** Resolving the host name. */
+		DNS,
+		/** Opening the TCP connection. */
+		CONNECT,
+		/** The TLS handshake. */
+		TLS,
+		/** Sending the request until the headers of the response. */
+		FIRST_BYTE,
+		/** Reading the response body. */
+		TRANSFER,
+		/** Parsing the response. */
+		PARSE
+	}
+
+	/** The timing of the request sent by the current thread. */
+	private static final ThreadLocal<CallTiming> CURRENT =
+			new ThreadLocal<>();
+
+	/** The timing socket factory of each SSLSocketFactory. */
+	private static final ConcurrentMap<SSLSocketFactory, SSLSocketFactory>
+			FACTORIES = new ConcurrentHashMap<>();
+
+	private final String apiMethod;
+	private final long[] nanos = new long[Phase.values().length];
+	private final long start = System.nanoTime();
+	/** When the TCP connection was open, 0 if not seen. */
+	private long tcpConnected;
+	/** When the connection was ready to send, 0 if not measured. */
+	private long connected;
+	/** When the response body was handed to the handler, 0 if never. */
+	private long firstByte;
+	/** When the handler returned. */
+	private long handled;
+	/** The handshake of a new HTTPS connection, null if none. */
+	private JfrEvents.TlsHandshake handshake;
+	private SSLSocket tlsSocket;
+	private int status;
+	private long received;
+	private long total;
+	private Throwable error;
+
+	CallTiming(final String apiMethod) {
+		this.apiMethod = apiMethod;
+	}
+
+	/** Getter.
+	 * @return the name of the API method
+	 * */
+	public final String getApiMethod() {
+		return this.apiMethod;
+	}
+
+	/**
+	 * Returns the time spent in a phase.
+	 *
+	 * @param phase the phase
+	 * @return the time in ns
+	 */
+	public final long get(final Phase phase) {
+		return this.nanos[phase.ordinal()];
+	}
+
+	/** Getter.
+	 * @return the HTTP status of the response, 0 if there was none or the
+	 *  transport does not report it
+	 * */
+	public final int getStatus() {
+		return this.status;
+	}
+
+	/** Getter.
+	 * @return the bytes of the response body read by the client
+	 * */
+	public final long getBytesReceived() {
+		return this.received;
+	}
+
+	/** Getter.
+	 * @return the time of the whole request in ns
+	 * */
+	public final long getTotal() {
+		return this.total;
+	}
+
+	/** Getter.
+	 * @return the error of a failed request, null if it succeeded
+	 * */
+	public final Throwable getError() {
+		return this.error;
+	}
+
+	/**
+	 * Binds a timing to the current thread.
+	 *
+	 * @return the timing bound before, to restore with end
+	 */
+	static CallTiming begin(final CallTiming timing) {
+		CallTiming outer = CURRENT.get();
+		CURRENT.set(timing);
+		return outer;
+	}
+
+	/**
+	 * Ends a timing, binding the timing bound before it again.
+	 */
+	final void end(final CallTiming outer, final Throwable failure) {
+		if (outer == null) {
+			CURRENT.remove();
+		} else {
+			CURRENT.set(outer);
+		}
+		long now = System.nanoTime();
+		this.total = now - this.start;
+		this.error = failure;
+		if (this.firstByte != 0) {
+			long from = (this.connected != 0) ? this.connected : this.start;
+			this.nanos[Phase.FIRST_BYTE.ordinal()] = this.firstByte - from;
+			this.nanos[Phase.PARSE.ordinal()] = Math.max(0L,
+					((this.handled != 0) ? this.handled : now)
+					- this.firstByte - this.get(Phase.TRANSFER));
+		}
+	}
+
+	/**
+	 * Wraps a handler to time the transfer and parsing of the response.
+	 */
+	final <T> ResponseHandler<T> timed(final ResponseHandler<T> handler) {
+		return (body, charset) -> {
+			this.firstByte = System.nanoTime();
+			try {
+				return handler.handle(new TimedInputStream(body), charset);
+			} finally {
+				this.handled = System.nanoTime();
+			}
+		};
+	}
+
+	/**
+	 * Notes the HTTP status of the response to the request sent by the
+	 * current thread.
+	 */
+	static void responded(final int status) {
+		CallTiming timing = CURRENT.get();
+		if (timing != null) {
+			timing.status = status;
+		}
+	}
+
+	/**
+	 * Resolves the host and opens the connection of a URLConnection,
+	 * timing DNS, CONNECT and TLS if a timing is bound to the current
+	 * thread. Otherwise the connection is left to open when it is used.
+	 * For HTTPS it also tells a new connection from a keep-alive one,
+	 * as ConnectionOpen and TlsHandshake or ConnectionReuse events.
+	 *
+	 * @param url the url of the connection
+	 * @param con the connection, configured but not yet connected
+	 * @throws IOException if the host can not be resolved or reached
+	 */
+	static void connect(final URL url, final URLConnection con)
+			throws IOException {
+		CallTiming timing = CURRENT.get();
+		if (timing == null) {
+			return;
+		}
+		long start = System.nanoTime();
+		// Cached by the JVM for the lookup of the connection
+		InetAddress.getAllByName(url.getHost());
+		long resolved = System.nanoTime();
+		timing.nanos[Phase.DNS.ordinal()] = resolved - start;
+		if (con instanceof HttpsURLConnection) {
+			HttpsURLConnection https = (HttpsURLConnection) con;
+			// One wrapper per factory, so keep-alive connections are reused
+			https.setSSLSocketFactory(FACTORIES.computeIfAbsent(
+					https.getSSLSocketFactory(), TimingSocketFactory::new));
+		}
+		JfrEvents.ConnectionOpen open = new JfrEvents.ConnectionOpen();
+		open.begin();
+		con.connect();
+		long ready = System.nanoTime();
+		int port = (url.getPort() != -1) ? url.getPort()
+				: url.getDefaultPort();
+		if (timing.handshake != null) {
+			JfrEvents.handshaken(timing.handshake, url.getHost(), port,
+					timing.tlsSocket.getSession());
+			JfrEvents.opened(open, url.getHost(), port);
+		} else if (con instanceof HttpsURLConnection) {
+			// No socket was created: a keep-alive connection
+			JfrEvents.reused(url.getHost(), port);
+		}
+		if (timing.tcpConnected != 0) {
+			timing.nanos[Phase.CONNECT.ordinal()] =
+					timing.tcpConnected - resolved;
+			timing.nanos[Phase.TLS.ordinal()] = ready - timing.tcpConnected;
+		} else {
+			timing.nanos[Phase.CONNECT.ordinal()] = ready - resolved;
+		}
+		timing.connected = ready;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder string = new StringBuilder("CallTiming{method=")
+				.append(apiMethod);
+		for (Phase phase : Phase.values()) {
+			string.append(", ").append(phase).append('=')
+			.append(String.format("%.3f", get(phase) / 1e6)).append("ms");
+		}
+		return string.append(", total=")
+				.append(String.format("%.3f", total / 1e6)).append("ms}")
+				.toString();
+	}
+
+	/**
+	 * A response body adding the time spent in reads to TRANSFER.
+	 */
+	private final class TimedInputStream extends FilterInputStream {
+		private TimedInputStream(final InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			long start = System.nanoTime();
+			int b = -1;
+			try {
+				b = super.read();
+				return b;
+			} finally {
+				if (b >= 0) {
+					CallTiming.this.received++;
+				}
+				CallTiming.this.nanos[Phase.TRANSFER.ordinal()] +=
+						System.nanoTime() - start;
+			}
+		}
+
+		@Override
+		public int read(final byte[] buffer, final int offset,
+				final int length) throws IOException {
+			long start = System.nanoTime();
+			int n = -1;
+			try {
+				n = super.read(buffer, offset, length);
+				return n;
+			} finally {
+				if (n > 0) {
+					CallTiming.this.received += n;
+				}
+				CallTiming.this.nanos[Phase.TRANSFER.ordinal()] +=
+						System.nanoTime() - start;
+			}
+		}
+	}
+
+	/**
+	 * Notes when the TCP connection of an HTTPS request is open, i.e.
+	 * when the TLS socket is layered over it and the handshake starts.
+	 * Its unconnected sockets are plain ones, so that HttpsURLConnection
+	 * connects them first and then layers TLS over them, as it does
+	 * through a proxy.
+	 */
+	private static final class TimingSocketFactory extends SSLSocketFactory {
+		private final SSLSocketFactory delegate;
+
+		private TimingSocketFactory(final SSLSocketFactory delegate) {
+			this.delegate = delegate;
+		}
+
+		@Override
+		public Socket createSocket(final Socket socket, final String host,
+				final int port, final boolean autoClose) throws IOException {
+			CallTiming timing = CURRENT.get();
+			if (timing == null) {
+				return this.delegate.createSocket(socket, host, port,
+						autoClose);
+			}
+			timing.tcpConnected = System.nanoTime();
+			timing.handshake = new JfrEvents.TlsHandshake();
+			timing.handshake.begin();
+			Socket tls = this.delegate.createSocket(socket, host, port,
+					autoClose);
+			timing.tlsSocket = (SSLSocket) tls;
+			return tls;
+		}
+
+		@Override
+		public Socket createSocket() {
+			return new Socket();
+		}
+
+		@Override
+		public Socket createSocket(final String host, final int port)
+				throws IOException {
+			return this.delegate.createSocket(host, port);
+		}
+
+		@Override
+		public Socket createSocket(final String host, final int port,
+				final InetAddress localHost, final int localPort)
+				throws IOException {
+			return this.delegate.createSocket(host, port, localHost,
+					localPort);
+		}
+
+		@Override
+		public Socket createSocket(final InetAddress host, final int port)
+				throws IOException {
+			return this.delegate.createSocket(host, port);
+		}
+
+		@Override
+		public Socket createSocket(final InetAddress address, final int port,
+				final InetAddress localAddress, final int localPort)
+				throws IOException {
+			return this.delegate.createSocket(address, port, localAddress,
+					localPort);
+		}
+
+		@Override
+		public String[] getDefaultCipherSuites() {
+			return this.delegate.getDefaultCipherSuites();
+		}
+
+		@Override
+		public String[] getSupportedCipherSuites() {
+			return this.delegate.getSupportedCipherSuites();
+		}
+	}
+}
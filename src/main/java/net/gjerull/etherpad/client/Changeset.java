@@ -0,0 +1,596 @@
+package net.gjerull.etherpad.client;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An Etherpad changeset, as returned by getRevisionChangeset, applied
+ * locally to a text and its attribution.<br />
+ * <br />
+ * A changeset is packed as
+ * <code>Z:&lt;old length&gt;(&gt;|&lt;)&lt;length difference&gt;&lt;operations&gt;$&lt;char bank&gt;</code>,
+ * numbers in base 36. Each operation is an optional list of attribute
+ * numbers (<code>*n</code>), an optional line count (<code>|n</code>) and
+ * an opcode with a char count: <code>=</code> keeps characters (applying
+ * its attributes to them), <code>-</code> deletes them and <code>+</code>
+ * inserts the next characters of the char bank. Characters after the
+ * last operation are kept.<br />
+ * <br />
+ * The result is the same as the one of Etherpad's applyToText and
+ * applyToAttribution, so revision N can be rebuilt from revision N - 1
+ * without asking the server.<br />
+ * <br />
+ * Example:<br />
+ * <br />
+ * <code>
+ * Changeset changeset = Changeset.parse(api.getRevisionChangeset("my_pad", 42));<br />
+ * AText rev42 = changeset.applyTo(rev41, pool);
+ * </code>
+ */
+public final class Changeset {
+	private final int oldLength;
+	private final int newLength;
+	private final List<Operation> operations;
+	private final String charBank;
+
+	private Changeset(final int oldLength, final int newLength,
+			final List<Operation> operations, final String charBank) {
+		this.oldLength = oldLength;
+		this.newLength = newLength;
+		this.operations = Collections.unmodifiableList(operations);
+		this.charBank = charBank;
+	}
+
+	/**
+	 * Parses a packed changeset.
+	 *
+	 * @param packed the changeset, e.g. <code>Z:5&gt;3=2+3$abc</code>
+	 * @return Changeset
+	 */
+	public static Changeset parse(final String packed) {
+		if (packed == null || !packed.startsWith("Z:")) {
+			throw new EPLiteException("Not a changeset: " + packed);
+		}
+		int sign = indexOfAny(packed, "<>", 2);
+		int dollar = packed.indexOf('$');
+		if (sign < 0 || dollar < 0) {
+			throw new EPLiteException("Not a changeset: " + packed);
+		}
+		int opsStart = sign + 1;
+		while (opsStart < dollar && isDigit36(packed.charAt(opsStart))) {
+			opsStart++;
+		}
+		try {
+			int oldLength = Integer.parseInt(packed.substring(2, sign), 36);
+			int difference = Integer.parseInt(
+					packed.substring(sign + 1, opsStart), 36);
+			int newLength = (packed.charAt(sign) == '>')
+					? oldLength + difference : oldLength - difference;
+			return new Changeset(oldLength, newLength,
+					parseOperations(packed.substring(opsStart, dollar)),
+					packed.substring(dollar + 1));
+		} catch (NumberFormatException e) {
+			throw new EPLiteException("Not a changeset: " + packed, e);
+		}
+	}
+
+	/**
+	 * Renumbers the attributes of a packed changeset from one pool to
+	 * another, adding the attributes the new pool does not have, like
+	 * Etherpad's moveOpsToNewPool. The changesets pushed by the realtime
+	 * protocol come with a pool of their own.
+	 *
+	 * @param packed the changeset
+	 * @param oldPool the pool the changeset refers to
+	 * @param newPool the pool to refer to
+	 * @return the packed changeset with the numbers of newPool
+	 */
+	public static String moveOpsToNewPool(final String packed,
+			final AttributePool oldPool, final AttributePool newPool) {
+		int dollar = packed.indexOf('$');
+		int end = (dollar < 0) ? packed.length() : dollar;
+		StringBuilder result = new StringBuilder(packed.length());
+		int i = 0;
+		while (i < end) {
+			char c = packed.charAt(i++);
+			result.append(c);
+			if (c != '*') {
+				continue;
+			}
+			int start = i;
+			while (i < end && isDigit36(packed.charAt(i))) {
+				i++;
+			}
+			int num = parse36(packed, start, i);
+			result.append(Integer.toString(newPool.put(oldPool.getKey(num),
+					oldPool.getValue(num)), 36));
+		}
+		return result.append(packed, end, packed.length()).toString();
+	}
+
+	/**
+	 * Parses an operation string, e.g. the attribution of an AText.
+	 *
+	 * @param ops the operations
+	 * @return the operations, in order
+	 */
+	static List<Operation> parseOperations(final String ops) {
+		List<Operation> result = new ArrayList<>();
+		int i = 0;
+		int n = ops.length();
+		while (i < n) {
+			int start = i;
+			while (i < n && ops.charAt(i) == '*') {
+				i++;
+				while (i < n && isDigit36(ops.charAt(i))) {
+					i++;
+				}
+			}
+			String attribs = ops.substring(start, i);
+			int lines = 0;
+			if (i < n && ops.charAt(i) == '|') {
+				int linesStart = ++i;
+				while (i < n && isDigit36(ops.charAt(i))) {
+					i++;
+				}
+				lines = parse36(ops, linesStart, i);
+			}
+			if (i >= n || "+-=".indexOf(ops.charAt(i)) < 0) {
+				throw new EPLiteException("Invalid operation at " + i
+						+ " in " + ops);
+			}
+			char opcode = ops.charAt(i++);
+			int charsStart = i;
+			while (i < n && isDigit36(ops.charAt(i))) {
+				i++;
+			}
+			result.add(new Operation(opcode, parse36(ops, charsStart, i),
+					lines, attribs));
+		}
+		return result;
+	}
+
+	/** Getter.
+	 * @return the length of the text the changeset applies to
+	 * */
+	public int getOldLength() {
+		return oldLength;
+	}
+
+	/** Getter.
+	 * @return the length of the text after the changeset
+	 * */
+	public int getNewLength() {
+		return newLength;
+	}
+
+	/** Getter.
+	 * @return the operations, in order
+	 * */
+	public List<Operation> getOperations() {
+		return operations;
+	}
+
+	/** Getter.
+	 * @return the inserted characters
+	 * */
+	public String getCharBank() {
+		return charBank;
+	}
+
+	/**
+	 * Returns true if every attribute the operations refer to is in the
+	 * pool; otherwise the pool is older than the changeset.
+	 *
+	 * @param pool the attribute pool
+	 * @return boolean
+	 */
+	public boolean hasAttributesIn(final AttributePool pool) {
+		for (Operation op : this.operations) {
+			for (int num : op.getAttributeNumbers()) {
+				if (!pool.contains(num)) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Applies the changeset to a text.
+	 *
+	 * @param text the text, of getOldLength() characters
+	 * @return the new text
+	 */
+	public String applyToText(final String text) {
+		if (text.length() != this.oldLength) {
+			throw new EPLiteException("The changeset applies to a text of "
+					+ this.oldLength + " characters, not " + text.length());
+		}
+		StringBuilder result = new StringBuilder(this.newLength);
+		int position = 0;
+		int bank = 0;
+		for (Operation op : this.operations) {
+			switch (op.opcode) {
+			case '+':
+				if (bank + op.chars > this.charBank.length()) {
+					throw new EPLiteException("The char bank is too short");
+				}
+				result.append(this.charBank, bank, bank + op.chars);
+				bank += op.chars;
+				break;
+			case '-':
+				position += op.chars;
+				break;
+			default:
+				if (position + op.chars > text.length()) {
+					throw new EPLiteException("The changeset keeps more"
+							+ " characters than the text has");
+				}
+				result.append(text, position, position + op.chars);
+				position += op.chars;
+				break;
+			}
+		}
+		if (position > text.length()) {
+			throw new EPLiteException("The changeset deletes more"
+					+ " characters than the text has");
+		}
+		result.append(text, position, text.length());
+		return result.toString();
+	}
+
+	/**
+	 * Applies the changeset to the attribution of a text.
+	 *
+	 * @param attribs the attribution, an operation string of + operations
+	 * @param pool the attribute pool of the pad
+	 * @return the new attribution
+	 */
+	public String applyToAttribution(final String attribs,
+			final AttributePool pool) {
+		List<Operation> document = parseOperations(attribs);
+		OpAssembler assembler = new OpAssembler();
+		MutableOp attOp = new MutableOp();
+		MutableOp csOp = new MutableOp();
+		MutableOp opOut = new MutableOp();
+		int nextAtt = 0;
+		int nextCs = 0;
+		while (attOp.opcode != 0 || nextAtt < document.size()
+				|| csOp.opcode != 0 || nextCs < this.operations.size()) {
+			if (attOp.opcode == 0 && nextAtt < document.size()) {
+				attOp.set(document.get(nextAtt++));
+			}
+			if (csOp.opcode == 0 && nextCs < this.operations.size()) {
+				csOp.set(this.operations.get(nextCs++));
+			}
+			slice(attOp, csOp, opOut, pool);
+			if (opOut.opcode != 0) {
+				assembler.append(opOut);
+				opOut.opcode = 0;
+			}
+		}
+		return assembler.toString();
+	}
+
+	/**
+	 * Applies the changeset to a text and its attribution.
+	 *
+	 * @param atext the text and attribution
+	 * @param pool the attribute pool of the pad
+	 * @return the new text and attribution
+	 */
+	public AText applyTo(final AText atext, final AttributePool pool) {
+		return new AText(this.applyToText(atext.getText()),
+				this.applyToAttribution(atext.getAttribs(), pool));
+	}
+
+	/**
+	 * Returns the packed changeset.
+	 *
+	 * @return String
+	 */
+	@Override
+	public String toString() {
+		StringBuilder packed = new StringBuilder("Z:")
+				.append(Integer.toString(this.oldLength, 36))
+				.append((this.newLength >= this.oldLength) ? '>' : '<')
+				.append(Integer.toString(
+						Math.abs(this.newLength - this.oldLength), 36));
+		for (Operation op : this.operations) {
+			packed.append(op);
+		}
+		return packed.append('$').append(this.charBank).toString();
+	}
+
+	/**
+	 * Consumes the operations of the attribution (attOp) and of the
+	 * changeset (csOp), writing the resulting attribution to opOut.
+	 * Etherpad's slicerZipperFunc, for a document of + operations.
+	 */
+	private static void slice(final MutableOp attOp, final MutableOp csOp,
+			final MutableOp opOut, final AttributePool pool) {
+		if (attOp.opcode == '-') {
+			opOut.copy(attOp);
+			attOp.opcode = 0;
+		} else if (attOp.opcode == 0) {
+			opOut.copy(csOp);
+			csOp.opcode = 0;
+		} else if (csOp.opcode == '-') {
+			if (csOp.chars <= attOp.chars) {
+				// delete or delete part
+				if (attOp.opcode == '=') {
+					opOut.set('-', csOp.chars, csOp.lines, "");
+				}
+				attOp.chars -= csOp.chars;
+				attOp.lines -= csOp.lines;
+				csOp.opcode = 0;
+				if (attOp.chars == 0) {
+					attOp.opcode = 0;
+				}
+			} else {
+				// delete and keep going
+				if (attOp.opcode == '=') {
+					opOut.set('-', attOp.chars, attOp.lines, "");
+				}
+				csOp.chars -= attOp.chars;
+				csOp.lines -= attOp.lines;
+				attOp.opcode = 0;
+			}
+		} else if (csOp.opcode == '+') {
+			opOut.copy(csOp);
+			csOp.opcode = 0;
+		} else if (csOp.opcode == '=') {
+			String composed = composeAttributes(attOp.attribs, csOp.attribs,
+					attOp.opcode == '=', pool);
+			if (csOp.chars <= attOp.chars) {
+				// keep or keep part
+				opOut.set(attOp.opcode, csOp.chars, csOp.lines, composed);
+				attOp.chars -= csOp.chars;
+				attOp.lines -= csOp.lines;
+				csOp.opcode = 0;
+				if (attOp.chars == 0) {
+					attOp.opcode = 0;
+				}
+			} else {
+				// keep and keep going
+				opOut.set(attOp.opcode, attOp.chars, attOp.lines, composed);
+				csOp.chars -= attOp.chars;
+				csOp.lines -= attOp.lines;
+				attOp.opcode = 0;
+			}
+		} else {
+			opOut.copy(attOp);
+			attOp.opcode = 0;
+		}
+	}
+
+	/**
+	 * Applies the attributes of att2 to att1: a pair replaces the pair
+	 * with the same key, and an empty value removes the key unless the
+	 * result is a mutation. Etherpad's composeAttributes.
+	 */
+	private static String composeAttributes(final String att1,
+			final String att2, final boolean resultIsMutation,
+			final AttributePool pool) {
+		if (att1.isEmpty() && resultIsMutation) {
+			return att2;
+		}
+		if (att2.isEmpty()) {
+			return att1;
+		}
+		List<String[]> atts = new ArrayList<>();
+		for (int num : attributeNumbers(att1)) {
+			atts.add(new String[] {pool.getKey(num), pool.getValue(num)});
+		}
+		for (int num : attributeNumbers(att2)) {
+			String key = pool.getKey(num);
+			String value = pool.getValue(num);
+			boolean found = false;
+			for (int i = 0; i < atts.size(); i++) {
+				if (atts.get(i)[0].equals(key)) {
+					if (!value.isEmpty() || resultIsMutation) {
+						atts.get(i)[1] = value;
+					} else {
+						atts.remove(i);
+					}
+					found = true;
+					break;
+				}
+			}
+			if (!found && (!value.isEmpty() || resultIsMutation)) {
+				atts.add(new String[] {key, value});
+			}
+		}
+		// sorted like JavaScript sorts the [key, value] arrays
+		atts.sort((a, b) -> (a[0] + "," + a[1]).compareTo(b[0] + "," + b[1]));
+		StringBuilder result = new StringBuilder();
+		for (String[] att : atts) {
+			result.append('*').append(
+					Integer.toString(pool.put(att[0], att[1]), 36));
+		}
+		return result.toString();
+	}
+
+	private static int[] attributeNumbers(final String attribs) {
+		if (attribs.isEmpty()) {
+			return new int[0];
+		}
+		String[] parts = attribs.substring(1).split("\\*");
+		int[] nums = new int[parts.length];
+		for (int i = 0; i < parts.length; i++) {
+			nums[i] = Integer.parseInt(parts[i], 36);
+		}
+		return nums;
+	}
+
+	private static int parse36(final String s, final int start,
+			final int end) {
+		if (start == end) {
+			throw new EPLiteException("Missing number at " + start
+					+ " in " + s);
+		}
+		return Integer.parseInt(s.substring(start, end), 36);
+	}
+
+	private static boolean isDigit36(final char c) {
+		return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'z');
+	}
+
+	private static int indexOfAny(final String s, final String chars,
+			final int from) {
+		for (int i = from; i < s.length(); i++) {
+			if (chars.indexOf(s.charAt(i)) >= 0) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * An operation of a changeset or an attribution.
+	 */
+	public static final class Operation {
+		private final char opcode;
+		private final int chars;
+		private final int lines;
+		private final String attribs;
+
+		Operation(final char opcode, final int chars, final int lines,
+				final String attribs) {
+			this.opcode = opcode;
+			this.chars = chars;
+			this.lines = lines;
+			this.attribs = attribs;
+		}
+
+		/** Getter.
+		 * @return '+' (insert), '-' (delete) or '=' (keep)
+		 * */
+		public char getOpcode() {
+			return opcode;
+		}
+
+		/** Getter.
+		 * @return the number of characters
+		 * */
+		public int getChars() {
+			return chars;
+		}
+
+		/** Getter.
+		 * @return the number of newlines among the characters
+		 * */
+		public int getLines() {
+			return lines;
+		}
+
+		/** Getter.
+		 * @return the attributes, e.g. <code>*0*3</code>
+		 * */
+		public String getAttribs() {
+			return attribs;
+		}
+
+		/** Getter.
+		 * @return the numbers of the attributes in the pool
+		 * */
+		public int[] getAttributeNumbers() {
+			return attributeNumbers(attribs);
+		}
+
+		@Override
+		public String toString() {
+			return format(this.opcode, this.chars, this.lines, this.attribs);
+		}
+	}
+
+	private static String format(final char opcode, final int chars,
+			final int lines, final String attribs) {
+		StringBuilder op = new StringBuilder(attribs);
+		if (lines > 0) {
+			op.append('|').append(Integer.toString(lines, 36));
+		}
+		return op.append(opcode).append(Integer.toString(chars, 36))
+				.toString();
+	}
+
+	/**
+	 * An operation being consumed; opcode 0 when it is used up.
+	 */
+	private static final class MutableOp {
+		private char opcode;
+		private int chars;
+		private int lines;
+		private String attribs = "";
+
+		private void set(final Operation op) {
+			this.set(op.opcode, op.chars, op.lines, op.attribs);
+		}
+
+		private void set(final char opcode, final int chars, final int lines,
+				final String attribs) {
+			this.opcode = opcode;
+			this.chars = chars;
+			this.lines = lines;
+			this.attribs = attribs;
+		}
+
+		private void copy(final MutableOp op) {
+			this.set(op.opcode, op.chars, op.lines, op.attribs);
+		}
+	}
+
+	/**
+	 * Merges consecutive operations with the same opcode and attributes,
+	 * keeping the characters after the last newline of a merged operation
+	 * in an operation of their own. Etherpad's mergingOpAssembler.
+	 */
+	private static final class OpAssembler {
+		private final StringBuilder out = new StringBuilder();
+		private final MutableOp buffer = new MutableOp();
+		private int charsAfterNewline;
+
+		private void append(final MutableOp op) {
+			if (op.chars <= 0) {
+				return;
+			}
+			if (this.buffer.opcode == op.opcode
+					&& this.buffer.attribs.equals(op.attribs)) {
+				if (op.lines > 0) {
+					this.buffer.chars += this.charsAfterNewline + op.chars;
+					this.buffer.lines += op.lines;
+					this.charsAfterNewline = 0;
+				} else if (this.buffer.lines == 0) {
+					this.buffer.chars += op.chars;
+				} else {
+					this.charsAfterNewline += op.chars;
+				}
+			} else {
+				this.flush();
+				this.buffer.copy(op);
+			}
+		}
+
+		private void flush() {
+			if (this.buffer.opcode == 0) {
+				return;
+			}
+			this.out.append(format(this.buffer.opcode, this.buffer.chars,
+					this.buffer.lines, this.buffer.attribs));
+			if (this.charsAfterNewline > 0) {
+				this.out.append(format(this.buffer.opcode,
+						this.charsAfterNewline, 0, this.buffer.attribs));
+				this.charsAfterNewline = 0;
+			}
+			this.buffer.opcode = 0;
+		}
+
+		@Override
+		public String toString() {
+			this.flush();
+			return this.out.toString();
+		}
+	}
+}
@@ -0,0 +1,143 @@
+package net.gjerull.etherpad.client;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The chat messages of a pad, as returned by getChatHistory.
+ */
+public final class ChatHistory {
+	private final List<Message> messages;
+
+	/**
+	 * Instantiates a new ChatHistory.
+	 *
+	 * @param messages the chat messages
+	 */
+	public ChatHistory(final List<Message> messages) {
+		this.messages = Collections.unmodifiableList(messages);
+	}
+
+	/** Getter.
+	 * @return the chat messages, oldest first, unmodifiable
+	 * */
+	public List<Message> getMessages() {
+		return messages;
+	}
+
+	@Override
+	public String toString() {
+		return "ChatHistory" + messages;
+	}
+
+	/**
+	 * A chat message.
+	 */
+	public static final class Message {
+		private final String text;
+		private final String userId;
+		private final String userName;
+		private final long time;
+
+		/**
+		 * Instantiates a new Message.
+		 *
+		 * @param text the text of the message
+		 * @param userId the author id of the sender
+		 * @param userName the name of the sender, may be null
+		 * @param time UNIX timestamp in milliseconds
+		 */
+		public Message(final String text, final String userId,
+				final String userName, final long time) {
+			this.text = text;
+			this.userId = userId;
+			this.userName = userName;
+			this.time = time;
+		}
+
+		/** Getter.
+		 * @return String
+		 * */
+		public String getText() {
+			return text;
+		}
+
+		/** Getter.
+		 * @return the author id of the sender
+		 * */
+		public String getUserId() {
+			return userId;
+		}
+
+		/** Getter.
+		 * @return the name of the sender, may be null
+		 * */
+		public String getUserName() {
+			return userName;
+		}
+
+		/** Getter.
+		 * @return UNIX timestamp in milliseconds
+		 * */
+		public long getTime() {
+			return time;
+		}
+
+		@Override
+		public String toString() {
+			return "Message[" + userId + "@" + time + ": " + text + "]";
+		}
+	}
+
+	/**
+	 * Decodes <code>{"messages": [{"text": "...", "userId": "...",
+	 * "time": 1359199533759, "userName": "..."}, ...]}</code>.
+	 */
+	static final class Decoder extends ResponseDecoder<ChatHistory> {
+		private final List<Message> messages = new ArrayList<>();
+		private String text;
+		private String userId;
+		private String userName;
+		private long time;
+
+		@Override
+		protected void startObject(String key, int level) {
+			if (level == 3 && "messages".equals(key)) {
+				this.text = null;
+				this.userId = null;
+				this.userName = null;
+				this.time = 0L;
+			}
+		}
+
+		@Override
+		protected void value(String key, Object value, int level) {
+			if (level != 3) {
+				return;
+			}
+			if ("text".equals(key)) {
+				this.text = toText(value);
+			} else if ("userId".equals(key)) {
+				this.userId = toText(value);
+			} else if ("userName".equals(key)) {
+				this.userName = toText(value);
+			} else if ("time".equals(key)) {
+				this.time = toLong(value);
+			}
+		}
+
+		@Override
+		protected void endObject(String key, int level) {
+			if (level == 3 && "messages".equals(key)) {
+				this.messages.add(new Message(this.text, this.userId,
+						this.userName, this.time));
+			}
+		}
+
+		@Override
+		protected ChatHistory result() {
+			return new ChatHistory(this.messages);
+		}
+	}
+}
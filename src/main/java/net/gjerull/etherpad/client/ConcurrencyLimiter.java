@@ -0,0 +1,257 @@
+package net.gjerull.etherpad.client;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limits the number of calls in flight to an Etherpad Lite instance, with
+ * a limit adapted to the latency of the calls.<br />
+ * <br />
+ * Etherpad Lite answers from a single event loop: past a few concurrent
+ * calls, more of them only add queueing in the server, and the latency
+ * of every call grows. The limiter compares the latency of each call to
+ * a long-term average: while they are close the limit grows by about its
+ * square root, and as latency rises above the average the limit shrinks
+ * in proportion (a gradient, as in TCP Vegas). A call that failed without
+ * an answer, e.g. a timeout, divides the limit by BACKOFF_RATIO as in
+ * AIMD. The limit stays between minLimit and maxLimit, and only grows
+ * when at least half of it is used.<br />
+ * <br />
+ * A call finding the limit reached waits up to maxWait for a permit, then
+ * fails with an EPLiteLimitException without sending its request.<br />
+ * <br />
+ * Example:<br />
+ * <br />
+ * <code>
+ * ConcurrencyLimiter limiter = new ConcurrencyLimiter();<br />
+ * limiter.setMaxWait(500);<br />
+ * connection.setLimiter(limiter);
+ * </code>
+ */
+public class ConcurrencyLimiter {
+	/** Default limit before any call was measured. */
+	public static final int DEFAULT_INITIAL_LIMIT = 20;
+	/** Default smallest limit. */
+	public static final int DEFAULT_MIN_LIMIT = 1;
+	/** Default largest limit. */
+	public static final int DEFAULT_MAX_LIMIT = 200;
+	/** Default wait for a permit, in ms. */
+	public static final long DEFAULT_MAX_WAIT = 1000L;
+
+	/** Factor applied to the limit after a call failed without answer. */
+	static final double BACKOFF_RATIO = 0.9;
+	/** Latency increase tolerated before the limit shrinks. */
+	private static final double TOLERANCE = 1.5;
+	/** Weight of a new limit in the smoothed one. */
+	private static final double SMOOTHING = 0.2;
+	/** Number of calls the long-term latency averages over. */
+	private static final int LONG_WINDOW = 600;
+
+	private final int minLimit;
+	private final int maxLimit;
+	private final ReentrantLock lock = new ReentrantLock(true);
+	private final Condition available = this.lock.newCondition();
+	/** Guarded by lock. */
+	private double limit;
+	/** Guarded by lock. */
+	private int inFlight;
+	/** Long-term average latency in ns, 0 before the first call. Guarded
+	 * by lock. */
+	private double longRtt;
+	private volatile long maxWaitNanos =
+			TimeUnit.MILLISECONDS.toNanos(DEFAULT_MAX_WAIT);
+	private final AtomicLong rejected = new AtomicLong();
+
+	/**
+	 * Initializes a new ConcurrencyLimiter with the default limits.
+	 */
+	public ConcurrencyLimiter() {
+		this(DEFAULT_INITIAL_LIMIT, DEFAULT_MIN_LIMIT, DEFAULT_MAX_LIMIT);
+	}
+
+	/**
+	 * Initializes a new ConcurrencyLimiter.
+	 *
+	 * @param initialLimit the limit before any call was measured
+	 * @param minLimit the smallest limit, at least 1
+	 * @param maxLimit the largest limit
+	 */
+	public ConcurrencyLimiter(final int initialLimit, final int minLimit,
+			final int maxLimit) {
+		if (minLimit < 1 || maxLimit < minLimit || initialLimit < minLimit
+				|| initialLimit > maxLimit) {
+			throw new IllegalArgumentException("Invalid limits " + minLimit
+					+ " <= " + initialLimit + " <= " + maxLimit);
+		}
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+		this.limit = initialLimit;
+	}
+
+	/**
+	 * Sets how long a call waits for a permit before it fails.
+	 *
+	 * @param maxWait the wait in ms, 0 to fail at once
+	 */
+	public final void setMaxWait(final long maxWait) {
+		if (maxWait < 0) {
+			throw new IllegalArgumentException("maxWait must not be negative");
+		}
+		this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWait);
+	}
+
+	/** Getter.
+	 * @return the current limit
+	 * */
+	public final int getLimit() {
+		this.lock.lock();
+		try {
+			return (int) this.limit;
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/** Getter.
+	 * @return the number of calls in flight
+	 * */
+	public final int getInFlight() {
+		this.lock.lock();
+		try {
+			return this.inFlight;
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/** Getter.
+	 * @return the number of calls refused
+	 * */
+	public final long getRejectedCount() {
+		return this.rejected.get();
+	}
+
+	/**
+	 * Takes a permit for a call, waiting up to maxWait for one.
+	 *
+	 * @return the permit, to be released once the call is over
+	 * @throws EPLiteLimitException if no permit was available in time
+	 */
+	public final Permit acquire() {
+		this.lock.lock();
+		try {
+			long remaining = this.maxWaitNanos;
+			while (this.inFlight >= (int) this.limit) {
+				if (remaining <= 0) {
+					this.rejected.incrementAndGet();
+					throw new EPLiteLimitException("Too many calls in flight"
+							+ " to the Etherpad Lite instance (limit "
+							+ (int) this.limit + ")");
+				}
+				remaining = this.available.awaitNanos(remaining);
+			}
+			this.inFlight++;
+			return new Permit(this.inFlight);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new EPLiteException("Interrupted while waiting for"
+					+ " a concurrency permit", e);
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Frees a permit and adapts the limit to the call.
+	 */
+	void release(final long rttNanos, final int inFlightAtStart,
+			final boolean dropped) {
+		this.lock.lock();
+		try {
+			this.inFlight--;
+			double before = this.limit;
+			if (dropped) {
+				this.limit = Math.max(this.minLimit,
+						this.limit * BACKOFF_RATIO);
+			} else {
+				this.update(Math.max(1L, rttNanos), inFlightAtStart);
+			}
+			if ((int) this.limit > (int) before) {
+				this.available.signalAll();
+			} else {
+				this.available.signal();
+			}
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Applies the gradient of a measured latency to the limit.
+	 */
+	private void update(final long rtt, final int inFlightAtStart) {
+		if (this.longRtt == 0) {
+			this.longRtt = rtt;
+		} else {
+			this.longRtt += (rtt - this.longRtt) * 2 / (LONG_WINDOW + 1);
+		}
+		// After a period of overload, let the average come back down
+		if (this.longRtt / rtt > 2) {
+			this.longRtt *= 0.95;
+		}
+		// A limit that is not used is not tested: keep it
+		if (inFlightAtStart < this.limit / 2) {
+			return;
+		}
+		double gradient = Math.max(0.5,
+				Math.min(1.0, TOLERANCE * this.longRtt / rtt));
+		double next = this.limit * gradient + Math.sqrt(this.limit);
+		next = this.limit * (1 - SMOOTHING) + next * SMOOTHING;
+		this.limit = Math.max(this.minLimit, Math.min(this.maxLimit, next));
+	}
+
+	/**
+	 * The right to make one call. Exactly one of release or drop must be
+	 * called when the call is over.
+	 */
+	public final class Permit {
+		private final long start = System.nanoTime();
+		private final int inFlightAtStart;
+		private final AtomicBoolean released = new AtomicBoolean();
+
+		private Permit(int inFlightAtStart) {
+			this.inFlightAtStart = inFlightAtStart;
+		}
+
+		/**
+		 * Releases the permit of a call that got an answer, measuring its
+		 * latency.
+		 */
+		public void release() {
+			if (this.released.compareAndSet(false, true)) {
+				ConcurrencyLimiter.this.release(System.nanoTime() - this.start,
+						this.inFlightAtStart, false);
+			}
+		}
+
+		/**
+		 * Releases the permit of a call that failed without answer, e.g.
+		 * a timeout, shrinking the limit.
+		 */
+		public void drop() {
+			if (this.released.compareAndSet(false, true)) {
+				ConcurrencyLimiter.this.release(System.nanoTime() - this.start,
+						this.inFlightAtStart, true);
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "ConcurrencyLimiter{limit=" + getLimit() + ", inFlight="
+				+ getInFlight() + ", rejected=" + rejected + "}";
+	}
+}
@@ -0,0 +1,1079 @@
+package net.gjerull.etherpad.client;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A non-blocking client for talking to Etherpad Lite's HTTP JSON API.<br />
+ * <br />
+ * The methods are the same as in EPLiteClient, but return a
+ * CompletableFuture completed with the result instead of waiting for it.
+ * Failures complete the future exceptionally with an EPLiteException.
+ * The requests are sent through an AsyncTransport, so no thread is
+ * blocked while waiting for the server.<br />
+ * <br />
+ * Example:<br />
+ * <br />
+ * <code>
+ * EPLiteAsyncClient api = new EPLiteAsyncClient(
+ * "http://etherpad.mysite.com", "FJ7jksalksdfj83jsdflkj");<br />
+ * CompletableFuture&lt;Map&gt; text = api.getText("my_pad");<br />
+ * CompletableFuture&lt;Map&gt; users = api.padUsers("my_pad");<br />
+ * String pad = text.join().get("text").toString();
+ * </code>
+ */
+public class EPLiteAsyncClient implements Closeable {
+	/** Default API. */
+	private static final String DEFAULT_API_VERSION = "1.2.13";
+	/** Default encoding. */
+	private static final String DEFAULT_ENCODING = "UTF-8";
+	/** EPLiteConnection. */
+	private final EPLiteConnection connection;
+
+	/**
+	 * Initializes a new net.gjerull.etherpad.client.EPLiteAsyncClient
+	 * object sending its requests through a HttpClientTransport.
+	 * The default Etherpad Lite API version
+	 * (in DEFAULT_API_VERSION) will be used.
+	 *
+	 * @param url an absolute url, including protocol, to the EPL api
+	 * @param apiKey the API Key
+	 */
+	public EPLiteAsyncClient(final String url, final String apiKey) {
+		this(url, apiKey, DEFAULT_API_VERSION, DEFAULT_ENCODING);
+	}
+
+	/**
+	 * Initializes a new net.gjerull.etherpad.client.EPLiteAsyncClient
+	 * object sending its requests through a HttpClientTransport.
+	 * The specified Etherpad Lite API version will be used.
+	 *
+	 * @param url an absolute url, including protocol, to the EPL api
+	 * @param apiKey the API Key
+	 * @param apiVersion the API version
+	 * @param encoding the encode type
+	 */
+	public EPLiteAsyncClient(final String url, final String apiKey,
+			final String apiVersion, final String encoding) {
+		this(url, apiKey, apiVersion, encoding, new HttpClientTransport());
+	}
+
+	/**
+	 * Initializes a new net.gjerull.etherpad.client.EPLiteAsyncClient
+	 * object sending its requests through the given transport.
+	 *
+	 * @param url an absolute url, including protocol, to the EPL api
+	 * @param apiKey the API Key
+	 * @param apiVersion the API version
+	 * @param encoding the encode type
+	 * @param transport the non-blocking transport
+	 */
+	public EPLiteAsyncClient(final String url, final String apiKey,
+			final String apiVersion, final String encoding,
+			final AsyncTransport transport) {
+		this.connection = new EPLiteConnection(url, apiKey, apiVersion,
+				encoding, transport);
+	}
+
+	// Groups
+	// Pads may belong to a group. These pads are not considered "public",
+	//and won't be available through the Web UI without a session.
+
+	/**
+	 * Creates a new Group. The group id is returned
+	 * in "groupID" in the Map.
+	 *
+	 * @return Map with groupID
+	 */
+	public final CompletableFuture<Map> createGroup() {
+		return this.connection.postAsync("createGroup");
+	}
+
+	/**
+	 * Creates a new Group for groupMapper if one doesn't already exist.
+	 * Helps you map your application's groups to Etherpad Lite's groups.
+	 * The group id is returned in "groupID" in the Map.
+	 *
+	 * @param groupMapper your group mapper string
+	 * @return Map with groupID
+	 */
+	public final CompletableFuture<Map> createGroupIfNotExistsFor(
+			final String groupMapper) {
+		Map<String, Object> args = new HashMap<>();
+		args.put("groupMapper", groupMapper);
+		return this.connection.postAsync("createGroupIfNotExistsFor", args);
+	}
+
+	/**
+	 * Delete group.
+	 *
+	 * @param groupID string
+	 * @return future completed once the call succeeded
+	 */
+	public final CompletableFuture<Void> deleteGroup(final String groupID) {
+		Map<String, Object> args = new HashMap<>();
+		args.put("groupID", groupID);
+		return this.connection.postAsync("deleteGroup", args)
+				.thenAccept(result -> { });
+	}
+
+	/**
+	 * List all the padIDs in a group. They will be in an array
+	 *  inside "padIDs".
+	 *
+	 * @param groupID string
+	 * @return Map
+	 */
+	public final CompletableFuture<Map> listPads(final String groupID) {
+		Map<String, Object> args = new HashMap<>();
+		args.put("groupID", groupID);
+		return this.connection.getAsync("listPads", args);
+	}
+
+	/**
+	 * Create a pad in this group.
+	 *
+	 * @param groupID the group the pad belongs to
+	 * @param padName name of the pad
+	 * @return Map
+	 */
+	public final CompletableFuture<Map> createGroupPad(final String groupID,
+			final String padName) {
+		Map<String, Object> args = new HashMap<>();
+		args.put("groupID", groupID);
+		args.put("padName", padName);
+		return this.connection.postAsync("createGroupPad", args);
+	}
+
+	/**
+	 * Create a pad in this group, with initial text.
+	 *
+	 * @param groupID the group the pad belongs to
+	 * @param padName name of the pad
+	 * @param text Initial text in the pad
+	 * @return Map
+	 */
+	public final CompletableFuture<Map> createGroupPad(final String groupID,
+			final String padName,
+			final String text) {
+		Map<String, Object> args = new HashMap<>();
+		args.put("groupID", groupID);
+		args.put("padName", padName);
+		args.put("text", text);
+		return this.connection.postAsync("createGroupPad", args);
+	}
+
+	/**
+	 * Lists all existing groups. The group ids are returned in "groupIDs".
+	 *
+	 * @return Map with list of groupIDs
+	 */
+	public final CompletableFuture<Map> listAllGroups() {
+		return this.connection.getAsync("listAllGroups");
+	}
+
+	// Authors
+	// These authors are bound to the attributes the users choose
+	//(color and name).
+	// The author id is returned in "authorID".
+
+	/**
+	 * Create a new author.
+	 *
+	 * @return Map with authorID
+	 */
+	public final CompletableFuture<Map> createAuthor() {
+		return this.connection.getAsync("createAuthor");
+	}
+
+	/**
+	 * Create a new author with the given name. The author id is returned in
+	 *  "authorID".
+	 *
+	 * @param name string
+	 * @return Map with authorID
+	 */
+	public final CompletableFuture<Map> createAuthor(final String name) {
+		Map<String, Object> args = new HashMap<>();
+		args.put("name", name);
+		return this.connection.postAsync("createAuthor", args);
+	}
+
+	/**
+	 * Creates a new Author for authorMapper if one doesn't already exist.
+	 * Helps you map your application's authors to Etherpad Lite's authors.
+	 * The author id is returned in "authorID".
+	 *
+	 * @param authorMapper string
+	 * @return Map with authorID
+	 */
+	public final CompletableFuture<Map> createAuthorIfNotExistsFor(
+			final String authorMapper) {
+		Map<String, Object> args = new HashMap<>();
+		args.put("authorMapper", authorMapper);
+		return this.connection.postAsync("createAuthorIfNotExistsFor", args);
+	}
+
+	/**
+	 * Creates a new Author for authorMapper if one doesn't already exist.
+	 * Helps you map your application's authors to Etherpad Lite's authors.
+	 * The author id is returned in "authorID".
+	 *
+	 * @param authorMapper string
+	 * @param name string
+	 * @return Map with authorID
+	 */
+	public final CompletableFuture<Map> createAuthorIfNotExistsFor(
+			final String authorMapper,
+			final String name) {
+		Map<String, Object> args = new HashMap<>();
+		args.put("authorMapper", authorMapper);
+		args.put("name", name);
+		return this.connection.postAsync("createAuthorIfNotExistsFor", args);
+	}
+
+	/**
+	 * List the ids of pads the author has edited. They will be in an array
+	 *  inside "padIDs".
+	 *
+	 * @param authorId the authors's id string
+	 * @return Map
+	 */
+	public final CompletableFuture<Map> listPadsOfAuthor(
+			final String authorId) {
+		Map<String, Object> args = new HashMap<>();
+		args.put("authorID", authorId);
+		return this.connection.getAsync("listPadsOfAuthor", args);
+	}
+
+	/**
+	 * Returns the Author Name of the author.
+	 *
+	 * @param authorId the author's id string
+	 * @return authorName
+	 */
+	public final CompletableFuture<String> getAuthorName(
+			final String authorId) {
+		Map<String, Object> args = new HashMap<>();
+		args.put("authorID", authorId);
+		return this.connection.getObjectAsync("getAuthorName", args)
+				.thenApply(String.class::cast);
+	}
+
+	// Sessions
+	// Sessions can be created between a group and an author. This allows an
+	//author to access more than one group. The sessionID will be set as a
+	// cookie to the client and is valid until a certain date. Only users
+	//with a valid session for this group, can access group pads.
+	//You can create a
+	// session after you authenticated the user at
+	//your web application, to giv
+	//them access to the pads. You should save the sessionID of this session
+	// and delete it after the user logged out.
+
+	/**
+	 * Create a new session for the given author in the given group,
+	 * valid until the given UNIX time.
+	 * <br />
+	 * Example:<br />
+	 * <br />
+	 * <code>
+	 * import java.util.Date;<br />
+	 * ...<br />
+	 * Date now = new Date();<br />
+	 * long in1Hour = (now.getTime() + (60L * 60L * 1000L) / 1000L);<br />
+	 * String sessID1 = api.createSession(groupID, authorID, in1Hour);
+	 * </code>
+	 *
+	 * @param groupID string
+	 * @param authorID string
+	 * @param validUntil long UNIX timestamp <strong>in seconds</strong>
+	 * @return Map with sessionID
+	 */
+	public final CompletableFuture<Map> createSession(final String groupID,
+			final String authorID, final long validUntil) {
+		Map<String, Object> args = new HashMap<>();
+		args.put("groupID", groupID);
+		args.put("authorID", authorID);
+		args.put("validUntil", String.valueOf(validUntil));
+		return this.connection.postAsync("createSession", args);
+	}
+
+	/**
+	 * Create a new session for the given author in the given group
+	 *  valid for the given number of hours.
+	 * <br />
+	 * Example:<br />
+	 * <br />
+	 * <code>
+	 * // in 2 hours<br />
+	 * String sessID1 = api.createSession(groupID, authorID, 2);
+	 * </code>
+	 *
+	 * @param groupID string
+	 * @param authorID string
+	 * @param sessionDuration int duration of session in hours
+	 * @return Map with sessionID
+	 */
+	public final CompletableFuture<Map> createSession(final String groupID,
+			final String authorID,
+			final int sessionDuration) {
+		long inNHours = ((new Date()).getTime()
+				+ (sessionDuration * 60L * 60L * 1000L))
+				/ 1000L;
+		return this.createSession(groupID, authorID, inNHours);
+	}
+
+	/**
+	 * Create a new session for the given author in the given group,
+	 * valid until the given datetime.
+	 * <br />
+	 * Example:<br />
+	 * <br />
+	 * <code>
+	 * import java.util.Date;<br />
+	 * import java.text.DateFormat;<br />
+	 * import java.text.SimpleDateFormat;<br />
+	 * import java.util.TimeZone;<br />
+	 * ...<br />
+	 * DateFormat dfm = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");<br />
+	 * dfm.setTimeZone(TimeZone.getTimeZone("GMT-5"));<br />
+	 * Date longTime = dfm.parse("2056-01-15 20:15:00");<br />
+	 * String sessID = api.createSession(groupID, authorID, longTime);
+	 * </code>
+	 *
+	 * @param groupID string
+	 * @param authorID string
+	 * @param validUntil Date
+	 * @return Map with sessionID
+	 */
+	public final CompletableFuture<Map> createSession(final String groupID,
+			final String authorID, final Date validUntil) {
+		long seconds = validUntil.getTime() / 1000L;
+		return this.createSession(groupID, authorID, seconds);
+	}
+
+	/**
+	 * Delete a session.
+	 *
+	 * @param sessionID string
+	 * @return future completed once the call succeeded
+	 */
+	public final CompletableFuture<Void> deleteSession(final String sessionID) {
+		Map<String, Object> args = new HashMap<>();
+		args.put("sessionID", sessionID);
+		return this.connection.postAsync("deleteSession", args)
+				.thenAccept(result -> { });
+	}
+
+	/**
+	 * Returns information about a session: authorID, groupID
+	 *  and validUntil.
+	 *
+	 * @param sessionID string
+	 * @return Map
+	 */
+	public final CompletableFuture<Map> getSessionInfo(final String sessionID) {
+		Map<String, Object> args = new HashMap<>();
+		args.put("sessionID", sessionID);
+		return this.connection.getAsync("getSessionInfo", args);
+	}
+
+	/**
+	 * List all the sessions IDs in a group. Returned as a
+	 *  Map of sessionIDs
+	 * keys,
+	 *  with values of Maps containing
+	 * groupID, authorID, and validUntil.
+	 *
+	 * @param groupID string
+	 * @return Map
+	 */
+	public final CompletableFuture<Map> listSessionsOfGroup(
+			final String groupID) {
+		Map<String, Object> args = new HashMap<>();
+		args.put("groupID", groupID);
+		return this.connection.getAsync("listSessionsOfGroup", args);
+	}
+
+	/**
+	 * List all the sessions IDs belonging to an author.
+	 *  Returned as a Map of
+	 *  sessionIDs keys, with values of Maps containing
+	 * groupID, authorID, and validUntil.
+	 *
+	 * @param authorID string
+	 * @return Map
+	 */
+	public final CompletableFuture<Map> listSessionsOfAuthor(
+			final String authorID) {
+		Map<String, Object> args = new HashMap<>();
+		args.put("authorID", authorID);
+		return this.connection.getAsync("listSessionsOfAuthor", args);
+	}
+
+	// Pad content
+
+	/**
+	 * Returns a Map containing the latest revision of the pad's text.
+	 * The text is stored under "text".
+	 *
+	 * @param padId the pad's id string
+	 * @return a Map with the text content of pad
+	 */
+	public final CompletableFuture<Map> getText(final String padId) {
+		Map<String, Object> args = new HashMap<>();
+		args.put("padID", padId);
+		return this.connection.getAsync("getText", args);
+	}
+
+	/**
+	 * Returns a Map containing the a specific revision of the pad's text.
+	 * The text is stored under "text".
+	 *
+	 * @param padId the pad's id string
+	 * @param rev the revision number
+	 * @return a Map with the text content of pad in given revision
+	 */
+	public final CompletableFuture<Map> getText(
+			final String padId, final long rev) {
+		Map<String, Object> args = new HashMap<>();
+		args.put("padID", padId);
+		args.put("rev", rev);
+		return this.connection.getAsync("getText", args);
+	}
+
+	/**
+	 * Creates a new revision with the given text.
+	 *
+	 * @param padId the pad's id string
+	 * @param text the pad's new text
+	 * @return future completed once the call succeeded
+	 */
+	public final CompletableFuture<Void> setText(
+			final String padId, final String text) {
+		Map<String, Object> args = new HashMap<>();
+		args.put("padID", padId);
+		args.put("text", text);
+		return this.connection.postAsync("setText", args)
+				.thenAccept(result -> { });
+	}
+
+	/**
+	 * Creates a new revision with the given text appended to the existing
+	 *  text.
+	 *
+	 * API >= 1.2.13
+	 *
+	 * @param padId the pad's id string
+	 * @param text the pad's new text
+	 * @return future completed once the call succeeded
+	 */
+	public final CompletableFuture<Void> appendText(
+			final String padId, final String text) {
+		Map<String, Object> args = new HashMap<>();
+		args.put("padID", padId);
+		args.put("text", text);
+		return this.connection.postAsync("appendText", args)
+				.thenAccept(result -> { });
+	}
+
+	/**
+	 * Returns a Map containing the current revision of
+	 *  the pad's text as HTML.
+	 * The html is stored under "html".
+	 *
+	 * @param padId the pad's id string
+	 * @return a Map with the HTML content of pad
+	 */
+	public final CompletableFuture<Map> getHTML(final String padId) {
+		Map<String, Object> args = new HashMap<>();
+		args.put("padID", padId);
+		return this.connection.getAsync("getHTML", args);
+	}
+
+	/**
+	 * Returns a Map containing the a specific revision of the pad's
+	 * text as HTML.
+	 * The html is stored under "html".
+	 *
+	 * @param padId the pad's id string
+	 * @param rev the revision number
+	 * @return a Map with the HTML content of pad in given revision
+	 */
+	public final CompletableFuture<Map> getHTML(
+			final String padId, final long rev) {
+		Map<String, Object> args = new HashMap<>();
+		args.put("padID", padId);
+		args.put("rev", rev);
+		return this.connection.getAsync("getHTML", args);
+	}
+
+	/**
+	 * Creates a new revision with the given html.
+	 *
+	 * @param padId the pad's id string
+	 * @param html the pad's new html text
+	 * @return future completed once the call succeeded
+	 */
+	public final CompletableFuture<Void> setHTML(
+			final String padId, final String html) {
+		Map<String, Object> args = new HashMap<>();
+		args.put("padID", padId);
+		args.put("html", html);
+		return this.connection.postAsync("setHTML", args)
+				.thenAccept(result -> { });
+	}
+
+	/**
+	 * Returns the attribute pool of a pad.
+	 *
+	 * API >= 1.2.8
+	 *
+	 * @param padId the pad's id string
+	 * @return a Map with the attribute pool of a pad
+	 */
+	public final CompletableFuture<Map> getAttributePool(final String padId) {
+		Map<String, Object> args = new HashMap<>();
+		args.put("padID", padId);
+		return this.connection.getAsync("getAttributePool", args);
+	}
+
+	/**
+	 * Get the changeset at the last revision.
+	 *
+	 * API >= 1.2.8
+	 *
+	 * @param padId the pad's id string
+	 * @return the changeset at the last revision.
+	 */
+	public final CompletableFuture<String> getRevisionChangeset(
+			final String padId) {
+		Map<String, Object> args = new HashMap<>();
+		args.put("padID", padId);
+		return this.connection.getObjectAsync("getRevisionChangeset", args)
+				.thenApply(String.class::cast);
+	}
+
+	/**
+	 * Get the changeset at a given revision.
+	 *
+	 * API >= 1.2.8
+	 *
+	 * @param padId the pad's id string
+	 * @param rev the revision number
+	 * @return the changeset at a given revision.
+	 */
+	public final CompletableFuture<String> getRevisionChangeset(
+			final String padId,
+			final long rev) {
+		Map<String, Object> args = new HashMap<>();
+		args.put("padID", padId);
+		args.put("rev", rev);
+		return this.connection.getObjectAsync("getRevisionChangeset", args)
+				.thenApply(String.class::cast);
+	}
+
+	/**
+	 * Returns an object of diffs from 2 points in a pad.
+	 *
+	 * API >= 1.2.7
+	 *
+	 * @param padId the pad's id string
+	 * @param startRev the start revision number
+	 * @param endRev the end revision number
+	 * @return a Map of diffs from 2 points in a pad
+	 */
+	public final CompletableFuture<Map> createDiffHTML(
+			final String padId, final long startRev,
+			final long endRev) {
+		Map<String, Object> args = new HashMap<>();
+		args.put("padID", padId);
+		args.put("startRev", startRev);
+		args.put("endRev", endRev);
+		return this.connection.getAsync("createDiffHTML", args);
+	}
+
+	// Chat
+
+	/**
+	 * Returns the complete chat history of pad.
+	 *
+	 * API >= 1.2.7
+	 *
+	 * @param padId the pad's id string
+	 * @return the whole chat histroy
+	 */
+	public final CompletableFuture<Map> getChatHistory(final String padId) {
+		Map<String, Object> args = new HashMap<>();
+		args.put("padID", padId);
+		return this.connection.getAsync("getChatHistory", args);
+	}
+
+	/**
+	 * Returns the chat history of pad with index between start and end.
+	 *
+	 * API >= 1.2.7
+	 *
+	 * @param padId the pad's id string
+	 * @param start the start index
+	 * @param end the end index
+	 * @return a part of the chat history, between start and end
+	 */
+	public final CompletableFuture<Map> getChatHistory(
+			final String padId, final long start,
+			final long end) {
+		Map<String, Object> args = new HashMap<>();
+		args.put("padID", padId);
+		args.put("start", start);
+		args.put("end", end);
+		return this.connection.getAsync("getChatHistory", args);
+	}
+
+	/**
+	 * Returns the chatHead (last number of the last chat-message)
+	 * of the pad.
+	 *
+	 * API >= 1.2.7
+	 *
+	 * @param padId the pad's id string
+	 * @return the last number of the last chat-message
+	 */
+	public final CompletableFuture<Map> getChatHead(final String padId) {
+		Map<String, Object> args = new HashMap<>();
+		args.put("padID", padId);
+		return this.connection.getAsync("getChatHead", args);
+	}
+
+	/**
+	 * Creates a chat message, saves it to the database and sends it to all
+	 * connected clients of this pad, using the current time as timestamp.
+	 *
+	 * API >= 1.2.12
+	 *
+	 * @param padId the pad's id string
+	 * @param text  the text of this chat entry
+	 * @param authorId the author of this chat entry
+	 */
+	public final CompletableFuture<Map> appendChatMessage(final String padId,
+			final String text,
+			final String authorId) {
+		Map<String, Object> args = new HashMap<>();
+		args.put("padID", padId);
+		args.put("text", text);
+		args.put("authorID", authorId);
+		return this.connection.postAsync("appendChatMessage", args);
+	}
+
+	/**
+	 * Creates a chat message, saves it to the database and sends it to all
+	 * connected clients of this pad.
+	 *
+	 * API >= 1.2.12
+	 *
+	 * @param padId the pad's id string
+	 * @param text  the text of this chat entry
+	 * @param authorId the author of this chat entry
+	 * @param time the timestamp of this chat entry
+	 * @return Map
+	 */
+	public final CompletableFuture<Map> appendChatMessage(final String padId,
+			final String text,
+			final String authorId,
+			final long time) {
+		Map<String, Object> args = new HashMap<>();
+		args.put("padID", padId);
+		args.put("text", text);
+		args.put("authorID", authorId);
+		args.put("time", time);
+		return this.connection.postAsync("appendChatMessage", args);
+	}
+
+	// Pads
+	// Group pads are normal pads, but with the name schema GROUPID$PADNAME.
+	//A security manager controls access of them and its
+	// forbidden for normal pads to include a $ in the name.
+
+	/**
+	 * Returns a list of all pads.
+	 *
+	 * @return a Map with list of pad id's
+	 */
+	public final CompletableFuture<Map> listAllPads() {
+		return this.connection.getAsync("listAllPads");
+	}
+
+	/**
+	 * Create a new pad.
+	 *
+	 * @param padId the pad's id string
+	 * @return future completed once the call succeeded
+	 */
+	public final CompletableFuture<Void> createPad(final String padId) {
+		Map<String, Object> args = new HashMap<>();
+		args.put("padID", padId);
+		return this.connection.postAsync("createPad", args)
+				.thenAccept(result -> { });
+	}
+
+	/**
+	 * Create a new pad with the given initial text.
+	 *
+	 * @param padId the pad's id string
+	 * @param text the initial text string
+	 * @return future completed once the call succeeded
+	 */
+	public final CompletableFuture<Void> createPad(
+			final String padId, final String text) {
+		Map<String, Object> args = new HashMap<>();
+		args.put("padID", padId);
+		args.put("text", text);
+		return this.connection.postAsync("createPad", args)
+				.thenAccept(result -> { });
+	}
+
+	/**
+	 * Returns the number of revisions of this pad. The number is in
+	 * "revisions".
+	 *
+	 * @param padId the pad's id string
+	 * @return a Map with the number of revisions
+	 */
+	public final CompletableFuture<Map> getRevisionsCount(final String padId) {
+		Map<String, Object> args = new HashMap<>();
+		args.put("padID", padId);
+		return this.connection.getAsync("getRevisionsCount", args);
+	}
+
+	/**
+	 * Returns the number of saved revisions of this pad.
+	 *
+	 * API >= 1.2.11
+	 *
+	 * @param padId the pad's id string
+	 * @return a Map with number of saved revisions
+	 */
+	public final CompletableFuture<Map> getSavedRevisionsCount(
+			final String padId) {
+		Map<String, Object> args = new HashMap<>();
+		args.put("padID", padId);
+		return this.connection.getAsync("getSavedRevisionsCount", args);
+	}
+
+	/**
+	 * returns the list of saved revisions of this pad.
+	 *
+	 * API >= 1.2.11
+	 *
+	 * @param padId the pad's id string
+	 * @return a Map with the list of saved revision numbers
+	 */
+	public final CompletableFuture<Map> listSavedRevisions(final String padId) {
+		Map<String, Object> args = new HashMap<>();
+		args.put("padID", padId);
+		return this.connection.getAsync("listSavedRevisions", args);
+	}
+
+	/**
+	 * Saves the latest revision.
+	 *
+	 * API >= 1.2.11
+	 *
+	 * @param padId the pad's id string
+	 * @return future completed once the call succeeded
+	 */
+	public final CompletableFuture<Void> saveRevision(final String padId) {
+		Map<String, Object> args = new HashMap<>();
+		args.put("padID", padId);
+		return this.connection.postAsync("saveRevision", args)
+				.thenAccept(result -> { });
+	}
+
+	/**
+	 * Saves the given revision.
+	 *
+	 * API >= 1.2.11
+	 *
+	 * @param padId the pad's id string
+	 * @param rev the revision to be saved
+	 * @return future completed once the call succeeded
+	 */
+	public final CompletableFuture<Void> saveRevision(
+			final String padId, final long rev) {
+		Map<String, Object> args = new HashMap<>();
+		args.put("padID", padId);
+		args.put("rev", rev);
+		return this.connection.postAsync("saveRevision", args)
+				.thenAccept(result -> { });
+	}
+
+	/**
+	 * Get the number of users currently editing a pad.
+	 *
+	 * @param padId the pad's id string
+	 * @return a Map with the padUsersCount
+	 */
+	public final CompletableFuture<Map> padUsersCount(final String padId) {
+		Map<String, Object> args = new HashMap<>();
+		args.put("padID", padId);
+		return this.connection.getAsync("padUsersCount", args);
+	}
+
+	/**
+	 * Returns the list of users that are currently editing this pad.
+	 * A padUser has the values: "colorId", "name" and "timestamp".
+	 *
+	 * @param padId the pad's id string
+	 * @return a Map with a List of pad user maps
+	 */
+	public final CompletableFuture<Map> padUsers(final String padId) {
+		Map<String, Object> args = new HashMap<>();
+		args.put("padID", padId);
+		return this.connection.getAsync("padUsers", args);
+	}
+
+	/**
+	 * Deletes a pad.
+	 *
+	 * @param padId the pad's id string
+	 * @return future completed once the call succeeded
+	 */
+	public final CompletableFuture<Void> deletePad(final String padId) {
+		Map<String, Object> args = new HashMap<>();
+		args.put("padID", padId);
+		return this.connection.postAsync("deletePad", args)
+				.thenAccept(result -> { });
+	}
+
+	/**
+	 * Copies a pad with full history and chat. If the destination
+	 *  exists the copy will fail.
+	 *
+	 * API >= 1.2.8
+	 *
+	 * @param sourcePadId the id of the source pad
+	 * @param destinationPadId the id of the destination pad
+	 * @return future completed once the call succeeded
+	 */
+	public final CompletableFuture<Void> copyPad(final String sourcePadId,
+			final String destinationPadId) {
+		return copyPad(sourcePadId, destinationPadId, false);
+	}
+
+	/**
+	 * Copies a pad with full history and chat.
+	 *
+	 * API >= 1.2.8
+	 *
+	 * @param sourcePadId the id of the source pad
+	 * @param destinationPadId the id of the destination pad
+	 * @param force if force is true and the destination pad exists,
+	 *  it will be overwritten.
+	 * @return future completed once the call succeeded
+	 */
+	public final CompletableFuture<Void> copyPad(final String sourcePadId,
+			final String destinationPadId,
+			final boolean force) {
+		Map<String, Object> args = new HashMap<>();
+		args.put("sourceID", sourcePadId);
+		args.put("destinationID", destinationPadId);
+		args.put("force", force);
+		return this.connection.postAsync("copyPad", args)
+				.thenAccept(result -> { });
+	}
+
+	/**
+	 * Moves a pad. If the destination exists the copy will fail.
+	 *
+	 * API >= 1.2.8
+	 *
+	 * @param sourcePadId the id of the source pad
+	 * @param destinationPadId the id of the destination pad
+	 * @return future completed once the call succeeded
+	 */
+	public final CompletableFuture<Void> movePad(final String sourcePadId,
+			final String destinationPadId) {
+		return movePad(sourcePadId, destinationPadId, false);
+	}
+
+	/**
+	 * Moves a pad.
+	 *
+	 * API >= 1.2.8
+	 *
+	 * @param sourcePadId the id of the source pad
+	 * @param destinationPadId the id of the destination pad
+	 * @param force if force is true and the destination pad exists,
+	 *  it will be overwritten.
+	 * @return future completed once the call succeeded
+	 */
+	public final CompletableFuture<Void> movePad(final String sourcePadId,
+			final String destinationPadId,
+			final boolean force) {
+		Map<String, Object> args = new HashMap<>();
+		args.put("sourceID", sourcePadId);
+		args.put("destinationID", destinationPadId);
+		args.put("force", force);
+		return this.connection.postAsync("movePad", args)
+				.thenAccept(result -> { });
+	}
+
+	/**
+	 * Get the pad's read-only id.
+	 *
+	 * @param padId the pad's id string
+	 * @return a Map with the readOnlyID
+	 */
+	public final CompletableFuture<Map> getReadOnlyID(final String padId) {
+		Map<String, Object> args = new HashMap<>();
+		args.put("padID", padId);
+		return this.connection.getAsync("getReadOnlyID", args);
+	}
+
+	/**
+	 * Get the pad's id from the read only id.
+	 *
+	 * API >= 1.2.10
+	 *
+	 * @param readOnlyPadId the pad's read only id string
+	 * @return a Map with the padID
+	 */
+	public final CompletableFuture<Map> getPadID(final String readOnlyPadId) {
+		Map<String, Object> args = new HashMap<>();
+		args.put("roID", readOnlyPadId);
+		return this.connection.getAsync("getPadID", args);
+	}
+
+	/**
+	 * Sets the pad's public status.
+	 * This is only applicable to group pads.
+	 *
+	 * @param padId the pad's id string
+	 * @param publicStatus boolean
+	 * @return future completed once the call succeeded
+	 */
+	public final CompletableFuture<Void> setPublicStatus(final String padId,
+			final Boolean publicStatus) {
+		Map<String, Object> args = new HashMap<>();
+		args.put("padID", padId);
+		args.put("publicStatus", publicStatus);
+		return this.connection.postAsync("setPublicStatus", args)
+				.thenAccept(result -> { });
+	}
+
+	/**
+	 * Gets the pad's public status.
+	 *
+	 * @param padId the pad's id string
+	 * @return a Map with the Boolean publicStatus
+	 */
+	public final CompletableFuture<Map> getPublicStatus(final String padId) {
+		Map<String, Object> args = new HashMap<>();
+		args.put("padID", padId);
+		return this.connection.getAsync("getPublicStatus", args);
+	}
+
+	/**
+	 * Sets the pad's password. This is only applicable to group pads.
+	 *
+	 * @param padId the pad's id string
+	 * @param password string
+	 * @return future completed once the call succeeded
+	 */
+	public final CompletableFuture<Void> setPassword(final String padId,
+			final String password) {
+		Map<String, Object> args = new HashMap<>();
+		args.put("padID", padId);
+		args.put("password", password);
+		return this.connection.postAsync("setPassword", args)
+				.thenAccept(result -> { });
+	}
+
+	/**
+	 * Checks whether the pad is password-protected or not.
+	 *
+	 * @param padId the pad's id string
+	 * @return a Map with the Boolean passwordProtection
+	 */
+	public final CompletableFuture<Map> isPasswordProtected(
+			final String padId) {
+		Map<String, Object> args = new HashMap<>();
+		args.put("padID", padId);
+		return this.connection.getAsync("isPasswordProtected", args);
+	}
+
+	/**
+	 * List the ids of authors who have edited a pad.
+	 *
+	 * @param padId the pad's id string
+	 * @return a Map with a List of author ids
+	 */
+	public final CompletableFuture<Map> listAuthorsOfPad(final String padId) {
+		Map<String, Object> args = new HashMap<>();
+		args.put("padID", padId);
+		return this.connection.getAsync("listAuthorsOfPad", args);
+	}
+
+	/**
+	 * Get the pad's last edit date.
+	 *
+	 * @param padId the pad's id string
+	 * @return a Map with lastEdited timestamp.
+	 */
+	public final CompletableFuture<Map> getLastEdited(final String padId) {
+		Map<String, Object> args = new HashMap<>();
+		args.put("padID", padId);
+		return this.connection.getAsync("getLastEdited", args);
+	}
+
+	/**
+	 * Sends a custom message of type msg to the pad.
+	 *
+	 * @param padId the pad's id string
+	 * @param msg the message to send
+	 * @return future completed once the call succeeded
+	 */
+	public final CompletableFuture<Void> sendClientsMessage(final String padId,
+			final String msg) {
+		Map<String, Object> args = new HashMap<>();
+		args.put("padID", padId);
+		args.put("msg", msg);
+		return this.connection.postAsync("sendClientsMessage", args)
+				.thenAccept(result -> { });
+	}
+
+	/**
+	 * Completes without error if current api token is valid.
+	 *
+	 * API >= 1.2
+	 *
+	 * @return future completed once the token has been validated
+	 */
+	public final CompletableFuture<Void> checkToken() {
+		return this.connection.getAsync("checkToken")
+				.thenAccept(result -> { });
+	}
+
+	/**
+	 * Returns true if the connection is using SSL/TLS, false if not.
+	 *
+	 * @return boolean
+	 */
+	public final boolean isSecure() {
+		return (this.connection.uri.getPort() == 443);
+	}
+
+	/**
+	 * Releases the resources held by the transport.
+	 *
+	 * @throws IOException if the transport fails to close
+	 */
+	@Override
+	public void close() throws IOException {
+		this.connection.getTransport().close();
+	}
+}
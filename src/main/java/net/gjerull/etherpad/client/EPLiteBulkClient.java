@@ -0,0 +1,232 @@
+package net.gjerull.etherpad.client;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Runs many calls of an EPLiteClient concurrently.<br />
+ * <br />
+ * At most parallelism calls are in flight at a time. A failing call does
+ * not stop the others: every bulk method returns a BulkResult with the
+ * result or the EPLiteException of each input, in the order of the
+ * inputs. With a PooledTransport, its maxConnectionsPerHost should be at
+ * least the parallelism.<br />
+ * <br />
+ * Example:<br />
+ * <br />
+ * <code>
+ * EPLiteClient api = new EPLiteClient(url, apiKey);<br />
+ * BulkResult&lt;String, Void&gt; created = api.bulk(16).createPads(padIds);<br />
+ * BulkResult&lt;String, String&gt; texts = api.bulk().getTexts(padIds);
+ * </code>
+ */
+public class EPLiteBulkClient {
+	/** Default number of concurrent calls. */
+	public static final int DEFAULT_PARALLELISM = 8;
+
+	private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+	/** The client making the calls. */
+	private final EPLiteClient client;
+	/** Maximum number of concurrent calls. */
+	private final int parallelism;
+
+	/**
+	 * Initializes a new EPLiteBulkClient on top of a client.
+	 *
+	 * @param client the client making the calls
+	 * @param parallelism the maximum number of concurrent calls
+	 */
+	public EPLiteBulkClient(final EPLiteClient client,
+			final int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException(
+					"parallelism must be at least 1");
+		}
+		this.client = client;
+		this.parallelism = parallelism;
+	}
+
+	/** Getter.
+	 * @return the maximum number of concurrent calls
+	 * */
+	public final int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * Creates new pads.
+	 *
+	 * @param padIds the ids of the pads
+	 * @return BulkResult by padId
+	 */
+	public final BulkResult<String, Void> createPads(
+			final List<String> padIds) {
+		return this.run(padIds, padId -> {
+			this.client.createPad(padId);
+			return null;
+		});
+	}
+
+	/**
+	 * Creates new pads with initial texts.
+	 *
+	 * @param texts the initial text of each pad, by padId
+	 * @return BulkResult by padId, in the iteration order of texts
+	 */
+	public final BulkResult<String, Void> createPads(
+			final Map<String, String> texts) {
+		return this.run(new ArrayList<>(texts.keySet()), padId -> {
+			this.client.createPad(padId, texts.get(padId));
+			return null;
+		});
+	}
+
+	/**
+	 * Creates new pads in a group.
+	 *
+	 * @param groupID the group's id string
+	 * @param padNames the names of the pads
+	 * @return BulkResult of the padIDs, by pad name
+	 */
+	public final BulkResult<String, String> createGroupPads(
+			final String groupID, final List<String> padNames) {
+		return this.run(padNames, padName -> (String) this.client
+				.createGroupPad(groupID, padName).get("padID"));
+	}
+
+	/**
+	 * Creates authors unless they exist.
+	 *
+	 * @param names the display name of each author, by authorMapper
+	 * @return BulkResult of the authorIDs, by authorMapper, in the
+	 *  iteration order of names
+	 */
+	public final BulkResult<String, String> createAuthorsIfNotExistsFor(
+			final Map<String, String> names) {
+		return this.run(new ArrayList<>(names.keySet()),
+				mapper -> (String) this.client.createAuthorIfNotExistsFor(
+						mapper, names.get(mapper)).get("authorID"));
+	}
+
+	/**
+	 * Sets the text of pads, creating a new revision of each.
+	 *
+	 * @param texts the new text of each pad, by padId
+	 * @return BulkResult by padId, in the iteration order of texts
+	 */
+	public final BulkResult<String, Void> setTexts(
+			final Map<String, String> texts) {
+		return this.run(new ArrayList<>(texts.keySet()), padId -> {
+			this.client.setText(padId, texts.get(padId));
+			return null;
+		});
+	}
+
+	/**
+	 * Deletes pads.
+	 *
+	 * @param padIds the ids of the pads
+	 * @return BulkResult by padId
+	 */
+	public final BulkResult<String, Void> deletePads(
+			final List<String> padIds) {
+		return this.run(padIds, padId -> {
+			this.client.deletePad(padId);
+			return null;
+		});
+	}
+
+	/**
+	 * Returns the texts of pads.
+	 *
+	 * @param padIds the ids of the pads
+	 * @return BulkResult of the texts, by padId
+	 */
+	public final BulkResult<String, String> getTexts(
+			final List<String> padIds) {
+		return this.run(padIds,
+				padId -> (String) this.client.getText(padId).get("text"));
+	}
+
+	/**
+	 * Calls a function for every input, at most parallelism at a time,
+	 * e.g. <code>bulk.run(groups, api::createGroupIfNotExistsFor)</code>.
+	 *
+	 * @param inputs the inputs
+	 * @param call the call for one input
+	 * @param <I> the type of the inputs
+	 * @param <R> the type of the results
+	 * @return BulkResult, in the order of the inputs
+	 */
+	public final <I, R> BulkResult<I, R> run(final List<I> inputs,
+			final Function<? super I, ? extends R> call) {
+		int size = inputs.size();
+		@SuppressWarnings("unchecked")
+		BulkResult.Item<I, R>[] items = new BulkResult.Item[size];
+		AtomicInteger next = new AtomicInteger();
+		Runnable worker = () -> {
+			for (int i = next.getAndIncrement(); i < size;
+					i = next.getAndIncrement()) {
+				items[i] = this.call(inputs.get(i), call);
+			}
+		};
+		int threads = Math.min(this.parallelism, size);
+		if (threads <= 1) {
+			worker.run();
+			return new BulkResult<>(Arrays.asList(items));
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(threads,
+				runnable -> {
+					Thread thread = new Thread(runnable,
+							"eplite-bulk-" + THREAD_COUNT.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				});
+		try {
+			List<Future<?>> workers = new ArrayList<>(threads);
+			for (int i = 0; i < threads; i++) {
+				workers.add(executor.submit(worker));
+			}
+			for (Future<?> future : workers) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new EPLiteException("Interrupted while waiting for"
+					+ " the bulk operation", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof Error) {
+				throw (Error) e.getCause();
+			}
+			throw new EPLiteException(e.getCause().getMessage(),
+					e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+		return new BulkResult<>(Arrays.asList(items));
+	}
+
+	/**
+	 * Calls the function for one input, catching its error.
+	 */
+	private <I, R> BulkResult.Item<I, R> call(final I input,
+			final Function<? super I, ? extends R> call) {
+		try {
+			return new BulkResult.Item<I, R>(input, call.apply(input), null);
+		} catch (EPLiteException e) {
+			return new BulkResult.Item<I, R>(input, null, e);
+		} catch (RuntimeException e) {
+			return new BulkResult.Item<I, R>(input, null,
+					new EPLiteException(e.toString(), e));
+		}
+	}
+}
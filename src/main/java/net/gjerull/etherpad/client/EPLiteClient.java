@@ -1,7 +1,10 @@
 package net.gjerull.etherpad.client;
 
+import java.io.Closeable;
+import java.io.IOException;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import etm.core.configuration.EtmManager;
@@ -29,13 +32,19 @@ import etm.core.monitor.EtmPoint;
 
  *
  */
-public class EPLiteClient {
+public class EPLiteClient implements Closeable {
 	/** Default API. */
 	private static final String DEFAULT_API_VERSION = "1.2.13";
 	/** Default encoding. */
 	private static final String DEFAULT_ENCODING = "UTF-8";
 	/** EPLiteConnection. */
 	private final EPLiteConnection connection;
+	/** Typed variants of the read methods. */
+	private volatile EPLiteTypedClient typed;
+	/** Cache of the content at fixed revisions, null if disabled. */
+	private volatile RevisionCache revisionCache;
+	/** Cache of the latest content, validated by getLastEdited. */
+	private volatile LastEditedCache lastEditedCache;
 	/** monitor JETM. */
 	private static final EtmMonitor etmMonitor = EtmManager.getEtmMonitor();
 
@@ -67,6 +76,159 @@ public class EPLiteClient {
 				apiVersion, encoding);
 	}
 
+	/**
+	 * Initializes a new net.gjerull.etherpad.client.EPLiteClient object
+	 * sending its requests through the given transport, e.g. a
+	 * PooledTransport to reuse keep-alive connections.
+	 *
+	 * @param url an absolute url, including protocol, to the EPL api
+	 * @param apiKey the API Key
+	 * @param apiVersion the API version
+	 * @param encoding the encode type
+	 * @param transport the transport creating the HTTP requests
+	 */
+	public EPLiteClient(final String url, final String apiKey,
+			final String apiVersion, final String encoding,
+			final Transport transport) {
+		this(new EPLiteConnection(url, apiKey, apiVersion, encoding,
+				transport));
+	}
+
+	/**
+	 * Initializes a new net.gjerull.etherpad.client.EPLiteClient object
+	 * spreading its calls over several nodes sharing one database, see
+	 * NodeBalancer. The default Etherpad Lite API version
+	 * (in DEFAULT_API_VERSION) will be used.
+	 *
+	 * @param urls absolute urls, including protocol, to the EPL api of
+	 *  each node
+	 * @param apiKey the API Key
+	 */
+	public EPLiteClient(final List<String> urls, final String apiKey) {
+		this(urls, apiKey, DEFAULT_API_VERSION, DEFAULT_ENCODING,
+				new URLConnectionTransport());
+	}
+
+	/**
+	 * Initializes a new net.gjerull.etherpad.client.EPLiteClient object
+	 * spreading its calls over several nodes sharing one database, see
+	 * NodeBalancer.
+	 *
+	 * @param urls absolute urls, including protocol, to the EPL api of
+	 *  each node
+	 * @param apiKey the API Key
+	 * @param apiVersion the API version
+	 * @param encoding the encode type
+	 * @param transport the transport creating the HTTP requests
+	 */
+	public EPLiteClient(final List<String> urls, final String apiKey,
+			final String apiVersion, final String encoding,
+			final Transport transport) {
+		this(new EPLiteConnection(urls, apiKey, apiVersion, encoding,
+				transport));
+	}
+
+	/**
+	 * Initializes a new net.gjerull.etherpad.client.EPLiteClient object
+	 * on top of an already configured connection.
+	 *
+	 * @param connection the connection to the EPL api
+	 */
+	public EPLiteClient(final EPLiteConnection connection) {
+		this.connection = connection;
+	}
+
+	/**
+	 * Returns the typed variants of the read methods, decoding the
+	 * responses into PadText, RevisionCount, SessionInfo, PadIdList
+	 * and ChatHistory instead of a Map.
+	 *
+	 * @return EPLiteTypedClient
+	 */
+	public final EPLiteTypedClient typed() {
+		EPLiteTypedClient result = this.typed;
+		if (result == null) {
+			result = new EPLiteTypedClient(this.connection);
+			this.typed = result;
+		}
+		return result;
+	}
+
+	/** Getter.
+	 * @return the connection of this client
+	 * */
+	final EPLiteConnection getConnection() {
+		return this.connection;
+	}
+
+	/** Getter.
+	 * @return the nodes the calls are spread over, null for a client
+	 *  of a single url
+	 * */
+	public final NodeBalancer getBalancer() {
+		return this.connection.getBalancer();
+	}
+
+	/**
+	 * Returns a bulk client running many calls of this client
+	 * concurrently, at most EPLiteBulkClient.DEFAULT_PARALLELISM at a
+	 * time.
+	 *
+	 * @return EPLiteBulkClient
+	 */
+	public final EPLiteBulkClient bulk() {
+		return this.bulk(EPLiteBulkClient.DEFAULT_PARALLELISM);
+	}
+
+	/**
+	 * Returns a bulk client running many calls of this client
+	 * concurrently.
+	 *
+	 * @param parallelism the maximum number of concurrent calls
+	 * @return EPLiteBulkClient
+	 */
+	public final EPLiteBulkClient bulk(final int parallelism) {
+		return new EPLiteBulkClient(this, parallelism);
+	}
+
+	/**
+	 * Caches the content returned for fixed revisions: getText and
+	 * getHTML with a rev, getRevisionChangeset with a rev and
+	 * createDiffHTML.
+	 *
+	 * @param revisionCache the cache, null to disable caching
+	 */
+	public final void setRevisionCache(final RevisionCache revisionCache) {
+		this.revisionCache = revisionCache;
+	}
+
+	/** Getter.
+	 * @return the cache of the content at fixed revisions, may be null
+	 * */
+	public final RevisionCache getRevisionCache() {
+		return this.revisionCache;
+	}
+
+	/**
+	 * Caches the latest content of pads: getText and getHTML without a
+	 * rev and listAuthorsOfPad. Each read first calls
+	 * getLastEdited and downloads the content again only if the pad was
+	 * edited since the cached response was fetched.
+	 *
+	 * @param lastEditedCache the cache, null to disable caching
+	 */
+	public final void setLastEditedCache(
+			final LastEditedCache lastEditedCache) {
+		this.lastEditedCache = lastEditedCache;
+	}
+
+	/** Getter.
+	 * @return the cache of the latest content, may be null
+	 * */
+	public final LastEditedCache getLastEditedCache() {
+		return this.lastEditedCache;
+	}
+
 	// Groups
 	// Pads may belong to a group. These pads are not considered "public",
 	//and won't be available through the Web UI without a session.
@@ -405,7 +567,7 @@ public class EPLiteClient {
 	public final Map getText(final String padId) {
 		Map<String, Object> args = new HashMap<>();
 		args.put("padID", padId);
-		return this.connection.get("getText", args);
+		return this.getLatest("getText", padId, args);
 	}
 
 	/**
@@ -420,7 +582,7 @@ public class EPLiteClient {
 		Map<String, Object> args = new HashMap<>();
 		args.put("padID", padId);
 		args.put("rev", rev);
-		return this.connection.get("getText", args);
+		return (Map) this.getRevision("getText", padId, rev, -1L, args);
 	}
 
 	/**
@@ -463,7 +625,7 @@ public class EPLiteClient {
 	public final Map getHTML(final String padId) {
 		Map<String, Object> args = new HashMap<>();
 		args.put("padID", padId);
-		return this.connection.get("getHTML", args);
+		return this.getLatest("getHTML", padId, args);
 	}
 
 	/**
@@ -479,7 +641,7 @@ public class EPLiteClient {
 		Map<String, Object> args = new HashMap<>();
 		args.put("padID", padId);
 		args.put("rev", rev);
-		return this.connection.get("getHTML", args);
+		return (Map) this.getRevision("getHTML", padId, rev, -1L, args);
 	}
 
 	/**
@@ -539,8 +701,8 @@ public class EPLiteClient {
 		Map<String, Object> args = new HashMap<>();
 		args.put("padID", padId);
 		args.put("rev", rev);
-		return (String) this.connection.getObject(
-				"getRevisionChangeset", args);
+		return (String) this.getRevision("getRevisionChangeset", padId,
+				rev, -1L, args);
 	}
 
 	/**
@@ -559,7 +721,8 @@ public class EPLiteClient {
 		args.put("padID", padId);
 		args.put("startRev", startRev);
 		args.put("endRev", endRev);
-		return this.connection.get("createDiffHTML", args);
+		return (Map) this.getRevision("createDiffHTML", padId, startRev,
+				endRev, args);
 	}
 
 	// Chat
@@ -798,6 +961,7 @@ public class EPLiteClient {
 		Map<String, Object> args = new HashMap<>();
 		args.put("padID", padId);
 		this.connection.post("deletePad", args);
+		this.invalidate(padId);
 	}
 
 	/**
@@ -832,6 +996,7 @@ public class EPLiteClient {
 		args.put("destinationID", destinationPadId);
 		args.put("force", force);
 		this.connection.post("copyPad", args);
+		this.invalidate(destinationPadId);
 	}
 
 	/**
@@ -865,6 +1030,8 @@ public class EPLiteClient {
 		args.put("destinationID", destinationPadId);
 		args.put("force", force);
 		this.connection.post("movePad", args);
+		this.invalidate(sourcePadId);
+		this.invalidate(destinationPadId);
 	}
 
 	/**
@@ -955,7 +1122,7 @@ public class EPLiteClient {
 	public final Map listAuthorsOfPad(final String padId) {
 		Map<String, Object> args = new HashMap<>();
 		args.put("padID", padId);
-		return this.connection.get("listAuthorsOfPad", args);
+		return this.getLatest("listAuthorsOfPad", padId, args);
 	}
 
 	/**
@@ -1014,4 +1181,100 @@ public class EPLiteClient {
 		}
 
 	}
+
+	/**
+	 * GETs the content of a pad at a fixed revision, through the
+	 * revision cache if there is one.
+	 *
+	 * @param apiMethod the API method
+	 * @param padId the pad's id string
+	 * @param rev the revision, or start revision
+	 * @param endRev the end revision, -1 if the method has none
+	 * @param args the arguments of the call
+	 * @return the response, a Map or a String
+	 */
+	private Object getRevision(final String apiMethod, final String padId,
+			final long rev, final long endRev,
+			final Map<String, Object> args) {
+		RevisionCache cache = this.revisionCache;
+		if (cache == null) {
+			return this.getRevision(apiMethod, args);
+		}
+		Object cached = cache.get(apiMethod, padId, rev, endRev);
+		if (cached != null) {
+			return cached;
+		}
+		Object response = this.getRevision(apiMethod, args);
+		cache.put(apiMethod, padId, rev, endRev, response);
+		return response;
+	}
+
+	private Object getRevision(final String apiMethod,
+			final Map<String, Object> args) {
+		if ("getRevisionChangeset".equals(apiMethod)) {
+			return this.connection.getObject(apiMethod, args);
+		}
+		return this.connection.get(apiMethod, args);
+	}
+
+	/**
+	 * GETs the latest content of a pad, through the last edited cache
+	 * if there is one.
+	 *
+	 * @param apiMethod the API method
+	 * @param padId the pad's id string
+	 * @param args the arguments of the call
+	 * @return the response
+	 */
+	private Map getLatest(final String apiMethod, final String padId,
+			final Map<String, Object> args) {
+		LastEditedCache cache = this.lastEditedCache;
+		if (cache == null) {
+			return this.connection.get(apiMethod, args);
+		}
+		Object lastEdited = this.getLastEdited(padId).get("lastEdited");
+		if (!(lastEdited instanceof Number)) {
+			return this.connection.get(apiMethod, args);
+		}
+		long stamp = ((Number) lastEdited).longValue();
+		Map cached = (Map) cache.get(apiMethod, padId, stamp);
+		if (cached != null) {
+			return cached;
+		}
+		Map response = this.connection.get(apiMethod, args);
+		cache.put(apiMethod, padId, stamp, response);
+		return response;
+	}
+
+	/**
+	 * Removes a pad from the caches, if there are any.
+	 *
+	 * @param padId the pad's id string
+	 */
+	private void invalidate(final String padId) {
+		RevisionCache cache = this.revisionCache;
+		if (cache != null) {
+			cache.invalidate(padId);
+		}
+		LastEditedCache latest = this.lastEditedCache;
+		if (latest != null) {
+			latest.invalidate(padId);
+		}
+	}
+
+	/**
+	 * Releases the resources held by the transport, e.g. the pooled
+	 * connections of a PooledTransport, and stops the probes of the
+	 * NodeBalancer.
+	 *
+	 * @throws IOException if the transport fails to close
+	 */
+	@Override
+	public void close() throws IOException {
+		NodeBalancer nodes = this.connection.getBalancer();
+		if (nodes != null) {
+			nodes.close();
+		}
+		this.connection.getTransport().close();
+	}
 }
@@ -1,24 +1,31 @@
 package net.gjerull.etherpad.client;
 
-import java.io.UnsupportedEncodingException;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.net.MalformedURLException;
+import java.net.SocketTimeoutException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
-import java.net.URLEncoder;
-import java.security.KeyManagementException;
-import java.security.NoSuchAlgorithmException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
-import javax.net.ssl.HostnameVerifier;
-import javax.net.ssl.HttpsURLConnection;
-import javax.net.ssl.SSLContext;
-import javax.net.ssl.SSLSession;
-import javax.net.ssl.TrustManager;
-import javax.net.ssl.X509TrustManager;
-
+import org.json.simple.JSONValue;
 import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
 
@@ -43,6 +50,11 @@ public class EPLiteConnection {
 	 */
 	final URI uri;
 
+	/**
+	 * The nodes the calls are spread over, null for the single url.
+	 */
+	private final NodeBalancer balancer;
+
 	/**
 	 * The API key.
 	 */
@@ -58,6 +70,68 @@ public class EPLiteConnection {
 	 */
 	private final String encoding;
 
+	/**
+	 * The transport creating the HTTP requests.
+	 */
+	private final Transport transport;
+
+	/**
+	 * The charset of the encoding, null if it is not supported.
+	 */
+	private final Charset charset;
+
+	/**
+	 * The url-encoded apikey parameter, starting every request.
+	 */
+	private final String apiKeyParam;
+
+	/**
+	 * The URL of each API method called so far.
+	 */
+	private final ConcurrentMap<String, URL> methodUrls =
+			new ConcurrentHashMap<>();
+
+	/**
+	 * Whether identical concurrent GETs share one request.
+	 */
+	private volatile boolean coalescing;
+
+	/**
+	 * The GETs in flight while coalescing, by URL.
+	 */
+	private final ConcurrentMap<String, CompletableFuture<Object>> inFlight =
+			new ConcurrentHashMap<>();
+
+	/**
+	 * The number of GETs answered by another call in flight.
+	 */
+	private final AtomicLong coalesced = new AtomicLong();
+
+	/**
+	 * The limiter of the calls in flight, null for none.
+	 */
+	private volatile ConcurrencyLimiter limiter;
+
+	/**
+	 * The retry policy of the blocking calls, null for none.
+	 */
+	private volatile RetryPolicy retryPolicy;
+
+	/**
+	 * The hedging policy of the blocking reads, null for none.
+	 */
+	private volatile HedgingPolicy hedgingPolicy;
+
+	/**
+	 * The metrics of the calls, null for none.
+	 */
+	private volatile MetricsRegistry metrics;
+
+	/**
+	 * The listener of the phase timing of the requests, null for none.
+	 */
+	private volatile TimingListener timingListener;
+
 	/** Getter.
 	 * @return Uri
 	 * */
@@ -65,6 +139,14 @@ public class EPLiteConnection {
 		return uri;
 	}
 
+	/** Getter.
+	 * @return the nodes the calls are spread over, null for a
+	 *  connection to a single url
+	 * */
+	public final NodeBalancer getBalancer() {
+		return balancer;
+	}
+
 	/** Getter.
 	 * @return String
 	 * */
@@ -86,6 +168,129 @@ public class EPLiteConnection {
 		return encoding;
 	}
 
+	/** Getter.
+	 * @return Transport
+	 * */
+	public final Transport getTransport() {
+		return transport;
+	}
+
+	/** Getter.
+	 * @return true if identical concurrent GETs share one request
+	 * */
+	public final boolean isCoalescing() {
+		return coalescing;
+	}
+
+	/**
+	 * Lets identical concurrent GETs (same method and arguments) share
+	 * one request: a getObject or get call finding the same GET already
+	 * in flight waits for it and returns its result instead of sending
+	 * another request. POSTs are never coalesced.
+	 *
+	 * @param coalescing true to coalesce identical concurrent GETs
+	 */
+	public final void setCoalescing(final boolean coalescing) {
+		this.coalescing = coalescing;
+	}
+
+	/** Getter.
+	 * @return the number of GETs answered by another call in flight
+	 * */
+	public final long getCoalescedCount() {
+		return coalesced.get();
+	}
+
+	/** Getter.
+	 * @return the limiter of the calls in flight, null for none
+	 * */
+	public final ConcurrencyLimiter getLimiter() {
+		return limiter;
+	}
+
+	/**
+	 * Limits the number of blocking calls in flight. A call over the
+	 * limit waits for a permit, then fails with an EPLiteLimitException
+	 * without sending its request.
+	 *
+	 * @param limiter the limiter, null for no limit
+	 */
+	public final void setLimiter(final ConcurrencyLimiter limiter) {
+		this.limiter = limiter;
+	}
+
+	/** Getter.
+	 * @return the retry policy of the blocking calls, null for none
+	 * */
+	public final RetryPolicy getRetryPolicy() {
+		return retryPolicy;
+	}
+
+	/**
+	 * Retries the blocking calls that fail to reach the server, as the
+	 * policy allows. Each attempt takes its own permit of the limiter.
+	 *
+	 * @param retryPolicy the policy, null to never retry
+	 */
+	public final void setRetryPolicy(final RetryPolicy retryPolicy) {
+		this.retryPolicy = retryPolicy;
+	}
+
+	/** Getter.
+	 * @return the hedging policy of the blocking reads, null for none
+	 * */
+	public final HedgingPolicy getHedgingPolicy() {
+		return hedgingPolicy;
+	}
+
+	/**
+	 * Sends a second request for the idempotent reads slower than usual,
+	 * as the policy allows. Each request takes its own permit of the
+	 * limiter, and a retry is hedged again.
+	 *
+	 * @param hedgingPolicy the policy, null to never hedge
+	 */
+	public final void setHedgingPolicy(final HedgingPolicy hedgingPolicy) {
+		this.hedgingPolicy = hedgingPolicy;
+	}
+
+	/** Getter.
+	 * @return the metrics of the calls, null for none
+	 * */
+	public final MetricsRegistry getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Records the calls, their errors, bytes and latency by API method.
+	 * A registry can be shared by several connections.
+	 *
+	 * @param metrics the registry, null to record nothing
+	 */
+	public final void setMetrics(final MetricsRegistry metrics) {
+		this.metrics = metrics;
+	}
+
+	/** Getter.
+	 * @return the listener of the phase timing, null for none
+	 * */
+	public final TimingListener getTimingListener() {
+		return timingListener;
+	}
+
+	/**
+	 * Times the phases of each request of the blocking calls (DNS,
+	 * connect, TLS, first byte, transfer and parsing, see CallTiming)
+	 * and hands them to the listener, e.g. a PhaseStatistics. Each
+	 * attempt, retry or hedge is timed on its own.
+	 *
+	 * @param timingListener the listener, null to time nothing
+	 */
+	public final void setTimingListener(
+			final TimingListener timingListener) {
+		this.timingListener = timingListener;
+	}
+
 	/**
 	 * Initializes a new
 	 * net.gjerull.etherpad.client.EPLiteConnection object.
@@ -95,15 +300,97 @@ public class EPLiteConnection {
 	 * @param apiVersion the API version
 	 * @param encoding encode type
 	 */
-	public EPLiteConnection(String url, final String apiKey,
+	public EPLiteConnection(final String url, final String apiKey,
 			final String apiVersion, final String encoding) {
-		if (url.endsWith("/")) {
-			url = url.substring(0, url.length() - 1);
-		}
-		this.uri = URI.create(url);
+		this(url, apiKey, apiVersion, encoding,
+				new URLConnectionTransport());
+	}
+
+	/**
+	 * Initializes a new
+	 * net.gjerull.etherpad.client.EPLiteConnection object
+	 * sending its requests through the given transport.
+	 *
+	 * @param url an absolute url, including protocol, to the EPL api
+	 * @param apiKey the API Key
+	 * @param apiVersion the API version
+	 * @param encoding encode type
+	 * @param transport the transport creating the HTTP requests
+	 */
+	public EPLiteConnection(final String url, final String apiKey,
+			final String apiVersion, final String encoding,
+			final Transport transport) {
+		this(URI.create(url.endsWith("/")
+				? url.substring(0, url.length() - 1) : url), null,
+				apiKey, apiVersion, encoding, transport);
+	}
+
+	/**
+	 * Initializes a new
+	 * net.gjerull.etherpad.client.EPLiteConnection object
+	 * spreading its calls over several nodes sharing one database.
+	 *
+	 * @param urls absolute urls, including protocol, to the EPL api of
+	 *  each node
+	 * @param apiKey the API Key
+	 * @param apiVersion the API version
+	 * @param encoding encode type
+	 * @param transport the transport creating the HTTP requests
+	 */
+	public EPLiteConnection(final List<String> urls, final String apiKey,
+			final String apiVersion, final String encoding,
+			final Transport transport) {
+		this(new NodeBalancer(urls), apiKey, apiVersion, encoding,
+				transport);
+	}
+
+	/**
+	 * Initializes a new
+	 * net.gjerull.etherpad.client.EPLiteConnection object
+	 * spreading its calls over the nodes of a balancer, and starts
+	 * probing them.
+	 *
+	 * @param balancer the nodes, sharing one database
+	 * @param apiKey the API Key
+	 * @param apiVersion the API version
+	 * @param encoding encode type
+	 * @param transport the transport creating the HTTP requests
+	 */
+	public EPLiteConnection(final NodeBalancer balancer,
+			final String apiKey, final String apiVersion,
+			final String encoding, final Transport transport) {
+		this(balancer.getNodes().get(0).getUri(), balancer, apiKey,
+				apiVersion, encoding, transport);
+		balancer.start(this::probe);
+	}
+
+	private EPLiteConnection(final URI uri, final NodeBalancer balancer,
+			final String apiKey, final String apiVersion,
+			final String encoding, final Transport transport) {
+		this.uri = uri;
+		this.balancer = balancer;
 		this.apiKey = apiKey;
 		this.apiVersion = apiVersion;
 		this.encoding = encoding;
+		this.transport = transport;
+		this.charset = charsetOf(encoding);
+		this.apiKeyParam = (this.charset == null) ? null
+				: FormEncoder.get().appendRaw("apikey=")
+				.encode(apiKey, this.charset).toString();
+	}
+
+	/**
+	 * Returns the charset with the given name.
+	 *
+	 * @param encoding the name of the charset
+	 * @return Charset, null if it is not supported
+	 */
+	private static Charset charsetOf(final String encoding) {
+		try {
+			return Charset.forName(encoding);
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
 	}
 
 	/**
@@ -138,11 +425,12 @@ public class EPLiteConnection {
 	 */
 	public final Object getObject(final String apiMethod,
 			Map<String, Object> apiArgs) {
-		String path = this.apiPath(apiMethod);
-		String query = this.queryString(apiArgs, false);
-		URL url = apiUrl(path, query);
-		Request request = new GETRequest(url);
-		return this.call(request);
+		String query = this.formEncode(apiArgs).toString();
+		if (this.coalescing) {
+			return this.coalesce(apiMethod, idHash(apiArgs), query);
+		}
+		return this.call(apiMethod, idHash(apiArgs), query.length(),
+				base -> this.transport.newGetRequest(withQuery(base, query)));
 	}
 
 	/**
@@ -159,6 +447,28 @@ public class EPLiteConnection {
 		return (response != null) ? response : new HashMap();
 	}
 
+	/**
+	 * GETs from the HTTP JSON API, decoding the data of the response
+	 * into a typed result while it is read.
+	 *
+	 * @param apiMethod the name of the API method to call
+	 * @param apiArgs a HashMap of url/form parameters.
+	 *  apikey will be set automatically
+	 * @param decoder a new decoder for the data of the response
+	 * @param <T> the type of the result
+	 * @return the decoded result, null if the response had no data
+	 */
+	public final <T> T get(final String apiMethod,
+			final Map<String, Object> apiArgs,
+			final ResponseDecoder<T> decoder) {
+		String query = this.formEncode(apiArgs).toString();
+		return this.call(apiMethod, idHash(apiArgs), query.length(),
+				base -> this.transport.newGetRequest(withQuery(base, query)),
+				(body, charset) -> decoder.decode(
+				new InputStreamReader(body,
+						(charset != null) ? charset : this.encoding)));
+	}
+
 	/**
 	 * POSTs to the HTTP JSON API.
 	 *
@@ -191,11 +501,15 @@ public class EPLiteConnection {
 	 */
 	public final Object postObject(final String apiMethod,
 			Map<String, Object> apiArgs) {
-		String path = this.apiPath(apiMethod);
-		String query = this.queryString(apiArgs, true);
-		URL url = apiUrl(path, null);
-		Request request = new POSTRequest(url, query);
-		return this.call(request);
+		if (FormBody.isStreamed(apiArgs)) {
+			RequestBody body = this.formBodyStream(apiArgs);
+			return this.call(apiMethod, idHash(apiArgs),
+					body.getContentLength(),
+					base -> this.transport.newPostRequest(base, body));
+		}
+		byte[] body = this.formBody(apiArgs);
+		return this.call(apiMethod, idHash(apiArgs), body.length,
+				base -> this.transport.newPostRequest(base, body));
 	}
 
 	/**
@@ -212,6 +526,92 @@ public class EPLiteConnection {
 		return (response != null) ? response : new HashMap();
 	}
 
+	/**
+	 * GETs from the HTTP JSON API without blocking. Requires an
+	 * AsyncTransport.
+	 *
+	 * @param apiMethod the name of the API method to call
+	 * @return CompletableFuture with the Map
+	 */
+	public final CompletableFuture<Map> getAsync(final String apiMethod) {
+		return this.getAsync(apiMethod, new HashMap<String, Object>());
+	}
+
+	/**
+	 * GETs from the HTTP JSON API without blocking. Requires an
+	 * AsyncTransport.
+	 *
+	 * @param apiMethod the name of the API method to call
+	 * @param apiArgs a HashMap of url/form parameters.
+	 *  apikey will be set automatically
+	 * @return CompletableFuture with the Object
+	 */
+	public final CompletableFuture<Object> getObjectAsync(
+			final String apiMethod, final Map<String, Object> apiArgs) {
+		AsyncTransport async = this.asyncTransport();
+		String query = this.formEncode(apiArgs).toString();
+		return this.callAsync(apiMethod, query.length(),
+				base -> async.newGetRequest(withQuery(base, query)));
+	}
+
+	/**
+	 * GETs from the HTTP JSON API without blocking. Requires an
+	 * AsyncTransport.
+	 *
+	 * @param apiMethod the name of the API method to call
+	 * @param apiArgs a HashMap of url/form parameters.
+	 *  apikey will be set automatically
+	 * @return CompletableFuture with the Map
+	 */
+	public final CompletableFuture<Map> getAsync(final String apiMethod,
+			final Map<String, Object> apiArgs) {
+		return this.getObjectAsync(apiMethod, apiArgs)
+				.thenApply(EPLiteConnection::toMap);
+	}
+
+	/**
+	 * POSTs to the HTTP JSON API without blocking. Requires an
+	 * AsyncTransport.
+	 *
+	 * @param apiMethod the name of the API method to call
+	 * @return CompletableFuture with the Map
+	 */
+	public final CompletableFuture<Map> postAsync(final String apiMethod) {
+		return this.postAsync(apiMethod, new HashMap<String, Object>());
+	}
+
+	/**
+	 * POSTs to the HTTP JSON API without blocking. Requires an
+	 * AsyncTransport.
+	 *
+	 * @param apiMethod the name of the API method to call
+	 * @param apiArgs a HashMap of url/form parameters.
+	 *  apikey will be set automatically
+	 * @return CompletableFuture with the Object
+	 */
+	public final CompletableFuture<Object> postObjectAsync(
+			final String apiMethod, final Map<String, Object> apiArgs) {
+		AsyncTransport async = this.asyncTransport();
+		byte[] body = this.formBody(apiArgs);
+		return this.callAsync(apiMethod, body.length,
+				base -> async.newPostRequest(base, body));
+	}
+
+	/**
+	 * POSTs to the HTTP JSON API without blocking. Requires an
+	 * AsyncTransport.
+	 *
+	 * @param apiMethod the name of the API method to call
+	 * @param apiArgs a HashMap of url/form parameters.
+	 *  apikey will be set automatically
+	 * @return CompletableFuture with the Map
+	 */
+	public final CompletableFuture<Map> postAsync(final String apiMethod,
+			final Map<String, Object> apiArgs) {
+		return this.postObjectAsync(apiMethod, apiArgs)
+				.thenApply(EPLiteConnection::toMap);
+	}
+
 	/**
 	 * Handle error condition and returns the parsed content
 	 *
@@ -222,38 +622,86 @@ public class EPLiteConnection {
 		try {
 			JSONParser parser = new JSONParser();
 			Map response = (Map) parser.parse(jsonString);
-			// Act on the response code
-			if (response.get("code") != null)  {
-				int code = ((Long) response.get("code")).intValue();
-				switch ( code ) {
-				// Valid code, parse the response
-				case CODE_OK:
-					return response.get("data");
-					// Invalid code, throw an exception with the message
-				case CODE_INVALID_PARAMETERS:
-				case CODE_INTERNAL_ERROR:
-				case CODE_INVALID_METHOD:
-				case CODE_INVALID_API_KEY:
-					throw new EPLiteException(
-							(String)response.get("message"));
-				default:
-					throw new EPLiteException(
-							"An unknown error has"
-									+ " occurred while"
-									+ " handling the response: "
-									+ jsonString);
-				}
-				// No response code, something's really wrong
-			} else {
-				throw new EPLiteException("An unexpected"
-						+ " response from the server: " + jsonString);
-			}
+			return this.handleResponse(response, jsonString);
 		} catch (ParseException e) {
 			throw new EPLiteException("Unable to parse"
 					+ " JSON response (" + jsonString + ")", e);
 		}
 	}
 
+	/**
+	 * Handle error condition and returns the parsed content, decoding
+	 * and parsing the JSON while it is read from the response body.
+	 *
+	 * @param body the response body
+	 * @param charset the charset of the response, null to use the
+	 *  configured encoding
+	 * @return Object
+	 * @throws IOException if the body can not be read
+	 */
+	protected final Object handleResponse(final InputStream body,
+			final String charset) throws IOException {
+		Reader reader = new InputStreamReader(body,
+				(charset != null) ? charset : this.encoding);
+		try {
+			JSONParser parser = new JSONParser();
+			Map response = (Map) parser.parse(reader);
+			return this.handleResponse(response, null);
+		} catch (ParseException e) {
+			throw new EPLiteException("Unable to parse"
+					+ " JSON response (" + e + ")", e);
+		}
+	}
+
+	/**
+	 * Handle error condition and returns the content of a parsed
+	 * response.
+	 *
+	 * @param response the parsed response
+	 * @param jsonString the raw response for error messages,
+	 *  null if it was not kept
+	 * @return Object
+	 */
+	private Object handleResponse(final Map response,
+			final String jsonString) {
+		// Act on the response code
+		if (response.get("code") != null)  {
+			int code = ((Long) response.get("code")).intValue();
+			switch ( code ) {
+			// Valid code, parse the response
+			case CODE_OK:
+				return response.get("data");
+				// Invalid code, throw an exception with the message
+			case CODE_INVALID_PARAMETERS:
+			case CODE_INTERNAL_ERROR:
+			case CODE_INVALID_METHOD:
+			case CODE_INVALID_API_KEY:
+				throw new EPLiteException(
+						(String)response.get("message"), code);
+			default:
+				throw new EPLiteException(
+						"An unknown error has"
+								+ " occurred while"
+								+ " handling the response: "
+								+ raw(response, jsonString), code);
+			}
+			// No response code, something's really wrong
+		} else {
+			throw new EPLiteException("An unexpected"
+					+ " response from the server: "
+					+ raw(response, jsonString));
+		}
+	}
+
+	/**
+	 * Returns the raw response, or the parsed response serialized
+	 * back to JSON if the raw one was not kept.
+	 */
+	private static String raw(final Map response, final String jsonString) {
+		return (jsonString != null) ? jsonString
+				: JSONValue.toJSONString(response);
+	}
+
 	/**
 	 * Returns the URL for the api path and query.
 	 *
@@ -262,9 +710,14 @@ public class EPLiteConnection {
 	 * @return URL
 	 */
 	protected final URL apiUrl(final String path, final String query) {
+		return apiUrl(this.uri, path, query);
+	}
+
+	private static URL apiUrl(final URI base, final String path,
+			final String query) {
 		try {
-			return new URL(new URI(this.uri.getScheme(), null,
-					this.uri.getHost(), this.uri.getPort(),
+			return new URL(new URI(base.getScheme(), null,
+					base.getHost(), base.getPort(),
 					path, query, null).toString());
 		} catch (MalformedURLException | URISyntaxException e) {
 			throw new EPLiteException("Error in the URL to"
@@ -280,7 +733,11 @@ public class EPLiteConnection {
 	 * @return String
 	 */
 	protected final String apiPath(final String apiMethod) {
-		return this.uri.getPath() + "/api/"
+		return this.apiPath(this.uri, apiMethod);
+	}
+
+	private String apiPath(final URI base, final String apiMethod) {
+		return base.getPath() + "/api/"
 				+ this.apiVersion + "/" + apiMethod;
 	}
 
@@ -293,49 +750,344 @@ public class EPLiteConnection {
 	protected final String queryString(
 			final Map<String, Object> apiArgs,
 			boolean urlEncode) {
-		StringBuilder strArgs = new StringBuilder();
-		apiArgs.put("apikey", this.apiKey);
-		Iterator i = apiArgs.entrySet().iterator();
-		while (i.hasNext()) {
-			Map.Entry entry = (Map.Entry)i.next();
-			Object key = entry.getKey();
-			Object value = entry.getValue();
-			if (urlEncode) {
-				try {
-					if (key instanceof String) {
-						URLEncoder.encode((String) key, this.encoding);
-					}
-					if (value instanceof String) {
-						value = URLEncoder.encode(
-								(String) value, this.encoding);
-					}
-				} catch (UnsupportedEncodingException e) {
-					throw new EPLiteException(String.format(
-							"Unable to URLEncode using"
-									+ " encoding '%s'",
-									this.encoding), e);
-				}
-			}
-			strArgs.append(key).append("=").append(value);
-			if (i.hasNext()) {
-				strArgs.append("&");
-			}
+		if (urlEncode) {
+			return this.formEncode(apiArgs).toString();
+		}
+		StringBuilder strArgs = new StringBuilder("apikey=")
+				.append(this.apiKey);
+		for (Map.Entry<String, Object> entry : apiArgs.entrySet()) {
+			strArgs.append("&").append(entry.getKey())
+			.append("=").append(entry.getValue());
 		}
 		return strArgs.toString();
 	}
 
+	/**
+	 * Returns the URL of the API method, built once per method.
+	 *
+	 * @param apiMethod the api method
+	 * @return URL
+	 */
+	protected final URL methodUrl(final String apiMethod) {
+		return this.methodUrl(this.uri, this.methodUrls, apiMethod);
+	}
+
+	/**
+	 * Returns the URL of the API method on a node, or on the url of the
+	 * connection if the node is null.
+	 */
+	private URL methodUrl(final NodeBalancer.Node node,
+			final String apiMethod) {
+		return (node == null) ? this.methodUrl(apiMethod)
+				: this.methodUrl(node.getUri(), node.methodUrls, apiMethod);
+	}
+
+	private URL methodUrl(final URI base,
+			final ConcurrentMap<String, URL> cache, final String apiMethod) {
+		URL url = cache.get(apiMethod);
+		if (url == null) {
+			url = apiUrl(base, this.apiPath(base, apiMethod), null);
+			cache.putIfAbsent(apiMethod, url);
+		}
+		return url;
+	}
+
+	/**
+	 * Returns the URL of a GET call, with the url-encoded arguments
+	 * and apikey as query string.
+	 *
+	 * @param apiMethod the api method
+	 * @param apiArgs the api arguments
+	 * @return URL
+	 */
+	protected final URL getUrl(final String apiMethod,
+			final Map<String, Object> apiArgs) {
+		return withQuery(this.methodUrl(apiMethod),
+				this.formEncode(apiArgs).toString());
+	}
+
+	/**
+	 * Returns the URL of an API method with a query string.
+	 */
+	private static URL withQuery(final URL base, final String query) {
+		try {
+			return new URL(base.getProtocol(), base.getHost(),
+					base.getPort(), base.getFile() + "?" + query);
+		} catch (MalformedURLException e) {
+			throw new EPLiteException("Error in the URL to"
+					+ " the Etherpad Lite instance (" + e.getClass()
+					+ "): " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Returns the url-encoded arguments and apikey as the bytes of a
+	 * POST body.
+	 *
+	 * @param apiArgs the api arguments
+	 * @return byte[]
+	 */
+	protected final byte[] formBody(final Map<String, Object> apiArgs) {
+		return this.formEncode(apiArgs).toByteArray();
+	}
+
+	/**
+	 * Url-encodes the arguments and apikey into the buffer of the
+	 * calling thread. The arguments are not modified.
+	 *
+	 * @param apiArgs the api arguments
+	 * @return FormEncoder holding the encoded arguments
+	 */
+	private FormEncoder formEncode(final Map<String, Object> apiArgs) {
+		this.checkCharset();
+		FormEncoder form = FormEncoder.get().appendRaw(this.apiKeyParam);
+		for (Map.Entry<String, Object> entry : apiArgs.entrySet()) {
+			form.appendRaw('&').encode(entry.getKey(), this.charset)
+			.appendRaw('=');
+			if (entry.getValue() instanceof ByteBuffer) {
+				form.encode(((ByteBuffer) entry.getValue()).duplicate());
+			} else {
+				form.encode(String.valueOf(entry.getValue()), this.charset);
+			}
+		}
+		return form;
+	}
+
+	/**
+	 * Returns the url-encoded body of a POST with large arguments, encoded
+	 * while it is sent. A ByteBuffer argument holds bytes that are already
+	 * in the encoding of the connection.
+	 *
+	 * @param apiArgs the arguments of the call
+	 * @return RequestBody
+	 */
+	protected final RequestBody formBodyStream(
+			final Map<String, Object> apiArgs) {
+		this.checkCharset();
+		return new FormBody(this.apiKeyParam, apiArgs, this.charset);
+	}
+
+	private void checkCharset() {
+		if (this.charset == null) {
+			throw new EPLiteException(String.format(
+					"Unable to URLEncode using encoding '%s'",
+					this.encoding));
+		}
+	}
+
 	/**
 	 * Calls the HTTP JSON API.
 	 *
-	 * @param request the request object to send
+	 * @param apiMethod the name of the API method to call
+	 * @param idHash the hash of the padID or groupID argument, 0 if none
+	 * @param size the bytes of the query string or request body
+	 * @param request creates the request object to send to the URL of
+	 *  the method
 	 * @return HashMap
 	 */
-	private final Object call(final Request request) {
-		trustServerAndCertificate();
+	private final Object call(final String apiMethod, final int idHash,
+			final long size, final Function<URL, Request> request) {
+		return this.call(apiMethod, idHash, size, request,
+				this::handleResponse);
+	}
+
+	/**
+	 * Calls the HTTP JSON API, letting the handler read the response.
+	 * A new request is created for each attempt of the RetryPolicy,
+	 * and for each node it is sent to.
+	 *
+	 * @param apiMethod the name of the API method to call
+	 * @param idHash the hash of the padID or groupID argument, 0 if none
+	 * @param size the bytes of the query string or request body
+	 * @param request creates the request object to send to the URL of
+	 *  the method
+	 * @param handler the handler of the response body
+	 * @param <T> the type of the result
+	 * @return the result of the handler
+	 */
+	private <T> T call(final String apiMethod, final int idHash,
+			final long size, final Function<URL, Request> request,
+			final ResponseHandler<T> handler) {
+		MetricsRegistry registry = this.metrics;
+		if (registry == null) {
+			return this.execute(apiMethod, idHash, size, request, handler);
+		}
+		MetricsRegistry.MethodMetrics method = registry.method(apiMethod);
+		method.sent(size);
+		long start = System.nanoTime();
+		try {
+			T result = this.execute(apiMethod, idHash, size, request,
+					(body, charset) ->
+					handler.handle(method.counting(body), charset));
+			method.record(System.nanoTime() - start, CODE_OK);
+			return result;
+		} catch (EPLiteException e) {
+			method.record(System.nanoTime() - start, e.getCode());
+			throw e;
+		}
+	}
+
+	/**
+	 * Calls the HTTP JSON API through the policies of the connection.
+	 */
+	private <T> T execute(final String apiMethod, final int idHash,
+			final long size, final Function<URL, Request> request,
+			final ResponseHandler<T> handler) {
+		HedgingPolicy hedging = this.hedgingPolicy;
+		Supplier<T> send = () -> this.route(apiMethod, idHash, size,
+				request, handler);
+		Supplier<T> attempt = (hedging == null)
+				? () -> this.limit(send)
+				: () -> hedging.execute(apiMethod, () -> this.limit(send));
+		RetryPolicy policy = this.retryPolicy;
+		return (policy == null) ? attempt.get()
+				: policy.execute(apiMethod, attempt);
+	}
+
+	/**
+	 * Sends a request within the limit of the ConcurrencyLimiter.
+	 */
+	private <T> T limit(final Supplier<T> send) {
+		ConcurrencyLimiter current = this.limiter;
+		if (current == null) {
+			return send.get();
+		}
+		ConcurrencyLimiter.Permit permit = current.acquire();
+		boolean answered = false;
+		try {
+			T result = send.get();
+			answered = true;
+			return result;
+		} catch (EPLiteException e) {
+			// An error code is an answer; a failed transport is not
+			answered = !HttpStatusException.isTransportFailure(e.getCause());
+			throw e;
+		} finally {
+			if (answered) {
+				permit.release();
+			} else {
+				permit.drop();
+			}
+		}
+	}
+
+	/**
+	 * Sends a request to the node picked by the NodeBalancer, if any.
+	 */
+	private <T> T route(final String apiMethod, final int idHash,
+			final long size, final Function<URL, Request> request,
+			final ResponseHandler<T> handler) {
+		NodeBalancer nodes = this.balancer;
+		if (nodes == null) {
+			return this.send(apiMethod, idHash, size,
+					request.apply(this.methodUrl(apiMethod)), handler);
+		}
+		NodeBalancer.Node node = nodes.choose();
+		long start = System.nanoTime();
+		Throwable failure = null;
+		try {
+			return this.send(apiMethod, idHash, size,
+					request.apply(this.methodUrl(node, apiMethod)), handler);
+		} catch (RuntimeException | Error e) {
+			failure = e;
+			throw e;
+		} finally {
+			this.finish(node, start, failure);
+		}
+	}
+
+	/**
+	 * Ends a request to a node. An error code or a 4xx status is an answer
+	 * of the node; a failed transport, a timeout included, is not. A
+	 * cancelled hedge counts as neither.
+	 */
+	private void finish(final NodeBalancer.Node node, final long start,
+			final Throwable failure) {
+		Throwable cause = (failure instanceof EPLiteException)
+				? failure.getCause() : failure;
+		if (cause instanceof InterruptedException
+				|| (cause instanceof InterruptedIOException
+						&& !(cause instanceof SocketTimeoutException))
+				|| Thread.currentThread().isInterrupted()) {
+			node.cancel();
+		} else {
+			node.finish(System.nanoTime() - start,
+					!HttpStatusException.isTransportFailure(cause));
+		}
+	}
 
+	/**
+	 * Sends a checkToken probe to a node.
+	 */
+	private void probe(final NodeBalancer.Node node) {
+		this.send(this.transport.newGetRequest(withQuery(
+				this.methodUrl(node, "checkToken"),
+				this.formEncode(new HashMap<String, Object>()).toString())),
+				this::handleResponse);
+	}
+
+	/**
+	 * Sends a request, timing its phases if there is a TimingListener or
+	 * a recording of ApiCall events.
+	 */
+	private <T> T send(final String apiMethod, final int idHash,
+			final long size, final Request request,
+			final ResponseHandler<T> handler) {
+		TimingListener listener = this.timingListener;
+		JfrEvents.ApiCall event = new JfrEvents.ApiCall();
+		if (listener == null && !event.isEnabled()) {
+			return this.send(request, handler);
+		}
+		event.begin();
+		CallTiming timing = new CallTiming(apiMethod);
+		CallTiming outer = CallTiming.begin(timing);
+		Throwable failure = null;
 		try {
+			return this.send(request, timing.timed(handler));
+		} catch (RuntimeException | Error e) {
+			failure = e;
+			throw e;
+		} finally {
+			timing.end(outer, failure);
+			if (listener != null) {
+				listener.requestTimed(timing);
+			}
+			event.end();
+			if (event.shouldCommit()) {
+				event.method = apiMethod;
+				event.idHash = idHash;
+				event.httpStatus = timing.getStatus();
+				event.code = (failure == null) ? CODE_OK
+						: (failure instanceof EPLiteException)
+						? ((EPLiteException) failure).getCode()
+						: EPLiteException.NO_CODE;
+				event.requestBytes = size;
+				event.responseBytes = timing.getBytesReceived();
+				event.commit();
+			}
+		}
+	}
+
+	/**
+	 * Sends a request and lets the handler read the response.
+	 */
+	private <T> T send(final Request request,
+			final ResponseHandler<T> handler) {
+		try {
+			if (request instanceof StreamingRequest) {
+				StreamingRequest streaming = (StreamingRequest) request;
+				// Aborted if it is the losing request of a hedged read
+				HedgingPolicy.sending(streaming);
+				try {
+					return streaming.send(handler);
+				} finally {
+					HedgingPolicy.sending(null);
+				}
+			}
+			// Requests without streaming support return a String
 			String response = request.send();
-			return this.handleResponse(response);
+			return handler.handle(new ByteArrayInputStream(
+					response.getBytes(StandardCharsets.UTF_8)), "UTF-8");
 		}
 		catch (EPLiteException e) {
 			throw e;
@@ -343,57 +1095,181 @@ public class EPLiteConnection {
 		catch (Exception e) {
 			throw new EPLiteException("Unable to connect"
 					+ " to Etherpad Lite instance (" + e.getClass()
-					+ "): " + e.getMessage());
+					+ "): " + e.getMessage(), e);
 		}
 	}
 
 	/**
-	 * Creates a trust manager to trust all
-	 *  certificates if you open a ssl connection
+	 * GETs from the HTTP JSON API, sharing the request with identical
+	 * GETs in flight. Each caller gets its own deep copy of a Map
+	 * response, nested lists and maps included.
+	 *
+	 * @param apiMethod the name of the API method to call
+	 * @param idHash the hash of the padID or groupID argument, 0 if none
+	 * @param query the query string of the GET
+	 * @return the parsed content
 	 */
-	private final void trustServerAndCertificate() {
-		// Create a trust manager that does not validate
-		//certificate chains
-		TrustManager[] trustAllCerts = new TrustManager[] {
-				new X509TrustManager() {
-					@Override
-					public java.security.cert.X509Certificate[]
-							getAcceptedIssuers() {
-						return null;
-					}
+	private Object coalesce(final String apiMethod, final int idHash,
+			final String query) {
+		String key = apiMethod + "?" + query;
+		CompletableFuture<Object> flight = new CompletableFuture<>();
+		CompletableFuture<Object> leader = this.inFlight.putIfAbsent(key,
+				flight);
+		if (leader != null) {
+			this.coalesced.incrementAndGet();
+			try {
+				return WeightedLruCache.copyOf(leader.join());
+			} catch (CompletionException e) {
+				if (e.getCause() instanceof EPLiteException) {
+					throw (EPLiteException) e.getCause();
+				}
+				throw new EPLiteException(e.getCause().getMessage(),
+						e.getCause());
+			}
+		}
+		try {
+			Object response = this.call(apiMethod, idHash, query.length(),
+					base -> this.transport.newGetRequest(
+							withQuery(base, query)));
+			flight.complete(response);
+			return WeightedLruCache.copyOf(response);
+		} catch (RuntimeException | Error e) {
+			flight.completeExceptionally(e);
+			throw e;
+		} finally {
+			this.inFlight.remove(key, flight);
+		}
+	}
 
-					@Override
-					public void checkClientTrusted(
-							java.security.cert.X509Certificate[] certs,
-							String authType) {
-					}
+	/**
+	 * Calls the HTTP JSON API without blocking the calling thread.
+	 *
+	 * @param apiMethod the name of the API method to call
+	 * @param size the bytes of the query string or request body
+	 * @param request creates the request object to send to the URL of
+	 *  the method
+	 * @return CompletableFuture with the parsed content
+	 */
+	private CompletableFuture<Object> callAsync(final String apiMethod,
+			final long size, final Function<URL, AsyncRequest> request) {
+		MetricsRegistry registry = this.metrics;
+		if (registry == null) {
+			return this.sendAsync(apiMethod, request, null);
+		}
+		MetricsRegistry.MethodMetrics method = registry.method(apiMethod);
+		method.sent(size);
+		long start = System.nanoTime();
+		return this.sendAsync(apiMethod, request, method)
+				.whenComplete((result, error) -> {
+					Throwable cause = (error instanceof CompletionException
+							&& error.getCause() != null) ? error.getCause()
+							: error;
+					method.record(System.nanoTime() - start,
+							(cause == null) ? CODE_OK
+							: (cause instanceof EPLiteException)
+							? ((EPLiteException) cause).getCode()
+							: EPLiteException.NO_CODE);
+				});
+	}
 
-					@Override
-					public void checkServerTrusted(
-							java.security.cert.X509Certificate[] certs,
-							String authType) {
-					}
-				}
-		};
+	/**
+	 * Returns the hash of the padID, or else groupID, argument of a call,
+	 * telling the calls of pads apart without recording their IDs.
+	 *
+	 * @param apiArgs the arguments of the call
+	 * @return the hash, 0 if the call has neither
+	 */
+	private static int idHash(final Map<String, Object> apiArgs) {
+		Object id = apiArgs.get("padID");
+		if (id == null) {
+			id = apiArgs.get("groupID");
+		}
+		return (id != null) ? id.hashCode() : 0;
+	}
 
-		// Install the all-trusting trust manager
+	/**
+	 * Returns the number of bytes of a string in UTF-8.
+	 */
+	static long utf8Length(final String text) {
+		long length = 0;
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c < 0x80) {
+				length++;
+			} else if (c < 0x800) {
+				length += 2;
+			} else if (Character.isHighSurrogate(c)) {
+				length += 4;
+				i++;
+			} else {
+				length += 3;
+			}
+		}
+		return length;
+	}
+
+	/**
+	 * Sends a request without blocking, to the node picked by the
+	 * NodeBalancer if any, counting the bytes received in method if not
+	 * null.
+	 */
+	private CompletableFuture<Object> sendAsync(final String apiMethod,
+			final Function<URL, AsyncRequest> request,
+			final MetricsRegistry.MethodMetrics method) {
+		NodeBalancer nodes = this.balancer;
+		NodeBalancer.Node node = (nodes == null) ? null : nodes.choose();
+		long start = System.nanoTime();
+		CompletableFuture<String> sent;
 		try {
-			SSLContext sc = SSLContext.getInstance("SSL");
-			sc.init(null, trustAllCerts,
-					new java.security.SecureRandom());
-			HttpsURLConnection.setDefaultSSLSocketFactory(
-					sc.getSocketFactory());
-		} catch (NoSuchAlgorithmException | KeyManagementException e) {
-			throw new EPLiteException("Unable to create SSL context", e);
-		}
-
-		HostnameVerifier hv = new HostnameVerifier() {
-			//@Override
-			@Override
-			public boolean verify(String hostname, SSLSession session) {
-				return true;
+			sent = request.apply(this.methodUrl(node, apiMethod)).sendAsync();
+		} catch (RuntimeException | Error e) {
+			if (node != null) {
+				this.finish(node, start, e);
+			}
+			throw e;
+		}
+		return sent.handle((response, error) -> {
+			Throwable cause = (error instanceof CompletionException
+					&& error.getCause() != null) ? error.getCause() : error;
+			if (node != null) {
+				this.finish(node, start, cause);
+			}
+			if (error == null) {
+				if (method != null) {
+					method.received(utf8Length(response));
+				}
+				return this.handleResponse(response);
+			}
+			if (cause instanceof EPLiteException) {
+				throw (EPLiteException) cause;
 			}
-		};
-		HttpsURLConnection.setDefaultHostnameVerifier(hv);
+			throw new EPLiteException("Unable to connect"
+					+ " to Etherpad Lite instance (" + cause.getClass()
+					+ "): " + cause.getMessage(), cause);
+		});
+	}
+
+	/**
+	 * Returns the transport as an AsyncTransport.
+	 *
+	 * @return AsyncTransport
+	 */
+	private AsyncTransport asyncTransport() {
+		if (!(this.transport instanceof AsyncTransport)) {
+			throw new EPLiteException("The transport "
+					+ this.transport.getClass().getName()
+					+ " does not support asynchronous requests");
+		}
+		return (AsyncTransport) this.transport;
+	}
+
+	/**
+	 * Returns the parsed content as a Map, never null.
+	 *
+	 * @param response the parsed content
+	 * @return Map
+	 */
+	private static Map toMap(final Object response) {
+		return (response != null) ? (Map) response : new HashMap();
 	}
 }
@@ -1,11 +1,36 @@
 package net.gjerull.etherpad.client;
 
 public class EPLiteException extends RuntimeException {
+    /** The code of a call that failed without an error code of the API. */
+    public static final int NO_CODE = -1;
+
+    private final int code;
+
     public EPLiteException(String message) {
-        super(message);
+        this(message, NO_CODE);
     }
 
     public EPLiteException(String message, Throwable cause) {
         super(message, cause);
+        this.code = NO_CODE;
+    }
+
+    /**
+     * @param message the message of the API
+     * @param code the error code of the API
+     */
+    public EPLiteException(String message, int code) {
+        super(message);
+        this.code = code;
+    }
+
+    /**
+     * Returns the error code of the API, e.g. CODE_INVALID_PARAMETERS,
+     * or NO_CODE if the call failed without one.
+     *
+     * @return int
+     */
+    public int getCode() {
+        return code;
     }
 }
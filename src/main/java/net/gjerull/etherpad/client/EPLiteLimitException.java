@@ -0,0 +1,14 @@
+package net.gjerull.etherpad.client;
+
+/**
+ * Thrown when a call is refused by the ConcurrencyLimiter of its
+ * connection because too many calls are in flight. The request was not
+ * sent, so it can be retried later whatever its method.
+ */
+public class EPLiteLimitException extends EPLiteException {
+    private static final long serialVersionUID = 1L;
+
+    public EPLiteLimitException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,600 @@
+package net.gjerull.etherpad.client;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.JSONValue;
+
+/**
+ * A client of Etherpad Lite's realtime protocol, the socket.io connection
+ * of the pad editor, pushing the changes of pads as they are made.<br />
+ * <br />
+ * Each subscribed pad has its own WebSocket. After the handshake the
+ * server sends CLIENT_VARS, the text, attribution and revision of the pad,
+ * then a NEW_CHANGES message for every revision and USER_NEWINFO or
+ * USER_LEAVE messages when authors join, change their name or colour, or
+ * leave. The Subscription keeps the text up to date by applying the
+ * changesets, and calls the Listener for each message. No thread is held
+ * while waiting for messages.<br />
+ * <br />
+ * The client speaks Engine.IO 4 over WebSocket, as served by Etherpad
+ * 1.9 and later. Pads of a group need the sessionID of a session created
+ * with createSession. A closed connection is not opened again: the
+ * Listener is told, and may subscribe again.<br />
+ * <br />
+ * Example:<br />
+ * <br />
+ * <code>
+ * EPLiteRealtimeClient realtime = new EPLiteRealtimeClient("http://localhost:9001");<br />
+ * EPLiteRealtimeClient.Subscription pad = realtime.subscribe("my_pad", listener).join();<br />
+ * ...<br />
+ * pad.close();
+ * </code>
+ */
+public class EPLiteRealtimeClient {
+	/** Default connect timeout in milliseconds. */
+	public static final long DEFAULT_CONNECT_TIMEOUT = 10000L;
+	/** Default time to wait for CLIENT_VARS, in milliseconds. */
+	public static final long DEFAULT_SUBSCRIBE_TIMEOUT = 30000L;
+
+	private static final String TOKEN_CHARS =
+			"abcdefghijklmnopqrstuvwxyz0123456789";
+
+	/**
+	 * Receives the messages of a subscribed pad. The calls for a pad are
+	 * made one at a time, in the order of the messages.
+	 */
+	public interface Listener {
+		/**
+		 * Called when CLIENT_VARS was received.
+		 *
+		 * @param pad the subscription
+		 */
+		default void padConnected(Subscription pad) {
+		}
+
+		/**
+		 * Called after a NEW_CHANGES message was applied.
+		 *
+		 * @param pad the subscription, at rev
+		 * @param rev the new revision
+		 * @param changeset the changeset, numbered with the pad's pool
+		 * @param author the author of the change
+		 */
+		default void padChanged(Subscription pad, long rev,
+				Changeset changeset, String author) {
+		}
+
+		/**
+		 * Called for USER_NEWINFO, when an author joins the pad or
+		 * changes their name or colour.
+		 *
+		 * @param pad the subscription
+		 * @param userInfo the userId, name and colorId of the author
+		 */
+		default void userChanged(Subscription pad, Map userInfo) {
+		}
+
+		/**
+		 * Called for USER_LEAVE.
+		 *
+		 * @param pad the subscription
+		 * @param userInfo the userId of the author
+		 */
+		default void userLeft(Subscription pad, Map userInfo) {
+		}
+
+		/**
+		 * Called once when the connection is closed.
+		 *
+		 * @param pad the subscription
+		 * @param error the reason, null after close()
+		 */
+		default void padDisconnected(Subscription pad, Throwable error) {
+		}
+	}
+
+	private final URI uri;
+	private final HttpClient httpClient;
+	/** The author token of this client, sent in CLIENT_READY. */
+	private final String token;
+	private volatile String sessionId;
+	private volatile long subscribeTimeout = DEFAULT_SUBSCRIBE_TIMEOUT;
+
+	/**
+	 * Initializes a new EPLiteRealtimeClient.
+	 *
+	 * @param url an absolute url, including protocol, to the EPL api
+	 */
+	public EPLiteRealtimeClient(final String url) {
+		this(url, TLSConfig.system());
+	}
+
+	/**
+	 * Initializes a new EPLiteRealtimeClient.
+	 *
+	 * @param url an absolute url, including protocol, to the EPL api
+	 * @param tls the TLS settings of wss connections
+	 */
+	public EPLiteRealtimeClient(final String url, final TLSConfig tls) {
+		this(url, HttpClient.newBuilder()
+				.sslContext(tls.getSSLContext())
+				.connectTimeout(Duration.ofMillis(DEFAULT_CONNECT_TIMEOUT))
+				.build());
+	}
+
+	/**
+	 * Initializes a new EPLiteRealtimeClient opening its WebSockets with
+	 * the given client.
+	 *
+	 * @param url an absolute url, including protocol, to the EPL api
+	 * @param httpClient the client opening the WebSockets
+	 */
+	public EPLiteRealtimeClient(final String url,
+			final HttpClient httpClient) {
+		try {
+			URI base = new URI(url);
+			String scheme = "https".equalsIgnoreCase(base.getScheme())
+					? "wss" : "ws";
+			String path = (base.getPath() == null) ? "" : base.getPath();
+			if (path.endsWith("/")) {
+				path = path.substring(0, path.length() - 1);
+			}
+			this.uri = new URI(scheme, null, base.getHost(), base.getPort(),
+					path + "/socket.io/", null, null);
+		} catch (URISyntaxException | NullPointerException e) {
+			throw new EPLiteException("Invalid url " + url, e);
+		}
+		this.httpClient = httpClient;
+		SecureRandom random = new SecureRandom();
+		StringBuilder token = new StringBuilder("t.");
+		for (int i = 0; i < 20; i++) {
+			token.append(TOKEN_CHARS.charAt(
+					random.nextInt(TOKEN_CHARS.length())));
+		}
+		this.token = token.toString();
+	}
+
+	/**
+	 * Sets the session used to open the pads of groups.
+	 *
+	 * @param sessionId the sessionID returned by createSession, null for
+	 *  none
+	 */
+	public final void setSessionId(final String sessionId) {
+		this.sessionId = sessionId;
+	}
+
+	/**
+	 * Sets how long a subscription waits for CLIENT_VARS. A server that
+	 * accepts the WebSocket but never sends it, e.g. for a pad the session
+	 * may not open, fails the subscription after this time.
+	 *
+	 * @param subscribeTimeout the timeout in ms
+	 */
+	public final void setSubscribeTimeout(final long subscribeTimeout) {
+		if (subscribeTimeout <= 0) {
+			throw new IllegalArgumentException(
+					"subscribeTimeout must be positive");
+		}
+		this.subscribeTimeout = subscribeTimeout;
+	}
+
+	/**
+	 * Subscribes to a pad.
+	 *
+	 * @param padId the pad's id string
+	 * @param listener the listener of the pad's messages
+	 * @return a future completed with the subscription once CLIENT_VARS
+	 *  was received, or failed if it was not within the subscribe timeout
+	 */
+	public final CompletableFuture<Subscription> subscribe(
+			final String padId, final Listener listener) {
+		Subscription subscription = new Subscription(padId, listener);
+		WebSocket.Builder builder = this.httpClient.newWebSocketBuilder()
+				.connectTimeout(Duration.ofMillis(DEFAULT_CONNECT_TIMEOUT));
+		String session = this.sessionId;
+		if (session != null) {
+			builder.header("Cookie", "sessionID=" + session);
+		}
+		URI padUri = URI.create(this.uri + "?EIO=4&transport=websocket&padId="
+				+ URLEncoder.encode(padId, StandardCharsets.UTF_8));
+		builder.buildAsync(padUri, subscription.socket).whenComplete((ws, e) -> {
+			if (e != null) {
+				subscription.connected.completeExceptionally(
+						new EPLiteException("Unable to connect to Etherpad"
+								+ " Lite instance (" + e.getClass().getName()
+								+ "): " + e.getMessage(), e));
+			}
+		});
+		long timeout = this.subscribeTimeout;
+		CompletableFuture.delayedExecutor(timeout, TimeUnit.MILLISECONDS)
+				.execute(() -> subscription.timedOut(timeout));
+		return subscription.connected;
+	}
+
+	/**
+	 * A pad subscribed to, kept at the last revision received.
+	 */
+	public final class Subscription implements AutoCloseable {
+		private final String padId;
+		private final Listener listener;
+		private final CompletableFuture<Subscription> connected =
+				new CompletableFuture<>();
+		/** The message being received, in parts. */
+		private final StringBuilder message = new StringBuilder();
+		private final WebSocket.Listener socket = new WebSocket.Listener() {
+			@Override
+			public void onOpen(WebSocket ws) {
+				Subscription.this.opened(ws);
+			}
+
+			@Override
+			public CompletionStage<?> onText(WebSocket ws, CharSequence data,
+					boolean last) {
+				Subscription.this.text(ws, data, last);
+				return null;
+			}
+
+			@Override
+			public CompletionStage<?> onClose(WebSocket ws, int statusCode,
+					String reason) {
+				// Ignored after close(), the server answering it
+				Subscription.this.disconnected(new EPLiteException(
+						"Connection closed (" + statusCode + "): " + reason));
+				return null;
+			}
+
+			@Override
+			public void onError(WebSocket ws, Throwable error) {
+				Subscription.this.disconnected(error);
+			}
+		};
+		/** The authors present, by userId. Guarded by this. */
+		private final Map<String, Map> users = new LinkedHashMap<>();
+		private final AttributePool pool = new AttributePool();
+		/** The last send, the next one waits for it. Guarded by this. */
+		private CompletableFuture<WebSocket> sending;
+		private WebSocket webSocket;
+		/** Guarded by this. */
+		private AText atext;
+		/** Guarded by this. */
+		private long rev = -1L;
+		private volatile boolean closed;
+
+		private Subscription(String padId, Listener listener) {
+			this.padId = padId;
+			this.listener = listener;
+		}
+
+		/** Getter.
+		 * @return the pad's id string
+		 * */
+		public String getPadId() {
+			return padId;
+		}
+
+		/** Getter.
+		 * @return the last revision received, -1 before CLIENT_VARS
+		 * */
+		public synchronized long getRevision() {
+			return rev;
+		}
+
+		/** Getter.
+		 * @return the text and attribution at getRevision(), null before
+		 *  CLIENT_VARS
+		 * */
+		public synchronized AText getAText() {
+			return atext;
+		}
+
+		/** Getter.
+		 * @return the attribute pool of the pad
+		 * */
+		public AttributePool getAttributePool() {
+			return pool;
+		}
+
+		/** Getter.
+		 * @return the userInfo of the authors present, by userId
+		 * */
+		public synchronized Map<String, Map> getUsers() {
+			return Collections.unmodifiableMap(new LinkedHashMap<>(users));
+		}
+
+		/**
+		 * Returns true until the connection is closed.
+		 *
+		 * @return boolean
+		 */
+		public boolean isOpen() {
+			return !closed;
+		}
+
+		/**
+		 * Closes the connection.
+		 */
+		@Override
+		public void close() {
+			WebSocket ws;
+			synchronized (this) {
+				ws = this.webSocket;
+			}
+			this.disconnected(null);
+			if (ws != null && !ws.isOutputClosed()) {
+				ws.sendClose(WebSocket.NORMAL_CLOSURE, "");
+			}
+		}
+
+		private void opened(final WebSocket ws) {
+			synchronized (this) {
+				if (this.closed) {
+					// Timed out while connecting
+					ws.abort();
+					return;
+				}
+				this.webSocket = ws;
+				this.sending = CompletableFuture.completedFuture(ws);
+			}
+			ws.request(1);
+		}
+
+		private void text(final WebSocket ws, final CharSequence data,
+				final boolean last) {
+			this.message.append(data);
+			if (last) {
+				String packet = this.message.toString();
+				this.message.setLength(0);
+				try {
+					this.packet(packet);
+				} catch (RuntimeException e) {
+					this.fail(e);
+				}
+			}
+			ws.request(1);
+		}
+
+		/**
+		 * Handles an Engine.IO packet.
+		 */
+		private void packet(final String packet) {
+			if (packet.isEmpty()) {
+				return;
+			}
+			switch (packet.charAt(0)) {
+			case '0':
+				// open: join the default namespace
+				this.send("40");
+				break;
+			case '1':
+				this.fail(new EPLiteException("Closed by the server"));
+				break;
+			case '2':
+				this.send("3" + packet.substring(1));
+				break;
+			case '4':
+				this.socketIo(packet.substring(1));
+				break;
+			default:
+				break;
+			}
+		}
+
+		/**
+		 * Handles a socket.io packet of the default namespace.
+		 */
+		@SuppressWarnings("unchecked")
+		private void socketIo(final String packet) {
+			if (packet.isEmpty()) {
+				return;
+			}
+			switch (packet.charAt(0)) {
+			case '0':
+				JSONObject ready = new JSONObject();
+				ready.put("component", "pad");
+				ready.put("type", "CLIENT_READY");
+				ready.put("padId", this.padId);
+				ready.put("sessionID", EPLiteRealtimeClient.this.sessionId);
+				ready.put("token", EPLiteRealtimeClient.this.token);
+				JSONObject userInfo = new JSONObject();
+				userInfo.put("colorId", null);
+				userInfo.put("name", null);
+				ready.put("userInfo", userInfo);
+				JSONArray event = new JSONArray();
+				event.add("message");
+				event.add(ready);
+				this.send("42" + event.toJSONString());
+				break;
+			case '1':
+				this.fail(new EPLiteException("Disconnected by the server"));
+				break;
+			case '4':
+				this.fail(new EPLiteException("Connection refused: "
+						+ packet.substring(1)));
+				break;
+			case '2':
+				int start = 1;
+				while (start < packet.length()
+						&& Character.isDigit(packet.charAt(start))) {
+					start++;
+				}
+				Object parsed = JSONValue.parse(packet.substring(start));
+				if (parsed instanceof List && ((List) parsed).size() > 1
+						&& "message".equals(((List) parsed).get(0))
+						&& ((List) parsed).get(1) instanceof Map) {
+					this.message((Map) ((List) parsed).get(1));
+				}
+				break;
+			default:
+				break;
+			}
+		}
+
+		/**
+		 * Handles a message of the pad.
+		 */
+		private void message(final Map message) {
+			if (message.containsKey("disconnect")) {
+				this.fail(new EPLiteException("Disconnected by the server: "
+						+ message.get("disconnect")));
+				return;
+			}
+			if ("deny".equals(message.get("accessStatus"))) {
+				this.fail(new EPLiteException("Access to " + this.padId
+						+ " denied"));
+				return;
+			}
+			Object data = message.get("data");
+			if (!(data instanceof Map)) {
+				return;
+			}
+			Map map = (Map) data;
+			Object type = message.get("type");
+			if ("CLIENT_VARS".equals(type)) {
+				this.clientVars((Map) map.get("collab_client_vars"));
+			} else if ("COLLABROOM".equals(type)) {
+				Object collabType = map.get("type");
+				if ("NEW_CHANGES".equals(collabType)) {
+					this.newChanges(map);
+				} else if ("USER_NEWINFO".equals(collabType)
+						|| "USER_LEAVE".equals(collabType)) {
+					this.user(map, "USER_LEAVE".equals(collabType));
+				}
+			}
+		}
+
+		private void clientVars(final Map vars) {
+			if (vars == null) {
+				throw new EPLiteException("CLIENT_VARS without"
+						+ " collab_client_vars");
+			}
+			Map initial = (Map) vars.get("initialAttributedText");
+			AttributePool initialPool = AttributePool.fromResponse(
+					(Map) vars.get("apool"));
+			AText text = new AText((String) initial.get("text"),
+					Changeset.moveOpsToNewPool((String) initial.get("attribs"),
+							initialPool, this.pool));
+			synchronized (this) {
+				this.atext = text;
+				this.rev = ((Number) vars.get("rev")).longValue();
+			}
+			this.listener.padConnected(this);
+			this.connected.complete(this);
+		}
+
+		private void newChanges(final Map data) {
+			long newRev = ((Number) data.get("newRev")).longValue();
+			String packed = Changeset.moveOpsToNewPool(
+					(String) data.get("changeset"),
+					AttributePool.fromResponse((Map) data.get("apool")),
+					this.pool);
+			Changeset changeset = Changeset.parse(packed);
+			synchronized (this) {
+				if (this.atext == null || newRev != this.rev + 1) {
+					throw new EPLiteException("Revision " + newRev
+							+ " received at revision " + this.rev);
+				}
+				this.atext = changeset.applyTo(this.atext, this.pool);
+				this.rev = newRev;
+			}
+			Object author = data.get("author");
+			this.listener.padChanged(this, newRev, changeset,
+					(author != null) ? author.toString() : null);
+		}
+
+		private void user(final Map data, final boolean left) {
+			Object userInfo = data.get("userInfo");
+			if (!(userInfo instanceof Map)) {
+				return;
+			}
+			Map info = (Map) userInfo;
+			String userId = String.valueOf(info.get("userId"));
+			synchronized (this) {
+				if (left) {
+					this.users.remove(userId);
+				} else {
+					this.users.put(userId, info);
+				}
+			}
+			if (left) {
+				this.listener.userLeft(this, info);
+			} else {
+				this.listener.userChanged(this, info);
+			}
+		}
+
+		/**
+		 * Sends a text after the previous sends.
+		 */
+		private synchronized void send(final String text) {
+			if (this.sending == null || this.closed) {
+				return;
+			}
+			this.sending = this.sending.thenCompose(
+					ws -> ws.sendText(text, true));
+		}
+
+		/**
+		 * Fails the subscription if CLIENT_VARS was not received in time.
+		 */
+		private void timedOut(final long timeout) {
+			EPLiteException error = new EPLiteException("No CLIENT_VARS"
+					+ " received for pad " + this.padId + " within "
+					+ timeout + " ms");
+			if (this.connected.completeExceptionally(error)) {
+				this.fail(error);
+			}
+		}
+
+		/**
+		 * Closes the connection after an error.
+		 */
+		private void fail(final Throwable error) {
+			WebSocket ws;
+			synchronized (this) {
+				ws = this.webSocket;
+			}
+			if (ws != null) {
+				ws.abort();
+			}
+			this.disconnected(error);
+		}
+
+		private void disconnected(final Throwable error) {
+			synchronized (this) {
+				if (this.closed) {
+					return;
+				}
+				this.closed = true;
+			}
+			if (error != null) {
+				this.connected.completeExceptionally(error);
+			} else {
+				this.connected.complete(this);
+			}
+			this.listener.padDisconnected(this, error);
+		}
+
+		@Override
+		public String toString() {
+			return "Subscription{padId=" + padId + ", rev=" + getRevision()
+					+ ", open=" + isOpen() + "}";
+		}
+	}
+}
@@ -0,0 +1,358 @@
+package net.gjerull.etherpad.client;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Routes the calls for pads and groups sharded over independent Etherpad
+ * Lite instances to the instance holding them.<br />
+ * <br />
+ * Each shard, known by a stable name, owns virtualNodes points on a
+ * consistent-hash ring; a key belongs to the shard of the first point at
+ * or after its hash. A group pad ("g.xxx$name") is hashed by its group
+ * ID, so the pads of a group stay on the shard of the group. Adding a
+ * shard to N moves about 1/(N+1) of the keys to it, and none between the
+ * other shards. The lookup computes the hash over the characters of the
+ * key and binary-searches the ring, without allocating.<br />
+ * <br />
+ * listAllPads and listAllGroups ask every shard in parallel and merge the
+ * answers.<br />
+ * <br />
+ * Example:<br />
+ * <br />
+ * <code>
+ * EPLiteShardedClient shards = new EPLiteShardedClient();<br />
+ * shards.addShard("pads1", new EPLiteClient("http://pads1:9001", apiKey));<br />
+ * shards.addShard("pads2", new EPLiteClient("http://pads2:9001", apiKey));<br />
+ * String text = shards.forPad("my_pad").getText("my_pad").get("text").toString();
+ * </code>
+ */
+public class EPLiteShardedClient implements Closeable {
+	/** Default number of points of each shard on the ring. */
+	public static final int DEFAULT_VIRTUAL_NODES = 160;
+	/** Number of groups createGroup creates before it gives up. */
+	static final int MAX_CREATE_ATTEMPTS = 100;
+
+	private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+	private final int virtualNodes;
+	private final ExecutorService executor =
+			Executors.newCachedThreadPool(runnable -> {
+				Thread thread = new Thread(runnable,
+						"eplite-shard-" + THREAD_COUNT.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			});
+	/** The shards by name, in the order they were added. Guarded by
+	 * this. */
+	private final Map<String, EPLiteClient> shards = new LinkedHashMap<>();
+	/** Replaced as a whole when the shards change. */
+	private volatile Ring ring = new Ring(new long[0], new int[0],
+			new String[0], new EPLiteClient[0]);
+
+	/**
+	 * Initializes a new EPLiteShardedClient without shards, with the
+	 * default number of virtual nodes.
+	 */
+	public EPLiteShardedClient() {
+		this(DEFAULT_VIRTUAL_NODES);
+	}
+
+	/**
+	 * Initializes a new EPLiteShardedClient without shards.
+	 *
+	 * @param virtualNodes the number of points of each shard on the ring;
+	 *  more points spread the keys more evenly
+	 */
+	public EPLiteShardedClient(final int virtualNodes) {
+		if (virtualNodes < 1) {
+			throw new IllegalArgumentException(
+					"virtualNodes must be at least 1");
+		}
+		this.virtualNodes = virtualNodes;
+	}
+
+	/**
+	 * Adds a shard. The keys it takes over are not moved: their pads
+	 * should be copied to it first.
+	 *
+	 * @param name the stable name of the shard, deciding its points on
+	 *  the ring
+	 * @param client the client of the shard
+	 */
+	public final synchronized void addShard(final String name,
+			final EPLiteClient client) {
+		if (this.shards.containsKey(name)) {
+			throw new IllegalArgumentException("Shard " + name
+					+ " already exists");
+		}
+		this.shards.put(name, client);
+		this.ring = this.build();
+	}
+
+	/**
+	 * Removes a shard. Its keys move to the other shards.
+	 *
+	 * @param name the name of the shard
+	 * @return the client of the shard, null if there was none
+	 */
+	public final synchronized EPLiteClient removeShard(final String name) {
+		EPLiteClient client = this.shards.remove(name);
+		if (client != null) {
+			this.ring = this.build();
+		}
+		return client;
+	}
+
+	/** Getter.
+	 * @return the shards by name, in the order they were added
+	 * */
+	public final synchronized Map<String, EPLiteClient> getShards() {
+		return Collections.unmodifiableMap(
+				new LinkedHashMap<>(this.shards));
+	}
+
+	/**
+	 * Returns the client of the shard holding a pad.
+	 *
+	 * @param padID the id of the pad, a group pad being routed by its
+	 *  group
+	 * @return EPLiteClient
+	 */
+	public final EPLiteClient forPad(final String padID) {
+		Ring current = this.ring;
+		return current.clients[current.owner(padID, keyEnd(padID))];
+	}
+
+	/**
+	 * Returns the client of the shard holding a group and its pads.
+	 *
+	 * @param groupID the id of the group
+	 * @return EPLiteClient
+	 */
+	public final EPLiteClient forGroup(final String groupID) {
+		Ring current = this.ring;
+		return current.clients[current.owner(groupID, groupID.length())];
+	}
+
+	/**
+	 * Returns the name of the shard holding a pad.
+	 *
+	 * @param padID the id of the pad
+	 * @return String
+	 */
+	public final String shardOf(final String padID) {
+		Ring current = this.ring;
+		return current.names[current.owner(padID, keyEnd(padID))];
+	}
+
+	/**
+	 * Creates a new group on the shard its ID belongs to. Etherpad Lite
+	 * chooses the ID, so groups are created on each shard in turn and
+	 * deleted until one gets an ID of the shard it was created on, about
+	 * one group per shard.
+	 *
+	 * @return Map containing the groupID
+	 */
+	public final Map createGroup() {
+		for (int i = 0; i < MAX_CREATE_ATTEMPTS; i++) {
+			Ring current = this.ring;
+			if (current.clients.length == 0) {
+				throw new EPLiteException("No shard to create a group on");
+			}
+			EPLiteClient client = current.clients[i % current.clients.length];
+			Map group = client.createGroup();
+			String groupID = (String) group.get("groupID");
+			if (this.forGroup(groupID) == client) {
+				return group;
+			}
+			client.deleteGroup(groupID);
+		}
+		throw new EPLiteException("Unable to create a group on its shard"
+				+ " after " + MAX_CREATE_ATTEMPTS + " attempts");
+	}
+
+	/**
+	 * Lists all pads of every shard.
+	 *
+	 * @return Map containing the padIDs of all shards
+	 */
+	public final Map listAllPads() {
+		return this.fanOut("padIDs", EPLiteClient::listAllPads);
+	}
+
+	/**
+	 * Lists all groups of every shard.
+	 *
+	 * @return Map containing the groupIDs of all shards
+	 */
+	public final Map listAllGroups() {
+		return this.fanOut("groupIDs", EPLiteClient::listAllGroups);
+	}
+
+	/**
+	 * Stops the fan-out threads and closes the client of every shard.
+	 *
+	 * @throws IOException if a client fails to close
+	 */
+	@Override
+	public void close() throws IOException {
+		this.executor.shutdownNow();
+		IOException error = null;
+		for (EPLiteClient client : this.getShards().values()) {
+			try {
+				client.close();
+			} catch (IOException e) {
+				error = e;
+			}
+		}
+		if (error != null) {
+			throw error;
+		}
+	}
+
+	/**
+	 * Makes a listing call on every shard in parallel and concatenates
+	 * the lists under key, in the order of the shards.
+	 */
+	private Map fanOut(final String key,
+			final Function<EPLiteClient, Map> call) {
+		Map<String, EPLiteClient> all = this.getShards();
+		Map<String, Future<Map>> answers = new LinkedHashMap<>();
+		for (Map.Entry<String, EPLiteClient> shard : all.entrySet()) {
+			answers.put(shard.getKey(), this.executor.submit(
+					() -> call.apply(shard.getValue())));
+		}
+		List<Object> merged = new ArrayList<>();
+		for (Map.Entry<String, Future<Map>> answer : answers.entrySet()) {
+			try {
+				Object ids = answer.getValue().get().get(key);
+				if (ids != null) {
+					merged.addAll((List<?>) ids);
+				}
+			} catch (ExecutionException e) {
+				for (Future<Map> other : answers.values()) {
+					other.cancel(true);
+				}
+				throw new EPLiteException("Shard " + answer.getKey()
+						+ " failed: " + e.getCause().getMessage(),
+						e.getCause());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new EPLiteException("Interrupted while waiting for"
+						+ " shard " + answer.getKey(), e);
+			}
+		}
+		Map<String, Object> result = new HashMap<>();
+		result.put(key, merged);
+		return result;
+	}
+
+	/**
+	 * Returns the end of the routing key of a pad: its group ID for a
+	 * group pad, the whole ID otherwise.
+	 */
+	private static int keyEnd(final String padID) {
+		if (padID.startsWith("g.")) {
+			int separator = padID.indexOf('$');
+			if (separator > 0) {
+				return separator;
+			}
+		}
+		return padID.length();
+	}
+
+	/**
+	 * Hashes the first end characters of a key: FNV-1a over the chars,
+	 * then the finalizer of MurmurHash3 to spread the bits.
+	 */
+	static long hash(final String key, final int end) {
+		long h = 0xcbf29ce484222325L;
+		for (int i = 0; i < end; i++) {
+			h ^= key.charAt(i);
+			h *= 0x100000001b3L;
+		}
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	/**
+	 * Builds the ring of the current shards.
+	 */
+	private Ring build() {
+		int size = this.shards.size();
+		String[] names = this.shards.keySet().toArray(new String[size]);
+		EPLiteClient[] clients = this.shards.values()
+				.toArray(new EPLiteClient[size]);
+		long[][] entries = new long[size * this.virtualNodes][];
+		for (int shard = 0; shard < size; shard++) {
+			for (int i = 0; i < this.virtualNodes; i++) {
+				String point = names[shard] + "#" + i;
+				entries[shard * this.virtualNodes + i] = new long[] {
+						hash(point, point.length()), shard };
+			}
+		}
+		Arrays.sort(entries, (a, b) -> (a[0] != b[0])
+				? Long.compare(a[0], b[0])
+				// Break collisions by name, not by order of addition
+				: names[(int) a[1]].compareTo(names[(int) b[1]]));
+		long[] points = new long[entries.length];
+		int[] owners = new int[entries.length];
+		for (int i = 0; i < entries.length; i++) {
+			points[i] = entries[i][0];
+			owners[i] = (int) entries[i][1];
+		}
+		return new Ring(points, owners, names, clients);
+	}
+
+	/**
+	 * The points of the shards on the ring, sorted, and their owners.
+	 */
+	private static final class Ring {
+		private final long[] points;
+		private final int[] owners;
+		private final String[] names;
+		private final EPLiteClient[] clients;
+
+		private Ring(final long[] points, final int[] owners,
+				final String[] names, final EPLiteClient[] clients) {
+			this.points = points;
+			this.owners = owners;
+			this.names = names;
+			this.clients = clients;
+		}
+
+		/**
+		 * Returns the index of the shard owning the first end characters
+		 * of a key.
+		 */
+		private int owner(final String key, final int end) {
+			if (this.points.length == 0) {
+				throw new EPLiteException("No shard to route " + key
+						+ " to");
+			}
+			int index = Arrays.binarySearch(this.points, hash(key, end));
+			if (index < 0) {
+				index = -index - 1;
+			}
+			return this.owners[(index == this.points.length) ? 0 : index];
+		}
+	}
+}
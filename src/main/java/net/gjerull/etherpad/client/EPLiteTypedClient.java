@@ -0,0 +1,156 @@
+package net.gjerull.etherpad.client;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Typed variants of the read methods of EPLiteClient.<br />
+ * <br />
+ * The results are decoded straight from the JSON tokens of the
+ * response into small immutable objects with primitive fields, instead
+ * of a JSONObject tree of boxed values.<br />
+ * <br />
+ * Example:<br />
+ * <br />
+ * <code>
+ * EPLiteClient api = new EPLiteClient(url, apiKey);<br />
+ * PadText pad = api.typed().getText("my_pad");<br />
+ * long head = api.typed().getRevisionsCount("my_pad").getRevisions();
+ * </code>
+ */
+public class EPLiteTypedClient {
+	/** EPLiteConnection. */
+	private final EPLiteConnection connection;
+
+	/**
+	 * Initializes a new EPLiteTypedClient on top of a connection.
+	 *
+	 * @param connection the connection to the EPL api
+	 */
+	public EPLiteTypedClient(final EPLiteConnection connection) {
+		this.connection = connection;
+	}
+
+	/**
+	 * Lists all the padIDs in a group.
+	 *
+	 * @param groupID string
+	 * @return PadIdList
+	 */
+	public final PadIdList listPads(final String groupID) {
+		Map<String, Object> args = new HashMap<>();
+		args.put("groupID", groupID);
+		return this.connection.get("listPads", args,
+				new PadIdList.Decoder());
+	}
+
+	/**
+	 * Lists the padIDs of all pads.
+	 *
+	 * @return PadIdList
+	 */
+	public final PadIdList listAllPads() {
+		return this.connection.get("listAllPads",
+				new HashMap<String, Object>(), new PadIdList.Decoder());
+	}
+
+	/**
+	 * Lists the padIDs of the pads the author contributed to.
+	 *
+	 * @param authorId the author's id string
+	 * @return PadIdList
+	 */
+	public final PadIdList listPadsOfAuthor(final String authorId) {
+		Map<String, Object> args = new HashMap<>();
+		args.put("authorID", authorId);
+		return this.connection.get("listPadsOfAuthor", args,
+				new PadIdList.Decoder());
+	}
+
+	/**
+	 * Returns information about a session.
+	 *
+	 * @param sessionID string
+	 * @return SessionInfo
+	 */
+	public final SessionInfo getSessionInfo(final String sessionID) {
+		Map<String, Object> args = new HashMap<>();
+		args.put("sessionID", sessionID);
+		return this.connection.get("getSessionInfo", args,
+				new SessionInfo.Decoder());
+	}
+
+	/**
+	 * Returns the text of a pad.
+	 *
+	 * @param padId the pad's id string
+	 * @return PadText
+	 */
+	public final PadText getText(final String padId) {
+		Map<String, Object> args = new HashMap<>();
+		args.put("padID", padId);
+		return this.connection.get("getText", args, new PadText.Decoder());
+	}
+
+	/**
+	 * Returns the text of a pad at a given revision.
+	 *
+	 * @param padId the pad's id string
+	 * @param rev the revision number
+	 * @return PadText
+	 */
+	public final PadText getText(final String padId, final long rev) {
+		Map<String, Object> args = new HashMap<>();
+		args.put("padID", padId);
+		args.put("rev", rev);
+		return this.connection.get("getText", args, new PadText.Decoder());
+	}
+
+	/**
+	 * Returns the number of revisions of a pad.
+	 *
+	 * @param padId the pad's id string
+	 * @return RevisionCount
+	 */
+	public final RevisionCount getRevisionsCount(final String padId) {
+		Map<String, Object> args = new HashMap<>();
+		args.put("padID", padId);
+		return this.connection.get("getRevisionsCount", args,
+				new RevisionCount.Decoder());
+	}
+
+	/**
+	 * Returns the chat history of a pad.
+	 *
+	 * API >= 1.2.7
+	 *
+	 * @param padId the pad's id string
+	 * @return ChatHistory
+	 */
+	public final ChatHistory getChatHistory(final String padId) {
+		Map<String, Object> args = new HashMap<>();
+		args.put("padID", padId);
+		return this.connection.get("getChatHistory", args,
+				new ChatHistory.Decoder());
+	}
+
+	/**
+	 * Returns a part of the chat history of a pad.
+	 *
+	 * API >= 1.2.7
+	 *
+	 * @param padId the pad's id string
+	 * @param start the index of the first message
+	 * @param end the index of the last message
+	 * @return ChatHistory
+	 */
+	public final ChatHistory getChatHistory(final String padId,
+			final long start, final long end) {
+		Map<String, Object> args = new HashMap<>();
+		args.put("padID", padId);
+		args.put("start", start);
+		args.put("end", end);
+		return this.connection.get("getChatHistory", args,
+				new ChatHistory.Decoder());
+	}
+}
@@ -0,0 +1,209 @@
+package net.gjerull.etherpad.client;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A form body whose large values are encoded chunk by chunk while the
+ * body is read, so a multi-megabyte text never exists as one encoded
+ * byte array or String.<br />
+ * <br />
+ * Small values are encoded up front. A value is large when it is a
+ * String longer than STREAMED_LENGTH or a ByteBuffer, which holds bytes
+ * that are already in the charset of the connection (e.g. a memory
+ * mapped UTF-8 file) and is percent-encoded byte by byte.
+ */
+final class FormBody implements RequestBody {
+	/** Strings longer than this are encoded while the body is read. */
+	static final int STREAMED_LENGTH = 32 * 1024;
+
+	/** Characters encoded at a time. */
+	private static final int CHUNK_CHARS = 8 * 1024;
+
+	/** Bytes of a ByteBuffer encoded at a time. */
+	private static final int CHUNK_BYTES = 16 * 1024;
+
+	/** Encoded byte[] parts and the large values between them. */
+	private final List<Object> parts = new ArrayList<>();
+
+	private final Charset charset;
+
+	/** The number of bytes, -1 until it is computed. */
+	private volatile long contentLength = -1L;
+
+	/**
+	 * Builds the body of a call.
+	 *
+	 * @param apiKeyParam the encoded apikey parameter
+	 * @param apiArgs the arguments of the call
+	 * @param charset the charset of the percent-encoded bytes
+	 */
+	FormBody(final String apiKeyParam, final Map<String, Object> apiArgs,
+			final Charset charset) {
+		this.charset = charset;
+		FormEncoder head = FormEncoder.get().appendRaw(apiKeyParam);
+		for (Map.Entry<String, Object> entry : apiArgs.entrySet()) {
+			head.appendRaw('&').encode(entry.getKey(), charset)
+			.appendRaw('=');
+			Object value = entry.getValue();
+			if (isLarge(value)) {
+				this.parts.add(head.toByteArray());
+				this.parts.add((value instanceof ByteBuffer)
+						? ((ByteBuffer) value).slice() : value);
+				head = FormEncoder.get();
+			} else {
+				head.encode(String.valueOf(value), charset);
+			}
+		}
+		this.parts.add(head.toByteArray());
+	}
+
+	/**
+	 * Returns true if any argument is large enough to be streamed.
+	 *
+	 * @param apiArgs the arguments of a call
+	 * @return boolean
+	 */
+	static boolean isStreamed(final Map<String, Object> apiArgs) {
+		for (Object value : apiArgs.values()) {
+			if (isLarge(value)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean isLarge(final Object value) {
+		return value instanceof ByteBuffer || (value instanceof String
+				&& ((String) value).length() > STREAMED_LENGTH);
+	}
+
+	@Override
+	public long getContentLength() {
+		long length = this.contentLength;
+		if (length < 0) {
+			length = 0L;
+			FormEncoder encoder = new FormEncoder();
+			for (Object part : this.parts) {
+				if (part instanceof byte[]) {
+					length += ((byte[]) part).length;
+					continue;
+				}
+				for (int offset = 0, size = sizeOf(part); offset < size;) {
+					int end = chunkEnd(part, offset);
+					length += this.encode(encoder.reset(), part, offset, end)
+							.length();
+					offset = end;
+				}
+			}
+			this.contentLength = length;
+		}
+		return length;
+	}
+
+	@Override
+	public InputStream openStream() {
+		return new FormStream();
+	}
+
+	private static int sizeOf(final Object value) {
+		return (value instanceof ByteBuffer)
+				? ((ByteBuffer) value).remaining() : ((String) value).length();
+	}
+
+	/**
+	 * Returns the end of the chunk starting at offset, never splitting a
+	 * surrogate pair.
+	 */
+	private static int chunkEnd(final Object value, final int offset) {
+		if (value instanceof ByteBuffer) {
+			return Math.min(offset + CHUNK_BYTES,
+					((ByteBuffer) value).remaining());
+		}
+		String text = (String) value;
+		int end = Math.min(offset + CHUNK_CHARS, text.length());
+		if (end < text.length()
+				&& Character.isHighSurrogate(text.charAt(end - 1))) {
+			end++;
+		}
+		return end;
+	}
+
+	private FormEncoder encode(final FormEncoder encoder, final Object value,
+			final int start, final int end) {
+		if (value instanceof ByteBuffer) {
+			ByteBuffer chunk = ((ByteBuffer) value).duplicate();
+			chunk.position(start).limit(end);
+			return encoder.encode(chunk);
+		}
+		return encoder.encode((String) value, start, end, this.charset);
+	}
+
+	/**
+	 * Reads the parts, encoding the large values one chunk at a time.
+	 */
+	private final class FormStream extends InputStream {
+		private final FormEncoder encoder = new FormEncoder();
+		/** The next part. */
+		private int part;
+		/** The offset of the next chunk in the current large value. */
+		private int offset;
+		private byte[] bytes = new byte[0];
+		private int length;
+		private int position;
+
+		/**
+		 * Moves to the next non-empty chunk if the current one is read.
+		 *
+		 * @return false at the end of the body
+		 */
+		private boolean fill() {
+			while (this.position >= this.length) {
+				if (this.part >= parts.size()) {
+					return false;
+				}
+				Object current = parts.get(this.part);
+				if (current instanceof byte[]) {
+					this.bytes = (byte[]) current;
+					this.length = this.bytes.length;
+					this.part++;
+				} else if (this.offset >= sizeOf(current)) {
+					this.part++;
+					this.offset = 0;
+					continue;
+				} else {
+					int end = chunkEnd(current, this.offset);
+					encode(this.encoder.reset(), current, this.offset, end);
+					this.offset = end;
+					this.bytes = this.encoder.buffer();
+					this.length = this.encoder.length();
+				}
+				this.position = 0;
+			}
+			return true;
+		}
+
+		@Override
+		public int read() {
+			return fill() ? this.bytes[this.position++] & 0xFF : -1;
+		}
+
+		@Override
+		public int read(final byte[] target, final int off, final int len) {
+			if (len == 0) {
+				return 0;
+			}
+			if (!fill()) {
+				return -1;
+			}
+			int n = Math.min(len, this.length - this.position);
+			System.arraycopy(this.bytes, this.position, target, off, n);
+			this.position += n;
+			return n;
+		}
+	}
+}
@@ -0,0 +1,263 @@
+package net.gjerull.etherpad.client;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Builds application/x-www-form-urlencoded strings into a byte buffer
+ * reused by the calling thread.<br />
+ * <br />
+ * The encoding is the one of URLEncoder (space as '+', letters, digits
+ * and ".-*_" kept as is, everything else percent-encoded), but driven
+ * by lookup tables and without creating intermediate Strings per value.
+ */
+final class FormEncoder {
+	/** Buffers larger than this are not kept for the next request. */
+	private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+
+	/** Characters written as is. */
+	private static final boolean[] SAFE = new boolean[128];
+
+	/** Upper case hex digits. */
+	private static final byte[] HEX = {
+		'0', '1', '2', '3', '4', '5', '6', '7',
+		'8', '9', 'A', 'B', 'C', 'D', 'E', 'F'
+	};
+
+	static {
+		for (char c = 'a'; c <= 'z'; c++) {
+			SAFE[c] = true;
+		}
+		for (char c = 'A'; c <= 'Z'; c++) {
+			SAFE[c] = true;
+		}
+		for (char c = '0'; c <= '9'; c++) {
+			SAFE[c] = true;
+		}
+		SAFE['.'] = true;
+		SAFE['-'] = true;
+		SAFE['*'] = true;
+		SAFE['_'] = true;
+	}
+
+	private static final ThreadLocal<FormEncoder> ENCODERS =
+			ThreadLocal.withInitial(FormEncoder::new);
+
+	private byte[] buffer = new byte[256];
+	private int length;
+
+	/**
+	 * Creates an encoder owned by the caller, e.g. for the chunks of a
+	 * FormBody, rather than the one of the calling thread.
+	 */
+	FormEncoder() {
+	}
+
+	/**
+	 * Returns the empty encoder of the calling thread.
+	 *
+	 * @return FormEncoder
+	 */
+	static FormEncoder get() {
+		FormEncoder encoder = ENCODERS.get();
+		if (encoder.buffer.length > MAX_RETAINED_CAPACITY) {
+			encoder.buffer = new byte[256];
+		}
+		encoder.length = 0;
+		return encoder;
+	}
+
+	/**
+	 * Empties this encoder.
+	 *
+	 * @return this
+	 */
+	FormEncoder reset() {
+		this.length = 0;
+		return this;
+	}
+
+	/**
+	 * Appends a string that is known to need no encoding.
+	 *
+	 * @param ascii the string, only US-ASCII characters
+	 * @return this
+	 */
+	FormEncoder appendRaw(final String ascii) {
+		int n = ascii.length();
+		ensureCapacity(n);
+		for (int i = 0; i < n; i++) {
+			this.buffer[this.length++] = (byte) ascii.charAt(i);
+		}
+		return this;
+	}
+
+	/**
+	 * Appends a single character that is known to need no encoding.
+	 *
+	 * @param c the character
+	 * @return this
+	 */
+	FormEncoder appendRaw(final char c) {
+		ensureCapacity(1);
+		this.buffer[this.length++] = (byte) c;
+		return this;
+	}
+
+	/**
+	 * Appends the form encoding of a value.
+	 *
+	 * @param value the value
+	 * @param charset the charset of the percent-encoded bytes
+	 * @return this
+	 */
+	FormEncoder encode(final String value, final Charset charset) {
+		return encode(value, 0, value.length(), charset);
+	}
+
+	/**
+	 * Appends the form encoding of a part of a value.
+	 *
+	 * @param value the value
+	 * @param start the index of the first character
+	 * @param end the index after the last character
+	 * @param charset the charset of the percent-encoded bytes
+	 * @return this
+	 */
+	FormEncoder encode(final String value, final int start, final int end,
+			final Charset charset) {
+		if (charset.equals(StandardCharsets.UTF_8)) {
+			encodeUtf8(value, start, end);
+		} else {
+			byte[] bytes = value.substring(start, end).getBytes(charset);
+			encodeBytes(ByteBuffer.wrap(bytes));
+		}
+		return this;
+	}
+
+	/**
+	 * Appends the form encoding of bytes that are already in the target
+	 * charset, consuming the remaining bytes of the buffer.
+	 *
+	 * @param bytes the bytes
+	 * @return this
+	 */
+	FormEncoder encode(final ByteBuffer bytes) {
+		encodeBytes(bytes);
+		return this;
+	}
+
+	/** Getter.
+	 * @return the number of encoded bytes
+	 * */
+	int length() {
+		return this.length;
+	}
+
+	/**
+	 * Returns the buffer of the encoder, holding length() encoded bytes.
+	 * It is overwritten by the next use of the encoder.
+	 *
+	 * @return byte[]
+	 */
+	byte[] buffer() {
+		return this.buffer;
+	}
+
+	/**
+	 * Returns a copy of the encoded bytes.
+	 *
+	 * @return byte[]
+	 */
+	byte[] toByteArray() {
+		return Arrays.copyOf(this.buffer, this.length);
+	}
+
+	/**
+	 * Returns the encoded string.
+	 *
+	 * @return String
+	 */
+	@Override
+	public String toString() {
+		return new String(this.buffer, 0, this.length,
+				StandardCharsets.US_ASCII);
+	}
+
+	private void encodeUtf8(final String value, final int start,
+			final int n) {
+		ensureCapacity(n - start);
+		byte[] out = this.buffer;
+		int pos = this.length;
+		for (int i = start; i < n; i++) {
+			// A char (or surrogate pair) writes at most 12 bytes
+			if (pos + 12 > out.length) {
+				this.length = pos;
+				ensureCapacity(12 + (n - i));
+				out = this.buffer;
+			}
+			char c = value.charAt(i);
+			if (c < 128) {
+				if (SAFE[c]) {
+					out[pos++] = (byte) c;
+				} else if (c == ' ') {
+					out[pos++] = '+';
+				} else {
+					pos = percent(out, pos, c);
+				}
+			} else if (c < 0x800) {
+				pos = percent(out, pos, 0xC0 | (c >> 6));
+				pos = percent(out, pos, 0x80 | (c & 0x3F));
+			} else if (Character.isHighSurrogate(c) && i + 1 < n
+					&& Character.isLowSurrogate(value.charAt(i + 1))) {
+				int cp = Character.toCodePoint(c, value.charAt(++i));
+				pos = percent(out, pos, 0xF0 | (cp >> 18));
+				pos = percent(out, pos, 0x80 | ((cp >> 12) & 0x3F));
+				pos = percent(out, pos, 0x80 | ((cp >> 6) & 0x3F));
+				pos = percent(out, pos, 0x80 | (cp & 0x3F));
+			} else if (Character.isSurrogate(c)) {
+				// Unpaired surrogate, encoded as '?' like String.getBytes
+				pos = percent(out, pos, '?');
+			} else {
+				pos = percent(out, pos, 0xE0 | (c >> 12));
+				pos = percent(out, pos, 0x80 | ((c >> 6) & 0x3F));
+				pos = percent(out, pos, 0x80 | (c & 0x3F));
+			}
+		}
+		this.length = pos;
+	}
+
+	private void encodeBytes(final ByteBuffer bytes) {
+		ensureCapacity(bytes.remaining() * 3);
+		byte[] out = this.buffer;
+		int pos = this.length;
+		while (bytes.hasRemaining()) {
+			byte b = bytes.get();
+			if (b >= 0 && SAFE[b]) {
+				out[pos++] = b;
+			} else if (b == ' ') {
+				out[pos++] = '+';
+			} else {
+				pos = percent(out, pos, b & 0xFF);
+			}
+		}
+		this.length = pos;
+	}
+
+	private static int percent(final byte[] out, int pos, final int b) {
+		out[pos++] = '%';
+		out[pos++] = HEX[(b >> 4) & 0xF];
+		out[pos++] = HEX[b & 0xF];
+		return pos;
+	}
+
+	private void ensureCapacity(final int extra) {
+		int required = this.length + extra;
+		if (required > this.buffer.length) {
+			this.buffer = Arrays.copyOf(this.buffer,
+					Math.max(required, this.buffer.length * 2));
+		}
+	}
+}
@@ -1,8 +1,11 @@
 package net.gjerull.etherpad.client;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
 import java.net.URL;
+import java.net.URLConnection;
 
 import etm.core.configuration.EtmManager;
 import etm.core.monitor.EtmMonitor;
@@ -18,10 +21,14 @@ import etm.core.monitor.EtmPoint;
  * String resp = req.send();<br />
  * </code>
  */
-public class GETRequest implements Request {
+public class GETRequest implements StreamingRequest {
 
 	private final URL url;
+	private final TLSConfig tls;
 	private static final EtmMonitor etmMonitor = EtmManager.getEtmMonitor();
+	/** The connection being sent, null before and after. */
+	private volatile URLConnection connection;
+	private volatile boolean aborted;
 
 	/**
 	 * Instantiates a new GETRequest.
@@ -29,7 +36,18 @@ public class GETRequest implements Request {
 	 * @param url the URL object
 	 */
 	public GETRequest(URL url) {
+		this(url, null);
+	}
+
+	/**
+	 * Instantiates a new GETRequest.
+	 *
+	 * @param url the URL object
+	 * @param tls the TLS settings, null to use the JVM defaults
+	 */
+	public GETRequest(URL url, TLSConfig tls) {
 		this.url = url;
+		this.tls = tls;
 	}
 
 	/**
@@ -39,19 +57,70 @@ public class GETRequest implements Request {
 	 */
 	@Override
 	public String send() throws Exception {
+		return send(ResponseHandler.TEXT);
+	}
+
+	/**
+	 * Sends the request and lets the handler read the response
+	 * straight from the connection.
+	 *
+	 * @param handler the handler reading the response body
+	 * @return the result of the handler
+	 */
+	@Override
+	public <T> T send(ResponseHandler<T> handler) throws Exception {
 		EtmPoint point = etmMonitor.createPoint("GETRequest.send");
 
 		try {
-			BufferedReader in = new BufferedReader(new InputStreamReader(url.openStream()));
-			StringBuilder response = new StringBuilder();
-			String buffer;
-			while ((buffer = in.readLine()) != null) {
-				response.append(buffer);
+			URLConnection con = this.url.openConnection();
+			this.connection = con;
+			if (this.aborted) {
+				throw new InterruptedIOException("Request aborted");
 			}
-			in.close();
-			return response.toString();
+			if (this.tls != null) {
+				this.tls.configure(con);
+			}
+			int timeout = RetryPolicy.timeout(0);
+			if (timeout > 0) {
+				con.setConnectTimeout(timeout);
+				con.setReadTimeout(timeout);
+			}
+			CallTiming.connect(this.url, con);
+
+			if (con instanceof HttpURLConnection) {
+				int status = ((HttpURLConnection) con).getResponseCode();
+				CallTiming.responded(status);
+				if (status >= 400) {
+					throw new HttpStatusException(status, this.url.toString());
+				}
+			}
+			try (InputStream in = con.getInputStream()) {
+				return handler.handle(in,
+						ResponseHandler.charsetOf(con.getContentType()));
+			}
+		} catch (IOException e) {
+			if (this.aborted) {
+				InterruptedIOException abort =
+						new InterruptedIOException("Request aborted");
+				abort.initCause(e);
+				throw abort;
+			}
+			throw e;
 		} finally {
+			this.connection = null;
 			point.collect();
 		}
 	}
+
+	/**
+	 * Aborts the request, closing its connection.
+	 */
+	@Override
+	public void abort() {
+		this.aborted = true;
+		URLConnection con = this.connection;
+		if (con instanceof HttpURLConnection) {
+			((HttpURLConnection) con).disconnect();
+		}
+	}
 }
@@ -0,0 +1,395 @@
+package net.gjerull.etherpad.client;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Sends a second request for an idempotent read that is slower than
+ * usual, and takes the first answer.<br />
+ * <br />
+ * A read that has no answer after the hedge delay, by default the 95th
+ * percentile of the recent latencies, is sent once more; the request
+ * answered last is then cancelled. A pause of the server (e.g. garbage
+ * collection) thus costs the hedge delay instead of the whole pause,
+ * when the second request is not caught in it too. Only get*, list* and
+ * padUsers* calls are hedged by default.<br />
+ * <br />
+ * Every read earns budgetRatio of a hedge and every hedge spends one,
+ * from a reserve of at most maxBudget, so hedges stay within budgetRatio
+ * of the reads (5% by default) even when every read is slow.<br />
+ * <br />
+ * The first request runs on the calling thread and the hedge on a thread
+ * of the policy, so blocking transports can be hedged. The losing
+ * request is aborted: GETRequest, POSTRequest and PooledTransport close
+ * its connection; with other transports the thread sending it is
+ * interrupted.<br />
+ * <br />
+ * Example:<br />
+ * <br />
+ * <code>
+ * HedgingPolicy hedging = new HedgingPolicy();<br />
+ * connection.setHedgingPolicy(hedging);
+ * </code>
+ */
+public class HedgingPolicy implements AutoCloseable {
+	/** Default percentile of the latencies used as hedge delay. */
+	public static final double DEFAULT_PERCENTILE = 0.95;
+	/** Default hedge delay until enough latencies are known, in ms. */
+	public static final long DEFAULT_INITIAL_DELAY = 100L;
+	/** Default fraction of a hedge earned by each read. */
+	public static final double DEFAULT_BUDGET_RATIO = 0.05;
+	/** Default reserve of hedges. */
+	public static final int DEFAULT_MAX_BUDGET = 5;
+
+	/** Number of recent latencies the percentile is taken from. */
+	static final int WINDOW = 1000;
+	/** Number of latencies between two computations of the delay. */
+	private static final int RECOMPUTE_EVERY = 100;
+
+	private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+	/** The attempt running on the current thread. */
+	private static final ThreadLocal<Attempt<?>> CURRENT =
+			new ThreadLocal<>();
+
+	private final ExecutorService executor;
+	/** Starts the hedges once their delay is over. */
+	private final ScheduledThreadPoolExecutor timer;
+	private final TokenBudget budget;
+	private volatile double percentile = DEFAULT_PERCENTILE;
+	private volatile long minDelayNanos;
+	private volatile Predicate<String> idempotent = RetryPolicy.IDEMPOTENT;
+	/** The recent latencies in ns, a ring. Guarded by this. */
+	private final long[] latencies = new long[WINDOW];
+	/** Number of latencies recorded. Guarded by this. */
+	private long recorded;
+	private volatile long delayNanos =
+			TimeUnit.MILLISECONDS.toNanos(DEFAULT_INITIAL_DELAY);
+	private final AtomicLong hedges = new AtomicLong();
+	private final AtomicLong wins = new AtomicLong();
+	private final AtomicLong exhausted = new AtomicLong();
+
+	/**
+	 * Initializes a new HedgingPolicy with the default budget, running
+	 * the requests on threads of its own.
+	 */
+	public HedgingPolicy() {
+		this(DEFAULT_BUDGET_RATIO, DEFAULT_MAX_BUDGET,
+				Executors.newCachedThreadPool(runnable -> {
+					Thread thread = new Thread(runnable,
+							"eplite-hedge-" + THREAD_COUNT.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}));
+	}
+
+	/**
+	 * Initializes a new HedgingPolicy.
+	 *
+	 * @param budgetRatio the fraction of a hedge earned by each read
+	 * @param maxBudget the largest reserve of hedges, which the budget
+	 *  starts with
+	 * @param executor runs the hedges; it needs a thread for each hedge
+	 *  in flight
+	 */
+	public HedgingPolicy(final double budgetRatio, final int maxBudget,
+			final ExecutorService executor) {
+		this.budget = new TokenBudget(budgetRatio, maxBudget);
+		this.executor = executor;
+		this.timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+			Thread thread = new Thread(runnable,
+					"eplite-hedge-timer-" + THREAD_COUNT.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		// Most reads are answered before their hedge is due
+		this.timer.setRemoveOnCancelPolicy(true);
+	}
+
+	/**
+	 * Sets the percentile of the recent latencies used as hedge delay.
+	 *
+	 * @param percentile between 0 and 1, e.g. 0.95
+	 */
+	public final void setPercentile(final double percentile) {
+		if (percentile <= 0 || percentile > 1) {
+			throw new IllegalArgumentException("Invalid percentile "
+					+ percentile);
+		}
+		this.percentile = percentile;
+	}
+
+	/**
+	 * Sets the shortest hedge delay, whatever the latencies.
+	 *
+	 * @param minDelay the delay in ms
+	 */
+	public final void setMinDelay(final long minDelay) {
+		if (minDelay < 0) {
+			throw new IllegalArgumentException(
+					"minDelay must not be negative");
+		}
+		this.minDelayNanos = TimeUnit.MILLISECONDS.toNanos(minDelay);
+	}
+
+	/**
+	 * Sets which API methods are safe to send twice.
+	 *
+	 * @param idempotent true for the idempotent method names
+	 */
+	public final void setIdempotent(final Predicate<String> idempotent) {
+		this.idempotent = idempotent;
+	}
+
+	/** Getter.
+	 * @return the current hedge delay in ms
+	 * */
+	public final long getDelay() {
+		return TimeUnit.NANOSECONDS.toMillis(this.hedgeDelay());
+	}
+
+	/** Getter.
+	 * @return the number of hedges sent
+	 * */
+	public final long getHedgeCount() {
+		return this.hedges.get();
+	}
+
+	/** Getter.
+	 * @return the number of reads answered first by the hedge
+	 * */
+	public final long getHedgeWinCount() {
+		return this.wins.get();
+	}
+
+	/** Getter.
+	 * @return the number of hedges skipped for lack of budget
+	 * */
+	public final long getBudgetExhaustedCount() {
+		return this.exhausted.get();
+	}
+
+	/**
+	 * Shuts the threads of the policy down.
+	 */
+	@Override
+	public void close() {
+		this.timer.shutdownNow();
+		this.executor.shutdownNow();
+	}
+
+	/**
+	 * Makes a call, hedging it if it is an idempotent read. The first
+	 * request runs on the calling thread; the hedge, if any, on a thread
+	 * of the policy.
+	 *
+	 * @param apiMethod the name of the API method
+	 * @param attempt sends one request of the call
+	 * @param <T> the type of the result
+	 * @return the first answer
+	 */
+	final <T> T execute(final String apiMethod, final Supplier<T> attempt) {
+		if (!this.idempotent.test(apiMethod)) {
+			return attempt.get();
+		}
+		this.budget.deposit();
+		Attempt<T> primary = new Attempt<>(attempt, RetryPolicy.deadline());
+		ScheduledFuture<?> timer = this.timer.schedule(
+				() -> this.hedge(primary, attempt), this.hedgeDelay(),
+				TimeUnit.NANOSECONDS);
+		try {
+			primary.run();
+		} finally {
+			timer.cancel(false);
+		}
+		Attempt<T> hedge;
+		synchronized (primary) {
+			hedge = primary.hedge;
+		}
+		try {
+			if (primary.result.isCompletedExceptionally() && hedge != null) {
+				try {
+					T value = hedge.result.get();
+					this.wins.incrementAndGet();
+					return value;
+				} catch (ExecutionException e) {
+					if (!primary.cancelled) {
+						// Report the error of the primary request
+						return primary.result.get();
+					}
+					throw e;
+				}
+			}
+			return primary.result.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof EPLiteException) {
+				throw (EPLiteException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new EPLiteException(String.valueOf(cause.getMessage()),
+					cause);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new EPLiteException("Interrupted while waiting for"
+					+ " the Etherpad Lite instance", e);
+		} finally {
+			if (hedge != null) {
+				hedge.cancel();
+			}
+		}
+	}
+
+	/**
+	 * Sends the hedge of a request still without answer after the hedge
+	 * delay, if the budget allows. The hedge answering first cancels the
+	 * primary request.
+	 */
+	private <T> void hedge(final Attempt<T> primary,
+			final Supplier<T> attempt) {
+		synchronized (primary) {
+			if (primary.result.isDone()) {
+				return;
+			}
+			if (!this.budget.withdraw()) {
+				this.exhausted.incrementAndGet();
+				return;
+			}
+			this.hedges.incrementAndGet();
+			Attempt<T> hedge = new Attempt<>(attempt, primary.deadline);
+			primary.hedge = hedge;
+			hedge.result.thenRun(primary::cancel);
+			this.executor.execute(hedge::run);
+		}
+	}
+
+	/**
+	 * Lets the request of the attempt running on the current thread, if
+	 * any, be aborted when the attempt is cancelled.
+	 *
+	 * @param request the request being sent, null once it is answered
+	 */
+	static void sending(final StreamingRequest request) {
+		Attempt<?> attempt = CURRENT.get();
+		if (attempt != null) {
+			attempt.sending(request);
+		}
+	}
+
+	private long hedgeDelay() {
+		return Math.max(this.minDelayNanos, this.delayNanos);
+	}
+
+	/**
+	 * Records the latency of an answered request.
+	 */
+	private void record(final long latency) {
+		long[] window = null;
+		synchronized (this) {
+			this.latencies[(int) (this.recorded % WINDOW)] = latency;
+			this.recorded++;
+			if (this.recorded % RECOMPUTE_EVERY == 0) {
+				window = Arrays.copyOf(this.latencies,
+						(int) Math.min(this.recorded, WINDOW));
+			}
+		}
+		if (window != null) {
+			Arrays.sort(window);
+			int index = (int) Math.ceil(this.percentile * window.length) - 1;
+			this.delayNanos = window[Math.max(0, index)];
+		}
+	}
+
+	/**
+	 * One request of a call. It is cancelled by aborting its request,
+	 * or, if the transport can not abort it, by interrupting its thread.
+	 */
+	private final class Attempt<T> {
+		private final Supplier<T> attempt;
+		/** The deadline of the call, bound to the thread of the hedge. */
+		private final Long deadline;
+		private final CompletableFuture<T> result = new CompletableFuture<>();
+		/** The hedge of this request, if sent. Guarded by this. */
+		private Attempt<T> hedge;
+		/** The thread running the attempt. Guarded by this. */
+		private Thread thread;
+		/** The request in flight. Guarded by this. */
+		private StreamingRequest request;
+		private volatile boolean cancelled;
+		/** True if cancel interrupted the thread. Guarded by this. */
+		private boolean interrupted;
+
+		private Attempt(final Supplier<T> attempt, final Long deadline) {
+			this.attempt = attempt;
+			this.deadline = deadline;
+		}
+
+		private void run() {
+			synchronized (this) {
+				if (this.cancelled) {
+					this.result.cancel(false);
+					return;
+				}
+				this.thread = Thread.currentThread();
+			}
+			Attempt<?> outer = CURRENT.get();
+			CURRENT.set(this);
+			Long outerDeadline = RetryPolicy.bind(this.deadline);
+			long start = System.nanoTime();
+			try {
+				T value = this.attempt.get();
+				HedgingPolicy.this.record(System.nanoTime() - start);
+				this.result.complete(value);
+			} catch (Throwable e) {
+				this.result.completeExceptionally(e);
+			} finally {
+				RetryPolicy.bind(outerDeadline);
+				if (outer == null) {
+					CURRENT.remove();
+				} else {
+					CURRENT.set(outer);
+				}
+				synchronized (this) {
+					this.thread = null;
+					this.request = null;
+					if (this.interrupted) {
+						// Not meant for the caller once the attempt is over
+						Thread.interrupted();
+					}
+				}
+			}
+		}
+
+		private synchronized void sending(final StreamingRequest request) {
+			this.request = request;
+			if (request != null && this.cancelled) {
+				request.abort();
+			}
+		}
+
+		private synchronized void cancel() {
+			if (this.cancelled || this.result.isDone()) {
+				return;
+			}
+			this.cancelled = true;
+			if (this.request != null) {
+				this.request.abort();
+			} else if (this.thread != null) {
+				this.interrupted = true;
+				this.thread.interrupt();
+			}
+		}
+	}
+}
@@ -0,0 +1,128 @@
+package net.gjerull.etherpad.client;
+
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A transport multiplexing concurrent calls as HTTP/2 streams over one
+ * or a few connections, built on java.net.http.HttpClient.<br />
+ * <br />
+ * HTTP/2 is negotiated with ALPN on https urls (h2) and with an
+ * HTTP/1.1 Upgrade on http urls (h2c). Servers that do not speak HTTP/2
+ * are transparently served over HTTP/1.1.<br />
+ * <br />
+ * Every HttpClient keeps a single HTTP/2 connection per host, so the
+ * requests are spread round-robin over <code>connections</code> clients
+ * to bound the number of streams sharing one connection.<br />
+ * <br />
+ * Example:<br />
+ * <br />
+ * <code>
+ * EPLiteClient client = new EPLiteClient(url, apiKey,
+ * "1.2.13", "UTF-8", new Http2Transport(2));
+ * </code>
+ */
+public class Http2Transport implements AsyncTransport {
+	/** Default number of HTTP/2 connections per host. */
+	public static final int DEFAULT_CONNECTIONS = 1;
+
+	/** One transport, hence one connection per host, per client. */
+	private final HttpClientTransport[] transports;
+
+	/** Index of the transport used by the next request. */
+	private final AtomicInteger next = new AtomicInteger();
+
+	/**
+	 * Instantiates a new Http2Transport using a single connection
+	 * per host.
+	 */
+	public Http2Transport() {
+		this(DEFAULT_CONNECTIONS);
+	}
+
+	/**
+	 * Instantiates a new Http2Transport.
+	 *
+	 * @param connections the number of HTTP/2 connections per host
+	 */
+	public Http2Transport(final int connections) {
+		this(connections, TLSConfig.system());
+	}
+
+	/**
+	 * Instantiates a new Http2Transport.
+	 *
+	 * @param connections the number of HTTP/2 connections per host
+	 * @param tls the TLS settings of the HTTPS connections
+	 */
+	public Http2Transport(final int connections, final TLSConfig tls) {
+		this(connections, HttpClient.newBuilder()
+				.sslContext(tls.getSSLContext())
+				.connectTimeout(Duration.ofMillis(
+						HttpClientTransport.DEFAULT_CONNECT_TIMEOUT)));
+	}
+
+	/**
+	 * Instantiates a new Http2Transport from a configured builder,
+	 * e.g. with a custom SSLContext or executor. The version of the
+	 * builder is forced to HTTP/2.
+	 *
+	 * @param connections the number of HTTP/2 connections per host
+	 * @param builder the builder of the underlying clients
+	 */
+	public Http2Transport(final int connections,
+			final HttpClient.Builder builder) {
+		if (connections < 1) {
+			throw new IllegalArgumentException(
+					"connections must be at least 1");
+		}
+		builder.version(HttpClient.Version.HTTP_2);
+		this.transports = new HttpClientTransport[connections];
+		for (int i = 0; i < connections; i++) {
+			this.transports[i] = new HttpClientTransport(builder.build());
+		}
+	}
+
+	/** Getter.
+	 * @return the number of HTTP/2 connections per host
+	 * */
+	public final int getConnections() {
+		return transports.length;
+	}
+
+	@Override
+	public AsyncRequest newGetRequest(URL url) {
+		return nextTransport().newGetRequest(url);
+	}
+
+	@Override
+	public AsyncRequest newPostRequest(URL url, String body) {
+		return nextTransport().newPostRequest(url, body);
+	}
+
+	@Override
+	public AsyncRequest newPostRequest(URL url, byte[] body) {
+		return nextTransport().newPostRequest(url, body);
+	}
+
+	@Override
+	public AsyncRequest newPostRequest(URL url, RequestBody body) {
+		return nextTransport().newPostRequest(url, body);
+	}
+
+	/**
+	 * The HttpClients release their connections when they are no
+	 * longer referenced, so there is nothing to close.
+	 */
+	@Override
+	public void close() {
+	}
+
+	private HttpClientTransport nextTransport() {
+		int index = (next.getAndIncrement() & Integer.MAX_VALUE)
+				% transports.length;
+		return transports[index];
+	}
+}
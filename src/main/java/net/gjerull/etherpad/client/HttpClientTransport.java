@@ -0,0 +1,224 @@
+package net.gjerull.etherpad.client;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import etm.core.configuration.EtmManager;
+import etm.core.monitor.EtmMonitor;
+import etm.core.monitor.EtmPoint;
+
+/**
+ * A non-blocking transport built on java.net.http.HttpClient.<br />
+ * <br />
+ * The asynchronous requests are driven by the client's selector thread,
+ * so no thread is held while waiting for the Etherpad Lite server. The
+ * same transport also serves blocking calls.
+ */
+public class HttpClientTransport implements AsyncTransport {
+	/** Default connect timeout in milliseconds. */
+	public static final long DEFAULT_CONNECT_TIMEOUT = 10000L;
+
+	private static final EtmMonitor etmMonitor = EtmManager.getEtmMonitor();
+
+	/** The client sending the requests. */
+	private final HttpClient httpClient;
+
+	/**
+	 * Instantiates a new HttpClientTransport with the default
+	 * connect timeout.
+	 */
+	public HttpClientTransport() {
+		this(TLSConfig.system());
+	}
+
+	/**
+	 * Instantiates a new HttpClientTransport with the default
+	 * connect timeout.
+	 *
+	 * @param tls the TLS settings of the HTTPS connections
+	 */
+	public HttpClientTransport(final TLSConfig tls) {
+		this(HttpClient.newBuilder()
+				.version(HttpClient.Version.HTTP_1_1)
+				.sslContext(tls.getSSLContext())
+				.connectTimeout(Duration.ofMillis(DEFAULT_CONNECT_TIMEOUT))
+				.build());
+	}
+
+	/**
+	 * Instantiates a new HttpClientTransport sending its requests
+	 * through the given client.
+	 *
+	 * @param httpClient the client sending the requests
+	 */
+	public HttpClientTransport(final HttpClient httpClient) {
+		this.httpClient = httpClient;
+	}
+
+	/** Getter.
+	 * @return HttpClient
+	 * */
+	public final HttpClient getHttpClient() {
+		return httpClient;
+	}
+
+	@Override
+	public AsyncRequest newGetRequest(URL url) {
+		return new HttpClientRequest("HttpClientTransport.get",
+				HttpRequest.newBuilder(toUri(url)).GET());
+	}
+
+	@Override
+	public AsyncRequest newPostRequest(URL url, String body) {
+		return new HttpClientRequest("HttpClientTransport.post",
+				HttpRequest.newBuilder(toUri(url))
+				.header("Content-Type", "application/x-www-form-urlencoded")
+				.POST(HttpRequest.BodyPublishers.ofString(body,
+						StandardCharsets.UTF_8)));
+	}
+
+	@Override
+	public AsyncRequest newPostRequest(URL url, byte[] body) {
+		return new HttpClientRequest("HttpClientTransport.post",
+				HttpRequest.newBuilder(toUri(url))
+				.header("Content-Type", "application/x-www-form-urlencoded")
+				.POST(HttpRequest.BodyPublishers.ofByteArray(body)));
+	}
+
+	@Override
+	public AsyncRequest newPostRequest(URL url, RequestBody body) {
+		return new HttpClientRequest("HttpClientTransport.post",
+				HttpRequest.newBuilder(toUri(url))
+				.header("Content-Type", "application/x-www-form-urlencoded")
+				.POST(HttpRequest.BodyPublishers.fromPublisher(
+						HttpRequest.BodyPublishers.ofInputStream(() -> {
+							try {
+								return body.openStream();
+							} catch (IOException e) {
+								throw new UncheckedIOException(e);
+							}
+						}), body.getContentLength())));
+	}
+
+	/**
+	 * The HttpClient releases its connections when it is no longer
+	 * referenced, so there is nothing to close.
+	 */
+	@Override
+	public void close() {
+	}
+
+	private static URI toUri(URL url) {
+		try {
+			return url.toURI();
+		} catch (URISyntaxException e) {
+			throw new EPLiteException("Error in the URL to"
+					+ " the Etherpad Lite instance: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Returns the body of the response, failing like
+	 * URLConnection.getInputStream() on HTTP errors.
+	 */
+	private static String body(HttpResponse<String> response)
+			throws IOException {
+		if (response.statusCode() >= 400) {
+			throw new HttpStatusException(response.statusCode(),
+					response.uri().toString());
+		}
+		return response.body();
+	}
+
+	/**
+	 * A request sent through the HttpClient.
+	 */
+	private final class HttpClientRequest
+			implements AsyncRequest, StreamingRequest {
+		private final String pointName;
+		private final HttpRequest.Builder builder;
+
+		private HttpClientRequest(String pointName,
+				HttpRequest.Builder builder) {
+			this.pointName = pointName;
+			this.builder = builder;
+		}
+
+		/**
+		 * Builds the request, with the time left before the deadline of
+		 * its call as timeout, if any.
+		 */
+		private HttpRequest request() throws SocketTimeoutException {
+			int timeout = RetryPolicy.timeout(0);
+			return (timeout > 0) ? this.builder.copy()
+					.timeout(Duration.ofMillis(timeout)).build()
+					: this.builder.build();
+		}
+
+		/**
+		 * Sends the request and returns the response.
+		 *
+		 * @return String
+		 */
+		@Override
+		public String send() throws Exception {
+			return send(ResponseHandler.TEXT);
+		}
+
+		/**
+		 * Sends the request and lets the handler read the response
+		 * as it arrives.
+		 *
+		 * @param handler the handler reading the response body
+		 * @return the result of the handler
+		 */
+		@Override
+		public <T> T send(ResponseHandler<T> handler) throws Exception {
+			EtmPoint point = etmMonitor.createPoint(this.pointName);
+
+			try {
+				HttpResponse<InputStream> response = httpClient.send(
+						this.request(), HttpResponse.BodyHandlers.ofInputStream());
+				try (InputStream in = response.body()) {
+					if (response.statusCode() >= 400) {
+						throw new HttpStatusException(response.statusCode(),
+								response.uri().toString());
+					}
+					return handler.handle(in, ResponseHandler.charsetOf(
+							response.headers().firstValue("Content-Type")
+							.orElse(null)));
+				}
+			} finally {
+				point.collect();
+			}
+		}
+
+		@Override
+		public CompletableFuture<String> sendAsync() {
+			final EtmPoint point = etmMonitor.createPoint(this.pointName);
+
+			return httpClient.sendAsync(this.builder.build(),
+					HttpResponse.BodyHandlers.ofString())
+					.thenApply(response -> {
+						try {
+							return body(response);
+						} catch (IOException e) {
+							throw new CompletionException(e);
+						}
+					})
+					.whenComplete((response, error) -> point.collect());
+		}
+	}
+}
@@ -0,0 +1,48 @@
+package net.gjerull.etherpad.client;
+
+import java.io.IOException;
+
+/**
+ * Thrown by the transports when the server answers with an HTTP error
+ * status, e.g. 401 for a wrong API key or 404 for an unknown method.
+ * Unlike other IOExceptions, the request did reach the server: a 4xx is
+ * never retried and does not count against the node that answered it.
+ */
+public class HttpStatusException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private final int statusCode;
+
+    /**
+     * @param statusCode the HTTP status of the response
+     * @param url the URL of the request
+     */
+    public HttpStatusException(int statusCode, String url) {
+        // Same message as URLConnection.getInputStream()
+        super("Server returned HTTP response code: " + statusCode
+                + " for URL: " + url);
+        this.statusCode = statusCode;
+    }
+
+    /**
+     * @return the HTTP status of the response
+     */
+    public int getStatusCode() {
+        return this.statusCode;
+    }
+
+    /**
+     * Returns true if a request failed without an answer of the server:
+     * an IOException other than a 4xx status. A 5xx, e.g. the 502 of a
+     * proxy in front of a node that is down, counts as a failure.
+     *
+     * @param cause the cause of a failed call
+     * @return boolean
+     */
+    static boolean isTransportFailure(Throwable cause) {
+        if (cause instanceof HttpStatusException) {
+            return ((HttpStatusException) cause).statusCode >= 500;
+        }
+        return cause instanceof IOException;
+    }
+}
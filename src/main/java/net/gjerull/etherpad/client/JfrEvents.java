@@ -0,0 +1,151 @@
+package net.gjerull.etherpad.client;
+
+import javax.net.ssl.SSLSession;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The JDK Flight Recorder events of the client, on the timeline of the
+ * recording together with GC, thread parking and socket reads.<br />
+ * <br />
+ * The events are enabled by default in any recording and can be turned
+ * off by name, e.g. net.gjerull.etherpad.ApiCall#enabled=false. When no
+ * recording is running, emitting one costs the allocation of the event,
+ * which the JIT usually removes, and a check of a flag.
+ */
+final class JfrEvents {
+	private static final String CATEGORY = "Etherpad Lite";
+
+	private JfrEvents() {
+	}
+
+	/**
+	 * A request of an API call, on the thread sending it.
+	 */
+	@Name("net.gjerull.etherpad.ApiCall")
+	@Label("Etherpad API Call")
+	@Category(CATEGORY)
+	@Description("A request of a call of the Etherpad Lite HTTP API")
+	static final class ApiCall extends Event {
+		@Label("Method")
+		String method;
+
+		@Label("ID Hash")
+		@Description("Hash of the padID or groupID argument, 0 if none")
+		int idHash;
+
+		@Label("HTTP Status")
+		@Description("Status of the HTTP response, 0 if there was none")
+		int httpStatus;
+
+		@Label("Etherpad Code")
+		@Description("Code of the API response, -1 if there was none")
+		int code;
+
+		@Label("Request Bytes")
+		@DataAmount
+		long requestBytes;
+
+		@Label("Response Bytes")
+		@DataAmount
+		long responseBytes;
+	}
+
+	/**
+	 * A new connection, from the TCP connect to the end of the TLS
+	 * handshake if any.
+	 */
+	@Name("net.gjerull.etherpad.ConnectionOpen")
+	@Label("Etherpad Connection Open")
+	@Category(CATEGORY)
+	static final class ConnectionOpen extends Event {
+		@Label("Host")
+		String host;
+
+		@Label("Port")
+		int port;
+	}
+
+	/**
+	 * A request sent on a keep-alive connection.
+	 */
+	@Name("net.gjerull.etherpad.ConnectionReuse")
+	@Label("Etherpad Connection Reuse")
+	@Category(CATEGORY)
+	static final class ConnectionReuse extends Event {
+		@Label("Host")
+		String host;
+
+		@Label("Port")
+		int port;
+	}
+
+	/**
+	 * The TLS handshake of a new connection.
+	 */
+	@Name("net.gjerull.etherpad.TlsHandshake")
+	@Label("Etherpad TLS Handshake")
+	@Category(CATEGORY)
+	static final class TlsHandshake extends Event {
+		@Label("Host")
+		String host;
+
+		@Label("Port")
+		int port;
+
+		@Label("Protocol")
+		String protocol;
+
+		@Label("Cipher Suite")
+		String cipherSuite;
+	}
+
+	/**
+	 * Emits a ConnectionReuse event.
+	 */
+	static void reused(final String host, final int port) {
+		ConnectionReuse event = new ConnectionReuse();
+		if (event.isEnabled()) {
+			event.host = host;
+			event.port = port;
+			event.commit();
+		}
+	}
+
+	/**
+	 * Ends and commits a ConnectionOpen event begun before the connect.
+	 */
+	static void opened(final ConnectionOpen event, final String host,
+			final int port) {
+		event.end();
+		if (event.shouldCommit()) {
+			event.host = host;
+			event.port = port;
+			event.commit();
+		}
+	}
+
+	/**
+	 * Ends and commits a TlsHandshake event begun before the handshake.
+	 *
+	 * @param session the session negotiated, null if unknown
+	 */
+	static void handshaken(final TlsHandshake event, final String host,
+			final int port, final SSLSession session) {
+		event.end();
+		if (event.shouldCommit()) {
+			event.host = host;
+			event.port = port;
+			if (session != null) {
+				event.protocol = session.getProtocol();
+				event.cipherSuite = session.getCipherSuite();
+			}
+			event.commit();
+		}
+	}
+}
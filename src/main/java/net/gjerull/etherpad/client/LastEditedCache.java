@@ -0,0 +1,180 @@
+package net.gjerull.etherpad.client;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A client-side cache for the latest content of a pad, validated with
+ * the pad's last edit timestamp.<br />
+ * <br />
+ * getText and getHTML without a revision and listAuthorsOfPad answer
+ * with the current state of the pad, so they cannot be cached like fixed
+ * revisions. The client stores each response together
+ * with the lastEdited value of the pad at the time it was fetched, asks
+ * getLastEdited before every read and downloads the content again only
+ * when the pad was edited since. Entries are evicted least recently used
+ * first when the estimated size of the cached values exceeds the memory
+ * budget.<br />
+ * <br />
+ * Example:<br />
+ * <br />
+ * <code>
+ * client.setLastEditedCache(new LastEditedCache(16L * 1024L * 1024L));
+ * </code>
+ */
+public class LastEditedCache {
+	/** Estimated bytes of an entry besides its value. */
+	private static final long ENTRY_OVERHEAD = 112L;
+
+	private final WeightedLruCache<Key, Entry> entries;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * Instantiates a new LastEditedCache.
+	 *
+	 * @param maxBytes the memory budget, in estimated bytes
+	 */
+	public LastEditedCache(final long maxBytes) {
+		this.entries = new WeightedLruCache<>(maxBytes);
+	}
+
+	/**
+	 * Returns the cached response of a call if the pad has not been
+	 * edited since it was fetched.
+	 *
+	 * @param apiMethod the API method
+	 * @param padId the pad's id string
+	 * @param lastEdited the current last edit timestamp of the pad
+	 * @return a copy of the cached response, null if it is not cached
+	 *  or out of date
+	 */
+	public final Object get(final String apiMethod, final String padId,
+			final long lastEdited) {
+		Entry entry = this.entries.get(new Key(apiMethod, padId));
+		if (entry == null || entry.lastEdited != lastEdited) {
+			this.misses.incrementAndGet();
+			return null;
+		}
+		this.hits.incrementAndGet();
+		return WeightedLruCache.copyOf(entry.value);
+	}
+
+	/**
+	 * Caches the response of a call, replacing the one fetched at an
+	 * older last edit timestamp.
+	 *
+	 * @param apiMethod the API method
+	 * @param padId the pad's id string
+	 * @param lastEdited the last edit timestamp read before the call
+	 * @param value the response
+	 */
+	public final void put(final String apiMethod, final String padId,
+			final long lastEdited, final Object value) {
+		if (value == null) {
+			return;
+		}
+		this.entries.put(new Key(apiMethod, padId),
+				new Entry(WeightedLruCache.copyOf(value), lastEdited),
+				ENTRY_OVERHEAD + WeightedLruCache.weigh(value));
+	}
+
+	/**
+	 * Removes every cached response of a pad.
+	 *
+	 * @param padId the pad's id string
+	 */
+	public final void invalidate(final String padId) {
+		this.entries.removeIf(key -> key.padId.equals(padId));
+	}
+
+	/**
+	 * Removes every entry.
+	 */
+	public final void clear() {
+		this.entries.clear();
+	}
+
+	/** Getter.
+	 * @return the memory budget, in estimated bytes
+	 * */
+	public final long getMaxBytes() {
+		return entries.getMaxBytes();
+	}
+
+	/** Getter.
+	 * @return the estimated size of the cached values, in bytes
+	 * */
+	public final long getBytes() {
+		return entries.getBytes();
+	}
+
+	/** Getter.
+	 * @return the number of cached responses
+	 * */
+	public final int getSize() {
+		return entries.getSize();
+	}
+
+	/** Getter.
+	 * @return the number of reads answered from the cache
+	 * */
+	public final long getHits() {
+		return hits.get();
+	}
+
+	/** Getter.
+	 * @return the number of reads that downloaded the content
+	 * */
+	public final long getMisses() {
+		return misses.get();
+	}
+
+	/** Getter.
+	 * @return the number of entries evicted to stay in the budget
+	 * */
+	public final long getEvictions() {
+		return entries.getEvictions();
+	}
+
+	/**
+	 * The identity of a cached call.
+	 */
+	private static final class Key {
+		private final String apiMethod;
+		private final String padId;
+
+		private Key(String apiMethod, String padId) {
+			this.apiMethod = apiMethod;
+			this.padId = padId;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) o;
+			return apiMethod.equals(other.apiMethod)
+					&& padId.equals(other.padId);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * apiMethod.hashCode() + padId.hashCode();
+		}
+	}
+
+	/**
+	 * A cached value and the last edit timestamp it was fetched at.
+	 */
+	private static final class Entry {
+		private final Object value;
+		private final long lastEdited;
+
+		private Entry(Object value, long lastEdited) {
+			this.value = value;
+			this.lastEdited = lastEdited;
+		}
+	}
+}
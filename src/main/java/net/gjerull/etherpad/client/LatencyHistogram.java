@@ -0,0 +1,136 @@
+package net.gjerull.etherpad.client;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of latencies in microseconds, recorded without locks.<br />
+ * <br />
+ * As in HdrHistogram, the buckets are log-linear: each power of two is
+ * split into 32 buckets of equal width, so a percentile is off by at most
+ * 1/32 (3%) of its value from 1 microsecond to 19 hours, in 1024 counters.
+ * Longer latencies are counted in the last bucket. Recording increments
+ * one counter of an AtomicLongArray and two LongAdders, and only touches
+ * the maximum when it grows; reading scans the counters, and may miss
+ * the values recorded meanwhile.
+ */
+public class LatencyHistogram {
+	/** Buckets of each power of two. */
+	private static final int SUB_BUCKETS = 32;
+	/** Largest value with a bucket of its own, in microseconds. */
+	static final long MAX_VALUE = (1L << 36) - 1;
+	/** Number of buckets. */
+	static final int BUCKETS = index(MAX_VALUE) + 1;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	/** Updated by every record, so striped to avoid contention. */
+	private final LongAdder total = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Records a latency.
+	 *
+	 * @param nanos the latency in ns
+	 */
+	public final void record(final long nanos) {
+		long micros = Math.max(0L, TimeUnit.NANOSECONDS.toMicros(nanos));
+		this.counts.incrementAndGet(index(Math.min(micros, MAX_VALUE)));
+		this.total.increment();
+		this.sum.add(micros);
+		long current = this.max.get();
+		while (micros > current
+				&& !this.max.compareAndSet(current, micros)) {
+			current = this.max.get();
+		}
+	}
+
+	/** Getter.
+	 * @return the number of latencies recorded
+	 * */
+	public final long getCount() {
+		return this.total.sum();
+	}
+
+	/** Getter.
+	 * @return the mean latency in microseconds, 0 if none was recorded
+	 * */
+	public final double getMean() {
+		long count = this.total.sum();
+		return (count == 0) ? 0 : (double) this.sum.sum() / count;
+	}
+
+	/** Getter.
+	 * @return the largest latency in microseconds
+	 * */
+	public final long getMax() {
+		return this.max.get();
+	}
+
+	/**
+	 * Returns the latency below which a fraction of the latencies fall.
+	 *
+	 * @param percentile the fraction, e.g. 0.99
+	 * @return the latency in microseconds, the middle of its bucket, 0 if
+	 *  none was recorded
+	 */
+	public final long getValueAtPercentile(final double percentile) {
+		if (percentile < 0 || percentile > 1) {
+			throw new IllegalArgumentException("Invalid percentile "
+					+ percentile);
+		}
+		long[] snapshot = new long[BUCKETS];
+		long count = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			snapshot[i] = this.counts.get(i);
+			count += snapshot[i];
+		}
+		if (count == 0) {
+			return 0;
+		}
+		long rank = Math.max(1L, (long) Math.ceil(percentile * count));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += snapshot[i];
+			if (seen >= rank) {
+				return Math.min(middle(i), this.max.get());
+			}
+		}
+		return this.max.get();
+	}
+
+	/**
+	 * Returns the bucket of a value: the value itself below 2 *
+	 * SUB_BUCKETS, then SUB_BUCKETS per power of two.
+	 */
+	static int index(final long value) {
+		if (value < 2 * SUB_BUCKETS) {
+			return (int) value;
+		}
+		int shift = 63 - Long.numberOfLeadingZeros(value) - 5;
+		return 2 * SUB_BUCKETS + (shift - 1) * SUB_BUCKETS
+				+ (int) (value >>> shift) - SUB_BUCKETS;
+	}
+
+	/**
+	 * Returns the middle of the values of a bucket.
+	 */
+	static long middle(final int index) {
+		if (index < 2 * SUB_BUCKETS) {
+			return index;
+		}
+		int shift = (index - 2 * SUB_BUCKETS) / SUB_BUCKETS + 1;
+		long lowest = (long) (index - 2 * SUB_BUCKETS
+				- (shift - 1) * SUB_BUCKETS + SUB_BUCKETS) << shift;
+		return lowest + (1L << (shift - 1));
+	}
+
+	@Override
+	public String toString() {
+		return "LatencyHistogram{count=" + getCount() + ", p50="
+				+ getValueAtPercentile(0.5) + "us, p99="
+				+ getValueAtPercentile(0.99) + "us, max=" + getMax() + "us}";
+	}
+}
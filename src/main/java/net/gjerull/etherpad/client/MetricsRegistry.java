@@ -0,0 +1,366 @@
+package net.gjerull.etherpad.client;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Metrics of the calls of an EPLiteConnection, by API method.<br />
+ * <br />
+ * For each method it counts the calls, the errors by error code of the
+ * API (EPLiteException.NO_CODE for a call that got no answer), the bytes
+ * sent and received, and keeps a LatencyHistogram of the calls, retries
+ * and hedges included. Recording a call looks its method up in a
+ * ConcurrentHashMap and updates LongAdders and the histogram, without
+ * locks.<br />
+ * <br />
+ * The metrics can also be read through JMX, one MXBean per method named
+ * net.gjerull.etherpad.client:type=EPLiteMetrics,name=NAME,method=METHOD.
+ * <br />
+ * <br />
+ * Example:<br />
+ * <br />
+ * <code>
+ * MetricsRegistry metrics = new MetricsRegistry();<br />
+ * connection.setMetrics(metrics);<br />
+ * metrics.registerMBeans("etherpad");<br />
+ * long p99 = metrics.getMethod("getHTML").getP99();
+ * </code>
+ */
+public class MetricsRegistry {
+	/** The JMX domain of the MXBeans. */
+	public static final String JMX_DOMAIN = "net.gjerull.etherpad.client";
+
+	private final ConcurrentMap<String, MethodMetrics> methods =
+			new ConcurrentHashMap<>();
+	/** The name of the MXBeans, null while not registered. Guarded by
+	 * this. */
+	private String jmxName;
+
+	/**
+	 * Returns the metrics of an API method.
+	 *
+	 * @param apiMethod the name of the API method
+	 * @return MethodMetrics, null if the method was never called
+	 */
+	public final MethodMetrics getMethod(final String apiMethod) {
+		return this.methods.get(apiMethod);
+	}
+
+	/** Getter.
+	 * @return the metrics of the methods called so far, by method name
+	 * */
+	public final Map<String, MethodMetrics> getMethods() {
+		return Collections.unmodifiableMap(new TreeMap<>(this.methods));
+	}
+
+	/**
+	 * Registers an MXBean for each method, now and as they are called.
+	 *
+	 * @param name the name of the MXBeans, telling registries apart
+	 */
+	public final synchronized void registerMBeans(final String name) {
+		this.unregisterMBeans();
+		this.jmxName = name;
+		for (MethodMetrics metrics : this.methods.values()) {
+			this.register(metrics);
+		}
+	}
+
+	/**
+	 * Unregisters the MXBeans.
+	 */
+	public final synchronized void unregisterMBeans() {
+		if (this.jmxName == null) {
+			return;
+		}
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			for (MethodMetrics metrics : this.methods.values()) {
+				ObjectName objectName = this.objectName(metrics);
+				if (server.isRegistered(objectName)) {
+					server.unregisterMBean(objectName);
+				}
+			}
+		} catch (JMException e) {
+			throw new EPLiteException("Unable to unregister the metrics"
+					+ " from JMX: " + e.getMessage(), e);
+		} finally {
+			this.jmxName = null;
+		}
+	}
+
+	/**
+	 * Returns the metrics of an API method, creating them on its first
+	 * call.
+	 */
+	final MethodMetrics method(final String apiMethod) {
+		MethodMetrics metrics = this.methods.get(apiMethod);
+		if (metrics == null) {
+			MethodMetrics created = new MethodMetrics(apiMethod);
+			metrics = this.methods.putIfAbsent(apiMethod, created);
+			if (metrics == null) {
+				metrics = created;
+				synchronized (this) {
+					if (this.jmxName != null) {
+						this.register(created);
+					}
+				}
+			}
+		}
+		return metrics;
+	}
+
+	private void register(final MethodMetrics metrics) {
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(
+					metrics, this.objectName(metrics));
+		} catch (InstanceAlreadyExistsException e) {
+			// Registered by another registry of the same name
+		} catch (JMException e) {
+			throw new EPLiteException("Unable to register the metrics"
+					+ " in JMX: " + e.getMessage(), e);
+		}
+	}
+
+	private ObjectName objectName(final MethodMetrics metrics)
+			throws JMException {
+		return new ObjectName(JMX_DOMAIN + ":type=EPLiteMetrics,name="
+				+ ObjectName.quote(this.jmxName) + ",method="
+				+ metrics.apiMethod);
+	}
+
+	@Override
+	public String toString() {
+		return "MetricsRegistry" + getMethods();
+	}
+
+	/**
+	 * The JMX view of the metrics of an API method.
+	 */
+	public interface MethodMetricsMXBean {
+		/** Getter.
+		 * @return the number of calls
+		 * */
+		long getCallCount();
+
+		/** Getter.
+		 * @return the number of failed calls
+		 * */
+		long getErrorCount();
+
+		/** Getter.
+		 * @return the number of failed calls, by error code
+		 * */
+		Map<Integer, Long> getErrorCounts();
+
+		/** Getter.
+		 * @return the bytes of the request bodies and query strings
+		 * */
+		long getBytesOut();
+
+		/** Getter.
+		 * @return the bytes of the response bodies
+		 * */
+		long getBytesIn();
+
+		/** Getter.
+		 * @return the mean latency in microseconds
+		 * */
+		double getMeanLatency();
+
+		/** Getter.
+		 * @return the median latency in microseconds
+		 * */
+		long getP50();
+
+		/** Getter.
+		 * @return the 99th percentile of the latency in microseconds
+		 * */
+		long getP99();
+
+		/** Getter.
+		 * @return the 99.9th percentile of the latency in microseconds
+		 * */
+		long getP999();
+
+		/** Getter.
+		 * @return the largest latency in microseconds
+		 * */
+		long getMaxLatency();
+	}
+
+	/**
+	 * The metrics of an API method.
+	 */
+	public static final class MethodMetrics implements MethodMetricsMXBean {
+		private final String apiMethod;
+		private final LongAdder calls = new LongAdder();
+		private final LongAdder errors = new LongAdder();
+		private final ConcurrentMap<Integer, LongAdder> errorCodes =
+				new ConcurrentHashMap<>();
+		private final LongAdder bytesOut = new LongAdder();
+		private final LongAdder bytesIn = new LongAdder();
+		private final LatencyHistogram latency = new LatencyHistogram();
+
+		private MethodMetrics(final String apiMethod) {
+			this.apiMethod = apiMethod;
+		}
+
+		/** Getter.
+		 * @return the name of the API method
+		 * */
+		public String getApiMethod() {
+			return this.apiMethod;
+		}
+
+		/** Getter.
+		 * @return the histogram of the latencies
+		 * */
+		public LatencyHistogram getLatency() {
+			return this.latency;
+		}
+
+		@Override
+		public long getCallCount() {
+			return this.calls.sum();
+		}
+
+		@Override
+		public long getErrorCount() {
+			return this.errors.sum();
+		}
+
+		@Override
+		public Map<Integer, Long> getErrorCounts() {
+			Map<Integer, Long> counts = new TreeMap<>();
+			for (Map.Entry<Integer, LongAdder> entry
+					: this.errorCodes.entrySet()) {
+				counts.put(entry.getKey(), entry.getValue().sum());
+			}
+			return counts;
+		}
+
+		@Override
+		public long getBytesOut() {
+			return this.bytesOut.sum();
+		}
+
+		@Override
+		public long getBytesIn() {
+			return this.bytesIn.sum();
+		}
+
+		@Override
+		public double getMeanLatency() {
+			return this.latency.getMean();
+		}
+
+		@Override
+		public long getP50() {
+			return this.latency.getValueAtPercentile(0.5);
+		}
+
+		@Override
+		public long getP99() {
+			return this.latency.getValueAtPercentile(0.99);
+		}
+
+		@Override
+		public long getP999() {
+			return this.latency.getValueAtPercentile(0.999);
+		}
+
+		@Override
+		public long getMaxLatency() {
+			return this.latency.getMax();
+		}
+
+		/**
+		 * Records a call.
+		 *
+		 * @param nanos the latency of the call
+		 * @param code CODE_OK, or the error code of the failed call
+		 */
+		void record(final long nanos, final int code) {
+			this.calls.increment();
+			this.latency.record(nanos);
+			if (code != EPLiteConnection.CODE_OK) {
+				this.errors.increment();
+				LongAdder count = this.errorCodes.get(code);
+				if (count == null) {
+					count = this.errorCodes.computeIfAbsent(code,
+							c -> new LongAdder());
+				}
+				count.increment();
+			}
+		}
+
+		/**
+		 * Counts the bytes sent by a call.
+		 */
+		void sent(final long bytes) {
+			this.bytesOut.add(bytes);
+		}
+
+		/**
+		 * Counts the bytes received by a call.
+		 */
+		void received(final long bytes) {
+			this.bytesIn.add(bytes);
+		}
+
+		/**
+		 * Returns a stream counting the bytes read from a response body.
+		 */
+		InputStream counting(final InputStream body) {
+			return new FilterInputStream(body) {
+				@Override
+				public int read() throws IOException {
+					int b = super.read();
+					if (b >= 0) {
+						MethodMetrics.this.received(1);
+					}
+					return b;
+				}
+
+				@Override
+				public int read(final byte[] buffer, final int offset,
+						final int length) throws IOException {
+					int n = super.read(buffer, offset, length);
+					if (n > 0) {
+						MethodMetrics.this.received(n);
+					}
+					return n;
+				}
+
+				@Override
+				public long skip(final long n) throws IOException {
+					long skipped = super.skip(n);
+					MethodMetrics.this.received(skipped);
+					return skipped;
+				}
+			};
+		}
+
+		@Override
+		public String toString() {
+			return "MethodMetrics{method=" + apiMethod + ", calls="
+					+ calls + ", errors=" + errors + ", bytesOut="
+					+ bytesOut + ", bytesIn=" + bytesIn + ", latency="
+					+ latency + "}";
+		}
+	}
+}
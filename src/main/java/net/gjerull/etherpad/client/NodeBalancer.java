@@ -0,0 +1,349 @@
+package net.gjerull.etherpad.client;
+
+import java.net.URI;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Spreads the calls of an EPLiteConnection over several Etherpad Lite
+ * nodes sharing one database.<br />
+ * <br />
+ * Each request goes to the healthy node with the fewest requests in
+ * flight, so a slow node gets fewer of them instead of the same share as
+ * with round-robin. A retry or a hedge picks its node again.<br />
+ * <br />
+ * A node is ejected after ejectAfter failures in a row to reach it,
+ * whether by calls or by the checkToken probes sent to every node each
+ * probe interval. It is reinstated after reinstateAfter successes in a
+ * row. When every node is ejected, the calls go to all of them anyway
+ * rather than fail without trying.<br />
+ * <br />
+ * Example:<br />
+ * <br />
+ * <code>
+ * EPLiteClient client = new EPLiteClient(Arrays.asList(<br />
+ * "http://node1:9001", "http://node2:9001"), apiKey);<br />
+ * for (NodeBalancer.Node node : client.getBalancer().getNodes()) {<br />
+ * System.out.println(node);<br />
+ * }
+ * </code>
+ */
+public class NodeBalancer implements AutoCloseable {
+	/** Default time between two probes of a node, in ms. */
+	public static final long DEFAULT_PROBE_INTERVAL = 5000L;
+	/** Default number of failures in a row ejecting a node. */
+	public static final int DEFAULT_EJECT_AFTER = 3;
+	/** Default number of successes in a row reinstating a node. */
+	public static final int DEFAULT_REINSTATE_AFTER = 2;
+
+	/** Weight of a new latency in the average of a node. */
+	private static final double SMOOTHING = 0.1;
+
+	private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+	private final List<Node> nodes;
+	private volatile long probeInterval = DEFAULT_PROBE_INTERVAL;
+	private volatile int ejectAfter = DEFAULT_EJECT_AFTER;
+	private volatile int reinstateAfter = DEFAULT_REINSTATE_AFTER;
+	/** Runs the probes, null until started. Guarded by this. */
+	private ScheduledThreadPoolExecutor prober;
+	/** Guarded by this. */
+	private boolean closed;
+
+	/**
+	 * Initializes a new NodeBalancer.
+	 *
+	 * @param urls absolute urls, including protocol, to the EPL api of
+	 *  each node
+	 */
+	public NodeBalancer(final List<String> urls) {
+		if (urls.isEmpty()) {
+			throw new IllegalArgumentException("No Etherpad Lite node");
+		}
+		List<Node> list = new ArrayList<>(urls.size());
+		for (String url : urls) {
+			if (url.endsWith("/")) {
+				url = url.substring(0, url.length() - 1);
+			}
+			list.add(new Node(URI.create(url)));
+		}
+		this.nodes = Collections.unmodifiableList(list);
+	}
+
+	/**
+	 * Sets the time between two probes of a node. It applies from the
+	 * next probe.
+	 *
+	 * @param probeInterval the time in ms
+	 */
+	public final void setProbeInterval(final long probeInterval) {
+		if (probeInterval <= 0) {
+			throw new IllegalArgumentException(
+					"probeInterval must be positive");
+		}
+		this.probeInterval = probeInterval;
+	}
+
+	/**
+	 * Sets when a node is ejected and reinstated.
+	 *
+	 * @param ejectAfter the number of failures in a row ejecting a node
+	 * @param reinstateAfter the number of successes in a row reinstating
+	 *  it
+	 */
+	public final void setThresholds(final int ejectAfter,
+			final int reinstateAfter) {
+		if (ejectAfter < 1 || reinstateAfter < 1) {
+			throw new IllegalArgumentException("Invalid thresholds "
+					+ ejectAfter + ", " + reinstateAfter);
+		}
+		this.ejectAfter = ejectAfter;
+		this.reinstateAfter = reinstateAfter;
+	}
+
+	/** Getter.
+	 * @return the nodes, in the order of their urls
+	 * */
+	public final List<Node> getNodes() {
+		return this.nodes;
+	}
+
+	/** Getter.
+	 * @return the number of nodes not ejected
+	 * */
+	public final int getHealthyCount() {
+		int count = 0;
+		for (Node node : this.nodes) {
+			if (node.isHealthy()) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Stops the probes.
+	 */
+	@Override
+	public synchronized void close() {
+		this.closed = true;
+		if (this.prober != null) {
+			this.prober.shutdownNow();
+		}
+	}
+
+	/**
+	 * Starts probing every node, spread over the probe interval.
+	 *
+	 * @param probe sends a probe to a node, throwing if it failed
+	 */
+	final synchronized void start(final Consumer<Node> probe) {
+		if (this.prober != null || this.closed) {
+			return;
+		}
+		this.prober = new ScheduledThreadPoolExecutor(this.nodes.size(),
+				runnable -> {
+					Thread thread = new Thread(runnable,
+							"eplite-probe-" + THREAD_COUNT.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				});
+		for (Node node : this.nodes) {
+			this.schedule(node, probe, ThreadLocalRandom.current()
+					.nextLong(this.probeInterval + 1));
+		}
+	}
+
+	private synchronized void schedule(final Node node,
+			final Consumer<Node> probe, final long delay) {
+		if (this.closed) {
+			return;
+		}
+		this.prober.schedule(() -> {
+			try {
+				probe.accept(node);
+				node.record(true);
+			} catch (RuntimeException e) {
+				node.record(false);
+			}
+			node.probes.incrementAndGet();
+			this.schedule(node, probe, this.probeInterval);
+		}, delay, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Picks the node of a request: the healthy node with the fewest
+	 * requests in flight, ties broken at random. The request is counted
+	 * in flight until finish is called on the node.
+	 *
+	 * @return Node
+	 */
+	final Node choose() {
+		int size = this.nodes.size();
+		int offset = ThreadLocalRandom.current().nextInt(size);
+		Node best = null;
+		boolean bestHealthy = false;
+		for (int i = 0; i < size; i++) {
+			Node node = this.nodes.get((offset + i) % size);
+			boolean healthy = node.isHealthy();
+			if (best == null || (healthy && !bestHealthy)
+					|| (healthy == bestHealthy
+					&& node.getOutstanding() < best.getOutstanding())) {
+				best = node;
+				bestHealthy = healthy;
+			}
+		}
+		best.outstanding.incrementAndGet();
+		return best;
+	}
+
+	/**
+	 * An Etherpad Lite node and its statistics.
+	 */
+	public final class Node {
+		private final URI uri;
+		/** The URL of each API method called so far on this node. */
+		final ConcurrentMap<String, URL> methodUrls =
+				new ConcurrentHashMap<>();
+		private final AtomicInteger outstanding = new AtomicInteger();
+		private final AtomicLong requests = new AtomicLong();
+		private final AtomicLong failures = new AtomicLong();
+		private final AtomicLong probes = new AtomicLong();
+		private final AtomicLong ejections = new AtomicLong();
+		private volatile boolean healthy = true;
+		/** Failures in a row if negative, successes if positive. Guarded
+		 * by this. */
+		private int streak;
+		/** Average latency in ns, 0 before the first answer. Guarded by
+		 * this. */
+		private double latency;
+
+		private Node(final URI uri) {
+			this.uri = uri;
+		}
+
+		/** Getter.
+		 * @return the url of the node
+		 * */
+		public URI getUri() {
+			return this.uri;
+		}
+
+		/** Getter.
+		 * @return false while the node is ejected
+		 * */
+		public boolean isHealthy() {
+			return this.healthy;
+		}
+
+		/** Getter.
+		 * @return the number of requests in flight to the node
+		 * */
+		public int getOutstanding() {
+			return this.outstanding.get();
+		}
+
+		/** Getter.
+		 * @return the number of requests sent to the node
+		 * */
+		public long getRequestCount() {
+			return this.requests.get();
+		}
+
+		/** Getter.
+		 * @return the number of requests that failed to reach the node
+		 * */
+		public long getFailureCount() {
+			return this.failures.get();
+		}
+
+		/** Getter.
+		 * @return the number of probes sent to the node
+		 * */
+		public long getProbeCount() {
+			return this.probes.get();
+		}
+
+		/** Getter.
+		 * @return the number of times the node was ejected
+		 * */
+		public long getEjectionCount() {
+			return this.ejections.get();
+		}
+
+		/** Getter.
+		 * @return the average latency of the answered requests, in ms
+		 * */
+		public synchronized double getLatency() {
+			return this.latency / 1e6;
+		}
+
+		/**
+		 * Ends a request to the node.
+		 *
+		 * @param latencyNanos the time the request took
+		 * @param reached false if the request failed to reach the node
+		 */
+		void finish(final long latencyNanos, final boolean reached) {
+			this.outstanding.decrementAndGet();
+			this.requests.incrementAndGet();
+			if (reached) {
+				synchronized (this) {
+					this.latency = (this.latency == 0) ? latencyNanos
+							: this.latency
+							+ (latencyNanos - this.latency) * SMOOTHING;
+				}
+			} else {
+				this.failures.incrementAndGet();
+			}
+			this.record(reached);
+		}
+
+		/**
+		 * Ends a request to the node that was cancelled, e.g. a hedge
+		 * answered second, without counting it.
+		 */
+		void cancel() {
+			this.outstanding.decrementAndGet();
+		}
+
+		/**
+		 * Counts a success or failure toward ejecting or reinstating the
+		 * node.
+		 */
+		private synchronized void record(final boolean success) {
+			if (success) {
+				this.streak = Math.max(this.streak, 0) + 1;
+				if (!this.healthy
+						&& this.streak >= NodeBalancer.this.reinstateAfter) {
+					this.healthy = true;
+				}
+			} else {
+				this.streak = Math.min(this.streak, 0) - 1;
+				if (this.healthy
+						&& -this.streak >= NodeBalancer.this.ejectAfter) {
+					this.healthy = false;
+					this.ejections.incrementAndGet();
+				}
+			}
+		}
+
+		@Override
+		public String toString() {
+			return "Node{uri=" + uri + ", healthy=" + healthy
+					+ ", outstanding=" + outstanding + ", requests="
+					+ requests + ", failures=" + failures + ", latency="
+					+ String.format("%.1f", getLatency()) + "ms}";
+		}
+	}
+}
@@ -1,10 +1,13 @@
 package net.gjerull.etherpad.client;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
 
 import etm.core.configuration.EtmManager;
 import etm.core.monitor.EtmMonitor;
@@ -20,10 +23,14 @@ import etm.core.monitor.EtmPoint;
  * String resp = req.send();<br />
  * </code>
  */
-public class POSTRequest implements Request {
+public class POSTRequest implements StreamingRequest {
 	private final URL url;
-	private final String body;
+	private final RequestBody body;
+	private final TLSConfig tls;
 	private static final EtmMonitor etmMonitor = EtmManager.getEtmMonitor();
+	/** The connection being sent, null before and after. */
+	private volatile URLConnection connection;
+	private volatile boolean aborted;
 
 	/**
 	 * Instantiates a new POSTRequest.
@@ -32,8 +39,44 @@ public class POSTRequest implements Request {
 	 * @param body url-encoded (application/x-www-form-urlencoded) request body
 	 */
 	public POSTRequest(URL url, String body) {
+		this(url, body, null);
+	}
+
+	/**
+	 * Instantiates a new POSTRequest.
+	 *
+	 * @param url the URL object
+	 * @param body url-encoded (application/x-www-form-urlencoded) request body
+	 * @param tls the TLS settings, null to use the JVM defaults
+	 */
+	public POSTRequest(URL url, String body, TLSConfig tls) {
+		this(url, body.getBytes(StandardCharsets.UTF_8), tls);
+	}
+
+	/**
+	 * Instantiates a new POSTRequest.
+	 *
+	 * @param url the URL object
+	 * @param body url-encoded (application/x-www-form-urlencoded) request
+	 *  body, written as is
+	 * @param tls the TLS settings, null to use the JVM defaults
+	 */
+	public POSTRequest(URL url, byte[] body, TLSConfig tls) {
+		this(url, RequestBody.of(body), tls);
+	}
+
+	/**
+	 * Instantiates a new POSTRequest.
+	 *
+	 * @param url the URL object
+	 * @param body url-encoded (application/x-www-form-urlencoded) request
+	 *  body, encoded while it is written
+	 * @param tls the TLS settings, null to use the JVM defaults
+	 */
+	public POSTRequest(URL url, RequestBody body, TLSConfig tls) {
 		this.url = url;
 		this.body = body;
+		this.tls = tls;
 	}
 
 	/**
@@ -43,26 +86,81 @@ public class POSTRequest implements Request {
 	 */
 	@Override
 	public String send() throws Exception {
+		return send(ResponseHandler.TEXT);
+	}
+
+	/**
+	 * Sends the request and lets the handler read the response
+	 * straight from the connection.
+	 *
+	 * @param handler the handler reading the response body
+	 * @return the result of the handler
+	 */
+	@Override
+	public <T> T send(ResponseHandler<T> handler) throws Exception {
 		EtmPoint point = etmMonitor.createPoint("POSTRequest.send");
 
 		try {
 			URLConnection con = this.url.openConnection();
+			this.connection = con;
+			if (this.aborted) {
+				throw new InterruptedIOException("Request aborted");
+			}
+			if (this.tls != null) {
+				this.tls.configure(con);
+			}
+			int timeout = RetryPolicy.timeout(0);
+			if (timeout > 0) {
+				con.setConnectTimeout(timeout);
+				con.setReadTimeout(timeout);
+			}
 			con.setDoOutput(true);
+			if (con instanceof HttpURLConnection) {
+				// Stream the body instead of buffering a copy of it
+				((HttpURLConnection) con).setFixedLengthStreamingMode(
+						this.body.getContentLength());
+			}
+			CallTiming.connect(this.url, con);
 
-			OutputStreamWriter out = new OutputStreamWriter(con.getOutputStream());
-			out.write(this.body);
-			out.close();
+			try (OutputStream out = con.getOutputStream();
+					InputStream body = this.body.openStream()) {
+				body.transferTo(out);
+			}
 
-			BufferedReader in = new BufferedReader(new InputStreamReader(con.getInputStream()));
-			StringBuilder response = new StringBuilder();
-			String buffer;
-			while ((buffer = in.readLine()) != null) {
-				response.append(buffer);
+			if (con instanceof HttpURLConnection) {
+				int status = ((HttpURLConnection) con).getResponseCode();
+				CallTiming.responded(status);
+				if (status >= 400) {
+					throw new HttpStatusException(status, this.url.toString());
+				}
+			}
+			try (InputStream in = con.getInputStream()) {
+				return handler.handle(in,
+						ResponseHandler.charsetOf(con.getContentType()));
 			}
-			in.close();
-			return response.toString();
+		} catch (IOException e) {
+			if (this.aborted) {
+				InterruptedIOException abort =
+						new InterruptedIOException("Request aborted");
+				abort.initCause(e);
+				throw abort;
+			}
+			throw e;
 		} finally {
+			this.connection = null;
 			point.collect();
 		}
 	}
+
+	/**
+	 * Aborts the request, closing its connection.
+	 */
+	@Override
+	public void abort() {
+		this.aborted = true;
+		URLConnection con = this.connection;
+		if (con instanceof HttpURLConnection) {
+			((HttpURLConnection) con).disconnect();
+		}
+	}
 }
@@ -0,0 +1,614 @@
+package net.gjerull.etherpad.client;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPOutputStream;
+
+import org.json.simple.JSONObject;
+
+/**
+ * Exports the content of every pad of an Etherpad Lite instance to disk,
+ * either as one file per pad in a directory or as a compressed
+ * archive.<br />
+ * <br />
+ * The padIDs of listAllPads are handed to the workers while the response
+ * is still being read, through a small bounded queue: when the workers
+ * fall behind, reading the list waits for them, so the heap holds at most
+ * a few queued padIDs and parallelism pads at a time, whatever the size
+ * of the instance.<br />
+ * <br />
+ * Each exported pad is recorded in a checkpoint file. An interrupted
+ * export started again with the same target skips the recorded pads;
+ * the checkpoint is deleted once an export completes without failures.
+ * <br />
+ * <br />
+ * Example:<br />
+ * <br />
+ * <code>
+ * PadExporter exporter = new PadExporter(api);<br />
+ * exporter.setFormats(PadExporter.Format.TEXT, PadExporter.Format.HTML);<br />
+ * PadExporter.Result result = exporter.exportToArchive(Paths.get("pads.jsonl.gz"));
+ * </code>
+ */
+public class PadExporter {
+	/** Default number of pads fetched concurrently. */
+	public static final int DEFAULT_PARALLELISM = 8;
+
+	/** Capacity of the queue of padIDs, per worker. */
+	private static final int QUEUE_PER_WORKER = 4;
+
+	/** How often waiting threads check for the end of the export. */
+	private static final long POLL_MILLIS = 50L;
+
+	private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+	/**
+	 * The exported representations of a pad.
+	 */
+	public enum Format {
+		/** The text of getText, in a .txt file. */
+		TEXT("getText", "text", "txt"),
+		/** The HTML of getHTML, in a .html file. */
+		HTML("getHTML", "html", "html");
+
+		private final String apiMethod;
+		private final String field;
+		private final String extension;
+
+		Format(final String apiMethod, final String field,
+				final String extension) {
+			this.apiMethod = apiMethod;
+			this.field = field;
+			this.extension = extension;
+		}
+	}
+
+	/** The client fetching the pads. */
+	private final EPLiteClient client;
+	/** Number of pads fetched concurrently. */
+	private volatile int parallelism = DEFAULT_PARALLELISM;
+	/** The exported representations. */
+	private volatile Set<Format> formats = EnumSet.of(Format.TEXT);
+
+	/**
+	 * Initializes a new PadExporter.
+	 *
+	 * @param client the client fetching the pads
+	 */
+	public PadExporter(final EPLiteClient client) {
+		this.client = client;
+	}
+
+	/** Getter.
+	 * @return the number of pads fetched concurrently
+	 * */
+	public final int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * Sets the number of pads fetched concurrently.
+	 *
+	 * @param parallelism the number of workers, at least 1
+	 */
+	public final void setParallelism(final int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException(
+					"parallelism must be at least 1");
+		}
+		this.parallelism = parallelism;
+	}
+
+	/** Getter.
+	 * @return the exported representations
+	 * */
+	public final Set<Format> getFormats() {
+		return Collections.unmodifiableSet(formats);
+	}
+
+	/**
+	 * Sets the exported representations, TEXT by default.
+	 *
+	 * @param formats at least one format
+	 */
+	public final void setFormats(final Format... formats) {
+		if (formats.length == 0) {
+			throw new IllegalArgumentException("no format");
+		}
+		EnumSet<Format> set = EnumSet.noneOf(Format.class);
+		Collections.addAll(set, formats);
+		this.formats = set;
+	}
+
+	/**
+	 * Exports every pad to a directory, as one file per pad and format
+	 * named after the url-encoded padID, e.g. <code>g.x%24notes.txt</code>.
+	 * The checkpoint is the file .checkpoint in the directory.
+	 *
+	 * @param directory the target directory, created if needed
+	 * @return Result
+	 * @throws IOException if writing to the directory fails
+	 */
+	public final Result exportToDirectory(final Path directory)
+			throws IOException {
+		Files.createDirectories(directory);
+		Checkpoint checkpoint = Checkpoint.open(
+				directory.resolve(".checkpoint"));
+		return this.export(new DirectorySink(directory, checkpoint),
+				checkpoint);
+	}
+
+	/**
+	 * Exports every pad to a gzip-compressed JSON Lines archive: one
+	 * object per pad with padID and one field per format (text, html).
+	 * Every pad is its own gzip member, so a resumed export appends to the
+	 * archive and it still reads as one gzip stream. The checkpoint is
+	 * the file of the archive with .checkpoint appended.
+	 *
+	 * @param archive the archive file
+	 * @return Result
+	 * @throws IOException if writing to the archive fails
+	 */
+	public final Result exportToArchive(final Path archive)
+			throws IOException {
+		Checkpoint checkpoint = Checkpoint.open(archive.resolveSibling(
+				archive.getFileName() + ".checkpoint"));
+		return this.export(new ArchiveSink(archive, checkpoint),
+				checkpoint);
+	}
+
+	private Result export(final Sink sink, final Checkpoint checkpoint)
+			throws IOException {
+		int workers = this.parallelism;
+		Set<Format> exported = this.formats;
+		BlockingQueue<String> queue =
+				new ArrayBlockingQueue<>(workers * QUEUE_PER_WORKER);
+		AtomicBoolean listed = new AtomicBoolean();
+		AtomicReference<Throwable> fatal = new AtomicReference<>();
+		Result result = new Result();
+		ExecutorService executor = Executors.newFixedThreadPool(workers,
+				runnable -> {
+					Thread thread = new Thread(runnable,
+							"eplite-export-" + THREAD_COUNT.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				});
+		try {
+			List<Future<?>> futures = new ArrayList<>(workers);
+			for (int i = 0; i < workers; i++) {
+				futures.add(executor.submit(() -> {
+					this.work(queue, listed, fatal, exported, sink, result);
+					return null;
+				}));
+			}
+			try {
+				this.client.getConnection().get("listAllPads",
+						new HashMap<String, Object>(),
+						new PadIdFeed(queue, fatal, checkpoint, result));
+			} catch (RuntimeException e) {
+				fatal.compareAndSet(null, e);
+			} finally {
+				listed.set(true);
+				for (Future<?> future : futures) {
+					try {
+						future.get();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new EPLiteException("Interrupted while"
+								+ " waiting for the export", e);
+					} catch (ExecutionException e) {
+						fatal.compareAndSet(null, e.getCause());
+					}
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+			sink.close();
+			checkpoint.close();
+		}
+		Throwable error = fatal.get();
+		if (error instanceof IOException) {
+			throw (IOException) error;
+		}
+		if (error instanceof Error) {
+			throw (Error) error;
+		}
+		if (error instanceof EPLiteException) {
+			throw (EPLiteException) error;
+		}
+		if (error != null) {
+			throw new EPLiteException(error.getMessage(), error);
+		}
+		if (result.failures.isEmpty()) {
+			checkpoint.delete();
+		}
+		return result;
+	}
+
+	/**
+	 * Exports the pads taken from the queue until the list is read or
+	 * the export failed.
+	 */
+	private void work(final BlockingQueue<String> queue,
+			final AtomicBoolean listed, final AtomicReference<Throwable> fatal,
+			final Set<Format> exported, final Sink sink, final Result result)
+					throws IOException, InterruptedException {
+		while (fatal.get() == null) {
+			String padId = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+			if (padId == null) {
+				if (listed.get() && queue.isEmpty()) {
+					return;
+				}
+				continue;
+			}
+			Map<Format, String> contents = new EnumMap<>(Format.class);
+			try {
+				for (Format format : exported) {
+					contents.put(format, this.fetch(format, padId));
+				}
+			} catch (EPLiteException e) {
+				result.failures.put(padId, String.valueOf(e.getMessage()));
+				continue;
+			}
+			try {
+				sink.write(padId, contents);
+			} catch (IOException e) {
+				fatal.compareAndSet(null, e);
+				throw e;
+			}
+			result.exported.incrementAndGet();
+		}
+	}
+
+	private String fetch(final Format format, final String padId) {
+		Map<String, Object> args = new HashMap<>();
+		args.put("padID", padId);
+		Object content = this.client.getConnection()
+				.get(format.apiMethod, args).get(format.field);
+		return (content != null) ? content.toString() : "";
+	}
+
+	/**
+	 * Writes all the remaining bytes of a buffer.
+	 */
+	private static void writeFully(final FileChannel channel,
+			final ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+
+	/**
+	 * The outcome of an export.
+	 */
+	public static final class Result {
+		private final AtomicLong exported = new AtomicLong();
+		private final AtomicLong skipped = new AtomicLong();
+		private final Map<String, String> failures =
+				new ConcurrentHashMap<>();
+
+		private Result() {
+		}
+
+		/** Getter.
+		 * @return the number of pads exported by this run
+		 * */
+		public long getExported() {
+			return exported.get();
+		}
+
+		/** Getter.
+		 * @return the number of pads found in the checkpoint
+		 * */
+		public long getSkipped() {
+			return skipped.get();
+		}
+
+		/** Getter.
+		 * @return the error message of each pad that could not be
+		 *  fetched, by padID
+		 * */
+		public Map<String, String> getFailures() {
+			return Collections.unmodifiableMap(failures);
+		}
+
+		/**
+		 * Returns true if every pad was exported.
+		 *
+		 * @return boolean
+		 */
+		public boolean isComplete() {
+			return failures.isEmpty();
+		}
+
+		@Override
+		public String toString() {
+			return "Result{exported=" + exported + ", skipped=" + skipped
+					+ ", failed=" + failures.size() + "}";
+		}
+	}
+
+	/**
+	 * Feeds the padIDs of listAllPads to the queue while the response is
+	 * parsed, waiting while the queue is full.
+	 */
+	private static final class PadIdFeed extends ResponseDecoder<Void> {
+		private final BlockingQueue<String> queue;
+		private final AtomicReference<Throwable> fatal;
+		private final Checkpoint checkpoint;
+		private final Result result;
+
+		private PadIdFeed(BlockingQueue<String> queue,
+				AtomicReference<Throwable> fatal, Checkpoint checkpoint,
+				Result result) {
+			this.queue = queue;
+			this.fatal = fatal;
+			this.checkpoint = checkpoint;
+			this.result = result;
+		}
+
+		@Override
+		protected void value(String key, Object value, int level) {
+			if (level != 2 || !"padIDs".equals(key) || value == null) {
+				return;
+			}
+			String padId = value.toString();
+			if (this.checkpoint.contains(padId)) {
+				this.result.skipped.incrementAndGet();
+				return;
+			}
+			try {
+				while (!this.queue.offer(padId, POLL_MILLIS,
+						TimeUnit.MILLISECONDS)) {
+					if (this.fatal.get() != null) {
+						throw new EPLiteException("Export aborted",
+								this.fatal.get());
+					}
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new EPLiteException("Interrupted while listing"
+						+ " the pads", e);
+			}
+		}
+
+		@Override
+		protected Void result() {
+			return null;
+		}
+	}
+
+	/**
+	 * The padIDs exported so far and, for an archive, the length of the
+	 * archive holding them.
+	 */
+	private static final class Checkpoint implements Closeable {
+		private final Path path;
+		private final Set<String> done;
+		private final long offset;
+		private final FileChannel channel;
+
+		private Checkpoint(Path path, Set<String> done, long offset,
+				long length) throws IOException {
+			this.path = path;
+			this.done = done;
+			this.offset = offset;
+			this.channel = FileChannel.open(path, StandardOpenOption.CREATE,
+					StandardOpenOption.WRITE);
+			// Drop a torn record, so the next one starts on a line of its own
+			this.channel.truncate(length);
+			this.channel.position(length);
+		}
+
+		/**
+		 * Reads the checkpoint file, if there is one. Each line is a
+		 * url-encoded padID and the archive length after it. The records
+		 * after the last complete line, e.g. one torn by an interrupted
+		 * export, are dropped: their pads are exported again.
+		 */
+		static Checkpoint open(final Path path) throws IOException {
+			Set<String> done = new HashSet<>();
+			long offset = 0L;
+			int length = 0;
+			if (Files.exists(path)) {
+				byte[] bytes = Files.readAllBytes(path);
+				for (int end = indexOf(bytes, length); end >= 0;
+						end = indexOf(bytes, length)) {
+					String line = new String(bytes, length, end - length,
+							StandardCharsets.UTF_8);
+					int space = line.indexOf(' ');
+					long recorded;
+					try {
+						recorded = Long.parseLong(line.substring(space + 1));
+					} catch (NumberFormatException e) {
+						break;
+					}
+					if (space <= 0 || recorded < 0) {
+						break;
+					}
+					done.add(URLDecoder.decode(line.substring(0, space),
+							StandardCharsets.UTF_8));
+					offset = Math.max(offset, recorded);
+					length = end + 1;
+				}
+			}
+			return new Checkpoint(path, done, offset, length);
+		}
+
+		/**
+		 * Returns the index of the next newline from start, -1 if none.
+		 */
+		private static int indexOf(final byte[] bytes, final int start) {
+			for (int i = start; i < bytes.length; i++) {
+				if (bytes[i] == '\n') {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		boolean contains(final String padId) {
+			return this.done.contains(padId);
+		}
+
+		long offset() {
+			return this.offset;
+		}
+
+		synchronized void record(final String padId, final long length)
+				throws IOException {
+			writeFully(this.channel, StandardCharsets.UTF_8.encode(
+					URLEncoder.encode(padId, StandardCharsets.UTF_8)
+					+ " " + length + "\n"));
+		}
+
+		void delete() throws IOException {
+			Files.deleteIfExists(this.path);
+		}
+
+		@Override
+		public synchronized void close() throws IOException {
+			if (this.channel.isOpen()) {
+				this.channel.force(false);
+				this.channel.close();
+			}
+		}
+	}
+
+	/**
+	 * The destination of the exported pads.
+	 */
+	private interface Sink extends Closeable {
+		/**
+		 * Writes a pad and records it in the checkpoint.
+		 */
+		void write(String padId, Map<Format, String> contents)
+				throws IOException;
+	}
+
+	/**
+	 * Writes one file per pad and format, through a temporary file moved
+	 * in place once complete.
+	 */
+	private static final class DirectorySink implements Sink {
+		private final Path directory;
+		private final Checkpoint checkpoint;
+
+		private DirectorySink(Path directory, Checkpoint checkpoint) {
+			this.directory = directory;
+			this.checkpoint = checkpoint;
+		}
+
+		@Override
+		public void write(String padId, Map<Format, String> contents)
+				throws IOException {
+			String name = URLEncoder.encode(padId, StandardCharsets.UTF_8);
+			for (Map.Entry<Format, String> content : contents.entrySet()) {
+				Path file = this.directory.resolve(
+						name + "." + content.getKey().extension);
+				Path temporary = this.directory.resolve(
+						name + "." + content.getKey().extension + ".part");
+				try (FileChannel channel = FileChannel.open(temporary,
+						StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+						StandardOpenOption.TRUNCATE_EXISTING)) {
+					writeFully(channel,
+							StandardCharsets.UTF_8.encode(content.getValue()));
+				}
+				try {
+					Files.move(temporary, file,
+							StandardCopyOption.REPLACE_EXISTING,
+							StandardCopyOption.ATOMIC_MOVE);
+				} catch (AtomicMoveNotSupportedException e) {
+					Files.move(temporary, file,
+							StandardCopyOption.REPLACE_EXISTING);
+				}
+			}
+			this.checkpoint.record(padId, 0L);
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+
+	/**
+	 * Appends one gzip member per pad to the archive. The members are
+	 * compressed by the workers, only the appends are serialized.
+	 */
+	private static final class ArchiveSink implements Sink {
+		private final FileChannel channel;
+		private final Checkpoint checkpoint;
+
+		private ArchiveSink(Path archive, Checkpoint checkpoint)
+				throws IOException {
+			this.checkpoint = checkpoint;
+			this.channel = FileChannel.open(archive,
+					StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+			// drop whatever an interrupted export wrote after its
+			// last checkpoint
+			this.channel.truncate(checkpoint.offset());
+			this.channel.position(checkpoint.offset());
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public void write(String padId, Map<Format, String> contents)
+				throws IOException {
+			JSONObject line = new JSONObject();
+			line.put("padID", padId);
+			for (Map.Entry<Format, String> content : contents.entrySet()) {
+				line.put(content.getKey().field, content.getValue());
+			}
+			ByteArrayOutputStream member = new ByteArrayOutputStream();
+			try (OutputStream gzip = new GZIPOutputStream(member)) {
+				gzip.write((line.toJSONString() + "\n")
+						.getBytes(StandardCharsets.UTF_8));
+			}
+			synchronized (this) {
+				writeFully(this.channel, ByteBuffer.wrap(member.toByteArray()));
+				this.checkpoint.record(padId, this.channel.position());
+			}
+		}
+
+		@Override
+		public synchronized void close() throws IOException {
+			if (this.channel.isOpen()) {
+				this.channel.force(false);
+				this.channel.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,60 @@
+package net.gjerull.etherpad.client;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A list of pad ids, as returned by listAllPads, listPads and
+ * listPadsOfAuthor.
+ */
+public final class PadIdList {
+	private final List<String> padIDs;
+
+	/**
+	 * Instantiates a new PadIdList.
+	 *
+	 * @param padIDs the pad ids
+	 */
+	public PadIdList(final List<String> padIDs) {
+		this.padIDs = Collections.unmodifiableList(padIDs);
+	}
+
+	/** Getter.
+	 * @return the pad ids, unmodifiable
+	 * */
+	public List<String> getPadIDs() {
+		return padIDs;
+	}
+
+	/** Getter.
+	 * @return the number of pad ids
+	 * */
+	public int size() {
+		return padIDs.size();
+	}
+
+	@Override
+	public String toString() {
+		return "PadIdList" + padIDs;
+	}
+
+	/**
+	 * Decodes <code>{"padIDs": ["...", ...]}</code>.
+	 */
+	static final class Decoder extends ResponseDecoder<PadIdList> {
+		private final List<String> padIDs = new ArrayList<>();
+
+		@Override
+		protected void value(String key, Object value, int level) {
+			if (level == 2 && "padIDs".equals(key) && value != null) {
+				this.padIDs.add(value.toString());
+			}
+		}
+
+		@Override
+		protected PadIdList result() {
+			return new PadIdList(this.padIDs);
+		}
+	}
+}
@@ -0,0 +1,685 @@
+package net.gjerull.etherpad.client;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.ConnectException;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.json.simple.JSONObject;
+import org.json.simple.JSONValue;
+
+/**
+ * Creates pads from the files of a directory tree or an archive.<br />
+ * <br />
+ * Files ending in .txt become the text of a pad (createPad or
+ * createGroupPad), files ending in .html or .htm are set with setHTML on a
+ * new pad; a .txt file with an .html sibling is skipped. By default the
+ * url-decoded file name without extension is the padID, and a file in a
+ * directory named after a group (<code>g.xxx/notes.txt</code>) becomes
+ * the group pad <code>g.xxx$notes</code>, which reads back the layout
+ * written by PadExporter. Files are read as UTF-8; large ones are memory
+ * mapped and url-encoded straight from the mapping while the request is
+ * sent.<br />
+ * <br />
+ * Pads are created by parallel workers. A call whose connection is
+ * refused is retried with exponential backoff; other failures may have
+ * reached the server and are not retried. The Report lists the files
+ * that could not be imported, the HTML files whose pad was created but
+ * not filled, and the throughput.<br />
+ * <br />
+ * Example:<br />
+ * <br />
+ * <code>
+ * PadImporter importer = new PadImporter(api);<br />
+ * PadImporter.Report report = importer.importDirectory(Paths.get("pads"));
+ * </code>
+ */
+public class PadImporter {
+	/** Default number of pads created concurrently. */
+	public static final int DEFAULT_PARALLELISM = 8;
+
+	/** Default number of attempts of a call. */
+	public static final int DEFAULT_MAX_ATTEMPTS = 3;
+
+	/** Default delay before the first retry, in milliseconds. */
+	public static final long DEFAULT_RETRY_DELAY = 200L;
+
+	/** Files of at least this size are memory mapped. */
+	static final long MAPPED_SIZE = 64L * 1024L;
+
+	/** Capacity of the queue of files, per worker. */
+	private static final int QUEUE_PER_WORKER = 4;
+
+	/** How often waiting threads check for the end of the import. */
+	private static final long POLL_MILLIS = 50L;
+
+	private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+	/** The client creating the pads. */
+	private final EPLiteClient client;
+	private volatile int parallelism = DEFAULT_PARALLELISM;
+	private volatile int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+	private volatile long retryDelay = DEFAULT_RETRY_DELAY;
+	private volatile Function<String, String> padIdMapper =
+			PadImporter::defaultPadId;
+
+	/**
+	 * Initializes a new PadImporter.
+	 *
+	 * @param client the client creating the pads
+	 */
+	public PadImporter(final EPLiteClient client) {
+		this.client = client;
+	}
+
+	/** Getter.
+	 * @return the number of pads created concurrently
+	 * */
+	public final int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * Sets the number of pads created concurrently.
+	 *
+	 * @param parallelism the number of workers, at least 1
+	 */
+	public final void setParallelism(final int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException(
+					"parallelism must be at least 1");
+		}
+		this.parallelism = parallelism;
+	}
+
+	/** Getter.
+	 * @return the number of attempts of a call
+	 * */
+	public final int getMaxAttempts() {
+		return maxAttempts;
+	}
+
+	/**
+	 * Sets how many times a call whose connection is refused is tried.
+	 * Errors returned by the API (e.g. an existing padID) are not retried.
+	 *
+	 * @param maxAttempts the number of attempts, at least 1
+	 */
+	public final void setMaxAttempts(final int maxAttempts) {
+		if (maxAttempts < 1) {
+			throw new IllegalArgumentException(
+					"maxAttempts must be at least 1");
+		}
+		this.maxAttempts = maxAttempts;
+	}
+
+	/** Getter.
+	 * @return the delay before the first retry, in milliseconds
+	 * */
+	public final long getRetryDelay() {
+		return retryDelay;
+	}
+
+	/**
+	 * Sets the delay before the first retry; it doubles with every
+	 * further attempt.
+	 *
+	 * @param retryDelay the delay in milliseconds
+	 */
+	public final void setRetryDelay(final long retryDelay) {
+		this.retryDelay = retryDelay;
+	}
+
+	/**
+	 * Sets how files are mapped to padIDs. The mapper gets the path of
+	 * the file relative to the imported directory or archive, with '/'
+	 * separators and without extension, and returns the padID (a group
+	 * pad as groupID$padName), or null to skip the file.
+	 *
+	 * @param padIdMapper the mapper
+	 */
+	public final void setPadIdMapper(
+			final Function<String, String> padIdMapper) {
+		this.padIdMapper = padIdMapper;
+	}
+
+	/**
+	 * Imports the .txt and .html files of a directory tree.
+	 *
+	 * @param directory the directory
+	 * @return Report
+	 * @throws IOException if the directory can not be walked
+	 */
+	public final Report importDirectory(final Path directory)
+			throws IOException {
+		try (Stream<Path> files = Files.walk(directory)) {
+			Iterator<Path> paths = files.filter(Files::isRegularFile)
+					.iterator();
+			return this.run(queue -> {
+				while (paths.hasNext()) {
+					Path path = paths.next();
+					String name = directory.relativize(path).toString()
+							.replace(path.getFileSystem().getSeparator(), "/");
+					Source source = this.source(name, () -> read(path),
+							sibling -> Files.exists(directory.resolve(sibling)));
+					if (source != null) {
+						queue.put(source);
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * Imports a zip archive of .txt and .html files, or a gzip-compressed
+	 * JSON Lines archive written by PadExporter.exportToArchive (any file
+	 * whose name does not end in .zip).
+	 *
+	 * @param archive the archive
+	 * @return Report
+	 * @throws IOException if the archive can not be read
+	 */
+	public final Report importArchive(final Path archive) throws IOException {
+		if (archive.getFileName().toString().endsWith(".zip")) {
+			try (ZipFile zip = new ZipFile(archive.toFile(),
+					StandardCharsets.UTF_8)) {
+				return this.run(queue -> {
+					Enumeration<? extends ZipEntry> entries = zip.entries();
+					while (entries.hasMoreElements()) {
+						ZipEntry entry = entries.nextElement();
+						if (entry.isDirectory()) {
+							continue;
+						}
+						Source source = this.source(entry.getName(), () -> {
+							try (InputStream in = zip.getInputStream(entry)) {
+								return ByteBuffer.wrap(in.readAllBytes());
+							}
+						}, sibling -> zip.getEntry(sibling) != null);
+						if (source != null) {
+							queue.put(source);
+						}
+					}
+				});
+			}
+		}
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+				new GZIPInputStream(Files.newInputStream(archive)),
+				StandardCharsets.UTF_8))) {
+			return this.run(queue -> {
+				for (String line = reader.readLine(); line != null;
+						line = reader.readLine()) {
+					if (line.isEmpty()) {
+						continue;
+					}
+					JSONObject pad = (JSONObject) JSONValue.parse(line);
+					Object padId = (pad != null) ? pad.get("padID") : null;
+					if (padId == null) {
+						throw new IOException("Not a pad: " + line);
+					}
+					Object html = pad.get("html");
+					String content = String.valueOf((html != null)
+							? html : pad.get("text"));
+					queue.put(new Source(padId.toString(), padId.toString(),
+							html != null, () -> content));
+				}
+			});
+		}
+	}
+
+	/**
+	 * Returns the import of a file, null if the file is skipped.
+	 *
+	 * @param name the path of the file, '/' separated
+	 * @param content reads the content of the file
+	 * @param hasSibling tells if another file of the directory or
+	 *  archive exists
+	 */
+	private Source source(final String name, final Content content,
+			final SiblingCheck hasSibling) throws IOException {
+		int dot = name.lastIndexOf('.');
+		if (dot < 0 || name.lastIndexOf('/') > dot) {
+			return null;
+		}
+		String extension = name.substring(dot + 1);
+		boolean html = "html".equals(extension) || "htm".equals(extension);
+		if (!html && !"txt".equals(extension)) {
+			return null;
+		}
+		String stem = name.substring(0, dot);
+		if (!html && (hasSibling.exists(stem + ".html")
+				|| hasSibling.exists(stem + ".htm"))) {
+			return null;
+		}
+		String padId = this.padIdMapper.apply(stem);
+		return (padId != null) ? new Source(name, padId, html, content) : null;
+	}
+
+	/**
+	 * The default mapping of a file path without extension to a padID.
+	 */
+	static String defaultPadId(final String stem) {
+		String[] segments = stem.split("/");
+		String name = URLDecoder.decode(segments[segments.length - 1],
+				StandardCharsets.UTF_8);
+		if (segments.length > 1) {
+			String parent = URLDecoder.decode(segments[segments.length - 2],
+					StandardCharsets.UTF_8);
+			if (parent.startsWith("g.")) {
+				return parent + "$" + name;
+			}
+		}
+		return name;
+	}
+
+	/**
+	 * Reads a file, through a memory mapping if it is large.
+	 */
+	private static ByteBuffer read(final Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path,
+				StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size >= MAPPED_SIZE) {
+				return channel.map(FileChannel.MapMode.READ_ONLY, 0L, size);
+			}
+			ByteBuffer buffer = ByteBuffer.allocate((int) size);
+			while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+				continue;
+			}
+			buffer.flip();
+			return buffer;
+		}
+	}
+
+	/**
+	 * Runs the workers while the producer queues the files.
+	 */
+	private Report run(final Producer producer) throws IOException {
+		int workers = this.parallelism;
+		BlockingQueue<Source> queue =
+				new ArrayBlockingQueue<>(workers * QUEUE_PER_WORKER);
+		AtomicBoolean listed = new AtomicBoolean();
+		AtomicReference<Throwable> fatal = new AtomicReference<>();
+		Report report = new Report();
+		long start = System.nanoTime();
+		ExecutorService executor = Executors.newFixedThreadPool(workers,
+				runnable -> {
+					Thread thread = new Thread(runnable,
+							"eplite-import-" + THREAD_COUNT.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				});
+		try {
+			List<Future<?>> futures = new ArrayList<>(workers);
+			for (int i = 0; i < workers; i++) {
+				futures.add(executor.submit(() -> {
+					this.work(queue, listed, fatal, report);
+					return null;
+				}));
+			}
+			try {
+				producer.produce(source -> {
+					while (!queue.offer(source, POLL_MILLIS,
+							TimeUnit.MILLISECONDS)) {
+						if (fatal.get() != null) {
+							throw new EPLiteException("Import aborted",
+									fatal.get());
+						}
+					}
+				});
+			} catch (IOException | RuntimeException | Error e) {
+				fatal.compareAndSet(null, e);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				fatal.compareAndSet(null, new EPLiteException(
+						"Interrupted while importing", e));
+			} finally {
+				listed.set(true);
+				for (Future<?> future : futures) {
+					try {
+						future.get();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new EPLiteException("Interrupted while"
+								+ " waiting for the import", e);
+					} catch (ExecutionException e) {
+						fatal.compareAndSet(null, e.getCause());
+					}
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		// First error wins: the worker's, not the producer giving up
+		Throwable error = fatal.get();
+		if (error instanceof IOException) {
+			throw (IOException) error;
+		}
+		if (error instanceof Error) {
+			throw (Error) error;
+		}
+		if (error instanceof EPLiteException) {
+			throw (EPLiteException) error;
+		}
+		if (error != null) {
+			throw new EPLiteException(error.toString(), error);
+		}
+		report.elapsedNanos = System.nanoTime() - start;
+		return report;
+	}
+
+	/**
+	 * Imports the files taken from the queue until they are all queued or
+	 * the import failed. An unexpected error stops every worker and the
+	 * producer.
+	 */
+	private void work(final BlockingQueue<Source> queue,
+			final AtomicBoolean listed, final AtomicReference<Throwable> fatal,
+			final Report report) throws InterruptedException {
+		try {
+			this.importQueued(queue, listed, fatal, report);
+		} catch (RuntimeException | Error e) {
+			fatal.compareAndSet(null, e);
+			throw e;
+		}
+	}
+
+	private void importQueued(final BlockingQueue<Source> queue,
+			final AtomicBoolean listed, final AtomicReference<Throwable> fatal,
+			final Report report) throws InterruptedException {
+		boolean utf8 = StandardCharsets.UTF_8.equals(
+				charsetOf(this.client.getConnection().getEncoding()));
+		while (fatal.get() == null) {
+			Source source = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+			if (source == null) {
+				if (listed.get() && queue.isEmpty()) {
+					return;
+				}
+				continue;
+			}
+			try {
+				Object content = source.content.read();
+				if (content instanceof ByteBuffer) {
+					ByteBuffer bytes = (ByteBuffer) content;
+					report.bytes.addAndGet(bytes.remaining());
+					if (!utf8) {
+						content = StandardCharsets.UTF_8.decode(bytes)
+								.toString();
+					}
+				} else {
+					report.bytes.addAndGet(
+							EPLiteConnection.utf8Length(content.toString()));
+				}
+				this.create(source, content, report);
+				report.imported.incrementAndGet();
+			} catch (IOException e) {
+				report.failures.put(source.name, e.toString());
+			} catch (PartialImportException e) {
+				report.partial.put(source.name,
+						String.valueOf(e.getCause().getMessage()));
+			} catch (EPLiteException e) {
+				report.failures.put(source.name,
+						String.valueOf(e.getMessage()));
+			}
+		}
+	}
+
+	/**
+	 * Creates the pad of a file.
+	 */
+	private void create(final Source source, final Object content,
+			final Report report) throws InterruptedException {
+		int dollar = source.padId.indexOf('$');
+		Map<String, Object> args = new HashMap<>();
+		String apiMethod;
+		if (dollar >= 0) {
+			apiMethod = "createGroupPad";
+			args.put("groupID", source.padId.substring(0, dollar));
+			args.put("padName", source.padId.substring(dollar + 1));
+		} else {
+			apiMethod = "createPad";
+			args.put("padID", source.padId);
+		}
+		if (!source.html) {
+			args.put("text", content);
+			this.post(apiMethod, args, report);
+			return;
+		}
+		this.post(apiMethod, args, report);
+		Map<String, Object> html = new HashMap<>();
+		html.put("padID", source.padId);
+		html.put("html", content);
+		try {
+			this.post("setHTML", html, report);
+		} catch (EPLiteException e) {
+			throw new PartialImportException(e);
+		}
+	}
+
+	/**
+	 * POSTs a call, retrying it while its connection is refused. Any other
+	 * failure may have reached the server, so it is not retried.
+	 */
+	private void post(final String apiMethod, final Map<String, Object> args,
+			final Report report) throws InterruptedException {
+		long delay = this.retryDelay;
+		for (int attempt = 1;; attempt++) {
+			try {
+				this.client.getConnection().post(apiMethod, args);
+				return;
+			} catch (EPLiteException e) {
+				if (attempt > 1 && apiMethod.startsWith("create")
+						&& e.getCode() == EPLiteConnection
+						.CODE_INVALID_PARAMETERS
+						&& String.valueOf(e.getMessage())
+						.contains("already exist")) {
+					// Created by an earlier attempt after all
+					return;
+				}
+				if (attempt >= this.maxAttempts
+						|| !(e.getCause() instanceof ConnectException)) {
+					throw e;
+				}
+			}
+			report.retries.incrementAndGet();
+			Thread.sleep(delay);
+			delay *= 2;
+		}
+	}
+
+	private static Charset charsetOf(final String encoding) {
+		try {
+			return Charset.forName(encoding);
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * The outcome of an import.
+	 */
+	public static final class Report {
+		private final AtomicLong imported = new AtomicLong();
+		private final AtomicLong retries = new AtomicLong();
+		private final AtomicLong bytes = new AtomicLong();
+		private final Map<String, String> failures =
+				new ConcurrentHashMap<>();
+		private final Map<String, String> partial =
+				new ConcurrentHashMap<>();
+		private volatile long elapsedNanos;
+
+		private Report() {
+		}
+
+		/** Getter.
+		 * @return the number of pads created
+		 * */
+		public long getImported() {
+			return imported.get();
+		}
+
+		/** Getter.
+		 * @return the error message of each file that could not be
+		 *  imported, by path
+		 * */
+		public Map<String, String> getFailures() {
+			return Collections.unmodifiableMap(failures);
+		}
+
+		/** Getter.
+		 * @return the error message of each HTML file whose pad was
+		 *  created but whose setHTML failed, leaving the pad empty, by path
+		 * */
+		public Map<String, String> getPartial() {
+			return Collections.unmodifiableMap(partial);
+		}
+
+		/** Getter.
+		 * @return the number of retried calls
+		 * */
+		public long getRetries() {
+			return retries.get();
+		}
+
+		/** Getter.
+		 * @return the number of content bytes read, in UTF-8
+		 * */
+		public long getBytes() {
+			return bytes.get();
+		}
+
+		/** Getter.
+		 * @return the duration of the import, in milliseconds
+		 * */
+		public long getElapsedMillis() {
+			return TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+		}
+
+		/** Getter.
+		 * @return the number of pads created per second
+		 * */
+		public double getPadsPerSecond() {
+			return (elapsedNanos > 0)
+					? imported.get() * 1e9 / elapsedNanos : 0.0;
+		}
+
+		/** Getter.
+		 * @return the number of content bytes imported per second
+		 * */
+		public double getBytesPerSecond() {
+			return (elapsedNanos > 0)
+					? bytes.get() * 1e9 / elapsedNanos : 0.0;
+		}
+
+		/**
+		 * Returns true if every file was imported.
+		 *
+		 * @return boolean
+		 */
+		public boolean isComplete() {
+			return failures.isEmpty() && partial.isEmpty();
+		}
+
+		@Override
+		public String toString() {
+			return String.format("Report{imported=%d, failed=%d, partial=%d,"
+					+ " retries=%d, bytes=%d, elapsed=%dms, %.1f pads/s,"
+					+ " %.0f bytes/s}",
+					imported.get(), failures.size(), partial.size(),
+					retries.get(),
+					bytes.get(), getElapsedMillis(), getPadsPerSecond(),
+					getBytesPerSecond());
+		}
+	}
+
+	/**
+	 * A file to import.
+	 */
+	private static final class Source {
+		private final String name;
+		private final String padId;
+		private final boolean html;
+		private final Content content;
+
+		private Source(String name, String padId, boolean html,
+				Content content) {
+			this.name = name;
+			this.padId = padId;
+			this.html = html;
+			this.content = content;
+		}
+	}
+
+	/**
+	 * A setHTML that failed after its pad was created.
+	 */
+	private static final class PartialImportException
+			extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		private PartialImportException(final EPLiteException cause) {
+			super(cause);
+		}
+	}
+
+	/**
+	 * Reads the content of a file, a ByteBuffer of UTF-8 bytes or a
+	 * String.
+	 */
+	private interface Content {
+		Object read() throws IOException;
+	}
+
+	/**
+	 * Tells if a file, given by its '/' separated path, exists.
+	 */
+	private interface SiblingCheck {
+		boolean exists(String name) throws IOException;
+	}
+
+	/**
+	 * Queues the files to import.
+	 */
+	private interface Producer {
+		void produce(Queue queue) throws IOException, InterruptedException;
+	}
+
+	/**
+	 * Takes the files to import, waiting while the workers are behind.
+	 */
+	private interface Queue {
+		void put(Source source) throws InterruptedException;
+	}
+}
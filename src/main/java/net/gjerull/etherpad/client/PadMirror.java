@@ -0,0 +1,458 @@
+package net.gjerull.etherpad.client;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+/**
+ * Keeps a local copy of pads up to date, fetching only the revisions made
+ * since the last sync.<br />
+ * <br />
+ * A sync asks getRevisionsCount for the head revision and, when the pad
+ * moved on, applies the missing changesets of getRevisionChangeset to the
+ * local text and attribution. A small edit to a large pad therefore costs
+ * the size of the edit, not the size of the pad. The whole text is only
+ * downloaded for a pad mirrored for the first time, or whose history no
+ * longer continues the local copy (e.g. a pad deleted and created again).
+ * <br />
+ * <br />
+ * Each pad is kept in its own file in the state directory, replaced
+ * atomically after every change, and the last synced revisions are listed
+ * in an index file. A mirror created on an existing directory resumes
+ * where the previous one stopped. Only the revisions stay in memory, so a
+ * single mirror holds thousands of pads; start() syncs all of them
+ * periodically on one scheduler, at most parallelism at a time.<br />
+ * <br />
+ * The attribution of a pad mirrored from its text starts without
+ * authors; the changesets applied after that carry theirs.<br />
+ * <br />
+ * Example:<br />
+ * <br />
+ * <code>
+ * PadMirror mirror = new PadMirror(api, Paths.get("mirror"));<br />
+ * mirror.add("my_pad");<br />
+ * mirror.start(scheduler, 30, TimeUnit.SECONDS);<br />
+ * String text = mirror.getText("my_pad");
+ * </code>
+ */
+public class PadMirror {
+	/** Default number of pads synced concurrently. */
+	public static final int DEFAULT_PARALLELISM = 4;
+
+	/** Name of the index file in the state directory. */
+	static final String INDEX = "mirror.index";
+
+	/** Extension of the pad files. */
+	private static final String PAD_SUFFIX = ".pad.json";
+
+	/**
+	 * Receives the pads changed by a sync.
+	 */
+	public interface Listener {
+		/**
+		 * Called after a pad was synced to a new revision.
+		 *
+		 * @param padId the pad's id string
+		 * @param rev the revision synced
+		 * @param atext the text and attribution at rev
+		 */
+		void padChanged(String padId, long rev, AText atext);
+	}
+
+	private final EPLiteClient client;
+	private final Path directory;
+	/** The mirrored pads, by padID. */
+	private final Map<String, PadState> pads = new ConcurrentHashMap<>();
+	/** Guards the index file. */
+	private final Object indexLock = new Object();
+	private volatile int parallelism = DEFAULT_PARALLELISM;
+	private volatile Listener listener;
+	private final AtomicLong changesets = new AtomicLong();
+	private final AtomicLong snapshots = new AtomicLong();
+
+	/**
+	 * Initializes a new PadMirror, resuming the pads listed in the index
+	 * of the directory.
+	 *
+	 * @param client the client fetching the pads
+	 * @param directory the state directory, created if missing
+	 * @throws IOException if the directory cannot be read
+	 */
+	public PadMirror(final EPLiteClient client, final Path directory)
+			throws IOException {
+		this.client = client;
+		this.directory = directory;
+		Files.createDirectories(directory);
+		Path index = directory.resolve(INDEX);
+		if (Files.exists(index)) {
+			for (String line : Files.readAllLines(index,
+					StandardCharsets.UTF_8)) {
+				int space = line.indexOf(' ');
+				if (space > 0) {
+					String padId = URLDecoder.decode(line.substring(0, space),
+							StandardCharsets.UTF_8);
+					this.pads.put(padId, new PadState(
+							Long.parseLong(line.substring(space + 1).trim())));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Sets the number of pads synced concurrently by syncAll.
+	 *
+	 * @param parallelism at least 1
+	 */
+	public final void setParallelism(final int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException(
+					"parallelism must be at least 1");
+		}
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Sets the listener told about the pads changed by a sync.
+	 *
+	 * @param listener the listener, null for none
+	 */
+	public final void setListener(final Listener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Adds a pad to the mirror. It is fetched by the next sync.
+	 *
+	 * @param padId the pad's id string
+	 * @throws IOException if the index cannot be written
+	 */
+	public final void add(final String padId) throws IOException {
+		if (this.pads.putIfAbsent(padId, new PadState(-1L)) == null) {
+			this.writeIndex();
+		}
+	}
+
+	/**
+	 * Removes a pad and its local copy from the mirror.
+	 *
+	 * @param padId the pad's id string
+	 * @throws IOException if the local copy cannot be deleted
+	 */
+	public final void remove(final String padId) throws IOException {
+		PadState state = this.pads.remove(padId);
+		if (state != null) {
+			synchronized (state) {
+				Files.deleteIfExists(this.padFile(padId));
+			}
+			this.writeIndex();
+		}
+	}
+
+	/** Getter.
+	 * @return the mirrored padIDs
+	 * */
+	public final Set<String> getPadIds() {
+		return Collections.unmodifiableSet(new TreeSet<>(this.pads.keySet()));
+	}
+
+	/**
+	 * Returns the last revision synced for a pad.
+	 *
+	 * @param padId the pad's id string
+	 * @return the revision, -1 if the pad was not synced yet
+	 */
+	public final long getRevision(final String padId) {
+		PadState state = this.pads.get(padId);
+		return (state != null) ? state.rev : -1L;
+	}
+
+	/**
+	 * Returns the local copy of a pad.
+	 *
+	 * @param padId the pad's id string
+	 * @return the text and attribution, null if the pad was not synced yet
+	 * @throws IOException if the local copy cannot be read
+	 */
+	public final AText getAText(final String padId) throws IOException {
+		PadState state = this.pads.get(padId);
+		if (state == null) {
+			return null;
+		}
+		synchronized (state) {
+			Stored stored = this.read(padId);
+			return (stored != null) ? stored.atext : null;
+		}
+	}
+
+	/**
+	 * Returns the text of the local copy of a pad.
+	 *
+	 * @param padId the pad's id string
+	 * @return the text, null if the pad was not synced yet
+	 * @throws IOException if the local copy cannot be read
+	 */
+	public final String getText(final String padId) throws IOException {
+		AText atext = this.getAText(padId);
+		return (atext != null) ? atext.getText() : null;
+	}
+
+	/** Getter.
+	 * @return the number of changesets applied
+	 * */
+	public final long getChangesetCount() {
+		return this.changesets.get();
+	}
+
+	/** Getter.
+	 * @return the number of pads downloaded whole
+	 * */
+	public final long getSnapshotCount() {
+		return this.snapshots.get();
+	}
+
+	/**
+	 * Brings the local copy of a pad to the head revision, writing the
+	 * index if it changed.
+	 *
+	 * @param padId the pad's id string, added to the mirror if needed
+	 * @return true if the local copy changed
+	 * @throws IOException if the local copy cannot be read or written
+	 */
+	public final boolean sync(final String padId) throws IOException {
+		boolean changed = this.syncPad(padId);
+		if (changed) {
+			this.writeIndex();
+		}
+		return changed;
+	}
+
+	/**
+	 * Syncs a pad without writing the index.
+	 */
+	private boolean syncPad(final String padId) throws IOException {
+		PadState state = this.pads.get(padId);
+		if (state == null) {
+			this.add(padId);
+			state = this.pads.get(padId);
+		}
+		synchronized (state) {
+			long head = this.client.typed().getRevisionsCount(padId)
+					.getRevisions();
+			if (head == state.rev) {
+				return false;
+			}
+			Stored stored = this.read(padId);
+			if (stored != null && stored.rev == head) {
+				// The pad file was written after the index
+				state.rev = head;
+				return false;
+			}
+			AText atext = null;
+			if (stored != null && stored.rev < head) {
+				atext = this.apply(padId, state, stored.atext, stored.rev,
+						head);
+			}
+			if (atext == null) {
+				atext = AText.of(this.client.typed().getText(padId, head)
+						.getText());
+				this.snapshots.incrementAndGet();
+			}
+			this.write(padId, head, atext);
+			state.rev = head;
+			Listener current = this.listener;
+			if (current != null) {
+				current.padChanged(padId, head, atext);
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Syncs every mirrored pad, at most parallelism at a time, then
+	 * writes the index.
+	 *
+	 * @return BulkResult, true for each pad that changed
+	 * @throws IOException if the index cannot be written
+	 */
+	public final BulkResult<String, Boolean> syncAll() throws IOException {
+		List<String> padIds = new ArrayList<>(this.pads.keySet());
+		BulkResult<String, Boolean> result = this.client
+				.bulk(this.parallelism).run(padIds, padId -> {
+					try {
+						return this.syncPad(padId);
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				});
+		this.writeIndex();
+		return result;
+	}
+
+	/**
+	 * Syncs every mirrored pad periodically on a scheduler. A failing
+	 * pad is retried at the next run; an error writing the index stops
+	 * the periodic sync.
+	 *
+	 * @param scheduler the scheduler
+	 * @param delay the delay between the end of a run and the next one
+	 * @param unit the unit of delay
+	 * @return ScheduledFuture, cancel it to stop syncing
+	 */
+	public final ScheduledFuture<?> start(
+			final ScheduledExecutorService scheduler, final long delay,
+			final TimeUnit unit) {
+		return scheduler.scheduleWithFixedDelay(() -> {
+			try {
+				this.syncAll();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}, 0L, delay, unit);
+	}
+
+	/**
+	 * Applies the changesets after rev up to head.
+	 *
+	 * @return the text at head, null if the changesets do not continue
+	 *  the local copy
+	 */
+	private AText apply(final String padId, final PadState state,
+			final AText from, final long rev, final long head) {
+		AText atext = from;
+		for (long r = rev + 1; r <= head; r++) {
+			Changeset changeset = Changeset.parse(
+					this.client.getRevisionChangeset(padId, r));
+			if (changeset.getOldLength() != atext.getText().length()) {
+				return null;
+			}
+			if (!changeset.hasAttributesIn(state.pool)) {
+				state.pool = AttributePool.fromResponse(
+						this.client.getAttributePool(padId));
+			}
+			atext = changeset.applyTo(atext, state.pool);
+			this.changesets.incrementAndGet();
+		}
+		return atext;
+	}
+
+	private Path padFile(final String padId) {
+		return this.directory.resolve(
+				URLEncoder.encode(padId, StandardCharsets.UTF_8) + PAD_SUFFIX);
+	}
+
+	/**
+	 * Reads the local copy of a pad, null if there is none.
+	 */
+	private Stored read(final String padId) throws IOException {
+		Path file = this.padFile(padId);
+		if (!Files.exists(file)) {
+			return null;
+		}
+		Map<?, ?> json;
+		try (Reader reader = Files.newBufferedReader(file,
+				StandardCharsets.UTF_8)) {
+			json = (Map<?, ?>) new JSONParser().parse(reader);
+		} catch (ParseException | ClassCastException e) {
+			throw new IOException("Corrupt pad file " + file, e);
+		}
+		return new Stored(((Number) json.get("rev")).longValue(),
+				new AText((String) json.get("text"),
+						(String) json.get("attribs")));
+	}
+
+	@SuppressWarnings("unchecked")
+	private void write(final String padId, final long rev,
+			final AText atext) throws IOException {
+		JSONObject json = new JSONObject();
+		json.put("padID", padId);
+		json.put("rev", rev);
+		json.put("text", atext.getText());
+		json.put("attribs", atext.getAttribs());
+		Path file = this.padFile(padId);
+		Path temporary = file.resolveSibling(file.getFileName() + ".part");
+		try (Writer writer = Files.newBufferedWriter(temporary,
+				StandardCharsets.UTF_8)) {
+			json.writeJSONString(writer);
+		}
+		replace(temporary, file);
+	}
+
+	/**
+	 * Writes the padID and last synced revision of every pad.
+	 */
+	private void writeIndex() throws IOException {
+		synchronized (this.indexLock) {
+			StringBuilder index = new StringBuilder();
+			for (Map.Entry<String, PadState> pad : this.pads.entrySet()) {
+				index.append(URLEncoder.encode(pad.getKey(),
+						StandardCharsets.UTF_8))
+						.append(' ').append(pad.getValue().rev).append('\n');
+			}
+			Path file = this.directory.resolve(INDEX);
+			Path temporary = file.resolveSibling(INDEX + ".part");
+			Files.write(temporary,
+					index.toString().getBytes(StandardCharsets.UTF_8));
+			replace(temporary, file);
+		}
+	}
+
+	private static void replace(final Path temporary, final Path file)
+			throws IOException {
+		try {
+			Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * What is kept in memory for a pad. Syncs of a pad lock its state.
+	 */
+	private static final class PadState {
+		/** The last revision synced, -1 for none. */
+		private volatile long rev;
+		/** The attribute pool, fetched when a changeset needs more. */
+		private AttributePool pool = new AttributePool();
+
+		private PadState(long rev) {
+			this.rev = rev;
+		}
+	}
+
+	/**
+	 * The content of a pad file.
+	 */
+	private static final class Stored {
+		private final long rev;
+		private final AText atext;
+
+		private Stored(long rev, AText atext) {
+			this.rev = rev;
+			this.atext = atext;
+		}
+	}
+}
@@ -0,0 +1,48 @@
+package net.gjerull.etherpad.client;
+
+/**
+ * The text of a pad, as returned by getText.
+ */
+public final class PadText {
+	private final String text;
+
+	/**
+	 * Instantiates a new PadText.
+	 *
+	 * @param text the text of the pad
+	 */
+	public PadText(final String text) {
+		this.text = text;
+	}
+
+	/** Getter.
+	 * @return the text of the pad
+	 * */
+	public String getText() {
+		return text;
+	}
+
+	@Override
+	public String toString() {
+		return "PadText[" + text + "]";
+	}
+
+	/**
+	 * Decodes <code>{"text": "..."}</code>.
+	 */
+	static final class Decoder extends ResponseDecoder<PadText> {
+		private String text;
+
+		@Override
+		protected void value(String key, Object value, int level) {
+			if (level == 1 && "text".equals(key)) {
+				this.text = toText(value);
+			}
+		}
+
+		@Override
+		protected PadText result() {
+			return new PadText(this.text);
+		}
+	}
+}
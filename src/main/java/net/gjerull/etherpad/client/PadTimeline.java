@@ -0,0 +1,127 @@
+package net.gjerull.etherpad.client;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Rebuilds any revision of a pad on the client from the changesets of
+ * getRevisionChangeset and the pool of getAttributePool.<br />
+ * <br />
+ * Every keyframeInterval revisions the rebuilt text is kept, so reaching
+ * a revision applies at most that many changesets, from the closest
+ * keyframe before it or from the last revision rebuilt. Scrubbing through
+ * a timeline therefore costs one changeset per step, and the changesets
+ * themselves are cached by a RevisionCache set on the client.<br />
+ * <br />
+ * Example:<br />
+ * <br />
+ * <code>
+ * PadTimeline timeline = new PadTimeline(api, "my_pad");<br />
+ * String text = timeline.getText(42);
+ * </code>
+ */
+public class PadTimeline {
+	/** Default number of revisions between keyframes. */
+	public static final int DEFAULT_KEYFRAME_INTERVAL = 50;
+
+	/** The client fetching the changesets. */
+	private final EPLiteClient client;
+	/** The pad's id string. */
+	private final String padId;
+	/** Number of revisions between keyframes. */
+	private final int keyframeInterval;
+	/** The kept revisions. Guarded by this. */
+	private final TreeMap<Long, AText> keyframes = new TreeMap<>();
+	/** The attribute pool, null until it is needed. Guarded by this. */
+	private AttributePool pool;
+	/** The last revision rebuilt, -1 for none. Guarded by this. */
+	private long lastRev = -1L;
+	private AText last;
+
+	/**
+	 * Initializes a new PadTimeline with keyframes every
+	 * DEFAULT_KEYFRAME_INTERVAL revisions.
+	 *
+	 * @param client the client fetching the changesets
+	 * @param padId the pad's id string
+	 */
+	public PadTimeline(final EPLiteClient client, final String padId) {
+		this(client, padId, DEFAULT_KEYFRAME_INTERVAL);
+	}
+
+	/**
+	 * Initializes a new PadTimeline.
+	 *
+	 * @param client the client fetching the changesets
+	 * @param padId the pad's id string
+	 * @param keyframeInterval number of revisions between keyframes
+	 */
+	public PadTimeline(final EPLiteClient client, final String padId,
+			final int keyframeInterval) {
+		if (keyframeInterval < 1) {
+			throw new IllegalArgumentException(
+					"keyframeInterval must be at least 1");
+		}
+		this.client = client;
+		this.padId = padId;
+		this.keyframeInterval = keyframeInterval;
+	}
+
+	/**
+	 * Returns the text of a revision.
+	 *
+	 * @param rev the revision, 0 for the first one
+	 * @return the text of the pad at rev
+	 */
+	public final String getText(final long rev) {
+		return this.getRevision(rev).getText();
+	}
+
+	/**
+	 * Returns the text and attribution of a revision.
+	 *
+	 * @param rev the revision, 0 for the first one
+	 * @return AText
+	 */
+	public final synchronized AText getRevision(final long rev) {
+		if (rev < 0) {
+			throw new IllegalArgumentException("rev " + rev);
+		}
+		// A new pad is a single newline that revision 0 changes
+		long from = -1L;
+		AText atext = AText.of("\n");
+		Map.Entry<Long, AText> keyframe = this.keyframes.floorEntry(rev);
+		if (keyframe != null) {
+			from = keyframe.getKey();
+			atext = keyframe.getValue();
+		}
+		if (this.last != null && this.lastRev <= rev && this.lastRev > from) {
+			from = this.lastRev;
+			atext = this.last;
+		}
+		for (long r = from + 1; r <= rev; r++) {
+			Changeset changeset = Changeset.parse(
+					this.client.getRevisionChangeset(this.padId, r));
+			if (this.pool == null || !changeset.hasAttributesIn(this.pool)) {
+				this.pool = AttributePool.fromResponse(
+						this.client.getAttributePool(this.padId));
+			}
+			atext = changeset.applyTo(atext, this.pool);
+			if (r % this.keyframeInterval == 0) {
+				this.keyframes.put(r, atext);
+			}
+		}
+		this.lastRev = rev;
+		this.last = atext;
+		return atext;
+	}
+
+	/**
+	 * Returns the attribute pool the revisions were rebuilt with.
+	 *
+	 * @return AttributePool, null if no revision was rebuilt yet
+	 */
+	public final synchronized AttributePool getAttributePool() {
+		return this.pool;
+	}
+}
@@ -0,0 +1,397 @@
+package net.gjerull.etherpad.client;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Watches pads for changes by polling getLastEdited, and publishes a
+ * Change for every edit it sees.<br />
+ * <br />
+ * All the pads share a small pool of threads: each pad has one pending
+ * poll on the pool's schedule, and no thread is held between polls. With
+ * an AsyncTransport (HttpClientTransport, Http2Transport) no thread is
+ * held during a poll either, so two threads serve any number of pads;
+ * with a blocking transport a poll holds its thread until answered, and
+ * the pool should be sized for the polls in flight. The
+ * interval of a pad adapts to how often it changes: it doubles after each
+ * poll finding no change, up to the maximum interval, and falls back to
+ * the minimum one as soon as the pad is edited. Busy pads are thus seen
+ * within the minimum interval while idle ones cost one small call per
+ * maximum interval. Every delay is jittered so that pads watched together
+ * do not poll together.<br />
+ * <br />
+ * Subscribers get their own buffer of bufferCapacity changes. The changes
+ * a subscriber is too slow to take are dropped for it and counted by
+ * getDroppedCount(); the polls never wait for a subscriber.<br />
+ * <br />
+ * Example:<br />
+ * <br />
+ * <code>
+ * PadWatcher watcher = new PadWatcher(api);<br />
+ * watcher.subscribe(subscriber);<br />
+ * watcher.watch("my_pad");<br />
+ * ...<br />
+ * watcher.close();
+ * </code>
+ */
+public class PadWatcher implements Flow.Publisher<PadWatcher.Change>,
+		AutoCloseable {
+	/** Default number of polling threads. */
+	public static final int DEFAULT_THREADS = 2;
+
+	/** Default shortest interval between two polls of a pad, in ms. */
+	public static final long DEFAULT_MIN_INTERVAL = 1000L;
+
+	/** Default longest interval between two polls of a pad, in ms. */
+	public static final long DEFAULT_MAX_INTERVAL = 60000L;
+
+	/** Default fraction of an interval added or removed at random. */
+	public static final double DEFAULT_JITTER = 0.2;
+
+	private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+	private final EPLiteClient client;
+	private final ScheduledThreadPoolExecutor scheduler;
+	private final SubmissionPublisher<Change> publisher;
+	/** The watched pads, by padID. */
+	private final Map<String, Watch> watches = new ConcurrentHashMap<>();
+	private volatile long minInterval = DEFAULT_MIN_INTERVAL;
+	private volatile long maxInterval = DEFAULT_MAX_INTERVAL;
+	private volatile double jitter = DEFAULT_JITTER;
+	private final AtomicLong polls = new AtomicLong();
+	private final AtomicLong errors = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+
+	/**
+	 * Initializes a new PadWatcher with DEFAULT_THREADS threads and
+	 * subscriber buffers of Flow.defaultBufferSize() changes.
+	 *
+	 * @param client the client polling the pads
+	 */
+	public PadWatcher(final EPLiteClient client) {
+		this(client, DEFAULT_THREADS, Flow.defaultBufferSize());
+	}
+
+	/**
+	 * Initializes a new PadWatcher.
+	 *
+	 * @param client the client polling the pads
+	 * @param threads the number of polling threads
+	 * @param bufferCapacity the number of changes buffered per subscriber
+	 */
+	public PadWatcher(final EPLiteClient client, final int threads,
+			final int bufferCapacity) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("threads must be at least 1");
+		}
+		this.client = client;
+		this.scheduler = new ScheduledThreadPoolExecutor(threads,
+				runnable -> {
+					Thread thread = new Thread(runnable,
+							"eplite-watch-" + THREAD_COUNT.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				});
+		this.scheduler.setRemoveOnCancelPolicy(true);
+		// Subscribers are called on the common pool, never on the pollers
+		this.publisher = new SubmissionPublisher<>(ForkJoinPool.commonPool(),
+				bufferCapacity);
+	}
+
+	/**
+	 * Sets the bounds of the polling interval of a pad. Pads already
+	 * watched use them from their next poll.
+	 *
+	 * @param minInterval the interval after a change, in ms
+	 * @param maxInterval the longest interval, in ms
+	 */
+	public final void setPollInterval(final long minInterval,
+			final long maxInterval) {
+		if (minInterval < 1 || maxInterval < minInterval) {
+			throw new IllegalArgumentException("Invalid interval "
+					+ minInterval + ".." + maxInterval);
+		}
+		this.minInterval = minInterval;
+		this.maxInterval = maxInterval;
+	}
+
+	/**
+	 * Sets the fraction of each interval added or removed at random.
+	 *
+	 * @param jitter between 0 and 1
+	 */
+	public final void setJitter(final double jitter) {
+		if (jitter < 0 || jitter >= 1) {
+			throw new IllegalArgumentException("Invalid jitter " + jitter);
+		}
+		this.jitter = jitter;
+	}
+
+	/**
+	 * Starts watching a pad. Its first poll, within the minimum interval,
+	 * records its last edit; the edits after that are published.
+	 *
+	 * @param padId the pad's id string
+	 */
+	public final void watch(final String padId) {
+		if (this.publisher.isClosed()) {
+			throw new IllegalStateException("The watcher is closed");
+		}
+		Watch watch = new Watch(padId, this.minInterval);
+		if (this.watches.putIfAbsent(padId, watch) == null) {
+			// Spread the first polls over the minimum interval
+			watch.schedule(ThreadLocalRandom.current()
+					.nextLong(this.minInterval + 1));
+		}
+	}
+
+	/**
+	 * Stops watching a pad.
+	 *
+	 * @param padId the pad's id string
+	 */
+	public final void unwatch(final String padId) {
+		Watch watch = this.watches.remove(padId);
+		if (watch != null) {
+			watch.cancel();
+		}
+	}
+
+	/** Getter.
+	 * @return the watched padIDs
+	 * */
+	public final Set<String> getWatched() {
+		return Collections.unmodifiableSet(
+				new TreeSet<>(this.watches.keySet()));
+	}
+
+	/**
+	 * Returns the current polling interval of a pad.
+	 *
+	 * @param padId the pad's id string
+	 * @return the interval in ms, -1 if the pad is not watched
+	 */
+	public final long getInterval(final String padId) {
+		Watch watch = this.watches.get(padId);
+		return (watch != null) ? watch.interval : -1L;
+	}
+
+	/** Getter.
+	 * @return the number of polls made
+	 * */
+	public final long getPollCount() {
+		return this.polls.get();
+	}
+
+	/** Getter.
+	 * @return the number of polls that failed
+	 * */
+	public final long getErrorCount() {
+		return this.errors.get();
+	}
+
+	/** Getter.
+	 * @return the number of changes dropped for slow subscribers
+	 * */
+	public final long getDroppedCount() {
+		return this.dropped.get();
+	}
+
+	@Override
+	public final void subscribe(
+			final Flow.Subscriber<? super Change> subscriber) {
+		this.publisher.subscribe(subscriber);
+	}
+
+	/**
+	 * Stops every poll and completes the subscribers.
+	 */
+	@Override
+	public final void close() {
+		for (Watch watch : this.watches.values()) {
+			watch.cancel();
+		}
+		this.watches.clear();
+		this.publisher.close();
+		this.scheduler.shutdown();
+	}
+
+	private void publish(final Change change) {
+		this.publisher.offer(change, (subscriber, item) -> {
+			this.dropped.incrementAndGet();
+			return false;
+		});
+	}
+
+	/**
+	 * Returns the interval randomly shortened or lengthened by jitter.
+	 */
+	private long jittered(final long interval) {
+		double spread = this.jitter;
+		if (spread == 0) {
+			return interval;
+		}
+		double factor = 1 - spread
+				+ 2 * spread * ThreadLocalRandom.current().nextDouble();
+		return Math.max(1L, (long) (interval * factor));
+	}
+
+	/**
+	 * A pad edit seen by the watcher.
+	 */
+	public static final class Change {
+		private final String padId;
+		private final long lastEdited;
+		private final long previousEdited;
+
+		Change(String padId, long lastEdited, long previousEdited) {
+			this.padId = padId;
+			this.lastEdited = lastEdited;
+			this.previousEdited = previousEdited;
+		}
+
+		/** Getter.
+		 * @return the pad's id string
+		 * */
+		public String getPadId() {
+			return padId;
+		}
+
+		/** Getter.
+		 * @return the time of the edit, in ms since the epoch
+		 * */
+		public long getLastEdited() {
+			return lastEdited;
+		}
+
+		/** Getter.
+		 * @return the time of the edit seen before, in ms since the epoch
+		 * */
+		public long getPreviousEdited() {
+			return previousEdited;
+		}
+
+		@Override
+		public String toString() {
+			return "Change{padId=" + padId + ", lastEdited=" + lastEdited
+					+ "}";
+		}
+	}
+
+	/**
+	 * The polling state of a pad. Only one poll of a pad runs at a time,
+	 * each one scheduling the next.
+	 */
+	private final class Watch implements Runnable {
+		private final String padId;
+		/** The last edit seen. */
+		private long lastEdited;
+		/** False until a poll got the last edit of the pad. */
+		private boolean seen;
+		private volatile long interval;
+		private volatile boolean cancelled;
+		private volatile ScheduledFuture<?> next;
+
+		private Watch(String padId, long interval) {
+			this.padId = padId;
+			this.interval = interval;
+		}
+
+		@Override
+		public void run() {
+			if (this.cancelled) {
+				return;
+			}
+			PadWatcher.this.polls.incrementAndGet();
+			EPLiteConnection connection = PadWatcher.this.client.getConnection();
+			if (connection.getTransport() instanceof AsyncTransport) {
+				Map<String, Object> args = new HashMap<>();
+				args.put("padID", this.padId);
+				try {
+					connection.getAsync("getLastEdited", args)
+							.whenComplete((response, e) -> this.polled(response));
+				} catch (RuntimeException e) {
+					this.polled(null);
+				}
+				return;
+			}
+			Map response;
+			try {
+				response = PadWatcher.this.client.getLastEdited(this.padId);
+			} catch (RuntimeException e) {
+				response = null;
+			}
+			this.polled(response);
+		}
+
+		/**
+		 * Publishes the edit found by a poll, if any, and schedules the
+		 * next poll, whatever the poll or the publishing failed with.
+		 *
+		 * @param response the answer of getLastEdited, null if it failed
+		 */
+		private void polled(final Map response) {
+			long min = PadWatcher.this.minInterval;
+			long max = PadWatcher.this.maxInterval;
+			long backedOff = Math.min(max, Math.max(min, this.interval * 2));
+			try {
+				Object value = (response == null) ? null
+						: response.get("lastEdited");
+				if (!(value instanceof Number)) {
+					throw new EPLiteException("No lastEdited for pad "
+							+ this.padId);
+				}
+				long edited = ((Number) value).longValue();
+				if (this.seen && edited != this.lastEdited) {
+					PadWatcher.this.publish(
+							new Change(this.padId, edited, this.lastEdited));
+					this.interval = min;
+				} else {
+					this.interval = backedOff;
+				}
+				this.lastEdited = edited;
+				this.seen = true;
+			} catch (RuntimeException e) {
+				// Counted, and the pad is polled again all the same
+				PadWatcher.this.errors.incrementAndGet();
+				this.interval = backedOff;
+			}
+			this.schedule(PadWatcher.this.jittered(this.interval));
+		}
+
+		private void schedule(final long delay) {
+			if (this.cancelled) {
+				return;
+			}
+			try {
+				this.next = PadWatcher.this.scheduler.schedule(this, delay,
+						TimeUnit.MILLISECONDS);
+			} catch (RejectedExecutionException e) {
+				// The watcher was closed
+				this.cancelled = true;
+			}
+		}
+
+		private void cancel() {
+			this.cancelled = true;
+			ScheduledFuture<?> future = this.next;
+			if (future != null) {
+				future.cancel(false);
+			}
+		}
+	}
+}
@@ -0,0 +1,65 @@
+package net.gjerull.etherpad.client;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Aggregates the phase timings of the requests into a LatencyHistogram
+ * per phase, telling slow networks (CONNECT, TLS, TRANSFER) from a busy
+ * Etherpad (FIRST_BYTE) and from the cost of parsing (PARSE).<br />
+ * <br />
+ * Example:<br />
+ * <br />
+ * <code>
+ * PhaseStatistics phases = new PhaseStatistics();<br />
+ * connection.setTimingListener(phases);<br />
+ * long p99 = phases.getHistogram(CallTiming.Phase.FIRST_BYTE)<br />
+ * .getValueAtPercentile(0.99);
+ * </code>
+ */
+public class PhaseStatistics implements TimingListener {
+	private final Map<CallTiming.Phase, LatencyHistogram> phases =
+			new EnumMap<>(CallTiming.Phase.class);
+	private final LatencyHistogram total = new LatencyHistogram();
+
+	/**
+	 * Initializes a new PhaseStatistics.
+	 */
+	public PhaseStatistics() {
+		for (CallTiming.Phase phase : CallTiming.Phase.values()) {
+			this.phases.put(phase, new LatencyHistogram());
+		}
+	}
+
+	/**
+	 * Returns the histogram of a phase.
+	 *
+	 * @param phase the phase
+	 * @return LatencyHistogram in microseconds
+	 */
+	public final LatencyHistogram getHistogram(
+			final CallTiming.Phase phase) {
+		return this.phases.get(phase);
+	}
+
+	/** Getter.
+	 * @return the histogram of the whole requests
+	 * */
+	public final LatencyHistogram getTotal() {
+		return this.total;
+	}
+
+	@Override
+	public void requestTimed(final CallTiming timing) {
+		for (Map.Entry<CallTiming.Phase, LatencyHistogram> phase
+				: this.phases.entrySet()) {
+			phase.getValue().record(timing.get(phase.getKey()));
+		}
+		this.total.record(timing.getTotal());
+	}
+
+	@Override
+	public String toString() {
+		return "PhaseStatistics{phases=" + phases + ", total=" + total + "}";
+	}
+}
@@ -0,0 +1,500 @@
+package net.gjerull.etherpad.client;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.URL;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHost;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
+
+import etm.core.configuration.EtmManager;
+import etm.core.monitor.EtmMonitor;
+import etm.core.monitor.EtmPoint;
+
+/**
+ * A transport keeping a pool of persistent (keep-alive) HTTP connections,
+ * so consecutive calls to the same Etherpad Lite host reuse the TCP and
+ * TLS connection instead of setting up a new one per call.<br />
+ * <br />
+ * Example:<br />
+ * <br />
+ * <code>
+ * Transport transport = new PooledTransport(50, 30000L, 300000L);<br />
+ * EPLiteClient client = new EPLiteClient(url, apiKey,
+ * "1.2.13", "UTF-8", transport);<br />
+ * ...<br />
+ * client.close();
+ * </code>
+ */
+public class PooledTransport implements Transport {
+	/** Default maximum number of connections per host. */
+	public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 20;
+	/** Default time in milliseconds an idle connection is kept. */
+	public static final long DEFAULT_MAX_IDLE_TIME = 30000L;
+	/** Default maximum lifetime in milliseconds of a connection. */
+	public static final long DEFAULT_CONNECTION_TIME_TO_LIVE = 300000L;
+	/** Default time in milliseconds to open a connection. */
+	public static final int DEFAULT_CONNECT_TIMEOUT = 5000;
+	/** Default time in milliseconds to wait for data of a response. */
+	public static final int DEFAULT_SOCKET_TIMEOUT = 60000;
+	/** Default time in milliseconds to wait for a pooled connection. */
+	public static final int DEFAULT_CONNECTION_REQUEST_TIMEOUT = 10000;
+
+	/** The pool holds at least this many hosts' worth of connections. */
+	private static final int MIN_ROUTES = 4;
+
+	private static final EtmMonitor etmMonitor = EtmManager.getEtmMonitor();
+
+	/** Set in the context of a request that opened a new connection. */
+	private static final String OPENED =
+			PooledTransport.class.getName() + ".opened";
+
+	/** The pool the connections are leased from. */
+	private final PoolingHttpClientConnectionManager connectionManager;
+
+	/** The client executing the requests on pooled connections. */
+	private final CloseableHttpClient httpClient;
+
+	/** The hosts requested so far, as scheme://host:port. */
+	private final Set<String> routes = ConcurrentHashMap.newKeySet();
+
+	private volatile RequestConfig requestConfig = RequestConfig.custom()
+			.setConnectTimeout(DEFAULT_CONNECT_TIMEOUT)
+			.setSocketTimeout(DEFAULT_SOCKET_TIMEOUT)
+			.setConnectionRequestTimeout(DEFAULT_CONNECTION_REQUEST_TIMEOUT)
+			.build();
+
+	/**
+	 * Instantiates a new PooledTransport with the default limits.
+	 */
+	public PooledTransport() {
+		this(TLSConfig.system());
+	}
+
+	/**
+	 * Instantiates a new PooledTransport with the default limits.
+	 *
+	 * @param tls the TLS settings of the HTTPS connections
+	 */
+	public PooledTransport(final TLSConfig tls) {
+		this(DEFAULT_MAX_CONNECTIONS_PER_HOST, DEFAULT_MAX_IDLE_TIME,
+				DEFAULT_CONNECTION_TIME_TO_LIVE, tls);
+	}
+
+	/**
+	 * Instantiates a new PooledTransport.
+	 *
+	 * @param maxConnectionsPerHost the maximum number of open
+	 *  connections to one host
+	 * @param maxIdleTime milliseconds after which an idle connection
+	 *  is evicted from the pool
+	 * @param connectionTimeToLive milliseconds after which a connection
+	 *  is closed, idle or not (0 for no limit)
+	 */
+	public PooledTransport(final int maxConnectionsPerHost,
+			final long maxIdleTime, final long connectionTimeToLive) {
+		this(maxConnectionsPerHost, maxIdleTime, connectionTimeToLive,
+				TLSConfig.system());
+	}
+
+	/**
+	 * Instantiates a new PooledTransport.
+	 *
+	 * @param maxConnectionsPerHost the maximum number of open
+	 *  connections to one host; the pool grows with the number of
+	 *  hosts requested
+	 * @param maxIdleTime milliseconds after which an idle connection
+	 *  is evicted from the pool
+	 * @param connectionTimeToLive milliseconds after which a connection
+	 *  is closed, idle or not (0 for no limit)
+	 * @param tls the TLS settings of the HTTPS connections
+	 */
+	public PooledTransport(final int maxConnectionsPerHost,
+			final long maxIdleTime, final long connectionTimeToLive,
+			final TLSConfig tls) {
+		if (maxConnectionsPerHost < 1) {
+			throw new IllegalArgumentException(
+					"maxConnectionsPerHost must be at least 1");
+		}
+		long timeToLive = connectionTimeToLive > 0
+				? connectionTimeToLive : -1;
+		HostnameVerifier hostnameVerifier = tls.getHostnameVerifier() != null
+				? tls.getHostnameVerifier()
+				: SSLConnectionSocketFactory.getDefaultHostnameVerifier();
+		Registry<ConnectionSocketFactory> socketFactories =
+				RegistryBuilder.<ConnectionSocketFactory>create()
+				.register("http", new EventSocketFactory())
+				.register("https", new EventSSLSocketFactory(
+						tls.getSocketFactory(), hostnameVerifier))
+				.build();
+		this.connectionManager = new PoolingHttpClientConnectionManager(
+				socketFactories, null, null, null,
+				timeToLive, TimeUnit.MILLISECONDS);
+		this.connectionManager.setDefaultMaxPerRoute(maxConnectionsPerHost);
+		this.connectionManager.setMaxTotal(
+				maxConnectionsPerHost * MIN_ROUTES);
+		// Connections idle for a while may have been closed by the server
+		this.connectionManager.setValidateAfterInactivity(2000);
+		// Retried by the RetryPolicy of the connection, if any
+		this.httpClient = HttpClients.custom()
+				.disableAutomaticRetries()
+				.setConnectionManager(this.connectionManager)
+				.evictIdleConnections(maxIdleTime, TimeUnit.MILLISECONDS)
+				.evictExpiredConnections()
+				.build();
+	}
+
+	/** Getter.
+	 * @return the maximum number of connections per host
+	 * */
+	public final int getMaxConnectionsPerHost() {
+		return this.connectionManager.getDefaultMaxPerRoute();
+	}
+
+	/** Getter.
+	 * @return the maximum number of open connections to all hosts
+	 * */
+	public final int getMaxTotal() {
+		return this.connectionManager.getMaxTotal();
+	}
+
+	/**
+	 * Sets the timeouts of the requests. A dead host then fails a call
+	 * instead of blocking it.
+	 *
+	 * @param connectTimeout milliseconds to open a connection
+	 * @param socketTimeout milliseconds to wait for data of a response
+	 * @param connectionRequestTimeout milliseconds to wait for a
+	 *  connection of the pool
+	 */
+	public final void setTimeouts(final int connectTimeout,
+			final int socketTimeout, final int connectionRequestTimeout) {
+		if (connectTimeout < 0 || socketTimeout < 0
+				|| connectionRequestTimeout < 0) {
+			throw new IllegalArgumentException(
+					"timeouts must not be negative");
+		}
+		this.requestConfig = RequestConfig.custom()
+				.setConnectTimeout(connectTimeout)
+				.setSocketTimeout(socketTimeout)
+				.setConnectionRequestTimeout(connectionRequestTimeout)
+				.build();
+	}
+
+	/** Getter.
+	 * @return the time in milliseconds to open a connection
+	 * */
+	public final int getConnectTimeout() {
+		return this.requestConfig.getConnectTimeout();
+	}
+
+	/** Getter.
+	 * @return the time in milliseconds to wait for data of a response
+	 * */
+	public final int getSocketTimeout() {
+		return this.requestConfig.getSocketTimeout();
+	}
+
+	/** Getter.
+	 * @return the time in milliseconds to wait for a pooled connection
+	 * */
+	public final int getConnectionRequestTimeout() {
+		return this.requestConfig.getConnectionRequestTimeout();
+	}
+
+	/** Getter.
+	 * @return the number of open connections, leased or idle
+	 * */
+	public final int getOpenConnections() {
+		return this.connectionManager.getTotalStats().getLeased()
+				+ this.connectionManager.getTotalStats().getAvailable();
+	}
+
+	@Override
+	public Request newGetRequest(URL url) {
+		return new PooledRequest("PooledTransport.get",
+				new HttpGet(url.toString()));
+	}
+
+	@Override
+	public Request newPostRequest(URL url, String body) {
+		HttpPost post = new HttpPost(url.toString());
+		post.setEntity(new StringEntity(body,
+				ContentType.APPLICATION_FORM_URLENCODED));
+		return new PooledRequest("PooledTransport.post", post);
+	}
+
+	@Override
+	public Request newPostRequest(URL url, byte[] body) {
+		HttpPost post = new HttpPost(url.toString());
+		post.setEntity(new ByteArrayEntity(body,
+				ContentType.APPLICATION_FORM_URLENCODED));
+		return new PooledRequest("PooledTransport.post", post);
+	}
+
+	@Override
+	public Request newPostRequest(URL url, RequestBody body) {
+		HttpPost post = new HttpPost(url.toString());
+		post.setEntity(new RequestBodyEntity(body));
+		return new PooledRequest("PooledTransport.post", post);
+	}
+
+	/**
+	 * Closes every pooled connection and stops the eviction thread.
+	 */
+	@Override
+	public void close() throws IOException {
+		this.httpClient.close();
+	}
+
+	/**
+	 * Grows the pool with the hosts requested, so that every host can
+	 * have maxConnectionsPerHost connections, e.g. the nodes of a
+	 * NodeBalancer.
+	 */
+	private void routed(final URI uri) {
+		int port = (uri.getPort() != -1) ? uri.getPort()
+				: "https".equals(uri.getScheme()) ? 443 : 80;
+		String route = uri.getScheme() + "://" + uri.getHost() + ":" + port;
+		if (this.routes.add(route)) {
+			synchronized (this.routes) {
+				this.connectionManager.setMaxTotal(
+						this.connectionManager.getDefaultMaxPerRoute()
+						* Math.max(MIN_ROUTES, this.routes.size()));
+			}
+		}
+	}
+
+	/**
+	 * Cuts the timeouts of a request to the deadline of its call, if any.
+	 */
+	private static RequestConfig withDeadline(final RequestConfig config)
+			throws SocketTimeoutException {
+		if (RetryPolicy.deadline() == null) {
+			return config;
+		}
+		return RequestConfig.copy(config)
+				.setConnectTimeout(
+						RetryPolicy.timeout(config.getConnectTimeout()))
+				.setSocketTimeout(
+						RetryPolicy.timeout(config.getSocketTimeout()))
+				.setConnectionRequestTimeout(RetryPolicy.timeout(
+						config.getConnectionRequestTimeout()))
+				.build();
+	}
+
+	/**
+	 * A request executed on a connection leased from the pool.
+	 */
+	private final class PooledRequest implements StreamingRequest {
+		private final String pointName;
+		private final HttpRequestBase method;
+
+		private PooledRequest(String pointName, HttpRequestBase method) {
+			this.pointName = pointName;
+			this.method = method;
+			routed(method.getURI());
+		}
+
+		/**
+		 * Sends the request and returns the response. The connection
+		 * goes back to the pool once the body has been consumed.
+		 *
+		 * @return String
+		 */
+		@Override
+		public String send() throws Exception {
+			return send(ResponseHandler.TEXT);
+		}
+
+		/**
+		 * Sends the request and lets the handler read the response
+		 * straight from the pooled connection.
+		 *
+		 * @param handler the handler reading the response body
+		 * @return the result of the handler
+		 */
+		@Override
+		public <T> T send(ResponseHandler<T> handler) throws Exception {
+			EtmPoint point = etmMonitor.createPoint(this.pointName);
+			this.method.setConfig(withDeadline(requestConfig));
+
+			HttpClientContext context = HttpClientContext.create();
+			try (CloseableHttpResponse response =
+					httpClient.execute(this.method, context)) {
+				if (context.getAttribute(OPENED) == null) {
+					HttpHost host = context.getHttpRoute().getTargetHost();
+					JfrEvents.reused(host.getHostName(), host.getPort());
+				}
+				HttpEntity entity = response.getEntity();
+				int status = response.getStatusLine().getStatusCode();
+				CallTiming.responded(status);
+				if (status >= 400) {
+					// Same behaviour as URLConnection.getInputStream()
+					EntityUtils.consume(entity);
+					throw new HttpStatusException(status,
+							this.method.getURI().toString());
+				}
+				if (entity == null) {
+					return handler.handle(
+							new ByteArrayInputStream(new byte[0]), null);
+				}
+				try (InputStream in = entity.getContent()) {
+					Header contentType = entity.getContentType();
+					return handler.handle(in, ResponseHandler.charsetOf(
+							contentType == null ? null
+									: contentType.getValue()));
+				}
+			} finally {
+				point.collect();
+			}
+		}
+
+		/**
+		 * Aborts the request, closing its connection instead of returning
+		 * it to the pool.
+		 */
+		@Override
+		public void abort() {
+			this.method.abort();
+		}
+	}
+
+	/**
+	 * Opens plain connections as ConnectionOpen events.
+	 */
+	private static final class EventSocketFactory
+			extends PlainConnectionSocketFactory {
+		@Override
+		public Socket connectSocket(final int connectTimeout,
+				final Socket socket, final HttpHost host,
+				final InetSocketAddress remoteAddress,
+				final InetSocketAddress localAddress,
+				final HttpContext context) throws IOException {
+			JfrEvents.ConnectionOpen event = new JfrEvents.ConnectionOpen();
+			event.begin();
+			Socket connected = super.connectSocket(connectTimeout, socket,
+					host, remoteAddress, localAddress, context);
+			context.setAttribute(OPENED, Boolean.TRUE);
+			JfrEvents.opened(event, host.getHostName(),
+					remoteAddress.getPort());
+			return connected;
+		}
+	}
+
+	/**
+	 * Opens TLS connections as ConnectionOpen events, with their
+	 * handshake as a TlsHandshake event.
+	 */
+	private static final class EventSSLSocketFactory
+			extends SSLConnectionSocketFactory {
+		private EventSSLSocketFactory(final SSLSocketFactory socketFactory,
+				final HostnameVerifier hostnameVerifier) {
+			super(socketFactory, hostnameVerifier);
+		}
+
+		@Override
+		public Socket connectSocket(final int connectTimeout,
+				final Socket socket, final HttpHost host,
+				final InetSocketAddress remoteAddress,
+				final InetSocketAddress localAddress,
+				final HttpContext context) throws IOException {
+			JfrEvents.ConnectionOpen event = new JfrEvents.ConnectionOpen();
+			event.begin();
+			Socket connected = super.connectSocket(connectTimeout, socket,
+					host, remoteAddress, localAddress, context);
+			context.setAttribute(OPENED, Boolean.TRUE);
+			JfrEvents.opened(event, host.getHostName(),
+					remoteAddress.getPort());
+			return connected;
+		}
+
+		@Override
+		public Socket createLayeredSocket(final Socket socket,
+				final String target, final int port,
+				final HttpContext context) throws IOException {
+			JfrEvents.TlsHandshake event = new JfrEvents.TlsHandshake();
+			event.begin();
+			Socket tls = super.createLayeredSocket(socket, target, port,
+					context);
+			JfrEvents.handshaken(event, target, port,
+					(tls instanceof SSLSocket)
+					? ((SSLSocket) tls).getSession() : null);
+			return tls;
+		}
+	}
+
+	/**
+	 * An entity writing a RequestBody as it is encoded.
+	 */
+	private static final class RequestBodyEntity extends AbstractHttpEntity {
+		private final RequestBody body;
+
+		private RequestBodyEntity(RequestBody body) {
+			this.body = body;
+			setContentType(
+					ContentType.APPLICATION_FORM_URLENCODED.toString());
+		}
+
+		@Override
+		public boolean isRepeatable() {
+			return true;
+		}
+
+		@Override
+		public long getContentLength() {
+			return this.body.getContentLength();
+		}
+
+		@Override
+		public InputStream getContent() throws IOException {
+			return this.body.openStream();
+		}
+
+		@Override
+		public void writeTo(OutputStream out) throws IOException {
+			try (InputStream in = this.body.openStream()) {
+				in.transferTo(out);
+			}
+		}
+
+		@Override
+		public boolean isStreaming() {
+			return false;
+		}
+	}
+}
@@ -0,0 +1,52 @@
+package net.gjerull.etherpad.client;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A url-encoded (application/x-www-form-urlencoded) request body that is
+ * produced while it is sent, instead of being held in memory as a whole.
+ * <br />
+ * <br />
+ * EPLiteConnection POSTs large values (e.g. the text of setText or the
+ * content of an imported file) with such a body. A body can be opened
+ * more than once, e.g. when a request is retried.
+ */
+public interface RequestBody {
+
+	/**
+	 * Returns the exact number of bytes of the body.
+	 *
+	 * @return long
+	 */
+	long getContentLength();
+
+	/**
+	 * Opens a new stream over the whole body.
+	 *
+	 * @return InputStream of US-ASCII bytes
+	 * @throws IOException if the content can not be read
+	 */
+	InputStream openStream() throws IOException;
+
+	/**
+	 * Returns a body of bytes that are already encoded.
+	 *
+	 * @param bytes url-encoded US-ASCII bytes
+	 * @return RequestBody
+	 */
+	static RequestBody of(final byte[] bytes) {
+		return new RequestBody() {
+			@Override
+			public long getContentLength() {
+				return bytes.length;
+			}
+
+			@Override
+			public InputStream openStream() {
+				return new ByteArrayInputStream(bytes);
+			}
+		};
+	}
+}
@@ -0,0 +1,210 @@
+package net.gjerull.etherpad.client;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+import org.json.simple.parser.ContentHandler;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+/**
+ * Decodes a typed result from the JSON tokens of a response, without
+ * building the JSONObject/JSONArray tree first.<br />
+ * <br />
+ * The decoder checks the <code>code</code> and <code>message</code> of
+ * the response like EPLiteConnection.handleResponse and hands the
+ * tokens of <code>data</code> to the subclass. A decoder holds the
+ * state of one response, so a new one is needed for every call.
+ *
+ * @param <T> the type of the decoded result
+ */
+public abstract class ResponseDecoder<T> implements ContentHandler {
+	/** Key of the current entry, per nesting level. */
+	private String[] keys = new String[8];
+	/** Current nesting level, 1 is the response object. */
+	private int depth;
+	/** Whether data was present and not null. */
+	private boolean hasData;
+	private Long code;
+	private String message;
+
+	/**
+	 * Called for every primitive value in data.
+	 *
+	 * @param key the key of the value, or of the array holding it
+	 * @param value the String, Long, Double, Boolean or null value
+	 * @param level the nesting level in data, 1 for the fields of data
+	 */
+	protected abstract void value(String key, Object value, int level);
+
+	/**
+	 * Called when an object starts in data, e.g. an array element.
+	 *
+	 * @param key the key of the object, or of the array holding it
+	 * @param level the nesting level of its fields in data
+	 */
+	protected void startObject(String key, int level) {
+	}
+
+	/**
+	 * Called when an object ends in data.
+	 *
+	 * @param key the key of the object, or of the array holding it
+	 * @param level the nesting level of its fields in data
+	 */
+	protected void endObject(String key, int level) {
+	}
+
+	/**
+	 * Returns the decoded result.
+	 *
+	 * @return the result
+	 */
+	protected abstract T result();
+
+	/**
+	 * Parses the response and returns the decoded data.
+	 *
+	 * @param reader the response body
+	 * @return the result, null if data was null
+	 * @throws IOException if the body can not be read
+	 */
+	public final T decode(final Reader reader) throws IOException {
+		try {
+			new JSONParser().parse(reader, this);
+		} catch (ParseException e) {
+			throw new EPLiteException("Unable to parse"
+					+ " JSON response (" + e + ")", e);
+		}
+		if (this.code == null) {
+			throw new EPLiteException("An unexpected"
+					+ " response from the server: no code");
+		}
+		switch (this.code.intValue()) {
+		case EPLiteConnection.CODE_OK:
+			return this.hasData ? this.result() : null;
+		case EPLiteConnection.CODE_INVALID_PARAMETERS:
+		case EPLiteConnection.CODE_INTERNAL_ERROR:
+		case EPLiteConnection.CODE_INVALID_METHOD:
+		case EPLiteConnection.CODE_INVALID_API_KEY:
+			throw new EPLiteException(this.message, this.code.intValue());
+		default:
+			throw new EPLiteException("An unknown error has"
+					+ " occurred while handling the response: code "
+					+ this.code + ", " + this.message, this.code.intValue());
+		}
+	}
+
+	@Override
+	public final void startJSON() {
+		this.depth = 0;
+	}
+
+	@Override
+	public final void endJSON() {
+	}
+
+	@Override
+	public final boolean startObject() {
+		push(null);
+		if (inData()) {
+			this.hasData = true;
+			this.startObject(this.keys[this.depth - 1], this.depth - 1);
+		}
+		return true;
+	}
+
+	@Override
+	public final boolean endObject() {
+		if (inData()) {
+			this.endObject(this.keys[this.depth - 1], this.depth - 1);
+		}
+		this.depth--;
+		return true;
+	}
+
+	@Override
+	public final boolean startObjectEntry(String key) {
+		this.keys[this.depth] = key;
+		return true;
+	}
+
+	@Override
+	public final boolean endObjectEntry() {
+		return true;
+	}
+
+	@Override
+	public final boolean startArray() {
+		// Elements of an array are reported with the key of the array
+		push(this.keys[this.depth]);
+		if (inData()) {
+			this.hasData = true;
+		}
+		return true;
+	}
+
+	@Override
+	public final boolean endArray() {
+		this.depth--;
+		return true;
+	}
+
+	@Override
+	public final boolean primitive(Object value) {
+		String key = this.keys[this.depth];
+		if (this.depth == 1) {
+			if ("code".equals(key) && value instanceof Long) {
+				this.code = (Long) value;
+			} else if ("message".equals(key)) {
+				this.message = (value == null) ? null : value.toString();
+			} else if ("data".equals(key) && value != null) {
+				this.hasData = true;
+				this.value(null, value, 0);
+			}
+		} else if (inData()) {
+			this.value(key, value, this.depth - 1);
+		}
+		return true;
+	}
+
+	/** Whether the current token is nested in data. */
+	private boolean inData() {
+		return this.depth >= 2 && "data".equals(this.keys[1]);
+	}
+
+	private void push(String key) {
+		this.depth++;
+		if (this.depth == this.keys.length) {
+			this.keys = Arrays.copyOf(this.keys, this.keys.length * 2);
+		}
+		this.keys[this.depth] = key;
+	}
+
+	/**
+	 * Returns a number value as a long.
+	 *
+	 * @param value a Long, Double or numeric String
+	 * @return long, 0 for null
+	 */
+	protected static long toLong(final Object value) {
+		if (value instanceof Number) {
+			return ((Number) value).longValue();
+		}
+		if (value instanceof String && !((String) value).isEmpty()) {
+			return Long.parseLong((String) value);
+		}
+		return 0L;
+	}
+
+	/**
+	 * Returns a value as a String.
+	 *
+	 * @param value the value
+	 * @return String, null for null
+	 */
+	protected static String toText(final Object value) {
+		return (value == null) ? null : value.toString();
+	}
+}
@@ -0,0 +1,57 @@
+package net.gjerull.etherpad.client;
+
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Consumes the body of a response while it is read from the socket.
+ *
+ * @param <T> the type of the result
+ */
+public interface ResponseHandler<T> {
+
+	/**
+	 * Reads the whole body into a String, decoded with the charset of
+	 * the response or UTF-8.
+	 */
+	ResponseHandler<String> TEXT = (body, charset) -> new String(
+			body.readAllBytes(), charset != null
+			? Charset.forName(charset) : StandardCharsets.UTF_8);
+
+	/**
+	 * Handles the body of a response. The stream is closed by the
+	 * request once the handler returns.
+	 *
+	 * @param body the response body
+	 * @param charset the charset of the Content-Type header,
+	 *  null if the server did not send one
+	 * @return the result
+	 * @throws Exception if the body can not be handled
+	 */
+	T handle(InputStream body, String charset) throws Exception;
+
+	/**
+	 * Returns the charset parameter of a Content-Type header value.
+	 *
+	 * @param contentType the header value, may be null
+	 * @return the charset, null if there is none
+	 */
+	static String charsetOf(final String contentType) {
+		if (contentType == null) {
+			return null;
+		}
+		for (String parameter : contentType.split(";")) {
+			String trimmed = parameter.trim();
+			if (trimmed.regionMatches(true, 0, "charset=", 0, 8)) {
+				String charset = trimmed.substring(8).trim();
+				if (charset.length() > 1 && charset.startsWith("\"")
+						&& charset.endsWith("\"")) {
+					charset = charset.substring(1, charset.length() - 1);
+				}
+				return charset.isEmpty() ? null : charset;
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,306 @@
+package net.gjerull.etherpad.client;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Retries the calls of an EPLiteConnection that failed to reach the
+ * Etherpad Lite server, e.g. during a restart.<br />
+ * <br />
+ * Only failures of the transport are retried, never an error code of the
+ * API nor an HTTP 4xx status (Etherpad answers a wrong API key with 401
+ * and an unknown method with 404). A call refused before it was sent
+ * (connection refused) is retried whatever its method; any other failure,
+ * a 5xx status included, only for idempotent methods, the get*, list* and
+ * padUsers* calls by default, since a write may have been applied before
+ * its answer was lost.<br />
+ * <br />
+ * Three things keep retries from piling onto a recovering server:
+ * <ul>
+ * <li>backoff: the n-th retry waits a random delay up to
+ * baseDelay * 2^(n-1), capped at maxDelay (full jitter), so the clients
+ * do not retry in step;</li>
+ * <li>budget: every call earns budgetRatio of a retry and every retry
+ * spends one, from a reserve of at most maxBudget retries. When the
+ * server is down for everyone, retries fall to budgetRatio of the calls
+ * instead of multiplying them;</li>
+ * <li>deadline: no retry starts after the deadline of the call, counted
+ * from its first attempt, and no attempt waits past it: the connect and
+ * read timeouts of GETRequest, POSTRequest, PooledTransport and
+ * HttpClientTransport are cut to the time left.</li>
+ * </ul>
+ * Example:<br />
+ * <br />
+ * <code>
+ * RetryPolicy retry = new RetryPolicy();<br />
+ * retry.setDeadline(5000);<br />
+ * connection.setRetryPolicy(retry);
+ * </code>
+ */
+public class RetryPolicy {
+	/** Default number of attempts of a call. */
+	public static final int DEFAULT_MAX_ATTEMPTS = 3;
+	/** Default delay bound of the first retry, in ms. */
+	public static final long DEFAULT_BASE_DELAY = 100L;
+	/** Default largest delay bound, in ms. */
+	public static final long DEFAULT_MAX_DELAY = 2000L;
+	/** Default fraction of a retry earned by each call. */
+	public static final double DEFAULT_BUDGET_RATIO = 0.1;
+	/** Default reserve of retries. */
+	public static final int DEFAULT_MAX_BUDGET = 10;
+
+	/** The idempotent methods of the HTTP API. */
+	static final Predicate<String> IDEMPOTENT = method ->
+			method.startsWith("get") || method.startsWith("list")
+			|| method.startsWith("padUsers");
+
+	/** The deadline of the call on the current thread, in ns. */
+	private static final ThreadLocal<Long> DEADLINE = new ThreadLocal<>();
+
+	private volatile int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+	private volatile long baseDelay = DEFAULT_BASE_DELAY;
+	private volatile long maxDelay = DEFAULT_MAX_DELAY;
+	private volatile long deadline;
+	private volatile Predicate<String> idempotent = IDEMPOTENT;
+	private final TokenBudget budget;
+	private final AtomicLong retries = new AtomicLong();
+	private final AtomicLong exhausted = new AtomicLong();
+
+	/**
+	 * Initializes a new RetryPolicy with the default budget.
+	 */
+	public RetryPolicy() {
+		this(DEFAULT_BUDGET_RATIO, DEFAULT_MAX_BUDGET);
+	}
+
+	/**
+	 * Initializes a new RetryPolicy.
+	 *
+	 * @param budgetRatio the fraction of a retry earned by each call
+	 * @param maxBudget the largest reserve of retries, which the budget
+	 *  starts with
+	 */
+	public RetryPolicy(final double budgetRatio, final int maxBudget) {
+		this.budget = new TokenBudget(budgetRatio, maxBudget);
+	}
+
+	/**
+	 * Sets the number of attempts of a call, the first one included.
+	 *
+	 * @param maxAttempts at least 1
+	 */
+	public final void setMaxAttempts(final int maxAttempts) {
+		if (maxAttempts < 1) {
+			throw new IllegalArgumentException(
+					"maxAttempts must be at least 1");
+		}
+		this.maxAttempts = maxAttempts;
+	}
+
+	/**
+	 * Sets the bounds of the random delay before a retry.
+	 *
+	 * @param baseDelay the bound of the first retry, in ms
+	 * @param maxDelay the largest bound, in ms
+	 */
+	public final void setDelays(final long baseDelay, final long maxDelay) {
+		if (baseDelay < 0 || maxDelay < baseDelay) {
+			throw new IllegalArgumentException("Invalid delays " + baseDelay
+					+ ", " + maxDelay);
+		}
+		this.baseDelay = baseDelay;
+		this.maxDelay = maxDelay;
+	}
+
+	/**
+	 * Sets the time after which a call is no longer retried, nor waited
+	 * for.
+	 *
+	 * @param deadline the time in ms from the first attempt, 0 for none
+	 */
+	public final void setDeadline(final long deadline) {
+		if (deadline < 0) {
+			throw new IllegalArgumentException(
+					"deadline must not be negative");
+		}
+		this.deadline = deadline;
+	}
+
+	/**
+	 * Sets which API methods are safe to send twice.
+	 *
+	 * @param idempotent true for the idempotent method names
+	 */
+	public final void setIdempotent(final Predicate<String> idempotent) {
+		this.idempotent = idempotent;
+	}
+
+	/**
+	 * Returns true if a method is safe to send twice.
+	 *
+	 * @param apiMethod the name of the API method
+	 * @return boolean
+	 */
+	public final boolean isIdempotent(final String apiMethod) {
+		return this.idempotent.test(apiMethod);
+	}
+
+	/** Getter.
+	 * @return the number of retries made
+	 * */
+	public final long getRetryCount() {
+		return this.retries.get();
+	}
+
+	/** Getter.
+	 * @return the number of retries skipped for lack of budget
+	 * */
+	public final long getBudgetExhaustedCount() {
+		return this.exhausted.get();
+	}
+
+	/**
+	 * Makes a call, retrying it as the policy allows.
+	 *
+	 * @param apiMethod the name of the API method
+	 * @param attempt one attempt of the call
+	 * @param <T> the type of the result
+	 * @return the result of the first successful attempt
+	 */
+	final <T> T execute(final String apiMethod, final Supplier<T> attempt) {
+		long start = System.nanoTime();
+		long limit = this.deadline;
+		Long outer = bind((limit > 0)
+				? start + TimeUnit.MILLISECONDS.toNanos(limit) : null);
+		try {
+			return this.retry(apiMethod, attempt, start, limit);
+		} finally {
+			bind(outer);
+		}
+	}
+
+	/**
+	 * Runs the attempts of a call until one succeeds or the policy gives
+	 * up.
+	 */
+	private <T> T retry(final String apiMethod, final Supplier<T> attempt,
+			final long start, final long limit) {
+		this.budget.deposit();
+		for (int n = 1;; n++) {
+			try {
+				return attempt.get();
+			} catch (EPLiteException e) {
+				if (n >= this.maxAttempts || !this.isRetryable(apiMethod, e)) {
+					throw e;
+				}
+				long delay = this.delay(n);
+				if (limit > 0 && TimeUnit.NANOSECONDS.toMillis(
+						System.nanoTime() - start) + delay >= limit) {
+					throw e;
+				}
+				if (!this.budget.withdraw()) {
+					this.exhausted.incrementAndGet();
+					throw e;
+				}
+				this.retries.incrementAndGet();
+				try {
+					Thread.sleep(delay);
+				} catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+					throw e;
+				}
+			}
+		}
+	}
+
+	/** Getter.
+	 * @return the deadline of the call on the current thread in
+	 *  System.nanoTime(), null if none
+	 * */
+	static Long deadline() {
+		return DEADLINE.get();
+	}
+
+	/**
+	 * Binds the deadline of a call to the current thread, e.g. to the
+	 * thread of a hedge.
+	 *
+	 * @param deadline the deadline in System.nanoTime(), null for none
+	 * @return the deadline bound before
+	 */
+	static Long bind(final Long deadline) {
+		Long outer = DEADLINE.get();
+		if (deadline == null) {
+			DEADLINE.remove();
+		} else {
+			DEADLINE.set(deadline);
+		}
+		return outer;
+	}
+
+	/**
+	 * Returns the timeout of a request sent on the current thread: the
+	 * timeout of the transport, cut to the time left before the deadline
+	 * of the call.
+	 *
+	 * @param timeout the timeout in ms, 0 or less for none
+	 * @return the timeout in ms, 0 for none
+	 * @throws SocketTimeoutException if the deadline has passed
+	 */
+	static int timeout(final int timeout) throws SocketTimeoutException {
+		Long end = DEADLINE.get();
+		if (end == null) {
+			return Math.max(timeout, 0);
+		}
+		long left = TimeUnit.NANOSECONDS.toMillis(end - System.nanoTime());
+		if (left <= 0) {
+			throw new SocketTimeoutException("Deadline of the call passed");
+		}
+		return (int) ((timeout > 0) ? Math.min(timeout, left)
+				: Math.min(left, Integer.MAX_VALUE));
+	}
+
+	/**
+	 * Returns true if a failed call may be sent again.
+	 */
+	private boolean isRetryable(final String apiMethod,
+			final EPLiteException e) {
+		if (e instanceof EPLiteLimitException) {
+			return false;
+		}
+		Throwable cause = e.getCause();
+		if (cause instanceof ConnectException) {
+			return true;
+		}
+		if (cause instanceof HttpStatusException) {
+			// A 4xx (wrong API key, unknown method) fails again
+			return ((HttpStatusException) cause).getStatusCode() >= 500
+					&& this.isIdempotent(apiMethod);
+		}
+		return cause instanceof IOException && this.isIdempotent(apiMethod);
+	}
+
+	/**
+	 * Returns the random delay before the n-th retry.
+	 */
+	private long delay(final int n) {
+		long bound = this.baseDelay << Math.min(n - 1, 30);
+		if (bound <= 0 || bound > this.maxDelay) {
+			bound = this.maxDelay;
+		}
+		return (bound > 0) ? ThreadLocalRandom.current().nextLong(bound + 1)
+				: 0L;
+	}
+
+	@Override
+	public String toString() {
+		return "RetryPolicy{maxAttempts=" + maxAttempts + ", retries="
+				+ retries + ", exhausted=" + exhausted + "}";
+	}
+}
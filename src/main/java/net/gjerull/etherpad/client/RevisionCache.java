@@ -0,0 +1,175 @@
+package net.gjerull.etherpad.client;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A client-side cache for the content of a pad at a fixed revision.<br />
+ * <br />
+ * Once a revision exists its text, HTML, changeset and diffs never
+ * change, so these responses are cached without any staleness check.
+ * Entries are evicted least recently used first when the estimated size
+ * of the cached values exceeds the memory budget.<br />
+ * <br />
+ * A pad that is deleted and created again gets new content for the same
+ * revisions; calls made through the EPLiteClient using the cache
+ * (deletePad, movePad, copyPad) invalidate the pad, changes made through
+ * other clients need an explicit invalidate(padId). A cache must only be
+ * shared by clients of the same Etherpad Lite instance.<br />
+ * <br />
+ * Example:<br />
+ * <br />
+ * <code>
+ * client.setRevisionCache(new RevisionCache(64L * 1024L * 1024L));
+ * </code>
+ */
+public class RevisionCache {
+	/** Estimated bytes of an entry besides its value. */
+	private static final long ENTRY_OVERHEAD = 96L;
+
+	private final WeightedLruCache<Key, Object> entries;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * Instantiates a new RevisionCache.
+	 *
+	 * @param maxBytes the memory budget, in estimated bytes
+	 */
+	public RevisionCache(final long maxBytes) {
+		this.entries = new WeightedLruCache<>(maxBytes);
+	}
+
+	/**
+	 * Returns the cached response of a call.
+	 *
+	 * @param apiMethod the API method
+	 * @param padId the pad's id string
+	 * @param rev the revision, or start revision
+	 * @param endRev the end revision, -1 if the method has none
+	 * @return a copy of the cached response, null if it is not cached
+	 */
+	public final Object get(final String apiMethod, final String padId,
+			final long rev, final long endRev) {
+		Object value = this.entries.get(new Key(apiMethod, padId, rev, endRev));
+		if (value == null) {
+			this.misses.incrementAndGet();
+			return null;
+		}
+		this.hits.incrementAndGet();
+		return WeightedLruCache.copyOf(value);
+	}
+
+	/**
+	 * Caches the response of a call.
+	 *
+	 * @param apiMethod the API method
+	 * @param padId the pad's id string
+	 * @param rev the revision, or start revision
+	 * @param endRev the end revision, -1 if the method has none
+	 * @param value the response, a Map or a String
+	 */
+	public final void put(final String apiMethod, final String padId,
+			final long rev, final long endRev, final Object value) {
+		if (value == null) {
+			return;
+		}
+		this.entries.put(new Key(apiMethod, padId, rev, endRev),
+				WeightedLruCache.copyOf(value),
+				ENTRY_OVERHEAD + WeightedLruCache.weigh(value));
+	}
+
+	/**
+	 * Removes every cached revision of a pad.
+	 *
+	 * @param padId the pad's id string
+	 */
+	public final void invalidate(final String padId) {
+		this.entries.removeIf(key -> key.padId.equals(padId));
+	}
+
+	/**
+	 * Removes every entry.
+	 */
+	public final void clear() {
+		this.entries.clear();
+	}
+
+	/** Getter.
+	 * @return the memory budget, in estimated bytes
+	 * */
+	public final long getMaxBytes() {
+		return entries.getMaxBytes();
+	}
+
+	/** Getter.
+	 * @return the estimated size of the cached values, in bytes
+	 * */
+	public final long getBytes() {
+		return entries.getBytes();
+	}
+
+	/** Getter.
+	 * @return the number of cached responses
+	 * */
+	public final int getSize() {
+		return entries.getSize();
+	}
+
+	/** Getter.
+	 * @return the number of lookups answered from the cache
+	 * */
+	public final long getHits() {
+		return hits.get();
+	}
+
+	/** Getter.
+	 * @return the number of lookups that went to the server
+	 * */
+	public final long getMisses() {
+		return misses.get();
+	}
+
+	/** Getter.
+	 * @return the number of entries evicted to stay in the budget
+	 * */
+	public final long getEvictions() {
+		return entries.getEvictions();
+	}
+
+	/**
+	 * The identity of a cached call.
+	 */
+	private static final class Key {
+		private final String apiMethod;
+		private final String padId;
+		private final long rev;
+		private final long endRev;
+
+		private Key(String apiMethod, String padId, long rev, long endRev) {
+			this.apiMethod = apiMethod;
+			this.padId = padId;
+			this.rev = rev;
+			this.endRev = endRev;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) o;
+			return rev == other.rev && endRev == other.endRev
+					&& apiMethod.equals(other.apiMethod)
+					&& padId.equals(other.padId);
+		}
+
+		@Override
+		public int hashCode() {
+			int result = apiMethod.hashCode();
+			result = 31 * result + padId.hashCode();
+			result = 31 * result + Long.hashCode(rev);
+			return 31 * result + Long.hashCode(endRev);
+		}
+	}
+}
@@ -0,0 +1,48 @@
+package net.gjerull.etherpad.client;
+
+/**
+ * The number of revisions of a pad, as returned by getRevisionsCount.
+ */
+public final class RevisionCount {
+	private final long revisions;
+
+	/**
+	 * Instantiates a new RevisionCount.
+	 *
+	 * @param revisions the number of revisions
+	 */
+	public RevisionCount(final long revisions) {
+		this.revisions = revisions;
+	}
+
+	/** Getter.
+	 * @return the number of revisions, also the head revision number
+	 * */
+	public long getRevisions() {
+		return revisions;
+	}
+
+	@Override
+	public String toString() {
+		return "RevisionCount[" + revisions + "]";
+	}
+
+	/**
+	 * Decodes <code>{"revisions": 56}</code>.
+	 */
+	static final class Decoder extends ResponseDecoder<RevisionCount> {
+		private long revisions;
+
+		@Override
+		protected void value(String key, Object value, int level) {
+			if (level == 1 && "revisions".equals(key)) {
+				this.revisions = toLong(value);
+			}
+		}
+
+		@Override
+		protected RevisionCount result() {
+			return new RevisionCount(this.revisions);
+		}
+	}
+}
@@ -0,0 +1,82 @@
+package net.gjerull.etherpad.client;
+
+/**
+ * A session between a group and an author, as returned by
+ * getSessionInfo.
+ */
+public final class SessionInfo {
+	private final String groupID;
+	private final String authorID;
+	private final long validUntil;
+
+	/**
+	 * Instantiates a new SessionInfo.
+	 *
+	 * @param groupID the group of the session
+	 * @param authorID the author of the session
+	 * @param validUntil UNIX timestamp in seconds
+	 */
+	public SessionInfo(final String groupID, final String authorID,
+			final long validUntil) {
+		this.groupID = groupID;
+		this.authorID = authorID;
+		this.validUntil = validUntil;
+	}
+
+	/** Getter.
+	 * @return String
+	 * */
+	public String getGroupID() {
+		return groupID;
+	}
+
+	/** Getter.
+	 * @return String
+	 * */
+	public String getAuthorID() {
+		return authorID;
+	}
+
+	/** Getter.
+	 * @return UNIX timestamp <strong>in seconds</strong>
+	 * */
+	public long getValidUntil() {
+		return validUntil;
+	}
+
+	@Override
+	public String toString() {
+		return "SessionInfo[groupID=" + groupID + ", authorID=" + authorID
+				+ ", validUntil=" + validUntil + "]";
+	}
+
+	/**
+	 * Decodes <code>{"authorID": "...", "groupID": "...",
+	 * "validUntil": 1312201246}</code>.
+	 */
+	static final class Decoder extends ResponseDecoder<SessionInfo> {
+		private String groupID;
+		private String authorID;
+		private long validUntil;
+
+		@Override
+		protected void value(String key, Object value, int level) {
+			if (level != 1) {
+				return;
+			}
+			if ("groupID".equals(key)) {
+				this.groupID = toText(value);
+			} else if ("authorID".equals(key)) {
+				this.authorID = toText(value);
+			} else if ("validUntil".equals(key)) {
+				this.validUntil = toLong(value);
+			}
+		}
+
+		@Override
+		protected SessionInfo result() {
+			return new SessionInfo(this.groupID, this.authorID,
+					this.validUntil);
+		}
+	}
+}
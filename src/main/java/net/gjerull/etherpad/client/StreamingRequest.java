@@ -0,0 +1,26 @@
+package net.gjerull.etherpad.client;
+
+/**
+ * A request that hands the response body to a ResponseHandler as it
+ * arrives instead of reading it into a String first.
+ */
+public interface StreamingRequest extends Request {
+
+	/**
+	 * Sends the request and lets the handler consume the response.
+	 *
+	 * @param handler the handler reading the response body
+	 * @param <T> the type of the result
+	 * @return the result of the handler
+	 * @throws Exception if the request fails
+	 */
+	<T> T send(ResponseHandler<T> handler) throws Exception;
+
+	/**
+	 * Aborts the request from another thread, e.g. the losing request
+	 * of a hedged read: a send in progress, or started later, fails with
+	 * an InterruptedIOException. Does nothing by default.
+	 */
+	default void abort() {
+	}
+}
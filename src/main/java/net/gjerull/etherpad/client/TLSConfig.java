@@ -0,0 +1,237 @@
+package net.gjerull.etherpad.client;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.net.URLConnection;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.security.cert.X509Certificate;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509ExtendedTrustManager;
+
+/**
+ * The TLS settings of a transport, built once and shared by all of its
+ * connections.<br />
+ * <br />
+ * Reusing the same SSLContext lets the JVM resume TLS sessions, so
+ * repeated HTTPS calls to the same server skip the full handshake. The
+ * settings only apply to the transport they are given to; the JVM-wide
+ * HttpsURLConnection defaults are left untouched.<br />
+ * <br />
+ * Example:<br />
+ * <br />
+ * <code>
+ * TLSConfig tls = TLSConfig.pinned(serverCertificate);<br />
+ * EPLiteClient client = new EPLiteClient(url, apiKey, "1.2.13",
+ * "UTF-8", new PooledTransport(tls));
+ * </code>
+ */
+public final class TLSConfig {
+	/** Number of TLS sessions kept for resumption. */
+	public static final int SESSION_CACHE_SIZE = 1024;
+	/** Seconds a TLS session may be resumed. */
+	public static final int SESSION_TIMEOUT = 24 * 60 * 60;
+
+	/** The SSL context creating the TLS connections. */
+	private final SSLContext sslContext;
+
+	/**
+	 * The socket factory handed to every connection. Always the same
+	 * instance, so the URLConnection keep-alive cache can reuse them.
+	 */
+	private final SSLSocketFactory socketFactory;
+
+	/** Hostname verifier, null to use the default verification. */
+	private final HostnameVerifier hostnameVerifier;
+
+	private TLSConfig(SSLContext sslContext,
+			HostnameVerifier hostnameVerifier) {
+		this.sslContext = sslContext;
+		this.socketFactory = sslContext.getSocketFactory();
+		this.hostnameVerifier = hostnameVerifier;
+	}
+
+	/**
+	 * Trusts the certificates of the JVM default truststore and
+	 * verifies the hostname. This is the default of every transport.
+	 *
+	 * @return TLSConfig
+	 */
+	public static TLSConfig system() {
+		try {
+			return new TLSConfig(SSLContext.getDefault(), null);
+		} catch (NoSuchAlgorithmException e) {
+			throw new EPLiteException("Unable to create SSL context", e);
+		}
+	}
+
+	/**
+	 * Trusts the certificates of the given truststore and verifies the
+	 * hostname.
+	 *
+	 * @param trustStore the truststore with the trusted certificates
+	 * @return TLSConfig
+	 */
+	public static TLSConfig trustStore(final KeyStore trustStore) {
+		try {
+			TrustManagerFactory factory = TrustManagerFactory.getInstance(
+					TrustManagerFactory.getDefaultAlgorithm());
+			factory.init(trustStore);
+			return new TLSConfig(
+					newContext(factory.getTrustManagers()), null);
+		} catch (GeneralSecurityException e) {
+			throw new EPLiteException("Unable to create SSL context", e);
+		}
+	}
+
+	/**
+	 * Only trusts servers whose certificate chain contains one of the
+	 * given certificates, e.g. the self-signed certificate of the
+	 * Etherpad Lite server. The hostname is still verified.
+	 *
+	 * @param certificates the pinned certificates
+	 * @return TLSConfig
+	 */
+	public static TLSConfig pinned(final X509Certificate... certificates) {
+		if (certificates.length == 0) {
+			throw new IllegalArgumentException(
+					"At least one certificate must be pinned");
+		}
+		try {
+			KeyStore trustStore = KeyStore.getInstance(
+					KeyStore.getDefaultType());
+			trustStore.load(null, null);
+			for (int i = 0; i < certificates.length; i++) {
+				trustStore.setCertificateEntry("pinned-" + i,
+						certificates[i]);
+			}
+			return trustStore(trustStore);
+		} catch (GeneralSecurityException | IOException e) {
+			throw new EPLiteException("Unable to create SSL context", e);
+		}
+	}
+
+	/**
+	 * Trusts every certificate and hostname. This disables the
+	 * protection TLS offers against man-in-the-middle attacks and
+	 * should only be used for testing.
+	 *
+	 * @return TLSConfig
+	 */
+	public static TLSConfig trustAll() {
+		try {
+			return new TLSConfig(
+					newContext(new TrustManager[] {new TrustAllManager()}),
+					new HostnameVerifier() {
+						@Override
+						public boolean verify(String hostname,
+								SSLSession session) {
+							return true;
+						}
+					});
+		} catch (GeneralSecurityException e) {
+			throw new EPLiteException("Unable to create SSL context", e);
+		}
+	}
+
+	/** Getter.
+	 * @return SSLContext
+	 * */
+	public SSLContext getSSLContext() {
+		return sslContext;
+	}
+
+	/** Getter.
+	 * @return SSLSocketFactory
+	 * */
+	public SSLSocketFactory getSocketFactory() {
+		return socketFactory;
+	}
+
+	/** Getter.
+	 * @return the hostname verifier, null for the default verification
+	 * */
+	public HostnameVerifier getHostnameVerifier() {
+		return hostnameVerifier;
+	}
+
+	/**
+	 * Applies the settings to the connection if it is a
+	 * HttpsURLConnection.
+	 *
+	 * @param connection the connection, not yet connected
+	 */
+	public void configure(final URLConnection connection) {
+		if (connection instanceof HttpsURLConnection) {
+			HttpsURLConnection https = (HttpsURLConnection) connection;
+			https.setSSLSocketFactory(this.socketFactory);
+			if (this.hostnameVerifier != null) {
+				https.setHostnameVerifier(this.hostnameVerifier);
+			}
+		}
+	}
+
+	private static SSLContext newContext(TrustManager[] trustManagers)
+			throws GeneralSecurityException {
+		SSLContext context = SSLContext.getInstance("TLS");
+		context.init(null, trustManagers, new SecureRandom());
+		SSLSessionContext sessions = context.getClientSessionContext();
+		sessions.setSessionCacheSize(SESSION_CACHE_SIZE);
+		sessions.setSessionTimeout(SESSION_TIMEOUT);
+		return context;
+	}
+
+	/**
+	 * A trust manager that does not validate certificate chains. It is
+	 * an X509ExtendedTrustManager so the JSSE does not add its own
+	 * endpoint identification on top of it.
+	 */
+	private static final class TrustAllManager
+			extends X509ExtendedTrustManager {
+		@Override
+		public X509Certificate[] getAcceptedIssuers() {
+			return new X509Certificate[0];
+		}
+
+		@Override
+		public void checkClientTrusted(X509Certificate[] chain,
+				String authType) {
+		}
+
+		@Override
+		public void checkServerTrusted(X509Certificate[] chain,
+				String authType) {
+		}
+
+		@Override
+		public void checkClientTrusted(X509Certificate[] chain,
+				String authType, Socket socket) {
+		}
+
+		@Override
+		public void checkServerTrusted(X509Certificate[] chain,
+				String authType, Socket socket) {
+		}
+
+		@Override
+		public void checkClientTrusted(X509Certificate[] chain,
+				String authType, SSLEngine engine) {
+		}
+
+		@Override
+		public void checkServerTrusted(X509Certificate[] chain,
+				String authType, SSLEngine engine) {
+		}
+	}
+}
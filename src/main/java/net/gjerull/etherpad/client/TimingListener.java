@@ -0,0 +1,16 @@
+package net.gjerull.etherpad.client;
+
+/**
+ * Receives the phase timing of each request sent by an EPLiteConnection,
+ * e.g. PhaseStatistics to aggregate them.
+ */
+public interface TimingListener {
+
+	/**
+	 * Called on the thread of the request once it is over, successful or
+	 * not. It should return quickly and must not throw.
+	 *
+	 * @param timing the timing of the request
+	 */
+	void requestTimed(CallTiming timing);
+}
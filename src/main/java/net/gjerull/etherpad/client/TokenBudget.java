@@ -0,0 +1,49 @@
+package net.gjerull.etherpad.client;
+
+/**
+ * A reserve of extra requests (retries, hedges) that every call refills
+ * by a fraction, so the extra load stays within that fraction of the
+ * calls once the reserve is spent.
+ */
+final class TokenBudget {
+	private final double ratio;
+	private final int max;
+	/** The extra requests available. Guarded by this. */
+	private double tokens;
+
+	/**
+	 * Instantiates a new TokenBudget, full.
+	 *
+	 * @param ratio the fraction of an extra request earned by each call
+	 * @param max the largest reserve of extra requests
+	 */
+	TokenBudget(final double ratio, final int max) {
+		if (ratio < 0 || max < 0) {
+			throw new IllegalArgumentException("Invalid budget " + ratio
+					+ ", " + max);
+		}
+		this.ratio = ratio;
+		this.max = max;
+		this.tokens = max;
+	}
+
+	/**
+	 * Adds the share of a call.
+	 */
+	synchronized void deposit() {
+		this.tokens = Math.min(this.max, this.tokens + this.ratio);
+	}
+
+	/**
+	 * Takes one extra request.
+	 *
+	 * @return false if the budget is spent
+	 */
+	synchronized boolean withdraw() {
+		if (this.tokens < 1) {
+			return false;
+		}
+		this.tokens--;
+		return true;
+	}
+}
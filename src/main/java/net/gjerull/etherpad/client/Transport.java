@@ -0,0 +1,68 @@
+package net.gjerull.etherpad.client;
+
+import java.io.Closeable;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The HTTP transport used by an EPLiteConnection to create requests.<br />
+ * <br />
+ * Implementations decide how the requests reach the Etherpad Lite
+ * server (a fresh URLConnection per call, a pool of keep-alive
+ * connections, ...). A transport is shared by every call made through
+ * the connection, so implementations must be thread safe.
+ */
+public interface Transport extends Closeable {
+
+	/**
+	 * Creates a GET request for the given URL.
+	 *
+	 * @param url the URL, including the query string
+	 * @return Request
+	 */
+	Request newGetRequest(URL url);
+
+	/**
+	 * Creates a POST request for the given URL.
+	 *
+	 * @param url the URL object
+	 * @param body url-encoded (application/x-www-form-urlencoded) request body
+	 * @return Request
+	 */
+	Request newPostRequest(URL url, String body);
+
+	/**
+	 * Creates a POST request for the given URL, with a body that is
+	 * already encoded. Transports should override this to write the
+	 * bytes as they are.
+	 *
+	 * @param url the URL object
+	 * @param body url-encoded (application/x-www-form-urlencoded)
+	 *  request body, US-ASCII bytes
+	 * @return Request
+	 */
+	default Request newPostRequest(URL url, byte[] body) {
+		return newPostRequest(url,
+				new String(body, StandardCharsets.US_ASCII));
+	}
+
+	/**
+	 * Creates a POST request for the given URL, with a body that is
+	 * encoded while it is sent. Transports should override this to
+	 * stream the body; by default it is read into a byte array when the
+	 * request is sent.
+	 *
+	 * @param url the URL object
+	 * @param body url-encoded (application/x-www-form-urlencoded)
+	 *  request body
+	 * @return Request
+	 */
+	default Request newPostRequest(URL url, RequestBody body) {
+		return () -> {
+			try (InputStream in = body.openStream()) {
+				return newPostRequest(url, in.readAllBytes()).send();
+			}
+		};
+	}
+}
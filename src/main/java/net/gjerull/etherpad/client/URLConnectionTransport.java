@@ -0,0 +1,57 @@
+package net.gjerull.etherpad.client;
+
+import java.net.URL;
+
+/**
+ * The default transport, creating a GETRequest or POSTRequest that
+ * opens its own URLConnection for every call.
+ */
+public class URLConnectionTransport implements Transport {
+
+	/** The TLS settings, null to use the JVM defaults. */
+	private final TLSConfig tls;
+
+	/**
+	 * Instantiates a new URLConnectionTransport using the JVM default
+	 * TLS settings.
+	 */
+	public URLConnectionTransport() {
+		this(null);
+	}
+
+	/**
+	 * Instantiates a new URLConnectionTransport.
+	 *
+	 * @param tls the TLS settings of the HTTPS connections
+	 */
+	public URLConnectionTransport(final TLSConfig tls) {
+		this.tls = tls;
+	}
+
+	@Override
+	public Request newGetRequest(URL url) {
+		return new GETRequest(url, this.tls);
+	}
+
+	@Override
+	public Request newPostRequest(URL url, String body) {
+		return new POSTRequest(url, body, this.tls);
+	}
+
+	@Override
+	public Request newPostRequest(URL url, byte[] body) {
+		return new POSTRequest(url, body, this.tls);
+	}
+
+	@Override
+	public Request newPostRequest(URL url, RequestBody body) {
+		return new POSTRequest(url, body, this.tls);
+	}
+
+	/**
+	 * Nothing to release, the connections are owned by the requests.
+	 */
+	@Override
+	public void close() {
+	}
+}
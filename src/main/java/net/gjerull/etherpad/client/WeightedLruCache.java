@@ -0,0 +1,204 @@
+package net.gjerull.etherpad.client;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+/**
+ * The storage of RevisionCache and LastEditedCache: a map whose entries
+ * are evicted least recently used first when the estimated size of the
+ * values exceeds the memory budget.
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ */
+final class WeightedLruCache<K, V> {
+	/** Maximum estimated size of the values, in bytes. */
+	private final long maxBytes;
+
+	/** The entries, in access order. Guarded by this. */
+	private final LinkedHashMap<K, Entry<V>> entries =
+			new LinkedHashMap<>(64, 0.75f, true);
+
+	/** Estimated size of the values. Guarded by this. */
+	private long bytes;
+
+	private final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * Instantiates a new WeightedLruCache.
+	 *
+	 * @param maxBytes the memory budget, in estimated bytes
+	 */
+	WeightedLruCache(final long maxBytes) {
+		if (maxBytes <= 0) {
+			throw new IllegalArgumentException("maxBytes must be positive");
+		}
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Returns the value of a key, marking it as recently used.
+	 *
+	 * @param key the key
+	 * @return the value, null if there is none
+	 */
+	synchronized V get(final K key) {
+		Entry<V> entry = this.entries.get(key);
+		return (entry == null) ? null : entry.value;
+	}
+
+	/**
+	 * Stores the value of a key, evicting the least recently used entries
+	 * beyond the budget. A value larger than the whole budget is not
+	 * stored, and removes the previous value of the key.
+	 *
+	 * @param key the key
+	 * @param value the value
+	 * @param weight the estimated size of the entry, in bytes
+	 */
+	synchronized void put(final K key, final V value, final long weight) {
+		if (weight > this.maxBytes) {
+			this.removeIf(key::equals);
+			return;
+		}
+		Entry<V> previous = this.entries.put(key, new Entry<>(value, weight));
+		if (previous != null) {
+			this.bytes -= previous.weight;
+		}
+		this.bytes += weight;
+		Iterator<Entry<V>> eldest = this.entries.values().iterator();
+		while (this.bytes > this.maxBytes && eldest.hasNext()) {
+			this.bytes -= eldest.next().weight;
+			eldest.remove();
+			this.evictions.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Removes the entries of the matching keys.
+	 *
+	 * @param matches true for the keys to remove
+	 */
+	synchronized void removeIf(final Predicate<K> matches) {
+		Iterator<Map.Entry<K, Entry<V>>> i = this.entries.entrySet().iterator();
+		while (i.hasNext()) {
+			Map.Entry<K, Entry<V>> entry = i.next();
+			if (matches.test(entry.getKey())) {
+				this.bytes -= entry.getValue().weight;
+				i.remove();
+			}
+		}
+	}
+
+	/**
+	 * Removes every entry.
+	 */
+	synchronized void clear() {
+		this.entries.clear();
+		this.bytes = 0L;
+	}
+
+	/** Getter.
+	 * @return the memory budget, in estimated bytes
+	 * */
+	long getMaxBytes() {
+		return maxBytes;
+	}
+
+	/** Getter.
+	 * @return the estimated size of the values, in bytes
+	 * */
+	synchronized long getBytes() {
+		return bytes;
+	}
+
+	/** Getter.
+	 * @return the number of entries
+	 * */
+	synchronized int getSize() {
+		return entries.size();
+	}
+
+	/** Getter.
+	 * @return the number of entries evicted to stay in the budget
+	 * */
+	long getEvictions() {
+		return evictions.get();
+	}
+
+	/**
+	 * Returns a deep copy of a parsed JSON value, so callers modifying the
+	 * returned Map, or a List or Map in it, do not change the cached one.
+	 * Strings, numbers and booleans are immutable and shared.
+	 */
+	@SuppressWarnings("unchecked")
+	static Object copyOf(final Object value) {
+		if (value instanceof Map) {
+			Map<Object, Object> map = (Map<Object, Object>) value;
+			JSONObject copy = new JSONObject();
+			for (Map.Entry<Object, Object> entry : map.entrySet()) {
+				copy.put(entry.getKey(), copyOf(entry.getValue()));
+			}
+			return copy;
+		}
+		if (value instanceof List) {
+			List<Object> list = (List<Object>) value;
+			JSONArray copy = new JSONArray();
+			copy.ensureCapacity(list.size());
+			for (Object element : list) {
+				copy.add(copyOf(element));
+			}
+			return copy;
+		}
+		return value;
+	}
+
+	/**
+	 * Estimates the retained size of a parsed JSON value.
+	 *
+	 * @param value the value
+	 * @return the estimated size in bytes
+	 */
+	static long weigh(final Object value) {
+		if (value instanceof String) {
+			return 40L + 2L * ((String) value).length();
+		}
+		if (value instanceof Map) {
+			long weight = 64L;
+			for (Object entry : ((Map) value).entrySet()) {
+				Map.Entry e = (Map.Entry) entry;
+				weight += 32L + weigh(e.getKey()) + weigh(e.getValue());
+			}
+			return weight;
+		}
+		if (value instanceof Collection) {
+			long weight = 40L;
+			for (Object element : (Collection) value) {
+				weight += 8L + weigh(element);
+			}
+			return weight;
+		}
+		return 16L;
+	}
+
+	/**
+	 * A value and its estimated size.
+	 */
+	private static final class Entry<V> {
+		private final V value;
+		private final long weight;
+
+		private Entry(V value, long weight) {
+			this.value = value;
+			this.weight = weight;
+		}
+	}
+}
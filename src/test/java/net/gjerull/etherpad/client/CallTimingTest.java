@@ -0,0 +1,115 @@
+package net.gjerull.etherpad.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockserver.integration.ClientAndServer.startClientAndServer;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mockserver.integration.ClientAndServer;
+import org.mockserver.model.Delay;
+import org.mockserver.model.HttpRequest;
+import org.mockserver.model.HttpResponse;
+
+public class CallTimingTest {
+	private static final String URL = "https://localhost:9011";
+
+	private static ClientAndServer mockServer;
+
+	@BeforeClass
+	public static void setUpClass() {
+		mockServer = startClientAndServer(9011);
+	}
+
+	@AfterClass
+	public static void cleanClass() {
+		mockServer.stop();
+	}
+
+	@Before
+	public void setUp() {
+		((ch.qos.logback.classic.Logger) org.slf4j.LoggerFactory
+				.getLogger("org.mockserver"))
+		.setLevel(ch.qos.logback.classic.Level.OFF);
+
+		mockServer.when(HttpRequest.request().withMethod("GET")
+				.withPath("/api/1.2.13/getText"))
+		.respond(HttpResponse.response().withStatusCode(200)
+				.withDelay(new Delay(TimeUnit.MILLISECONDS, 200))
+				.withBody("{\"code\":0,\"message\":\"ok\",\"data\":{\"text\":\"foo\"}}"));
+		mockServer.when(HttpRequest.request().withMethod("POST")
+				.withPath("/api/1.2.13/setText"))
+		.respond(HttpResponse.response().withStatusCode(200)
+				.withBody("{\"code\":1,\"message\":\"padID does not exist\",\"data\":null}"));
+	}
+
+	@After
+	public void tearDown() {
+		mockServer.reset();
+	}
+
+	private static EPLiteClient client(TimingListener listener) {
+		EPLiteConnection connection = new EPLiteConnection(URL, "apikey", "1.2.13", "UTF-8",
+				new URLConnectionTransport(TLSConfig.trustAll()));
+		connection.setTimingListener(listener);
+		return new EPLiteClient(connection);
+	}
+
+	@Test
+	public void times_each_phase_of_a_request() {
+		List<CallTiming> timings = new CopyOnWriteArrayList<>();
+		EPLiteClient client = client(timings::add);
+		assertEquals("foo", client.getText("my_pad").get("text"));
+		assertEquals("foo", client.getText("my_pad").get("text"));
+
+		CallTiming first = timings.get(0);
+		assertEquals("getText", first.getApiMethod());
+		assertNull(first.getError());
+		assertTrue(first.get(CallTiming.Phase.CONNECT) > 0);
+		assertTrue(first.get(CallTiming.Phase.TLS) > 0);
+		assertTrue(first.get(CallTiming.Phase.FIRST_BYTE) >= TimeUnit.MILLISECONDS.toNanos(200));
+		assertTrue(first.get(CallTiming.Phase.PARSE) > 0);
+		long phases = 0;
+		for (CallTiming.Phase phase : CallTiming.Phase.values()) {
+			phases += first.get(phase);
+		}
+		assertTrue(phases <= first.getTotal());
+
+		CallTiming second = timings.get(1);
+		assertEquals("keep-alive: no handshake", 0, second.get(CallTiming.Phase.TLS));
+		assertTrue(second.get(CallTiming.Phase.FIRST_BYTE) >= TimeUnit.MILLISECONDS.toNanos(200));
+		assertEquals(2, timings.size());
+	}
+
+	@Test
+	public void aggregates_phases_of_failed_requests_too() {
+		PhaseStatistics statistics = new PhaseStatistics();
+		List<CallTiming> timings = new CopyOnWriteArrayList<>();
+		EPLiteClient client = client(timing -> {
+			statistics.requestTimed(timing);
+			timings.add(timing);
+		});
+		client.getText("my_pad");
+		try {
+			client.setText("my_pad", "text");
+			fail("expected an EPLiteException");
+		} catch (EPLiteException e) {
+			assertEquals(e, timings.get(1).getError());
+		}
+
+		for (CallTiming.Phase phase : CallTiming.Phase.values()) {
+			assertEquals(2, statistics.getHistogram(phase).getCount());
+		}
+		assertEquals(2, statistics.getTotal().getCount());
+		assertTrue(statistics.getHistogram(CallTiming.Phase.FIRST_BYTE).getMax() >= 200_000);
+	}
+}
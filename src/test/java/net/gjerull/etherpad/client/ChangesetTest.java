@@ -0,0 +1,137 @@
+package net.gjerull.etherpad.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ChangesetTest {
+
+	private static AttributePool pool() {
+		AttributePool pool = new AttributePool();
+		pool.put("author", "a.1");
+		pool.put("bold", "true");
+		pool.put("bold", "");
+		return pool;
+	}
+
+	@Test
+	public void parses_and_packs_a_changeset() {
+		Changeset changeset = Changeset.parse("Z:1g<4|1=9*0*1=3-4*1+a$hello foo!");
+
+		assertEquals(52, changeset.getOldLength());
+		assertEquals(48, changeset.getNewLength());
+		assertEquals(4, changeset.getOperations().size());
+		Changeset.Operation keep = changeset.getOperations().get(0);
+		assertEquals('=', keep.getOpcode());
+		assertEquals(9, keep.getChars());
+		assertEquals(1, keep.getLines());
+		assertEquals("*0*1", changeset.getOperations().get(1).getAttribs());
+		assertEquals("hello foo!", changeset.getCharBank());
+		assertEquals("Z:1g<4|1=9*0*1=3-4*1+a$hello foo!", changeset.toString());
+	}
+
+	@Test
+	public void applies_inserts_and_deletes_to_a_text() {
+		assertEquals("hello world\n",
+				Changeset.parse("Z:8>4=6-1+5$world").applyToText("hello x\n"));
+		assertEquals("hi\n", Changeset.parse("Z:c<9+2-b$hi").applyToText("hello world\n"));
+	}
+
+	@Test
+	public void rejects_a_text_of_another_length() {
+		try {
+			Changeset.parse("Z:7>5=6+5$world").applyToText("hello\n");
+			fail("expected an EPLiteException");
+		} catch (EPLiteException e) {
+			assertEquals("The changeset applies to a text of 7 characters, not 6",
+					e.getMessage());
+		}
+	}
+
+	@Test
+	public void applies_formatting_to_the_attribution() {
+		AttributePool pool = pool();
+		AText text = new AText("hello\n", "*0|1+6");
+
+		AText bold = Changeset.parse("Z:6>0=2*1=2$").applyTo(text, pool);
+		assertEquals("hello\n", bold.getText());
+		assertEquals("*0+2*0*1+2*0|1+2", bold.getAttribs());
+		assertEquals("true", bold.getAttributes(2, pool).get("bold"));
+		assertEquals("a.1", bold.getAttributes(2, pool).get("author"));
+		assertFalse(bold.getAttributes(4, pool).containsKey("bold"));
+
+		AText plain = Changeset.parse("Z:6>0=2*2=2$").applyTo(bold, pool);
+		assertEquals("*0|1+6", plain.getAttribs());
+		assertEquals(3, pool.size());
+	}
+
+	@Test
+	public void inserts_attributed_text() {
+		AttributePool pool = pool();
+		AText base = AText.of("\n");
+		assertEquals("|1+1", base.getAttribs());
+
+		AText rev0 = Changeset.parse("Z:1>6*0|1+6$hello\n").applyTo(base, pool);
+		assertEquals("hello\n\n", rev0.getText());
+		assertEquals("*0|1+6|1+1", rev0.getAttribs());
+
+		AText rev1 = Changeset.parse("Z:7<5-5$").applyTo(rev0, pool);
+		assertEquals("\n\n", rev1.getText());
+		assertEquals("*0|1+1|1+1", rev1.getAttribs());
+	}
+
+	@Test
+	public void text_without_trailing_newline() {
+		assertEquals("|2+6+3", AText.of("a\nbcd\nefg").getAttribs());
+		assertEquals("+3", AText.of("abc").getAttribs());
+	}
+
+	@Test
+	public void timeline_rebuilds_revisions_from_keyframes() {
+		List<String> changesets = Arrays.asList(
+				"Z:1>6*0|1+6$hello\n",
+				"Z:7>6=5*0+6$ world",
+				"Z:d>0=6*1=5$",
+				"Z:d<6=5-6$");
+		List<String> fetched = new ArrayList<>();
+		Transport transport = new URLConnectionTransport() {
+			@Override
+			public Request newGetRequest(URL url) {
+				String query = url.getQuery();
+				fetched.add(url.getPath().substring(url.getPath().lastIndexOf('/') + 1)
+						+ (query.contains("rev=") ? query.replaceAll(".*(rev=\\d+).*", "$1") : ""));
+				if (url.getPath().endsWith("getAttributePool")) {
+					return () -> "{\"code\":0,\"message\":\"ok\",\"data\":{\"pool\":"
+							+ "{\"numToAttrib\":{\"0\":[\"author\",\"a.1\"],\"1\":[\"bold\",\"true\"]},"
+							+ "\"nextNum\":2}}}";
+				}
+				int rev = Integer.parseInt(query.replaceAll(".*rev=(\\d+).*", "$1"));
+				return () -> "{\"code\":0,\"message\":\"ok\",\"data\":\""
+						+ changesets.get(rev).replace("\n", "\\n") + "\"}";
+			}
+		};
+		EPLiteClient client = new EPLiteClient("http://localhost:9001", "apikey",
+				"1.2.13", "UTF-8", transport);
+		PadTimeline timeline = new PadTimeline(client, "my_pad", 2);
+
+		assertEquals("hello world\n\n", timeline.getText(2));
+		assertEquals(Arrays.asList("getRevisionChangesetrev=0", "getAttributePool",
+				"getRevisionChangesetrev=1", "getRevisionChangesetrev=2"), fetched);
+		assertTrue(timeline.getRevision(2).getAttributes(7, timeline.getAttributePool())
+				.containsKey("bold"));
+
+		fetched.clear();
+		assertEquals("hello\n\n", timeline.getText(3));
+		assertEquals("hello world\n\n", timeline.getText(1));
+		assertEquals(Arrays.asList("getRevisionChangesetrev=3", "getRevisionChangesetrev=1"),
+				fetched);
+	}
+}
@@ -0,0 +1,54 @@
+package net.gjerull.etherpad.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+public class ConcurrencyLimiterTest {
+	private static final long MS = 1000000L;
+
+	@Test
+	public void follows_the_latency() {
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter(10, 2, 100);
+		for (int i = 0; i < 500; i++) {
+			limiter.acquire();
+			limiter.release(MS, limiter.getLimit(), false);
+		}
+		assertEquals(100, limiter.getLimit());
+
+		// The server is queueing: latency ten times the usual one
+		for (int i = 0; i < 30; i++) {
+			limiter.acquire();
+			limiter.release(10 * MS, limiter.getLimit(), false);
+		}
+		assertTrue(limiter.getLimit() < 20);
+
+		int before = limiter.getLimit();
+		limiter.acquire();
+		limiter.release(MS, 1, false);
+		assertEquals("an unused limit is kept", before, limiter.getLimit());
+
+		limiter.acquire().drop();
+		assertEquals((int) (before * ConcurrencyLimiter.BACKOFF_RATIO), limiter.getLimit(), 1);
+		assertEquals(0, limiter.getInFlight());
+	}
+
+	@Test
+	public void refuses_calls_over_the_limit() {
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1, 1);
+		limiter.setMaxWait(10);
+		ConcurrencyLimiter.Permit permit = limiter.acquire();
+		try {
+			limiter.acquire();
+			fail("over the limit");
+		} catch (EPLiteLimitException e) {
+			assertEquals(1, limiter.getRejectedCount());
+		}
+		permit.release();
+		permit.release();
+		limiter.acquire().release();
+		assertEquals(0, limiter.getInFlight());
+	}
+}
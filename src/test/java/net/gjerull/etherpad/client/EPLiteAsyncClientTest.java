@@ -0,0 +1,122 @@
+package net.gjerull.etherpad.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockserver.integration.ClientAndServer.startClientAndServer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mockserver.integration.ClientAndServer;
+import org.mockserver.model.HttpRequest;
+import org.mockserver.model.HttpResponse;
+
+public class EPLiteAsyncClientTest {
+
+	private static ClientAndServer mockServer;
+	private EPLiteAsyncClient client;
+
+	@BeforeClass
+	public static void setUpClass() {
+		mockServer = startClientAndServer(9003);
+	}
+
+	@AfterClass
+	public static void cleanClass() {
+		mockServer.stop();
+	}
+
+	@Before
+	public void setUp() {
+		((ch.qos.logback.classic.Logger) org.slf4j.LoggerFactory
+				.getLogger("org.mockserver.mock"))
+		.setLevel(ch.qos.logback.classic.Level.OFF);
+
+		client = new EPLiteAsyncClient("http://localhost:9003", "apikey");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		client.close();
+		mockServer.reset();
+	}
+
+	@Test
+	public void concurrent_calls_complete_independently() throws Exception {
+		mockServer.when(HttpRequest.request().withMethod("GET")
+				.withPath("/api/1.2.13/getText"))
+		.respond(HttpResponse.response().withStatusCode(200)
+				.withBody("{\"code\":0,\"message\":\"ok\",\"data\":{\"text\":\"foo\"}}"));
+		mockServer.when(HttpRequest.request().withMethod("GET")
+				.withPath("/api/1.2.13/padUsersCount"))
+		.respond(HttpResponse.response().withStatusCode(200)
+				.withBody("{\"code\":0,\"message\":\"ok\",\"data\":{\"padUsersCount\":3}}"));
+
+		List<CompletableFuture<Map>> texts = new ArrayList<>();
+		for (int i = 0; i < 10; i++) {
+			texts.add(client.getText("pad" + i));
+		}
+		CompletableFuture<Map> count = client.padUsersCount("pad0");
+
+		for (CompletableFuture<Map> text : texts) {
+			assertEquals("foo", text.get().get("text"));
+		}
+		assertEquals(3L, count.get().get("padUsersCount"));
+	}
+
+	@Test
+	public void void_and_string_results() throws Exception {
+		mockServer.when(HttpRequest.request().withMethod("POST")
+				.withPath("/api/1.2.13/setText"))
+		.respond(HttpResponse.response().withStatusCode(200)
+				.withBody("{\"code\":0,\"message\":\"ok\",\"data\":null}"));
+		mockServer.when(HttpRequest.request().withMethod("GET")
+				.withPath("/api/1.2.13/getRevisionChangeset"))
+		.respond(HttpResponse.response().withStatusCode(200)
+				.withBody("{\"code\":0,\"message\":\"ok\",\"data\":\"Z:1>6b|5+6b$Welcome\"}"));
+
+		client.setText("my_pad", "æøå & more").get();
+		assertEquals("Z:1>6b|5+6b$Welcome",
+				client.getRevisionChangeset("my_pad", 0).get());
+	}
+
+	@Test
+	public void api_errors_complete_the_future_exceptionally() throws Exception {
+		mockServer.when(HttpRequest.request().withMethod("GET")
+				.withPath("/api/1.2.13/getText"))
+		.respond(HttpResponse.response().withStatusCode(200)
+				.withBody("{\"code\":1,\"message\":\"padID does not exist\",\"data\":null}"));
+
+		try {
+			client.getText("missing").get();
+			fail("Expected '" + EPLiteException.class.getName() + "' to be thrown");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof EPLiteException);
+			assertEquals("padID does not exist", e.getCause().getMessage());
+		}
+	}
+
+	@Test
+	public void connection_errors_complete_the_future_exceptionally() throws Exception {
+		EPLiteAsyncClient unreachable = new EPLiteAsyncClient(
+				"http://localhost:1", "apikey");
+		try {
+			unreachable.checkToken().get();
+			fail("Expected '" + EPLiteException.class.getName() + "' to be thrown");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof EPLiteException);
+			assertTrue(e.getCause().getMessage().startsWith("Unable to connect"));
+		} finally {
+			unreachable.close();
+		}
+	}
+}
@@ -0,0 +1,107 @@
+package net.gjerull.etherpad.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockserver.integration.ClientAndServer.startClientAndServer;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mockserver.integration.ClientAndServer;
+import org.mockserver.model.HttpRequest;
+import org.mockserver.model.HttpResponse;
+
+public class EPLiteBulkClientTest {
+
+	private static ClientAndServer mockServer;
+
+	@BeforeClass
+	public static void setUpClass() {
+		((ch.qos.logback.classic.Logger) org.slf4j.LoggerFactory
+				.getLogger("org.mockserver"))
+		.setLevel(ch.qos.logback.classic.Level.OFF);
+		mockServer = startClientAndServer(9008);
+	}
+
+	@AfterClass
+	public static void cleanClass() {
+		mockServer.stop();
+	}
+
+	@After
+	public void tearDown() {
+		mockServer.reset();
+	}
+
+	@Test
+	public void reports_every_item_in_order() {
+		mockServer.when(HttpRequest.request().withMethod("GET")
+				.withPath("/api/1.2.13/getText")
+				.withQueryStringParameter("padID", "missing"))
+		.respond(HttpResponse.response().withStatusCode(200)
+				.withBody("{\"code\":1,\"message\":\"padID does not exist\",\"data\":null}"));
+		for (String padId : Arrays.asList("a", "b", "c")) {
+			mockServer.when(HttpRequest.request().withMethod("GET")
+					.withPath("/api/1.2.13/getText")
+					.withQueryStringParameter("padID", padId))
+			.respond(HttpResponse.response().withStatusCode(200)
+					.withBody("{\"code\":0,\"message\":\"ok\",\"data\":{\"text\":\"text of "
+							+ padId + "\"}}"));
+		}
+		EPLiteClient client = new EPLiteClient("http://localhost:9008", "apikey");
+
+		BulkResult<String, String> result = client.bulk(3)
+				.getTexts(Arrays.asList("a", "missing", "b", "c"));
+
+		assertFalse(result.isSuccess());
+		assertEquals(3, result.getSucceededCount());
+		assertEquals(1, result.getFailedCount());
+		assertEquals(Arrays.asList("text of a", null, "text of b", "text of c"),
+				result.getValues());
+		BulkResult.Item<String, String> failed = result.getFailures().get(0);
+		assertEquals("missing", failed.getInput());
+		assertEquals("padID does not exist", failed.getError().getMessage());
+	}
+
+	@Test
+	public void bounds_the_concurrent_calls() {
+		AtomicInteger running = new AtomicInteger();
+		AtomicInteger maxRunning = new AtomicInteger();
+		Transport transport = new URLConnectionTransport() {
+			@Override
+			public Request newPostRequest(URL url, byte[] body) {
+				return () -> {
+					maxRunning.accumulateAndGet(running.incrementAndGet(),
+							Math::max);
+					Thread.sleep(20);
+					running.decrementAndGet();
+					return "{\"code\":0,\"message\":\"ok\",\"data\":null}";
+				};
+			}
+		};
+		EPLiteClient client = new EPLiteClient("http://localhost:9008",
+				"apikey", "1.2.13", "UTF-8", transport);
+		List<String> padIds = new ArrayList<>();
+		for (int i = 0; i < 40; i++) {
+			padIds.add("pad" + i);
+		}
+
+		BulkResult<String, Void> result = client.bulk(4).deletePads(padIds);
+
+		assertTrue(result.isSuccess());
+		assertEquals(40, result.getItems().size());
+		assertEquals("pad39", result.getItems().get(39).getInput());
+		assertNull(result.getItems().get(0).getValue());
+		assertTrue(maxRunning.get() <= 4);
+		assertTrue(maxRunning.get() > 1);
+	}
+}
@@ -2,9 +2,21 @@ package net.gjerull.etherpad.client;
 
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.*;
 
@@ -193,4 +205,221 @@ public class EPLiteConnectionTest {
         Object response = connection.handleResponse(serverResponse);
         assertNull(response);
     }
+
+    @Test
+    public void handle_streamed_response_in_the_configured_encoding() throws Exception {
+        EPLiteConnection connection = new EPLiteConnection(
+                "http://example.com/", "apikey", API_VERSION, ENCODING
+        );
+        String serverResponse = String.format(RESPONSE_TEMPLATE, 0, "ok", "{\"text\": \"æøå\\nline 2\"}");
+
+        Map response = (Map) connection.handleResponse(
+                new ByteArrayInputStream(serverResponse.getBytes("UTF-8")), null);
+
+        assertEquals("æøå\nline 2", response.get("text"));
+    }
+
+    @Test
+    public void handle_streamed_response_in_the_charset_of_the_server() throws Exception {
+        EPLiteConnection connection = new EPLiteConnection(
+                "http://example.com/", "apikey", API_VERSION, ENCODING
+        );
+        String serverResponse = String.format(RESPONSE_TEMPLATE, 0, "ok", "{\"text\": \"æøå\"}");
+
+        Map response = (Map) connection.handleResponse(
+                new ByteArrayInputStream(serverResponse.getBytes("ISO-8859-1")), "ISO-8859-1");
+
+        assertEquals("æøå", response.get("text"));
+    }
+
+    @Test
+    public void unparsable_streamed_response_from_the_server() throws Exception {
+        EPLiteConnection connection = new EPLiteConnection(
+                "http://example.com/", "apikey", API_VERSION, ENCODING
+        );
+        String serverResponse = "<html><body><h1>Some HTML</h1></body></html>";
+
+        try {
+            connection.handleResponse(new ByteArrayInputStream(serverResponse.getBytes("UTF-8")), null);
+            fail("Expected '" + EPLiteException.class.getName() + "' to be thrown");
+        } catch (EPLiteException e) {
+            assertTrue("Unexpected Message: " + e.getMessage(),
+                    e.getMessage().startsWith("Unable to parse JSON response ("));
+        }
+    }
+
+    @Test
+    public void get_url_with_encoded_arguments() throws Exception {
+        EPLiteConnection connection = new EPLiteConnection(
+                "http://example.com/etherpad/", "api key", API_VERSION, ENCODING
+        );
+        Map<String,Object> apiArgs = new TreeMap<>(); // Ensure ordering for testing
+        apiArgs.put("padID", "g.oln5fzaE8qfv4gdE$test-1");
+        apiArgs.put("text", "a&b=æ");
+
+        String url = connection.getUrl("setText", apiArgs).toString();
+
+        assertEquals("http://example.com/etherpad/api/1.2.12/setText"
+                + "?apikey=api+key&padID=g.oln5fzaE8qfv4gdE%24test-1&text=a%26b%3D%C3%A6", url);
+        assertEquals(2, apiArgs.size());
+    }
+
+    @Test
+    public void form_body_with_encoded_arguments() throws Exception {
+        EPLiteConnection connection = new EPLiteConnection(
+                "http://example.com/", "apikey", API_VERSION, ENCODING
+        );
+        Map<String,Object> apiArgs = new TreeMap<>(); // Ensure ordering for testing
+        apiArgs.put("padID", "my pad");
+        apiArgs.put("rev", 27L);
+
+        byte[] body = connection.formBody(apiArgs);
+
+        assertEquals("apikey=apikey&padID=my+pad&rev=27", new String(body, "US-ASCII"));
+        assertSame(connection.methodUrl("getText"), connection.methodUrl("getText"));
+    }
+
+    @Test
+    public void coalesce_identical_concurrent_gets() throws Exception {
+        BlockingTransport transport = new BlockingTransport();
+        EPLiteConnection connection = new EPLiteConnection(
+                "http://example.com/", "apikey", API_VERSION, ENCODING, transport
+        );
+        connection.setCoalescing(true);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Map>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(() -> {
+                    Map<String, Object> args = new HashMap<>();
+                    args.put("padID", "my_pad");
+                    return connection.get("getReadOnlyID", args);
+                }));
+            }
+            while (connection.getCoalescedCount() < 7) {
+                Thread.sleep(1);
+            }
+            transport.release.countDown();
+
+            for (Future<Map> result : results) {
+                assertEquals("r.123", result.get().get("readOnlyID"));
+            }
+            results.get(0).get().put("readOnlyID", "changed");
+            assertEquals("r.123", results.get(1).get().get("readOnlyID"));
+            // Nested values are copied too
+            ((Map) ((List) results.get(0).get().get("padUsers")).get(0)).put("id", "changed");
+            ((List) results.get(2).get().get("padUsers")).clear();
+            assertEquals("a.1", ((Map) ((List) results.get(1).get().get("padUsers")).get(0)).get("id"));
+            assertEquals(1, transport.gets.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void never_coalesce_posts() throws Exception {
+        BlockingTransport transport = new BlockingTransport();
+        transport.release.countDown();
+        EPLiteConnection connection = new EPLiteConnection(
+                "http://example.com/", "apikey", API_VERSION, ENCODING, transport
+        );
+        connection.setCoalescing(true);
+        Map<String, Object> args = new HashMap<>();
+        args.put("padID", "my_pad");
+
+        connection.post("getReadOnlyID", args);
+        connection.post("getReadOnlyID", args);
+
+        assertEquals(2, transport.posts.get());
+        assertEquals(0, connection.getCoalescedCount());
+    }
+
+    @Test
+    public void limiter_refuses_calls_over_the_limit() throws Exception {
+        BlockingTransport transport = new BlockingTransport();
+        EPLiteConnection connection = new EPLiteConnection(
+                "http://example.com/", "apikey", API_VERSION, ENCODING, transport
+        );
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(2, 1, 2);
+        limiter.setMaxWait(0);
+        connection.setLimiter(limiter);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            List<Future<Map>> results = new ArrayList<>();
+            for (int i = 0; i < 2; i++) {
+                results.add(executor.submit(() -> connection.get("getReadOnlyID")));
+            }
+            while (transport.gets.get() < 2) {
+                Thread.sleep(1);
+            }
+            try {
+                connection.get("getReadOnlyID");
+                fail("over the limit");
+            } catch (EPLiteLimitException e) {
+                assertEquals(2, transport.gets.get());
+            }
+            transport.release.countDown();
+            for (Future<Map> result : results) {
+                assertEquals("r.123", result.get().get("readOnlyID"));
+            }
+            assertEquals(0, limiter.getInFlight());
+            assertEquals("r.123", connection.get("getReadOnlyID").get("readOnlyID"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void streamed_form_body_matches_the_form_body() throws Exception {
+        EPLiteConnection connection = new EPLiteConnection(
+                "http://example.com/", "apikey", API_VERSION, ENCODING
+        );
+        StringBuilder text = new StringBuilder();
+        while (text.length() < 100000) {
+            text.append("line \uD83D\uDE00 caf\u00E9 & 100% \u20AC\n");
+        }
+        Map<String,Object> apiArgs = new TreeMap<>();
+        apiArgs.put("padID", "my pad");
+        apiArgs.put("text", text.toString());
+
+        RequestBody body = connection.formBodyStream(apiArgs);
+        byte[] expected = connection.formBody(apiArgs);
+
+        assertEquals(expected.length, body.getContentLength());
+        assertArrayEquals(expected, body.openStream().readAllBytes());
+        assertArrayEquals(expected, body.openStream().readAllBytes());
+
+        apiArgs.put("text", ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.UTF_8)));
+        body = connection.formBodyStream(apiArgs);
+        assertEquals(expected.length, body.getContentLength());
+        assertArrayEquals(expected, body.openStream().readAllBytes());
+    }
+
+    private static class BlockingTransport implements Transport {
+        private final CountDownLatch release = new CountDownLatch(1);
+        private final AtomicInteger gets = new AtomicInteger();
+        private final AtomicInteger posts = new AtomicInteger();
+
+        @Override
+        public Request newGetRequest(URL url) {
+            return () -> {
+                gets.incrementAndGet();
+                release.await();
+                return String.format(RESPONSE_TEMPLATE, 0, "ok",
+                        "{\"readOnlyID\": \"r.123\", \"padUsers\": [{\"id\": \"a.1\"}]}");
+            };
+        }
+
+        @Override
+        public Request newPostRequest(URL url, String body) {
+            return () -> {
+                posts.incrementAndGet();
+                return String.format(RESPONSE_TEMPLATE, 0, "ok", "{\"readOnlyID\": \"r.123\"}");
+            };
+        }
+
+        @Override
+        public void close() {
+        }
+    }
 }
@@ -0,0 +1,272 @@
+package net.gjerull.etherpad.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class EPLiteRealtimeClientTest {
+	private static final String CLIENT_VARS = "42[\"message\",{\"type\":\"CLIENT_VARS\",\"data\":"
+			+ "{\"collab_client_vars\":{\"initialAttributedText\":{\"text\":\"hello\\n\","
+			+ "\"attribs\":\"*0+5|1+1\"},\"apool\":{\"numToAttrib\":{\"0\":[\"author\",\"a.1\"]},"
+			+ "\"nextNum\":1},\"rev\":3,\"padId\":\"my_pad\"}}}]";
+
+	private StandInServer server;
+
+	@Before
+	public void setUp() throws IOException {
+		server = new StandInServer();
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		server.close();
+	}
+
+	@Test
+	public void pushes_changes_and_presence() throws Exception {
+		BlockingQueue<String> events = new LinkedBlockingQueue<>();
+		EPLiteRealtimeClient.Listener listener = new EPLiteRealtimeClient.Listener() {
+			@Override
+			public void padChanged(EPLiteRealtimeClient.Subscription pad, long rev,
+					Changeset changeset, String author) {
+				events.add("change " + rev + " " + author);
+			}
+
+			@Override
+			public void userChanged(EPLiteRealtimeClient.Subscription pad, Map userInfo) {
+				events.add("user " + userInfo.get("userId"));
+			}
+
+			@Override
+			public void userLeft(EPLiteRealtimeClient.Subscription pad, Map userInfo) {
+				events.add("left " + userInfo.get("userId"));
+			}
+
+			@Override
+			public void padDisconnected(EPLiteRealtimeClient.Subscription pad, Throwable error) {
+				events.add("disconnected " + error);
+			}
+		};
+		EPLiteRealtimeClient realtime = new EPLiteRealtimeClient(server.url());
+		EPLiteRealtimeClient.Subscription pad = realtime.subscribe("my_pad", listener)
+				.get(5, TimeUnit.SECONDS);
+
+		assertTrue(server.received().startsWith("GET /socket.io/?EIO=4&transport=websocket&padId=my_pad "));
+		assertEquals("40", server.received());
+		assertTrue(server.received().contains("\"type\":\"CLIENT_READY\""));
+		assertEquals(3, pad.getRevision());
+		assertEquals("hello\n", pad.getAText().getText());
+
+		server.send("2");
+		assertEquals("3", server.received());
+		server.send("42[\"message\",{\"type\":\"COLLABROOM\",\"data\":{\"type\":\"USER_NEWINFO\","
+				+ "\"userInfo\":{\"userId\":\"a.2\",\"name\":\"Bob\",\"colorId\":3}}}]");
+		// The changeset refers to a pool of its own
+		server.send("42[\"message\",{\"type\":\"COLLABROOM\",\"data\":{\"type\":\"NEW_CHANGES\","
+				+ "\"newRev\":4,\"changeset\":\"Z:6>6=5*0+6$ world\",\"apool\":{\"numToAttrib\":"
+				+ "{\"0\":[\"author\",\"a.2\"]},\"nextNum\":1},\"author\":\"a.2\"}}]");
+		assertEquals("user a.2", events.poll(5, TimeUnit.SECONDS));
+		assertEquals("change 4 a.2", events.poll(5, TimeUnit.SECONDS));
+		assertEquals("hello world\n", pad.getAText().getText());
+		assertEquals("a.1", pad.getAText().getAttributes(0, pad.getAttributePool()).get("author"));
+		assertEquals("a.2", pad.getAText().getAttributes(6, pad.getAttributePool()).get("author"));
+		assertTrue(pad.getUsers().containsKey("a.2"));
+
+		server.send("42[\"message\",{\"type\":\"COLLABROOM\",\"data\":{\"type\":\"USER_LEAVE\","
+				+ "\"userInfo\":{\"userId\":\"a.2\"}}}]");
+		assertEquals("left a.2", events.poll(5, TimeUnit.SECONDS));
+		assertTrue(pad.getUsers().isEmpty());
+
+		pad.close();
+		assertEquals("disconnected null", events.poll(5, TimeUnit.SECONDS));
+		assertFalse(pad.isOpen());
+	}
+
+	@Test
+	public void disconnects_on_a_missed_revision() throws Exception {
+		BlockingQueue<Throwable> errors = new LinkedBlockingQueue<>();
+		EPLiteRealtimeClient realtime = new EPLiteRealtimeClient(server.url());
+		EPLiteRealtimeClient.Subscription pad = realtime.subscribe("my_pad",
+				new EPLiteRealtimeClient.Listener() {
+					@Override
+					public void padDisconnected(EPLiteRealtimeClient.Subscription pad,
+							Throwable error) {
+						errors.add(error);
+					}
+				}).get(5, TimeUnit.SECONDS);
+
+		server.send("42[\"message\",{\"type\":\"COLLABROOM\",\"data\":{\"type\":\"NEW_CHANGES\","
+				+ "\"newRev\":5,\"changeset\":\"Z:6>1=5+1$!\",\"apool\":{\"numToAttrib\":{},"
+				+ "\"nextNum\":0},\"author\":\"a.2\"}}]");
+		Throwable error = errors.poll(5, TimeUnit.SECONDS);
+		assertTrue(error instanceof EPLiteException);
+		assertEquals("Revision 5 received at revision 3", error.getMessage());
+		assertFalse(pad.isOpen());
+		assertEquals(3, pad.getRevision());
+		assertNull(errors.poll(100, TimeUnit.MILLISECONDS));
+	}
+
+	@Test
+	public void fails_on_a_server_close_and_a_silent_server() throws Exception {
+		BlockingQueue<Throwable> errors = new LinkedBlockingQueue<>();
+		EPLiteRealtimeClient.Listener listener = new EPLiteRealtimeClient.Listener() {
+			@Override
+			public void padDisconnected(EPLiteRealtimeClient.Subscription pad, Throwable error) {
+				errors.add(error);
+			}
+		};
+		EPLiteRealtimeClient realtime = new EPLiteRealtimeClient(server.url());
+		EPLiteRealtimeClient.Subscription pad = realtime.subscribe("my_pad", listener)
+				.get(5, TimeUnit.SECONDS);
+		server.frame(8, new byte[] {0x03, (byte) 0xe9, 'b', 'y', 'e'});
+		Throwable error = errors.poll(5, TimeUnit.SECONDS);
+		assertTrue(error instanceof EPLiteException);
+		assertEquals("Connection closed (1001): bye", error.getMessage());
+		assertFalse(pad.isOpen());
+
+		try (StandInServer silent = new StandInServer()) {
+			silent.silent = true;
+			EPLiteRealtimeClient slow = new EPLiteRealtimeClient(silent.url());
+			slow.setSubscribeTimeout(200);
+			try {
+				slow.subscribe("my_pad", listener).get(5, TimeUnit.SECONDS);
+				fail("no CLIENT_VARS was sent");
+			} catch (ExecutionException e) {
+				assertEquals("No CLIENT_VARS received for pad my_pad within 200 ms",
+						e.getCause().getMessage());
+			}
+			assertTrue(errors.poll(5, TimeUnit.SECONDS) instanceof EPLiteException);
+		}
+	}
+
+	/**
+	 * A local stand-in for the socket.io endpoint of Etherpad: it accepts
+	 * one WebSocket, answers the handshake and CLIENT_READY, and lets the
+	 * test push packets and read the ones received.
+	 */
+	private static final class StandInServer implements AutoCloseable {
+		private final ServerSocket serverSocket = new ServerSocket(0);
+		private final BlockingQueue<String> received = new LinkedBlockingQueue<>();
+		private volatile OutputStream out;
+		/** True to never answer CLIENT_READY. */
+		private volatile boolean silent;
+
+		private StandInServer() throws IOException {
+			Thread thread = new Thread(this::serve, "stand-in-server");
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		private String url() {
+			return "http://localhost:" + serverSocket.getLocalPort();
+		}
+
+		private String received() throws InterruptedException {
+			return received.poll(5, TimeUnit.SECONDS);
+		}
+
+		private void serve() {
+			try (Socket socket = serverSocket.accept()) {
+				DataInputStream in = new DataInputStream(socket.getInputStream());
+				String key = null;
+				String line = readLine(in);
+				received.add(line);
+				for (String header = readLine(in); !header.isEmpty(); header = readLine(in)) {
+					if (header.toLowerCase().startsWith("sec-websocket-key:")) {
+						key = header.substring(header.indexOf(':') + 1).trim();
+					}
+				}
+				String accept = Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-1")
+						.digest((key + "258EAFA5-E914-47DA-95CA-C5AB0DC85B11")
+								.getBytes(StandardCharsets.US_ASCII)));
+				out = socket.getOutputStream();
+				out.write(("HTTP/1.1 101 Switching Protocols\r\nUpgrade: websocket\r\n"
+						+ "Connection: Upgrade\r\nSec-WebSocket-Accept: " + accept + "\r\n\r\n")
+						.getBytes(StandardCharsets.US_ASCII));
+				send("0{\"sid\":\"s1\",\"upgrades\":[],\"pingInterval\":25000,\"pingTimeout\":20000}");
+				while (true) {
+					int opcode = in.readUnsignedByte() & 0x0f;
+					long length = in.readUnsignedByte() & 0x7f;
+					if (length == 126) {
+						length = in.readUnsignedShort();
+					} else if (length == 127) {
+						length = in.readLong();
+					}
+					byte[] mask = new byte[4];
+					in.readFully(mask);
+					byte[] payload = new byte[(int) length];
+					in.readFully(payload);
+					for (int i = 0; i < payload.length; i++) {
+						payload[i] ^= mask[i % 4];
+					}
+					if (opcode == 8) {
+						frame(8, new byte[0]);
+						return;
+					}
+					String text = new String(payload, StandardCharsets.UTF_8);
+					received.add(text);
+					if ("40".equals(text)) {
+						send("40{\"sid\":\"io1\"}");
+					} else if (text.contains("CLIENT_READY") && !silent) {
+						send(CLIENT_VARS);
+					}
+				}
+			} catch (Exception e) {
+				// The connection was closed
+			}
+		}
+
+		private static String readLine(InputStream in) throws IOException {
+			StringBuilder line = new StringBuilder();
+			for (int c = in.read(); c != '\n' && c != -1; c = in.read()) {
+				if (c != '\r') {
+					line.append((char) c);
+				}
+			}
+			return line.toString();
+		}
+
+		private void send(String text) throws IOException {
+			frame(1, text.getBytes(StandardCharsets.UTF_8));
+		}
+
+		private synchronized void frame(int opcode, byte[] payload) throws IOException {
+			out.write(0x80 | opcode);
+			if (payload.length < 126) {
+				out.write(payload.length);
+			} else {
+				out.write(126);
+				out.write(payload.length >>> 8);
+				out.write(payload.length & 0xff);
+			}
+			out.write(payload);
+			out.flush();
+		}
+
+		@Override
+		public void close() throws IOException {
+			serverSocket.close();
+		}
+	}
+}
@@ -0,0 +1,113 @@
+package net.gjerull.etherpad.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URL;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class EPLiteShardedClientTest {
+	/** Answers listAllPads and listAllGroups with ids named after the shard. */
+	private static final class ShardTransport implements Transport {
+		private final String shard;
+		private final AtomicInteger groups = new AtomicInteger();
+
+		private ShardTransport(String shard) {
+			this.shard = shard;
+		}
+
+		@Override
+		public Request newGetRequest(URL url) {
+			return () -> {
+				if (url.getPath().endsWith("/listAllPads")) {
+					return "{\"code\":0,\"message\":\"ok\",\"data\":{\"padIDs\":[\""
+							+ shard + "-a\",\"" + shard + "-b\"]}}";
+				}
+				if (url.getPath().endsWith("/listAllGroups")) {
+					return "{\"code\":0,\"message\":\"ok\",\"data\":{\"groupIDs\":[\"g." + shard + "\"]}}";
+				}
+				if (url.getPath().endsWith("/createGroup")) {
+					return "{\"code\":0,\"message\":\"ok\",\"data\":{\"groupID\":\"g." + shard
+							+ groups.incrementAndGet() + "\"}}";
+				}
+				return "{\"code\":0,\"message\":\"ok\",\"data\":null}";
+			};
+		}
+
+		@Override
+		public Request newPostRequest(URL url, String body) {
+			return newGetRequest(url);
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+
+	private static EPLiteClient client(String shard) {
+		return new EPLiteClient("http://" + shard + ".example.com", "apikey", "1.2.13", "UTF-8",
+				new ShardTransport(shard));
+	}
+
+	@Test
+	public void routes_keys_consistently() {
+		EPLiteShardedClient shards = new EPLiteShardedClient();
+		for (String name : Arrays.asList("s1", "s2", "s3")) {
+			shards.addShard(name, client(name));
+		}
+		int keys = 30000;
+		Map<String, String> before = new HashMap<>();
+		Map<String, Integer> counts = new HashMap<>();
+		for (int i = 0; i < keys; i++) {
+			String shard = shards.shardOf("pad" + i);
+			before.put("pad" + i, shard);
+			counts.merge(shard, 1, Integer::sum);
+		}
+		for (int count : counts.values()) {
+			assertTrue("even spread: " + counts, Math.abs(count - keys / 3) < keys / 10);
+		}
+		assertSame(shards.forGroup("g.abc"), shards.forPad("g.abc$notes"));
+		assertSame(shards.forGroup("g.abc"), shards.forPad("g.abc$minutes"));
+
+		shards.addShard("s4", client("s4"));
+		int moved = 0;
+		for (Map.Entry<String, String> key : before.entrySet()) {
+			String shard = shards.shardOf(key.getKey());
+			if (!shard.equals(key.getValue())) {
+				assertEquals("keys only move to the new shard", "s4", shard);
+				moved++;
+			}
+		}
+		assertTrue("about 1/4 of the keys moved: " + moved,
+				Math.abs(moved - keys / 4) < keys / 10);
+
+		shards.removeShard("s4");
+		for (Map.Entry<String, String> key : before.entrySet()) {
+			assertEquals(key.getValue(), shards.shardOf(key.getKey()));
+		}
+	}
+
+	@Test
+	public void fans_out_listings_and_creates_groups_on_their_shard() throws Exception {
+		try (EPLiteShardedClient shards = new EPLiteShardedClient()) {
+			shards.addShard("s1", client("s1"));
+			shards.addShard("s2", client("s2"));
+
+			List padIDs = (List) shards.listAllPads().get("padIDs");
+			assertEquals(Arrays.asList("s1-a", "s1-b", "s2-a", "s2-b"), padIDs);
+			assertEquals(Arrays.asList("g.s1", "g.s2"), shards.listAllGroups().get("groupIDs"));
+
+			for (int i = 0; i < 10; i++) {
+				String groupID = (String) shards.createGroup().get("groupID");
+				assertEquals(groupID.substring(2, 4), shards.shardOf(groupID + "$pad"));
+			}
+		}
+	}
+}
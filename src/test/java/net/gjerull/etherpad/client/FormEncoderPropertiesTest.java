@@ -0,0 +1,37 @@
+package net.gjerull.etherpad.client;
+
+import static org.junit.Assert.assertEquals;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Before;
+import org.junit.runner.RunWith;
+
+import com.pholser.junit.quickcheck.Property;
+import com.pholser.junit.quickcheck.runner.JUnitQuickcheck;
+
+@RunWith(JUnitQuickcheck.class)
+public class FormEncoderPropertiesTest {
+
+	@Before
+	public void setUp() {
+		((ch.qos.logback.classic.Logger) org.slf4j.LoggerFactory
+				.getLogger("junit-quickcheck.value-reporting"))
+		.setLevel(ch.qos.logback.classic.Level.OFF);
+	}
+
+	@Property
+	public void utf8_encoding_is_the_one_of_url_encoder(String value) throws Exception {
+		String encoded = FormEncoder.get()
+				.encode(value, StandardCharsets.UTF_8).toString();
+		assertEquals(URLEncoder.encode(value, "UTF-8"), encoded);
+	}
+
+	@Property
+	public void latin1_encoding_is_the_one_of_url_encoder(String value) throws Exception {
+		String encoded = FormEncoder.get()
+				.encode(value, StandardCharsets.ISO_8859_1).toString();
+		assertEquals(URLEncoder.encode(value, "ISO-8859-1"), encoded);
+	}
+}
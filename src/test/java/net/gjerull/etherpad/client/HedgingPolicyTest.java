@@ -0,0 +1,139 @@
+package net.gjerull.etherpad.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockserver.integration.ClientAndServer.startClientAndServer;
+
+import java.net.URL;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.mockserver.integration.ClientAndServer;
+import org.mockserver.matchers.Times;
+import org.mockserver.model.Delay;
+import org.mockserver.model.HttpRequest;
+import org.mockserver.model.HttpResponse;
+
+public class HedgingPolicyTest {
+	private static final String OK = "{\"code\":0,\"message\":\"ok\",\"data\":{\"text\":\"hello\"}}";
+
+	/** Answers the requests listed in slow after a pause, the others at once. */
+	private static final class PausingTransport implements Transport {
+		private final AtomicInteger requests = new AtomicInteger();
+		private final CountDownLatch interrupted = new CountDownLatch(1);
+		private final long pause;
+		private final int slow;
+
+		private PausingTransport(long pause, int slow) {
+			this.pause = pause;
+			this.slow = slow;
+		}
+
+		@Override
+		public Request newGetRequest(URL url) {
+			return newPostRequest(url, "");
+		}
+
+		@Override
+		public Request newPostRequest(URL url, String body) {
+			return () -> {
+				if (requests.incrementAndGet() <= slow) {
+					try {
+						Thread.sleep(pause);
+					} catch (InterruptedException e) {
+						interrupted.countDown();
+						throw e;
+					}
+				}
+				return OK;
+			};
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+
+	private static EPLiteConnection connection(Transport transport, HedgingPolicy policy) {
+		EPLiteConnection connection = new EPLiteConnection("http://example.com/", "apikey",
+				"1.2.13", "UTF-8", transport);
+		connection.setHedgingPolicy(policy);
+		return connection;
+	}
+
+	@Test
+	public void answers_slow_reads_with_the_hedge() throws Exception {
+		try (HedgingPolicy policy = new HedgingPolicy()) {
+			PausingTransport transport = new PausingTransport(10000, 1);
+			long start = System.nanoTime();
+			assertEquals("hello", connection(transport, policy).get("getText").get("text"));
+			assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+			assertEquals(1, policy.getHedgeCount());
+			assertEquals(1, policy.getHedgeWinCount());
+			assertTrue("the loser is cancelled", transport.interrupted.await(5, TimeUnit.SECONDS));
+
+			PausingTransport write = new PausingTransport(200, 1);
+			connection(write, policy).post("setText");
+			assertEquals(1, write.requests.get());
+
+			// The median, so that a few reads slowed by the other tests do not count
+			policy.setPercentile(0.5);
+			for (int i = 0; i < HedgingPolicy.WINDOW / 10; i++) {
+				connection(new PausingTransport(0, 0), policy).get("getText");
+			}
+			assertTrue(policy.getDelay() < HedgingPolicy.DEFAULT_INITIAL_DELAY);
+		}
+	}
+
+	@Test
+	public void stays_within_the_budget() {
+		try (HedgingPolicy policy = new HedgingPolicy(0, 1, Executors.newCachedThreadPool())) {
+			PausingTransport transport = new PausingTransport(300, 3);
+			EPLiteConnection connection = connection(transport, policy);
+			connection.get("getText");
+			connection.get("getText");
+			assertEquals(1, policy.getHedgeCount());
+			assertEquals(1, policy.getBudgetExhaustedCount());
+			assertEquals(3, transport.requests.get());
+		}
+	}
+
+	@Test
+	public void aborts_the_losing_request_of_blocking_transports() throws Exception {
+		((ch.qos.logback.classic.Logger) org.slf4j.LoggerFactory
+				.getLogger("org.mockserver"))
+		.setLevel(ch.qos.logback.classic.Level.OFF);
+		ClientAndServer mockServer = startClientAndServer(9013);
+		try (HedgingPolicy policy = new HedgingPolicy()) {
+			for (Transport transport : new Transport[] {new URLConnectionTransport(), new PooledTransport()}) {
+				HttpRequest getText = HttpRequest.request().withMethod("GET")
+						.withPath("/api/1.2.13/getText");
+				// The primary request hangs, its hedge is answered at once
+				mockServer.when(getText, Times.once())
+				.respond(HttpResponse.response().withStatusCode(200)
+						.withDelay(new Delay(TimeUnit.SECONDS, 30)).withBody(OK));
+				mockServer.when(getText)
+				.respond(HttpResponse.response().withStatusCode(200).withBody(OK));
+				EPLiteConnection connection = new EPLiteConnection("http://localhost:9013",
+						"apikey", "1.2.13", "UTF-8", transport);
+				connection.setHedgingPolicy(policy);
+				ConcurrencyLimiter limiter = new ConcurrencyLimiter();
+				connection.setLimiter(limiter);
+
+				long start = System.nanoTime();
+				assertEquals("hello", connection.get("getText").get("text"));
+				assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(10));
+				assertEquals("the loser holds no permit", 0, limiter.getInFlight());
+				assertTrue(!Thread.currentThread().isInterrupted());
+				transport.close();
+				mockServer.reset();
+			}
+			assertEquals(2, policy.getHedgeWinCount());
+		} finally {
+			mockServer.stop();
+		}
+	}
+}
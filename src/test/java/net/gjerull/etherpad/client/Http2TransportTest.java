@@ -0,0 +1,80 @@
+package net.gjerull.etherpad.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockserver.integration.ClientAndServer.startClientAndServer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mockserver.integration.ClientAndServer;
+import org.mockserver.model.HttpRequest;
+import org.mockserver.model.HttpResponse;
+
+public class Http2TransportTest {
+
+	private static ClientAndServer mockServer;
+	private Http2Transport transport;
+
+	@BeforeClass
+	public static void setUpClass() {
+		mockServer = startClientAndServer(9004);
+	}
+
+	@AfterClass
+	public static void cleanClass() {
+		mockServer.stop();
+	}
+
+	@Before
+	public void setUp() {
+		((ch.qos.logback.classic.Logger) org.slf4j.LoggerFactory
+				.getLogger("org.mockserver.mock"))
+		.setLevel(ch.qos.logback.classic.Level.OFF);
+
+		transport = new Http2Transport(2);
+		mockServer.when(HttpRequest.request().withMethod("GET")
+				.withPath("/api/1.2.13/getText"))
+		.respond(HttpResponse.response().withStatusCode(200)
+				.withBody("{\"code\":0,\"message\":\"ok\",\"data\":{\"text\":\"foo\"}}"));
+	}
+
+	@After
+	public void tearDown() {
+		mockServer.reset();
+	}
+
+	@Test
+	public void blocking_client_over_http2_transport() throws Exception {
+		EPLiteClient client = new EPLiteClient("http://localhost:9004",
+				"apikey", "1.2.13", "UTF-8", transport);
+
+		for (int i = 0; i < 4; i++) {
+			assertEquals("foo", client.getText("my_pad").get("text"));
+		}
+		client.close();
+	}
+
+	@Test
+	public void async_client_over_http2_transport() throws Exception {
+		EPLiteAsyncClient client = new EPLiteAsyncClient(
+				"http://localhost:9004", "apikey", "1.2.13", "UTF-8",
+				transport);
+
+		List<CompletableFuture<Map>> texts = new ArrayList<>();
+		for (int i = 0; i < 20; i++) {
+			texts.add(client.getText("pad" + i));
+		}
+		for (CompletableFuture<Map> text : texts) {
+			assertEquals("foo", text.get().get("text"));
+		}
+		assertEquals(2, transport.getConnections());
+		client.close();
+	}
+}
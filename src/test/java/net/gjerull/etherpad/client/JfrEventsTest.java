@@ -0,0 +1,168 @@
+package net.gjerull.etherpad.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockserver.integration.ClientAndServer.startClientAndServer;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mockserver.integration.ClientAndServer;
+import org.mockserver.model.Delay;
+import org.mockserver.model.HttpRequest;
+import org.mockserver.model.HttpResponse;
+
+public class JfrEventsTest {
+	private static final String OK = "{\"code\":0,\"message\":\"ok\",\"data\":{\"text\":\"foo\"}}";
+	private static final String NO_PAD = "{\"code\":1,\"message\":\"padID does not exist\",\"data\":null}";
+
+	private static ClientAndServer mockServer;
+
+	@BeforeClass
+	public static void setUpClass() {
+		mockServer = startClientAndServer(9012);
+	}
+
+	@AfterClass
+	public static void cleanClass() {
+		mockServer.stop();
+	}
+
+	@Before
+	public void setUp() {
+		((ch.qos.logback.classic.Logger) org.slf4j.LoggerFactory
+				.getLogger("org.mockserver"))
+		.setLevel(ch.qos.logback.classic.Level.OFF);
+
+		mockServer.when(HttpRequest.request().withMethod("GET")
+				.withPath("/api/1.2.13/getText"))
+		.respond(HttpResponse.response().withStatusCode(200)
+				.withDelay(new Delay(TimeUnit.MILLISECONDS, 100))
+				.withBody(OK));
+		mockServer.when(HttpRequest.request().withMethod("POST")
+				.withPath("/api/1.2.13/setText"))
+		.respond(HttpResponse.response().withStatusCode(200)
+				.withBody(NO_PAD));
+	}
+
+	@After
+	public void tearDown() {
+		mockServer.reset();
+	}
+
+	/** Runs the calls of a client within a recording and returns its events. */
+	private static List<RecordedEvent> record(EPLiteClient client) throws Exception {
+		Path file = Files.createTempFile("etherpad", ".jfr");
+		try (Recording recording = new Recording()) {
+			recording.start();
+			client.getText("my_pad");
+			client.getText("my_pad");
+			try {
+				client.setText("other_pad", "text");
+				fail("expected an EPLiteException");
+			} catch (EPLiteException e) {
+				// Recorded with its code
+			}
+			recording.stop();
+			recording.dump(file);
+			return RecordingFile.readAllEvents(file).stream()
+					.filter(e -> e.getEventType().getName().startsWith("net.gjerull.etherpad."))
+					.sorted(Comparator.comparing(RecordedEvent::getStartTime))
+					.collect(Collectors.toList());
+		} finally {
+			Files.delete(file);
+			client.close();
+		}
+	}
+
+	private static List<RecordedEvent> ofType(List<RecordedEvent> events, String name) {
+		return events.stream()
+				.filter(e -> e.getEventType().getName().equals("net.gjerull.etherpad." + name))
+				.collect(Collectors.toList());
+	}
+
+	private static EPLiteClient tlsClient() {
+		return new EPLiteClient(new EPLiteConnection("https://localhost:9012", "apikey",
+				"1.2.13", "UTF-8", new URLConnectionTransport(TLSConfig.trustAll())));
+	}
+
+	private static EPLiteClient pooledClient() {
+		return new EPLiteClient(new EPLiteConnection("http://localhost:9012", "apikey",
+				"1.2.13", "UTF-8", new PooledTransport()));
+	}
+
+	@Test
+	public void records_an_api_call_event_per_call() throws Exception {
+		List<RecordedEvent> calls = ofType(record(tlsClient()), "ApiCall");
+
+		assertEquals(3, calls.size());
+		RecordedEvent get = calls.get(0);
+		assertEquals("getText", get.getString("method"));
+		assertEquals("my_pad".hashCode(), get.getInt("idHash"));
+		assertEquals(200, get.getInt("httpStatus"));
+		assertEquals(EPLiteConnection.CODE_OK, get.getInt("code"));
+		assertEquals("apikey=apikey&padID=my_pad".length(), get.getLong("requestBytes"));
+		assertEquals(OK.length(), get.getLong("responseBytes"));
+		assertTrue(get.getDuration().compareTo(Duration.ofMillis(100)) >= 0);
+	}
+
+	@Test
+	public void records_the_code_of_failed_calls() throws Exception {
+		RecordedEvent set = ofType(record(tlsClient()), "ApiCall").get(2);
+
+		assertEquals("setText", set.getString("method"));
+		assertEquals("other_pad".hashCode(), set.getInt("idHash"));
+		assertEquals(EPLiteConnection.CODE_INVALID_PARAMETERS, set.getInt("code"));
+		assertEquals(NO_PAD.length(), set.getLong("responseBytes"));
+	}
+
+	@Test
+	public void records_tls_connections_and_their_reuse() throws Exception {
+		List<RecordedEvent> events = record(tlsClient());
+
+		List<RecordedEvent> opened = ofType(events, "ConnectionOpen");
+		assertEquals(1, opened.size());
+		assertEquals("localhost", opened.get(0).getString("host"));
+		assertEquals(9012, opened.get(0).getInt("port"));
+		List<RecordedEvent> handshakes = ofType(events, "TlsHandshake");
+		assertEquals(1, handshakes.size());
+		assertNotNull(handshakes.get(0).getString("protocol"));
+		assertNotNull(handshakes.get(0).getString("cipherSuite"));
+		assertEquals("keep-alive", 2, ofType(events, "ConnectionReuse").size());
+	}
+
+	@Test
+	public void records_the_status_of_pooled_calls() throws Exception {
+		List<RecordedEvent> calls = ofType(record(pooledClient()), "ApiCall");
+
+		assertEquals(3, calls.size());
+		for (RecordedEvent call : calls) {
+			assertEquals(200, call.getInt("httpStatus"));
+		}
+	}
+
+	@Test
+	public void records_pooled_connections_and_their_reuse() throws Exception {
+		List<RecordedEvent> events = record(pooledClient());
+
+		assertEquals(1, ofType(events, "ConnectionOpen").size());
+		assertEquals(2, ofType(events, "ConnectionReuse").size());
+		assertTrue(ofType(events, "TlsHandshake").isEmpty());
+	}
+}
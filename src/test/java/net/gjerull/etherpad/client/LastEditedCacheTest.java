@@ -0,0 +1,94 @@
+package net.gjerull.etherpad.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockserver.integration.ClientAndServer.startClientAndServer;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mockserver.integration.ClientAndServer;
+import org.mockserver.matchers.Times;
+import org.mockserver.model.HttpRequest;
+import org.mockserver.model.HttpResponse;
+import org.mockserver.verify.VerificationTimes;
+
+public class LastEditedCacheTest {
+
+	private static ClientAndServer mockServer;
+
+	@BeforeClass
+	public static void setUpClass() {
+		((ch.qos.logback.classic.Logger) org.slf4j.LoggerFactory
+				.getLogger("org.mockserver"))
+		.setLevel(ch.qos.logback.classic.Level.OFF);
+		mockServer = startClientAndServer(9007);
+	}
+
+	@AfterClass
+	public static void cleanClass() {
+		mockServer.stop();
+	}
+
+	@After
+	public void tearDown() {
+		mockServer.reset();
+	}
+
+	private void lastEdited(long lastEdited, int times) {
+		mockServer.when(HttpRequest.request().withMethod("GET")
+				.withPath("/api/1.2.13/getLastEdited"), Times.exactly(times))
+		.respond(HttpResponse.response().withStatusCode(200)
+				.withBody("{\"code\":0,\"message\":\"ok\",\"data\":{\"lastEdited\":"
+						+ lastEdited + "}}"));
+	}
+
+	private void text(String text, int times) {
+		mockServer.when(HttpRequest.request().withMethod("GET")
+				.withPath("/api/1.2.13/getText"), Times.exactly(times))
+		.respond(HttpResponse.response().withStatusCode(200)
+				.withBody("{\"code\":0,\"message\":\"ok\",\"data\":{\"text\":\""
+						+ text + "\"}}"));
+	}
+
+	@Test
+	public void misses_when_the_pad_was_edited() {
+		LastEditedCache cache = new LastEditedCache(10000L);
+		Map<String, Object> value = new HashMap<>();
+		value.put("text", "foo");
+
+		cache.put("getText", "pad", 100L, value);
+
+		assertEquals("foo", ((Map) cache.get("getText", "pad", 100L)).get("text"));
+		assertNull(cache.get("getText", "pad", 101L));
+		assertNull(cache.get("getHTML", "pad", 100L));
+		assertEquals(1L, cache.getHits());
+		assertEquals(2L, cache.getMisses());
+	}
+
+	@Test
+	public void client_downloads_again_only_after_an_edit() {
+		lastEdited(100L, 3);
+		lastEdited(200L, 1);
+		text("foo", 1);
+		text("bar", 1);
+
+		EPLiteClient client = new EPLiteClient("http://localhost:9007", "apikey");
+		client.setLastEditedCache(new LastEditedCache(1024L * 1024L));
+
+		for (int i = 0; i < 3; i++) {
+			assertEquals("foo", client.getText("my_pad").get("text"));
+		}
+		assertEquals("bar", client.getText("my_pad").get("text"));
+
+		mockServer.verify(HttpRequest.request().withPath("/api/1.2.13/getText"),
+				VerificationTimes.exactly(2));
+		mockServer.verify(HttpRequest.request().withPath("/api/1.2.13/getLastEdited"),
+				VerificationTimes.exactly(4));
+		assertEquals(2L, client.getLastEditedCache().getHits());
+	}
+}
@@ -0,0 +1,156 @@
+package net.gjerull.etherpad.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.management.ManagementFactory;
+import java.net.ConnectException;
+import java.net.URL;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+public class MetricsRegistryTest {
+	private static final String OK = "{\"code\":0,\"message\":\"ok\",\"data\":{\"text\":\"hello\"}}";
+	private static final String NO_PAD = "{\"code\":1,\"message\":\"padID does not exist\",\"data\":null}";
+
+	/** Answers by pad: "missing" does not exist, "down" is refused. */
+	private static final class PadTransport implements Transport {
+		@Override
+		public Request newGetRequest(URL url) {
+			return newPostRequest(url, url.getQuery());
+		}
+
+		@Override
+		public Request newPostRequest(URL url, String body) {
+			return () -> {
+				if (body.contains("padID=down")) {
+					throw new ConnectException("Connection refused");
+				}
+				return body.contains("padID=missing") ? NO_PAD : OK;
+			};
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+
+	private static EPLiteClient client(MetricsRegistry metrics) {
+		EPLiteConnection connection = new EPLiteConnection("http://example.com", "apikey",
+				"1.2.13", "UTF-8", new PadTransport());
+		connection.setMetrics(metrics);
+		return new EPLiteClient(connection);
+	}
+
+	/** Calls getText on a pad, expecting it to fail. */
+	private static void failing(EPLiteClient client, String padId) {
+		try {
+			client.getText(padId);
+			fail("expected an EPLiteException");
+		} catch (EPLiteException e) {
+			// Counted as an error
+		}
+	}
+
+	@Test
+	public void records_calls_and_bytes_by_method() {
+		MetricsRegistry metrics = new MetricsRegistry();
+		EPLiteClient client = client(metrics);
+		client.getText("my_pad");
+		client.getText("my_pad");
+		client.setText("my_pad", "hello");
+
+		MetricsRegistry.MethodMetrics getText = metrics.getMethod("getText");
+		assertEquals(2, getText.getCallCount());
+		assertEquals(0, getText.getErrorCount());
+		assertEquals(2, getText.getLatency().getCount());
+		assertEquals(2 * "apikey=apikey&padID=my_pad".length(), getText.getBytesOut());
+		assertEquals(2 * OK.length(), getText.getBytesIn());
+
+		MetricsRegistry.MethodMetrics setText = metrics.getMethod("setText");
+		assertEquals(1, setText.getCallCount());
+		assertTrue(setText.getErrorCounts().isEmpty());
+		assertNull(metrics.getMethod("getHTML"));
+		assertEquals(2, metrics.getMethods().size());
+	}
+
+	@Test
+	public void counts_errors_by_code() {
+		MetricsRegistry metrics = new MetricsRegistry();
+		EPLiteClient client = client(metrics);
+		failing(client, "missing");
+		failing(client, "down");
+
+		MetricsRegistry.MethodMetrics getText = metrics.getMethod("getText");
+		assertEquals(2, getText.getCallCount());
+		assertEquals(2, getText.getErrorCount());
+		Map<Integer, Long> codes = new HashMap<>();
+		codes.put(EPLiteConnection.CODE_INVALID_PARAMETERS, 1L);
+		codes.put(EPLiteException.NO_CODE, 1L);
+		assertEquals(codes, getText.getErrorCounts());
+		assertEquals(NO_PAD.length(), getText.getBytesIn());
+	}
+
+	@Test
+	public void counts_the_code_of_typed_call_errors() {
+		MetricsRegistry metrics = new MetricsRegistry();
+		try {
+			client(metrics).typed().getText("missing");
+			fail("expected an EPLiteException");
+		} catch (EPLiteException e) {
+			assertEquals(EPLiteConnection.CODE_INVALID_PARAMETERS, e.getCode());
+		}
+		assertEquals(Collections.singletonMap(EPLiteConnection.CODE_INVALID_PARAMETERS, 1L),
+				metrics.getMethod("getText").getErrorCounts());
+	}
+
+	@Test
+	public void computes_latency_percentiles() {
+		MetricsRegistry metrics = new MetricsRegistry();
+		MetricsRegistry.MethodMetrics method = metrics.method("getHTML");
+		// 1ms to 1000ms, one call each
+		for (int i = 1; i <= 1000; i++) {
+			method.record(TimeUnit.MILLISECONDS.toNanos(i), EPLiteConnection.CODE_OK);
+		}
+		assertEquals(500_000, method.getP50(), 500_000 / 32);
+		assertEquals(990_000, method.getP99(), 990_000 / 32);
+		assertEquals(999_000, method.getP999(), 999_000 / 32);
+		assertEquals(1_000_000, method.getMaxLatency());
+		assertEquals(500_500, method.getMeanLatency(), 1);
+		assertEquals(0, new LatencyHistogram().getValueAtPercentile(0.99));
+	}
+
+	@Test
+	public void registers_mbeans_for_methods_called_later() throws Exception {
+		MetricsRegistry metrics = new MetricsRegistry();
+		MetricsRegistry.MethodMetrics method = metrics.method("getHTML");
+		method.record(TimeUnit.MILLISECONDS.toNanos(5), EPLiteConnection.CODE_OK);
+
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName getHTML = new ObjectName(
+				"net.gjerull.etherpad.client:type=EPLiteMetrics,name=\"test\",method=getHTML");
+		ObjectName getText = new ObjectName(
+				"net.gjerull.etherpad.client:type=EPLiteMetrics,name=\"test\",method=getText");
+		metrics.registerMBeans("test");
+		try {
+			assertEquals(1L, server.getAttribute(getHTML, "CallCount"));
+			assertEquals(method.getP99(), server.getAttribute(getHTML, "P99"));
+			client(metrics).getText("my_pad");
+			assertEquals(1L, server.getAttribute(getText, "CallCount"));
+		} finally {
+			metrics.unregisterMBeans();
+		}
+		assertFalse(server.isRegistered(getHTML));
+		assertFalse(server.isRegistered(getText));
+	}
+}
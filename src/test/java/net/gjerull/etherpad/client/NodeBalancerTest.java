@@ -0,0 +1,183 @@
+package net.gjerull.etherpad.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.ConnectException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class NodeBalancerTest {
+	private static final String OK = "{\"code\":0,\"message\":\"ok\",\"data\":{\"text\":\"hello\"}}";
+	private static final List<String> URLS = Arrays.asList("http://node1.example.com/",
+			"http://node2.example.com");
+
+	/** Answers by host: a down host refuses, a slow pad waits for the latch. */
+	private static final class HostTransport implements Transport {
+		private final Map<String, AtomicInteger> requests = new ConcurrentHashMap<>();
+		private final Map<String, Boolean> down = new ConcurrentHashMap<>();
+		private final CountDownLatch release = new CountDownLatch(1);
+
+		@Override
+		public Request newGetRequest(URL url) {
+			return () -> {
+				String host = url.getHost();
+				if (down.containsKey(host)) {
+					throw new ConnectException("Connection refused");
+				}
+				requests.computeIfAbsent(host + url.getPath(), h -> new AtomicInteger())
+						.incrementAndGet();
+				if (url.getQuery().contains("padID=slow")) {
+					release.await(5, TimeUnit.SECONDS);
+				}
+				return OK;
+			};
+		}
+
+		@Override
+		public Request newPostRequest(URL url, String body) {
+			return newGetRequest(url);
+		}
+
+		@Override
+		public void close() {
+		}
+
+		private int count(String host, String method) {
+			AtomicInteger count = requests.get(host + "/api/1.2.13/" + method);
+			return (count == null) ? 0 : count.get();
+		}
+	}
+
+	/** A balancer probing every 20ms, ejecting and reinstating a node after 2 probes. */
+	private static NodeBalancer balancer() {
+		NodeBalancer balancer = new NodeBalancer(URLS);
+		balancer.setProbeInterval(20);
+		balancer.setThresholds(2, 2);
+		return balancer;
+	}
+
+	private static EPLiteClient client(NodeBalancer balancer, Transport transport) {
+		return new EPLiteClient(new EPLiteConnection(balancer, "apikey", "1.2.13", "UTF-8",
+				transport));
+	}
+
+	/** Waits up to 5s for a node to be healthy, or unhealthy. */
+	private static void awaitHealthy(NodeBalancer.Node node, boolean healthy) throws Exception {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (node.isHealthy() != healthy && System.currentTimeMillis() < deadline) {
+			Thread.sleep(5);
+		}
+		assertEquals(healthy, node.isHealthy());
+	}
+
+	@Test
+	public void keeps_the_nodes_in_the_given_order() {
+		NodeBalancer balancer = new NodeBalancer(URLS);
+		assertEquals("node1.example.com", balancer.getNodes().get(0).getUri().getHost());
+		assertEquals("node2.example.com", balancer.getNodes().get(1).getUri().getHost());
+		assertEquals(2, balancer.getHealthyCount());
+	}
+
+	@Test
+	public void routes_to_the_node_with_fewest_requests_in_flight() throws Exception {
+		HostTransport transport = new HostTransport();
+		try (EPLiteClient client = new EPLiteClient(URLS, "apikey", "1.2.13", "UTF-8", transport)) {
+			NodeBalancer balancer = client.getBalancer();
+			Thread slow = new Thread(() -> client.getText("slow"));
+			slow.start();
+			long deadline = System.currentTimeMillis() + 5000;
+			NodeBalancer.Node busy = null;
+			while (busy == null && System.currentTimeMillis() < deadline) {
+				for (NodeBalancer.Node node : balancer.getNodes()) {
+					if (node.getOutstanding() == 1) {
+						busy = node;
+					}
+				}
+				Thread.sleep(5);
+			}
+			NodeBalancer.Node idle = balancer.getNodes().get(busy == balancer.getNodes().get(0) ? 1 : 0);
+
+			for (int i = 0; i < 5; i++) {
+				assertEquals("hello", client.getText("fast").get("text"));
+			}
+			assertEquals(5, transport.count(idle.getUri().getHost(), "getText"));
+			assertEquals(1, transport.count(busy.getUri().getHost(), "getText"));
+			assertEquals(5, idle.getRequestCount());
+
+			transport.release.countDown();
+			slow.join(5000);
+			assertEquals(0, busy.getOutstanding());
+			assertEquals(1, busy.getRequestCount());
+		}
+	}
+
+	@Test
+	public void ejects_a_node_failing_its_probes() throws Exception {
+		HostTransport transport = new HostTransport();
+		transport.down.put("node2.example.com", true);
+		NodeBalancer balancer = balancer();
+		try (EPLiteClient client = client(balancer, transport)) {
+			NodeBalancer.Node node2 = balancer.getNodes().get(1);
+			awaitHealthy(node2, false);
+			assertEquals(1, balancer.getHealthyCount());
+			assertEquals(1, node2.getEjectionCount());
+			assertTrue(transport.count("node1.example.com", "checkToken") > 0);
+		}
+	}
+
+	@Test
+	public void routes_around_an_ejected_node() throws Exception {
+		HostTransport transport = new HostTransport();
+		transport.down.put("node2.example.com", true);
+		NodeBalancer balancer = balancer();
+		try (EPLiteClient client = client(balancer, transport)) {
+			NodeBalancer.Node node2 = balancer.getNodes().get(1);
+			awaitHealthy(node2, false);
+			long failures = node2.getFailureCount();
+			for (int i = 0; i < 5; i++) {
+				client.getText("my_pad");
+			}
+			assertEquals(failures, node2.getFailureCount());
+			assertEquals(5, transport.count("node1.example.com", "getText"));
+		}
+	}
+
+	@Test
+	public void reinstates_a_node_passing_its_probes() throws Exception {
+		HostTransport transport = new HostTransport();
+		transport.down.put("node2.example.com", true);
+		NodeBalancer balancer = balancer();
+		try (EPLiteClient client = client(balancer, transport)) {
+			NodeBalancer.Node node2 = balancer.getNodes().get(1);
+			awaitHealthy(node2, false);
+			transport.down.remove("node2.example.com");
+			awaitHealthy(node2, true);
+			assertEquals(2, balancer.getHealthyCount());
+			assertTrue(node2.getProbeCount() >= 4);
+		}
+	}
+
+	@Test
+	public void stops_probing_once_closed() throws Exception {
+		NodeBalancer balancer = balancer();
+		EPLiteClient client = client(balancer, new HostTransport());
+		NodeBalancer.Node node1 = balancer.getNodes().get(0);
+		long deadline = System.currentTimeMillis() + 5000;
+		while (node1.getProbeCount() == 0 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(5);
+		}
+		client.close();
+		long probes = node1.getProbeCount();
+		Thread.sleep(100);
+		assertEquals(probes, node1.getProbeCount());
+	}
+}
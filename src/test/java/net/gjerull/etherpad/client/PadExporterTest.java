@@ -0,0 +1,184 @@
+package net.gjerull.etherpad.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockserver.integration.ClientAndServer.startClientAndServer;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.json.simple.JSONObject;
+import org.json.simple.JSONValue;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockserver.integration.ClientAndServer;
+import org.mockserver.model.HttpRequest;
+import org.mockserver.model.HttpResponse;
+
+public class PadExporterTest {
+
+	private static ClientAndServer mockServer;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@BeforeClass
+	public static void setUpClass() {
+		((ch.qos.logback.classic.Logger) org.slf4j.LoggerFactory
+				.getLogger("org.mockserver"))
+		.setLevel(ch.qos.logback.classic.Level.OFF);
+		mockServer = startClientAndServer(9009);
+	}
+
+	@AfterClass
+	public static void cleanClass() {
+		mockServer.stop();
+	}
+
+	@After
+	public void tearDown() {
+		mockServer.reset();
+	}
+
+	private void listAllPads(String... padIds) {
+		mockServer.when(HttpRequest.request().withMethod("GET")
+				.withPath("/api/1.2.13/listAllPads"))
+		.respond(HttpResponse.response().withStatusCode(200)
+				.withBody("{\"code\":0,\"message\":\"ok\",\"data\":{\"padIDs\":[\""
+						+ String.join("\",\"", padIds) + "\"]}}"));
+	}
+
+	private void content(String apiMethod, String field, String padId) {
+		mockServer.when(HttpRequest.request().withMethod("GET")
+				.withPath("/api/1.2.13/" + apiMethod)
+				.withQueryStringParameter("padID", padId))
+		.respond(HttpResponse.response().withStatusCode(200)
+				.withBody("{\"code\":0,\"message\":\"ok\",\"data\":{\"" + field
+						+ "\":\"" + field + " of " + padId + "\"}}"));
+	}
+
+	private void missing(String padId) {
+		mockServer.when(HttpRequest.request().withMethod("GET")
+				.withPath("/api/1.2.13/getText")
+				.withQueryStringParameter("padID", padId))
+		.respond(HttpResponse.response().withStatusCode(200)
+				.withBody("{\"code\":1,\"message\":\"padID does not exist\",\"data\":null}"));
+	}
+
+	@Test
+	public void exports_one_file_per_pad_and_format() throws Exception {
+		listAllPads("a", "g.x$b");
+		for (String padId : new String[] {"a", "g.x$b"}) {
+			content("getText", "text", padId);
+			content("getHTML", "html", padId);
+		}
+		Path directory = folder.getRoot().toPath().resolve("export");
+		PadExporter exporter = new PadExporter(
+				new EPLiteClient("http://localhost:9009", "apikey"));
+		exporter.setFormats(PadExporter.Format.TEXT, PadExporter.Format.HTML);
+
+		PadExporter.Result result = exporter.exportToDirectory(directory);
+
+		assertTrue(result.isComplete());
+		assertEquals(2L, result.getExported());
+		assertEquals("text of a", new String(Files.readAllBytes(
+				directory.resolve("a.txt")), StandardCharsets.UTF_8));
+		assertEquals("html of g.x$b", new String(Files.readAllBytes(
+				directory.resolve("g.x%24b.html")), StandardCharsets.UTF_8));
+		assertFalse(Files.exists(directory.resolve(".checkpoint")));
+	}
+
+	@Test
+	public void resumes_an_archive_from_the_checkpoint() throws Exception {
+		listAllPads("a", "b", "c");
+		content("getText", "text", "a");
+		content("getText", "text", "c");
+		missing("b");
+		Path archive = folder.getRoot().toPath().resolve("pads.jsonl.gz");
+		PadExporter exporter = new PadExporter(
+				new EPLiteClient("http://localhost:9009", "apikey"));
+		exporter.setParallelism(2);
+
+		PadExporter.Result first = exporter.exportToArchive(archive);
+
+		assertFalse(first.isComplete());
+		assertEquals(2L, first.getExported());
+		assertEquals("padID does not exist", first.getFailures().get("b"));
+		assertTrue(Files.exists(archive.resolveSibling("pads.jsonl.gz.checkpoint")));
+
+		mockServer.reset();
+		listAllPads("a", "b", "c");
+		content("getText", "text", "b");
+		PadExporter.Result second = exporter.exportToArchive(archive);
+
+		assertTrue(second.isComplete());
+		assertEquals(1L, second.getExported());
+		assertEquals(2L, second.getSkipped());
+		assertFalse(Files.exists(archive.resolveSibling("pads.jsonl.gz.checkpoint")));
+
+		List<String> texts = new ArrayList<>();
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+				new GZIPInputStream(Files.newInputStream(archive)),
+				StandardCharsets.UTF_8))) {
+			for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+				JSONObject pad = (JSONObject) JSONValue.parse(line);
+				assertEquals("text of " + pad.get("padID"), pad.get("text"));
+				texts.add((String) pad.get("padID"));
+			}
+		}
+		texts.sort(null);
+		assertEquals(3, texts.size());
+		assertEquals("b", texts.get(1));
+	}
+
+	@Test
+	public void exports_again_the_pad_of_a_torn_checkpoint_line() throws Exception {
+		listAllPads("a", "b", "c");
+		content("getText", "text", "a");
+		content("getText", "text", "c");
+		missing("b");
+		Path archive = folder.getRoot().toPath().resolve("pads.jsonl.gz");
+		Path checkpoint = archive.resolveSibling("pads.jsonl.gz.checkpoint");
+		PadExporter exporter = new PadExporter(
+				new EPLiteClient("http://localhost:9009", "apikey"));
+		exporter.exportToArchive(archive);
+
+		// Cut the last record in its offset, as a crash while writing it would
+		String records = new String(Files.readAllBytes(checkpoint), StandardCharsets.UTF_8);
+		String torn = records.substring(0, records.length() - 3);
+		String tornPad = torn.substring(torn.lastIndexOf('\n') + 1, torn.lastIndexOf(' '));
+		Files.write(checkpoint, torn.getBytes(StandardCharsets.UTF_8));
+
+		mockServer.reset();
+		listAllPads("a", "b", "c");
+		content("getText", "text", "b");
+		content("getText", "text", tornPad);
+		PadExporter.Result second = exporter.exportToArchive(archive);
+
+		assertTrue(second.isComplete());
+		assertEquals(2L, second.getExported());
+		assertEquals(1L, second.getSkipped());
+		List<String> padIds = new ArrayList<>();
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+				new GZIPInputStream(Files.newInputStream(archive)),
+				StandardCharsets.UTF_8))) {
+			for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+				padIds.add((String) ((JSONObject) JSONValue.parse(line)).get("padID"));
+			}
+		}
+		padIds.sort(null);
+		assertEquals(Arrays.asList("a", "b", "c"), padIds);
+	}
+}
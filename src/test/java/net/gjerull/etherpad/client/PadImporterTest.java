@@ -0,0 +1,213 @@
+package net.gjerull.etherpad.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockserver.integration.ClientAndServer.startClientAndServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ConnectException;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockserver.integration.ClientAndServer;
+import org.mockserver.model.HttpRequest;
+import org.mockserver.model.HttpResponse;
+
+public class PadImporterTest {
+
+	private static final String OK = "{\"code\":0,\"message\":\"ok\",\"data\":null}";
+
+	private static ClientAndServer mockServer;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@BeforeClass
+	public static void setUpClass() {
+		((ch.qos.logback.classic.Logger) org.slf4j.LoggerFactory
+				.getLogger("org.mockserver"))
+		.setLevel(ch.qos.logback.classic.Level.OFF);
+		mockServer = startClientAndServer(9010);
+	}
+
+	@AfterClass
+	public static void cleanClass() {
+		mockServer.stop();
+	}
+
+	@After
+	public void tearDown() {
+		mockServer.reset();
+	}
+
+	private static void write(Path file, String content) throws IOException {
+		Files.createDirectories(file.getParent());
+		Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void imports_a_directory_tree() throws Exception {
+		for (String method : new String[] {"createPad", "createGroupPad", "setHTML"}) {
+			mockServer.when(HttpRequest.request().withMethod("POST")
+					.withPath("/api/1.2.13/" + method))
+			.respond(HttpResponse.response().withStatusCode(200).withBody(OK));
+		}
+		StringBuilder large = new StringBuilder();
+		while (large.length() < 2 * PadImporter.MAPPED_SIZE) {
+			large.append("grüße & 100%\n");
+		}
+		Path root = folder.getRoot().toPath();
+		write(root.resolve("a.txt"), "text of a");
+		write(root.resolve("large.txt"), large.toString());
+		write(root.resolve("g.x/notes.html"), "<p>notes</p>");
+		write(root.resolve("both.txt"), "ignored");
+		write(root.resolve("both.html"), "<b>both</b>");
+		write(root.resolve("README.md"), "not a pad");
+
+		PadImporter.Report report = new PadImporter(
+				new EPLiteClient("http://localhost:9010", "apikey"))
+				.importDirectory(root);
+
+		assertTrue(report.getFailures().toString(), report.isComplete());
+		assertEquals(4L, report.getImported());
+		List<String> bodies = new ArrayList<>();
+		for (HttpRequest request : mockServer.retrieveRecordedRequests(
+				HttpRequest.request().withMethod("POST"))) {
+			bodies.add(request.getPath() + "?" + request.getBodyAsString());
+		}
+		Collections.sort(bodies);
+		assertEquals(6, bodies.size());
+		assertForm("/api/1.2.13/createGroupPad?apikey=apikey", bodies.get(0),
+				"groupID=g.x", "padName=notes");
+		assertForm("/api/1.2.13/createPad?apikey=apikey", bodies.get(1),
+				"padID=a", "text=text+of+a");
+		assertForm("/api/1.2.13/createPad?apikey=apikey", bodies.get(2),
+				"padID=both");
+		assertForm("/api/1.2.13/createPad?apikey=apikey", bodies.get(3),
+				"padID=large", "text=" + URLEncoder.encode(large.toString(), "UTF-8"));
+		assertForm("/api/1.2.13/setHTML?apikey=apikey", bodies.get(4),
+				"padID=both", "html=%3Cb%3Eboth%3C%2Fb%3E");
+		assertForm("/api/1.2.13/setHTML?apikey=apikey", bodies.get(5),
+				"padID=g.x%24notes", "html=%3Cp%3Enotes%3C%2Fp%3E");
+	}
+
+	private static void assertForm(String prefix, String request, String... params) {
+		assertTrue(request, request.startsWith(prefix));
+		List<String> actual = new ArrayList<>(Arrays.asList(
+				request.substring(prefix.length() + 1).split("&")));
+		Collections.sort(actual);
+		List<String> expected = new ArrayList<>(Arrays.asList(params));
+		Collections.sort(expected);
+		assertEquals(expected, actual);
+	}
+
+	private static final String EXISTS = "{\"code\":1,\"message\":\"padID does already exist\",\"data\":null}";
+
+	@Test
+	public void retries_calls_that_fail_to_reach_the_server() throws Exception {
+		AtomicInteger attempts = new AtomicInteger();
+		AtomicInteger lateAttempts = new AtomicInteger();
+		List<String> created = Collections.synchronizedList(new ArrayList<>());
+		Transport transport = new URLConnectionTransport() {
+			@Override
+			public Request newPostRequest(URL url, byte[] body) {
+				return () -> {
+					String form = new String(body, StandardCharsets.US_ASCII);
+					if (form.contains("padID=flaky") && attempts.incrementAndGet() < 3) {
+						throw new ConnectException("Connection refused");
+					}
+					if (form.contains("padID=reset")) {
+						// May have been created: not retried
+						throw new IOException("Connection reset");
+					}
+					if (form.contains("padID=late")) {
+						// Refused, then created by someone else in between
+						if (lateAttempts.incrementAndGet() == 1) {
+							throw new ConnectException("Connection refused");
+						}
+						return EXISTS;
+					}
+					if (form.contains("padID=broken")) {
+						return EXISTS;
+					}
+					if (url.getPath().endsWith("setHTML")) {
+						return "{\"code\":2,\"message\":\"HTML is invalid\",\"data\":null}";
+					}
+					created.add(form);
+					return OK;
+				};
+			}
+
+			@Override
+			public Request newPostRequest(URL url, RequestBody body) {
+				try (InputStream in = body.openStream()) {
+					return newPostRequest(url, in.readAllBytes());
+				} catch (IOException e) {
+					throw new IllegalStateException(e);
+				}
+			}
+		};
+		Path root = folder.getRoot().toPath();
+		write(root.resolve("flaky.txt"), "flaky");
+		write(root.resolve("broken.txt"), "broken");
+		write(root.resolve("reset.txt"), "reset");
+		write(root.resolve("late.txt"), "grüße");
+		write(root.resolve("half.html"), "<p>half</p>");
+		PadImporter importer = new PadImporter(new EPLiteClient(
+				"http://localhost:9010", "apikey", "1.2.13", "UTF-8", transport));
+		importer.setRetryDelay(1L);
+
+		PadImporter.Report report = importer.importDirectory(root);
+
+		assertEquals(2L, report.getImported());
+		assertEquals(3L, report.getRetries());
+		assertEquals(3, attempts.get());
+		assertEquals(2, lateAttempts.get());
+		assertEquals("padID does already exist", report.getFailures().get("broken.txt"));
+		assertTrue(report.getFailures().get("reset.txt").contains("Connection reset"));
+		assertEquals(2, report.getFailures().size());
+		assertEquals("HTML is invalid", report.getPartial().get("half.html"));
+		assertEquals(2, created.size());
+		assertEquals(("flaky" + "broken" + "reset" + "grüße" + "<p>half</p>")
+				.getBytes(StandardCharsets.UTF_8).length, report.getBytes());
+	}
+
+	@Test(timeout = 10000)
+	public void aborts_when_a_worker_dies() throws Exception {
+		Transport transport = new URLConnectionTransport() {
+			@Override
+			public Request newPostRequest(URL url, RequestBody body) {
+				throw new IllegalStateException("broken transport");
+			}
+		};
+		Path root = folder.getRoot().toPath();
+		for (int i = 0; i < 50; i++) {
+			write(root.resolve("pad" + i + ".txt"), "text " + i);
+		}
+		PadImporter importer = new PadImporter(new EPLiteClient(
+				"http://localhost:9010", "apikey", "1.2.13", "UTF-8", transport));
+		importer.setParallelism(2);
+		try {
+			importer.importDirectory(root);
+			fail("expected an EPLiteException");
+		} catch (EPLiteException e) {
+			assertTrue(e.getCause() instanceof IllegalStateException);
+		}
+	}
+}
@@ -0,0 +1,111 @@
+package net.gjerull.etherpad.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PadMirrorTest {
+	private static final List<String> CHANGESETS = Arrays.asList(
+			"Z:1>6*0|1+6$hello\n",
+			"Z:7>6=5*0+6$ world",
+			"Z:d>0=6*1=5$",
+			"Z:d<6=5-6$");
+	private static final List<String> TEXTS = Arrays.asList(
+			"hello\n\n", "hello world\n\n", "hello world\n\n", "hello\n\n");
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final AtomicLong head = new AtomicLong();
+	private final List<String> fetched = new ArrayList<>();
+
+	private EPLiteClient client() {
+		Transport transport = new URLConnectionTransport() {
+			@Override
+			public Request newGetRequest(URL url) {
+				String method = url.getPath().substring(url.getPath().lastIndexOf('/') + 1);
+				String query = url.getQuery();
+				String rev = query.contains("rev=") ? query.replaceAll(".*rev=(\\d+).*", "$1") : "";
+				synchronized (fetched) {
+					fetched.add(method + rev);
+				}
+				String data;
+				if ("getRevisionsCount".equals(method)) {
+					data = "{\"revisions\":" + head.get() + "}";
+				} else if ("getText".equals(method)) {
+					data = "{\"text\":\"" + TEXTS.get(Integer.parseInt(rev)).replace("\n", "\\n") + "\"}";
+				} else if ("getAttributePool".equals(method)) {
+					data = "{\"pool\":{\"numToAttrib\":{\"0\":[\"author\",\"a.1\"],"
+							+ "\"1\":[\"bold\",\"true\"]},\"nextNum\":2}}";
+				} else {
+					data = "\"" + CHANGESETS.get(Integer.parseInt(rev)).replace("\n", "\\n") + "\"";
+				}
+				String response = "{\"code\":0,\"message\":\"ok\",\"data\":" + data + "}";
+				return () -> response;
+			}
+		};
+		return new EPLiteClient("http://localhost:9001", "apikey", "1.2.13", "UTF-8", transport);
+	}
+
+	@Test
+	public void sync_fetches_only_the_missing_changesets() throws Exception {
+		PadMirror mirror = new PadMirror(client(), folder.getRoot().toPath());
+		List<Long> changed = new ArrayList<>();
+		mirror.setListener((padId, rev, atext) -> changed.add(rev));
+		mirror.add("my_pad");
+
+		head.set(1);
+		assertTrue(mirror.sync("my_pad"));
+		assertEquals("hello world\n\n", mirror.getText("my_pad"));
+		assertEquals(Arrays.asList("getRevisionsCount", "getText1"), fetched);
+
+		fetched.clear();
+		head.set(3);
+		assertTrue(mirror.syncAll().isSuccess());
+		assertEquals("hello\n\n", mirror.getText("my_pad"));
+		assertEquals(Arrays.asList("getRevisionsCount", "getRevisionChangeset2",
+				"getAttributePool", "getRevisionChangeset3"), fetched);
+
+		fetched.clear();
+		assertFalse(mirror.sync("my_pad"));
+		assertEquals(Arrays.asList("getRevisionsCount"), fetched);
+		assertEquals(Arrays.asList(1L, 3L), changed);
+		assertEquals(1, mirror.getSnapshotCount());
+		assertEquals(2, mirror.getChangesetCount());
+	}
+
+	@Test
+	public void restarts_from_the_state_directory() throws Exception {
+		PadMirror mirror = new PadMirror(client(), folder.getRoot().toPath());
+		head.set(2);
+		mirror.sync("g.x$notes");
+		AText synced = mirror.getAText("g.x$notes");
+
+		PadMirror restarted = new PadMirror(client(), folder.getRoot().toPath());
+		assertEquals(2, restarted.getRevision("g.x$notes"));
+		assertEquals(synced, restarted.getAText("g.x$notes"));
+
+		fetched.clear();
+		head.set(3);
+		restarted.syncAll();
+		assertEquals(Arrays.asList("getRevisionsCount", "getRevisionChangeset3"), fetched);
+		assertEquals("hello\n\n", restarted.getText("g.x$notes"));
+
+		// A pad created again does not continue the local copy
+		fetched.clear();
+		head.set(0);
+		assertTrue(restarted.sync("g.x$notes"));
+		assertEquals(Arrays.asList("getRevisionsCount", "getText0"), fetched);
+		assertEquals("hello\n\n", restarted.getText("g.x$notes"));
+	}
+}
@@ -0,0 +1,172 @@
+package net.gjerull.etherpad.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class PadWatcherTest {
+	private final Map<String, Long> edits = new ConcurrentHashMap<>();
+
+	/** Answers getLastEdited from edits; pads missing from it are edited on every poll. */
+	private EPLiteClient client() {
+		Transport transport = new URLConnectionTransport() {
+			@Override
+			public Request newGetRequest(URL url) {
+				String padId = url.getQuery().replaceAll(".*padID=([^&]*).*", "$1");
+				long edited = edits.containsKey(padId) ? edits.get(padId) : System.nanoTime();
+				return () -> "{\"code\":0,\"message\":\"ok\",\"data\":{\"lastEdited\":" + edited + "}}";
+			}
+		};
+		return new EPLiteClient("http://localhost:9001", "apikey", "1.2.13", "UTF-8", transport);
+	}
+
+	/**
+	 * Answers getLastEdited without blocking: fails to send the first poll, answers the
+	 * second with an error code, then the edits of "async".
+	 */
+	private EPLiteClient asyncClient(AtomicInteger polls) {
+		AsyncTransport transport = new AsyncTransport() {
+			@Override
+			public AsyncRequest newGetRequest(URL url) {
+				int poll = polls.incrementAndGet();
+				if (poll == 1) {
+					throw new IllegalStateException("no connection");
+				}
+				String body = (poll == 2)
+						? "{\"code\":1,\"message\":\"padID does not exist\",\"data\":null}"
+						: "{\"code\":0,\"message\":\"ok\",\"data\":{\"lastEdited\":"
+								+ edits.get("async") + "}}";
+				return new AsyncRequest() {
+					@Override
+					public String send() {
+						throw new AssertionError("blocking poll");
+					}
+
+					@Override
+					public CompletableFuture<String> sendAsync() {
+						return CompletableFuture.completedFuture(body);
+					}
+				};
+			}
+
+			@Override
+			public AsyncRequest newPostRequest(URL url, String body) {
+				throw new UnsupportedOperationException();
+			}
+
+			@Override
+			public void close() {
+			}
+		};
+		return new EPLiteClient("http://localhost:9001", "apikey", "1.2.13", "UTF-8", transport);
+	}
+
+	private static final class Collector implements Flow.Subscriber<PadWatcher.Change> {
+		private final BlockingQueue<PadWatcher.Change> changes = new LinkedBlockingQueue<>();
+		private final long demand;
+
+		private Collector(long demand) {
+			this.demand = demand;
+		}
+
+		@Override
+		public void onSubscribe(Flow.Subscription subscription) {
+			if (demand > 0) {
+				subscription.request(demand);
+			}
+		}
+
+		@Override
+		public void onNext(PadWatcher.Change item) {
+			changes.add(item);
+		}
+
+		@Override
+		public void onError(Throwable throwable) {
+		}
+
+		@Override
+		public void onComplete() {
+		}
+	}
+
+	@Test
+	public void publishes_changes_and_backs_off_idle_pads() throws Exception {
+		edits.put("busy", 1L);
+		edits.put("idle", 1L);
+		try (PadWatcher watcher = new PadWatcher(client(), 1, 16)) {
+			watcher.setPollInterval(5, 40);
+			watcher.setJitter(0);
+			Collector collector = new Collector(Long.MAX_VALUE);
+			watcher.subscribe(collector);
+			watcher.watch("busy");
+			watcher.watch("idle");
+
+			long deadline = System.currentTimeMillis() + 5000;
+			while (watcher.getInterval("idle") < 40 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(5);
+			}
+			assertEquals(40, watcher.getInterval("idle"));
+
+			edits.put("busy", 2L);
+			PadWatcher.Change change = collector.changes.poll(5, TimeUnit.SECONDS);
+			assertEquals("busy", change.getPadId());
+			assertEquals(2, change.getLastEdited());
+			assertEquals(1, change.getPreviousEdited());
+			assertEquals(0, watcher.getErrorCount());
+		}
+	}
+
+	@Test
+	public void polls_async_transports_and_waits_for_a_first_answer() throws Exception {
+		edits.put("async", 1L);
+		AtomicInteger polls = new AtomicInteger();
+		try (PadWatcher watcher = new PadWatcher(asyncClient(polls), 1, 16)) {
+			watcher.setPollInterval(5, 5);
+			watcher.setJitter(0);
+			Collector collector = new Collector(Long.MAX_VALUE);
+			watcher.subscribe(collector);
+			watcher.watch("async");
+
+			long deadline = System.currentTimeMillis() + 5000;
+			while (polls.get() < 4 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(5);
+			}
+			assertEquals(2, watcher.getErrorCount());
+			assertTrue("the first answer is not an edit", collector.changes.isEmpty());
+
+			edits.put("async", 2L);
+			PadWatcher.Change change = collector.changes.poll(5, TimeUnit.SECONDS);
+			assertEquals(2, change.getLastEdited());
+			assertEquals(1, change.getPreviousEdited());
+		}
+	}
+
+	@Test
+	public void drops_changes_for_slow_subscribers() throws Exception {
+		try (PadWatcher watcher = new PadWatcher(client(), 1, 1)) {
+			watcher.setPollInterval(1, 1);
+			Collector slow = new Collector(0);
+			watcher.subscribe(slow);
+			watcher.watch("busy");
+
+			long deadline = System.currentTimeMillis() + 5000;
+			while (watcher.getDroppedCount() == 0 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(5);
+			}
+			assertTrue(watcher.getDroppedCount() > 0);
+			assertTrue(slow.changes.isEmpty());
+		}
+	}
+}
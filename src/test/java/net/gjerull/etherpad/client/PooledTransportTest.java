@@ -0,0 +1,128 @@
+package net.gjerull.etherpad.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockserver.integration.ClientAndServer.startClientAndServer;
+
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mockserver.integration.ClientAndServer;
+import org.mockserver.model.Delay;
+import org.mockserver.model.HttpRequest;
+import org.mockserver.model.HttpResponse;
+import org.mockserver.model.Parameter;
+import org.mockserver.model.ParameterBody;
+
+public class PooledTransportTest {
+
+	private static ClientAndServer mockServer;
+	private PooledTransport transport;
+	private EPLiteClient client;
+
+	@BeforeClass
+	public static void setUpClass() {
+		mockServer = startClientAndServer(9002);
+	}
+
+	@AfterClass
+	public static void cleanClass() {
+		mockServer.stop();
+	}
+
+	@Before
+	public void setUp() {
+		((ch.qos.logback.classic.Logger) org.slf4j.LoggerFactory
+				.getLogger("org.mockserver.mock"))
+		.setLevel(ch.qos.logback.classic.Level.OFF);
+
+		transport = new PooledTransport(2, 30000L, 300000L);
+		client = new EPLiteClient("http://localhost:9002", "apikey",
+				"1.2.13", "UTF-8", transport);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		client.close();
+		mockServer.reset();
+	}
+
+	@Test
+	public void get_requests_reuse_pooled_connections() throws Exception {
+		mockServer.when(HttpRequest.request().withMethod("GET")
+				.withPath("/api/1.2.13/getText")
+				.withQueryStringParameter("padID", "my_pad"))
+		.respond(HttpResponse.response().withStatusCode(200)
+				.withBody("{\"code\":0,\"message\":\"ok\",\"data\":{\"text\":\"foo\\nbar\"}}"));
+
+		for (int i = 0; i < 10; i++) {
+			Map response = client.getText("my_pad");
+			assertEquals("foo\nbar", response.get("text"));
+		}
+
+		assertEquals(2, transport.getMaxConnectionsPerHost());
+		assertTrue("Expected the connection to be kept alive",
+				transport.getOpenConnections() == 1);
+	}
+
+	@Test
+	public void post_requests_send_a_form_encoded_body() throws Exception {
+		mockServer.when(HttpRequest.request().withMethod("POST")
+				.withPath("/api/1.2.13/createGroupIfNotExistsFor")
+				.withHeader("Content-Type", "application/x-www-form-urlencoded.*")
+				.withBody(ParameterBody.params(
+						Parameter.param("groupMapper", "a b&c"),
+						Parameter.param("apikey", "apikey"))))
+		.respond(HttpResponse.response().withStatusCode(200)
+				.withBody("{\"code\":0,\"message\":\"ok\",\"data\":{\"groupID\":\"g.s8oes9dhwrvt0zif\"}}"));
+
+		Map response = client.createGroupIfNotExistsFor("a b&c");
+
+		assertEquals("g.s8oes9dhwrvt0zif", response.get("groupID"));
+	}
+
+	@Test(expected = EPLiteException.class)
+	public void unreachable_server_raises_an_eplite_exception() throws Exception {
+		EPLiteClient unreachable = new EPLiteClient("http://localhost:1",
+				"apikey", "1.2.13", "UTF-8", new PooledTransport());
+		try {
+			unreachable.checkToken();
+		} finally {
+			unreachable.close();
+		}
+	}
+
+	@Test
+	public void times_out_and_grows_the_pool_with_the_hosts() throws Exception {
+		mockServer.when(HttpRequest.request().withMethod("GET")
+				.withPath("/api/1.2.13/getText"))
+		.respond(HttpResponse.response().withStatusCode(200)
+				.withDelay(new Delay(TimeUnit.SECONDS, 10))
+				.withBody("{\"code\":0,\"message\":\"ok\",\"data\":{\"text\":\"late\"}}"));
+		transport.setTimeouts(1000, 200, 1000);
+		assertEquals(200, transport.getSocketTimeout());
+
+		long start = System.nanoTime();
+		try {
+			client.getText("my_pad");
+			fail("expected an EPLiteException");
+		} catch (EPLiteException e) {
+			assertTrue(e.getCause() instanceof SocketTimeoutException);
+		}
+		assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+
+		assertEquals(2 * 4, transport.getMaxTotal());
+		for (int i = 1; i <= 6; i++) {
+			transport.newGetRequest(new URL("http://node" + i + ":9001/api/1.2.13/getText"));
+		}
+		assertEquals("localhost and 6 nodes", 2 * 7, transport.getMaxTotal());
+	}
+}
@@ -0,0 +1,80 @@
+package net.gjerull.etherpad.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.StringReader;
+
+import org.junit.Test;
+
+public class ResponseDecoderTest {
+    private static final String RESPONSE_TEMPLATE = "{\"code\": %d, \"message\": \"%s\", \"data\": %s}";
+
+    private static <T> T decode(ResponseDecoder<T> decoder, String data) throws Exception {
+        return decoder.decode(new StringReader(String.format(RESPONSE_TEMPLATE, 0, "ok", data)));
+    }
+
+    @Test
+    public void decode_pad_text() throws Exception {
+        PadText text = decode(new PadText.Decoder(), "{\"text\": \"Welcome\\nto æøå\"}");
+        assertEquals("Welcome\nto æøå", text.getText());
+    }
+
+    @Test
+    public void decode_revision_count() throws Exception {
+        RevisionCount count = decode(new RevisionCount.Decoder(), "{\"revisions\": 56}");
+        assertEquals(56L, count.getRevisions());
+    }
+
+    @Test
+    public void decode_session_info_ignoring_unknown_fields() throws Exception {
+        SessionInfo info = decode(new SessionInfo.Decoder(),
+                "{\"authorID\": \"a.s8oes9dhwrvt0zif\", \"extra\": {\"groupID\": \"nested\"},"
+                + " \"groupID\": \"g.s8oes9dhwrvt0zif\", \"validUntil\": 1312201246}");
+        assertEquals("g.s8oes9dhwrvt0zif", info.getGroupID());
+        assertEquals("a.s8oes9dhwrvt0zif", info.getAuthorID());
+        assertEquals(1312201246L, info.getValidUntil());
+    }
+
+    @Test
+    public void decode_pad_id_list() throws Exception {
+        PadIdList list = decode(new PadIdList.Decoder(), "{\"padIDs\": [\"test\", \"g.x$test2\"]}");
+        assertEquals(2, list.size());
+        assertEquals("g.x$test2", list.getPadIDs().get(1));
+    }
+
+    @Test
+    public void decode_chat_history() throws Exception {
+        ChatHistory history = decode(new ChatHistory.Decoder(),
+                "{\"messages\": [{\"text\": \"foo\", \"userId\": \"a.foo\", \"time\": 1359199533759, \"userName\": \"test\"},"
+                + " {\"text\": \"bar\", \"userId\": \"a.foo\", \"time\": 1359199534622, \"userName\": null}]}");
+        assertEquals(2, history.getMessages().size());
+        ChatHistory.Message second = history.getMessages().get(1);
+        assertEquals("bar", second.getText());
+        assertEquals("a.foo", second.getUserId());
+        assertNull(second.getUserName());
+        assertEquals(1359199534622L, second.getTime());
+    }
+
+    @Test
+    public void null_data_decodes_to_null() throws Exception {
+        assertNull(decode(new PadText.Decoder(), "null"));
+    }
+
+    @Test
+    public void error_code_raises_the_message() throws Exception {
+        try {
+            new PadText.Decoder().decode(new StringReader(
+                    String.format(RESPONSE_TEMPLATE, 1, "padID does not exist", "null")));
+            fail("Expected '" + EPLiteException.class.getName() + "' to be thrown");
+        } catch (EPLiteException e) {
+            assertEquals("padID does not exist", e.getMessage());
+        }
+    }
+
+    @Test(expected = EPLiteException.class)
+    public void missing_code_is_unexpected() throws Exception {
+        new PadText.Decoder().decode(new StringReader("{}"));
+    }
+}
@@ -0,0 +1,179 @@
+package net.gjerull.etherpad.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.ServerSocket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class RetryPolicyTest {
+	private static final String OK = "{\"code\":0,\"message\":\"ok\",\"data\":{\"text\":\"hello\"}}";
+
+	/** Fails the first failures requests with the given exception, after latency ms. */
+	private static final class FailingTransport implements Transport {
+		private final AtomicInteger requests = new AtomicInteger();
+		private final int failures;
+		private final IOException error;
+		private volatile long latency;
+
+		private FailingTransport(int failures, IOException error) {
+			this.failures = failures;
+			this.error = error;
+		}
+
+		private Request request() {
+			return () -> {
+				Thread.sleep(latency);
+				if (requests.incrementAndGet() <= failures) {
+					throw error;
+				}
+				return OK;
+			};
+		}
+
+		@Override
+		public Request newGetRequest(URL url) {
+			return request();
+		}
+
+		@Override
+		public Request newPostRequest(URL url, String body) {
+			return request();
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+
+	private static EPLiteConnection connection(Transport transport, RetryPolicy policy) {
+		EPLiteConnection connection = new EPLiteConnection("http://example.com/", "apikey",
+				"1.2.13", "UTF-8", transport);
+		connection.setRetryPolicy(policy);
+		return connection;
+	}
+
+	/** A policy retrying at once. */
+	private static RetryPolicy immediate() {
+		RetryPolicy policy = new RetryPolicy();
+		policy.setDelays(0, 0);
+		return policy;
+	}
+
+	@Test
+	public void retries_a_failed_idempotent_read() {
+		RetryPolicy policy = immediate();
+		FailingTransport reset = new FailingTransport(2, new SocketException("Connection reset"));
+		assertEquals("hello", connection(reset, policy).get("getText").get("text"));
+		assertEquals(3, reset.requests.get());
+		assertEquals(2, policy.getRetryCount());
+		assertTrue(policy.isIdempotent("padUsersCount"));
+	}
+
+	@Test
+	public void does_not_retry_a_failed_write() {
+		RetryPolicy policy = immediate();
+		FailingTransport write = new FailingTransport(1, new SocketException("Connection reset"));
+		try {
+			connection(write, policy).post("setText");
+			fail("a write was retried");
+		} catch (EPLiteException e) {
+			assertEquals(1, write.requests.get());
+		}
+		assertEquals(0, policy.getRetryCount());
+	}
+
+	@Test
+	public void retries_a_write_refused_before_it_was_sent() {
+		RetryPolicy policy = immediate();
+		FailingTransport refused = new FailingTransport(1, new ConnectException("Connection refused"));
+		assertEquals("hello", connection(refused, policy).post("setText").get("text"));
+		assertEquals(2, refused.requests.get());
+		assertEquals(1, policy.getRetryCount());
+	}
+
+	@Test
+	public void does_not_retry_a_4xx_answer() {
+		RetryPolicy policy = immediate();
+		FailingTransport missing = new FailingTransport(1, new HttpStatusException(404, "url"));
+		try {
+			connection(missing, policy).get("getText");
+			fail("a 404 was retried");
+		} catch (EPLiteException e) {
+			assertEquals(404, ((HttpStatusException) e.getCause()).getStatusCode());
+		}
+		assertEquals(1, missing.requests.get());
+		assertEquals(0, policy.getRetryCount());
+	}
+
+	@Test
+	public void retries_a_5xx_answer_to_a_read() {
+		RetryPolicy policy = immediate();
+		FailingTransport unavailable = new FailingTransport(1, new HttpStatusException(503, "url"));
+		assertEquals("hello", connection(unavailable, policy).get("getText").get("text"));
+		assertEquals(2, unavailable.requests.get());
+		assertEquals(1, policy.getRetryCount());
+	}
+
+	@Test
+	public void stops_retrying_when_the_budget_is_spent() {
+		RetryPolicy policy = new RetryPolicy(0, 1);
+		policy.setDelays(0, 0);
+		FailingTransport down = new FailingTransport(100, new ConnectException("Connection refused"));
+		EPLiteConnection connection = connection(down, policy);
+		for (int i = 0; i < 2; i++) {
+			try {
+				connection.get("getText");
+				fail("the server is down");
+			} catch (EPLiteException e) {
+				assertTrue(e.getCause() instanceof ConnectException);
+			}
+		}
+		assertEquals("one retry in the budget", 3, down.requests.get());
+		assertEquals(2, policy.getBudgetExhaustedCount());
+	}
+
+	@Test
+	public void does_not_retry_after_the_deadline() {
+		RetryPolicy policy = immediate();
+		policy.setDeadline(10);
+		FailingTransport slow = new FailingTransport(100, new ConnectException("Connection refused"));
+		slow.latency = 20;
+		long start = System.nanoTime();
+		try {
+			connection(slow, policy).get("getText");
+			fail("the server is down");
+		} catch (EPLiteException e) {
+			assertEquals(1, slow.requests.get());
+		}
+		assertTrue(System.nanoTime() - start < 500000000L);
+	}
+
+	@Test
+	public void cuts_an_attempt_at_the_deadline() throws IOException {
+		try (ServerSocket silent = new ServerSocket(0)) {
+			EPLiteConnection hanging = new EPLiteConnection(
+					"http://localhost:" + silent.getLocalPort(), "apikey", "1.2.13", "UTF-8",
+					new URLConnectionTransport());
+			RetryPolicy policy = new RetryPolicy();
+			policy.setDeadline(300);
+			hanging.setRetryPolicy(policy);
+			long start = System.nanoTime();
+			try {
+				hanging.get("getText");
+				fail("the server never answers");
+			} catch (EPLiteException e) {
+				assertTrue(e.getCause() instanceof SocketTimeoutException);
+			}
+			assertTrue(System.nanoTime() - start < 2000000000L);
+		}
+	}
+}
@@ -0,0 +1,125 @@
+package net.gjerull.etherpad.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockserver.integration.ClientAndServer.startClientAndServer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mockserver.integration.ClientAndServer;
+import org.mockserver.model.HttpRequest;
+import org.mockserver.model.HttpResponse;
+import org.mockserver.verify.VerificationTimes;
+
+public class RevisionCacheTest {
+
+	private static ClientAndServer mockServer;
+
+	@BeforeClass
+	public static void setUpClass() {
+		((ch.qos.logback.classic.Logger) org.slf4j.LoggerFactory
+				.getLogger("org.mockserver"))
+		.setLevel(ch.qos.logback.classic.Level.OFF);
+		mockServer = startClientAndServer(9006);
+	}
+
+	@AfterClass
+	public static void cleanClass() {
+		mockServer.stop();
+	}
+
+	@After
+	public void tearDown() {
+		mockServer.reset();
+	}
+
+	private static Map<String, Object> text(String text) {
+		Map<String, Object> map = new HashMap<>();
+		map.put("text", text);
+		return map;
+	}
+
+	@Test
+	public void counts_hits_and_misses() {
+		RevisionCache cache = new RevisionCache(10000L);
+
+		assertNull(cache.get("getText", "pad", 1L, -1L));
+		cache.put("getText", "pad", 1L, -1L, text("foo"));
+		assertEquals("foo", ((Map) cache.get("getText", "pad", 1L, -1L)).get("text"));
+		assertNull(cache.get("getHTML", "pad", 1L, -1L));
+
+		assertEquals(1L, cache.getHits());
+		assertEquals(2L, cache.getMisses());
+	}
+
+	@Test
+	public void evicts_least_recently_used_entries_over_the_budget() {
+		String large = new String(new char[1000]);
+		long weight = 96L + WeightedLruCache.weigh(text(large));
+		RevisionCache cache = new RevisionCache(weight * 2);
+
+		cache.put("getText", "pad", 1L, -1L, text(large));
+		cache.put("getText", "pad", 2L, -1L, text(large));
+		assertNotNull(cache.get("getText", "pad", 1L, -1L));
+		cache.put("getText", "pad", 3L, -1L, text(large));
+
+		assertEquals(2, cache.getSize());
+		assertEquals(1L, cache.getEvictions());
+		assertTrue(cache.getBytes() <= cache.getMaxBytes());
+		assertNull(cache.get("getText", "pad", 2L, -1L));
+		assertNotNull(cache.get("getText", "pad", 1L, -1L));
+	}
+
+	@Test
+	public void returned_maps_do_not_change_the_cache() {
+		RevisionCache cache = new RevisionCache(10000L);
+		cache.put("getText", "pad", 1L, -1L, text("foo"));
+
+		((Map) cache.get("getText", "pad", 1L, -1L)).put("text", "bar");
+
+		assertEquals("foo", ((Map) cache.get("getText", "pad", 1L, -1L)).get("text"));
+
+		Map<String, Object> diff = new HashMap<>();
+		diff.put("authors", new ArrayList<>(Arrays.asList("a.1", "a.2")));
+		cache.put("createDiffHTML", "pad", 1L, 2L, diff);
+		((List) ((Map) cache.get("createDiffHTML", "pad", 1L, 2L)).get("authors")).clear();
+		((List) diff.get("authors")).clear();
+
+		assertEquals(Arrays.asList("a.1", "a.2"),
+				((Map) cache.get("createDiffHTML", "pad", 1L, 2L)).get("authors"));
+	}
+
+	@Test
+	public void client_fetches_a_revision_once() throws Exception {
+		mockServer.when(HttpRequest.request().withMethod("GET")
+				.withPath("/api/1.2.13/getText"))
+		.respond(HttpResponse.response().withStatusCode(200)
+				.withBody("{\"code\":0,\"message\":\"ok\",\"data\":{\"text\":\"foo\"}}"));
+		mockServer.when(HttpRequest.request().withMethod("POST")
+				.withPath("/api/1.2.13/deletePad"))
+		.respond(HttpResponse.response().withStatusCode(200)
+				.withBody("{\"code\":0,\"message\":\"ok\",\"data\":null}"));
+
+		EPLiteClient client = new EPLiteClient("http://localhost:9006", "apikey");
+		client.setRevisionCache(new RevisionCache(1024L * 1024L));
+
+		for (int i = 0; i < 5; i++) {
+			assertEquals("foo", client.getText("my_pad", 3L).get("text"));
+		}
+		mockServer.verify(HttpRequest.request().withPath("/api/1.2.13/getText"),
+				VerificationTimes.once());
+
+		client.deletePad("my_pad");
+		assertEquals(0, client.getRevisionCache().getSize());
+	}
+}
@@ -0,0 +1,117 @@
+package net.gjerull.etherpad.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockserver.integration.ClientAndServer.startClientAndServer;
+
+import java.net.URL;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSocketFactory;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mockserver.integration.ClientAndServer;
+import org.mockserver.model.HttpRequest;
+import org.mockserver.model.HttpResponse;
+
+public class TLSConfigTest {
+	private static final String URL = "https://localhost:9005";
+
+	private static ClientAndServer mockServer;
+
+	@BeforeClass
+	public static void setUpClass() {
+		mockServer = startClientAndServer(9005);
+	}
+
+	@AfterClass
+	public static void cleanClass() {
+		mockServer.stop();
+	}
+
+	@Before
+	public void setUp() {
+		((ch.qos.logback.classic.Logger) org.slf4j.LoggerFactory
+				.getLogger("org.mockserver"))
+		.setLevel(ch.qos.logback.classic.Level.OFF);
+
+		mockServer.when(HttpRequest.request().withMethod("GET")
+				.withPath("/api/1.2.13/getText"))
+		.respond(HttpResponse.response().withStatusCode(200)
+				.withBody("{\"code\":0,\"message\":\"ok\",\"data\":{\"text\":\"foo\"}}"));
+	}
+
+	@After
+	public void tearDown() {
+		mockServer.reset();
+	}
+
+	@Test
+	public void trust_all_is_scoped_to_the_transport() throws Exception {
+		SSLSocketFactory defaultFactory =
+				HttpsURLConnection.getDefaultSSLSocketFactory();
+		HostnameVerifier defaultVerifier =
+				HttpsURLConnection.getDefaultHostnameVerifier();
+
+		EPLiteClient client = new EPLiteClient(URL, "apikey", "1.2.13",
+				"UTF-8", new URLConnectionTransport(TLSConfig.trustAll()));
+		assertEquals("foo", client.getText("my_pad").get("text"));
+		assertEquals("foo", client.getText("my_pad").get("text"));
+
+		assertSame(defaultFactory,
+				HttpsURLConnection.getDefaultSSLSocketFactory());
+		assertSame(defaultVerifier,
+				HttpsURLConnection.getDefaultHostnameVerifier());
+	}
+
+	@Test
+	public void untrusted_certificates_are_rejected_by_default() throws Exception {
+		EPLiteClient client = new EPLiteClient(URL, "apikey");
+		try {
+			client.getText("my_pad");
+			fail("Expected '" + EPLiteException.class.getName() + "' to be thrown");
+		} catch (EPLiteException e) {
+			assertTrue(e.getMessage().startsWith("Unable to connect"));
+		}
+	}
+
+	@Test
+	public void pinned_certificate_is_trusted_by_every_transport() throws Exception {
+		TLSConfig pinned = TLSConfig.pinned(serverCA());
+
+		Transport[] transports = {
+				new URLConnectionTransport(pinned),
+				new PooledTransport(pinned),
+				new HttpClientTransport(pinned),
+				new Http2Transport(1, pinned)
+		};
+		for (Transport transport : transports) {
+			EPLiteClient client = new EPLiteClient(URL, "apikey",
+					"1.2.13", "UTF-8", transport);
+			assertEquals("foo", client.getText("my_pad").get("text"));
+			client.close();
+		}
+	}
+
+	/**
+	 * Returns the root of the mock server's certificate chain.
+	 */
+	private static X509Certificate serverCA() throws Exception {
+		HttpsURLConnection con = (HttpsURLConnection)
+				new URL(URL + "/api/1.2.13/getText").openConnection();
+		TLSConfig.trustAll().configure(con);
+		con.connect();
+		Certificate[] chain = con.getServerCertificates();
+		con.disconnect();
+		return (X509Certificate) chain[chain.length - 1];
+	}
+}